@@ -0,0 +1,112 @@
+package com.example.passwordmanager.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BaselineComparator class compares JMH results against the checked-in baseline and reports regressions.
+ * Both files must be in JMH's CSV result format (-rf csv). Throughput scores and normalized allocation rates
+ * (gc.alloc.rate.norm) are compared, other profiler metrics are too noisy to be useful.
+ * <pre>
+ * java -cp target/benchmarks.jar com.example.passwordmanager.benchmarks.BaselineComparator baseline/storage.csv results.csv
+ * </pre>
+ * Exits with status 1 if any score regressed by more than the tolerance (20% by default, or the third argument).
+ */
+public class BaselineComparator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparator <baseline.csv> <results.csv> [tolerance]");
+            System.exit(2);
+        }
+
+        Map<String, Score> baseline = readScores(Path.of(args[0]));
+        Map<String, Score> results = readScores(Path.of(args[1]));
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+        boolean regressed = false;
+
+        for (Map.Entry<String, Score> result : results.entrySet()) {
+            Score base = baseline.get(result.getKey());
+            if (base == null) {
+                continue;
+            }
+
+            Score current = result.getValue();
+            double change = (current.value - base.value) / base.value;
+
+            // Throughput should go up, time and allocation per operation should go down
+            boolean higherIsBetter = current.unit.startsWith("ops/");
+            boolean isRegression = higherIsBetter ? change < -tolerance : change > tolerance;
+            regressed |= isRegression;
+
+            System.out.printf("%-70s %14.2f -> %14.2f %-10s %+7.1f%%%s%n", result.getKey(), base.value, current.value,
+                    current.unit, change * 100, isRegression ? "  REGRESSION" : "");
+        }
+
+        System.exit(regressed ? 1 : 0);
+    }
+
+
+    /**
+     * A score and its unit.
+     */
+    private record Score(double value, String unit) {
+    }
+
+
+    /**
+     * Reads the compared scores of a JMH CSV result file, keyed by benchmark name and parameters.
+     */
+    private static Map<String, Score> readScores(Path file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(file);
+
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> columns = parseCsvLine(line);
+            String benchmark = columns.get(0);
+
+            if (benchmark.contains(":") && !benchmark.endsWith(":gc.alloc.rate.norm")) {
+                continue;
+            }
+
+            // Columns: Benchmark, Mode, Threads, Samples, Score, Score Error, Unit, then one column per parameter
+            StringBuilder key = new StringBuilder(benchmark);
+            for (String parameter : columns.subList(7, columns.size())) {
+                key.append(' ').append(parameter);
+            }
+
+            scores.put(key.toString(), new Score(Double.parseDouble(columns.get(4)), columns.get(6)));
+        }
+
+        return scores;
+    }
+
+
+    /**
+     * Splits a line of a CSV file into its columns, removing the quotes around them.
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+
+        return columns;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.BreachedPasswordChecker;
+import com.example.passwordmanager.Vault;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the breached password checker on a generated corpus, and of auditing a generated vault
+ * of 100k entries, one in a hundred of which has a breached password.
+ * <pre>
+ * java -jar target/benchmarks.jar BreachCheckBenchmark -rf csv -rff results.csv
+ * </pre>
+ * The first run of a trial builds the Bloom filter of the corpus, and its time is printed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BreachCheckBenchmark {
+
+    // Number of entries of the audited vault
+    private static final int VAULT_ENTRIES = 100_000;
+
+    // Number of sampled hashes the lookups cycle through
+    private static final int SAMPLES = 4096;
+
+    @Param({"10000000"})
+    public long records;
+
+    private Path directory;
+    private BreachedPasswordChecker checker;
+    private Vault vault;
+
+    private final byte[][] breachedHashes = new byte[SAMPLES][];
+    private final byte[][] unknownHashes = new byte[SAMPLES][];
+    private final String[] passwords = new String[SAMPLES];
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void generateCorpus() throws IOException {
+        directory = Files.createTempDirectory("breach-bench");
+        Path corpus = directory.resolve("corpus.sha1");
+        Path vaultFile = directory.resolve("vault.txt");
+
+        // Every hundredth password of the generated vault is breached
+        SplittableRandom random = new SplittableRandom(VaultGenerator.DEFAULT_SEED);
+        List<String> breached = new ArrayList<>();
+        for (int i = 0; i < VAULT_ENTRIES; i++) {
+            String password = VaultGenerator.entry(i, random)[2];
+            if (i % 100 == 0) {
+                breached.add(password);
+            }
+        }
+
+        VaultGenerator.generate(vaultFile, VAULT_ENTRIES, VaultGenerator.DEFAULT_SEED);
+        VaultGenerator.generateBreachCorpus(corpus, records, breached, VaultGenerator.DEFAULT_SEED);
+
+        long start = System.nanoTime();
+        checker = BreachedPasswordChecker.open(corpus);
+        System.out.printf("%nOpened corpus of %d hashes, building its Bloom filter, in %d ms%n",
+                checker.size(), (System.nanoTime() - start) / 1_000_000);
+
+        vault = Vault.open(vaultFile.toString(), null, false);
+
+        // Sample hashes from the corpus, random hashes that are almost certainly not in it, and vault passwords
+        try (RandomAccessFile file = new RandomAccessFile(corpus.toFile(), "r")) {
+            for (int i = 0; i < SAMPLES; i++) {
+                breachedHashes[i] = new byte[20];
+                file.seek(random.nextLong(checker.size()) * 20);
+                file.readFully(breachedHashes[i]);
+
+                unknownHashes[i] = new byte[20];
+                random.nextBytes(unknownHashes[i]);
+
+                passwords[i] = VaultGenerator.entry(i, random)[2];
+            }
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        vault.close();
+
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+
+    /**
+     * Looks up a hash that is not in the corpus, which the Bloom filter rejects in almost all cases.
+     */
+    @Benchmark
+    public boolean unknownLookup() {
+        return checker.contains(unknownHashes[next++ & (SAMPLES - 1)]);
+    }
+
+
+    /**
+     * Looks up a hash that is in the corpus, which passes the Bloom filter and is confirmed by searching the corpus.
+     */
+    @Benchmark
+    public boolean breachedLookup() {
+        return checker.contains(breachedHashes[next++ & (SAMPLES - 1)]);
+    }
+
+
+    /**
+     * Checks a password, including hashing it.
+     */
+    @Benchmark
+    public boolean checkPassword() {
+        return checker.isBreached(passwords[next++ & (SAMPLES - 1)]);
+    }
+
+
+    /**
+     * Audits all passwords of the vault in parallel.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<String> audit() {
+        return checker.audit(vault);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.passwordmanager.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CliStartupBenchmark class measures how long the command line launcher takes from starting the JVM to exiting,
+ * with and without the AppCDS archive the core build creates. Every configuration runs "get" on a generated vault
+ * of 1000 entries a number of times, after a few runs to warm up the file cache.
+ * <pre>
+ * java -cp target/benchmarks.jar com.example.passwordmanager.benchmarks.CliStartupBenchmark ../core/target [runs] [csv]
+ * </pre>
+ * Writes the median and 90th percentile of every configuration to the CSV file, by default startup.csv.
+ * If baseline/startup.csv exists, compares the medians with it and exits with status 1 if the launcher
+ * configuration got more than 20% slower.
+ */
+public class CliStartupBenchmark {
+
+    // Runs before measuring, to get the jar, the archive and the JVM into the file cache
+    private static final int WARMUP_RUNS = 3;
+
+    // Allowed slowdown of the median of the launcher against the baseline
+    private static final double MAX_SLOWDOWN = 1.2;
+
+    private static final String LAUNCHER = "cds+c1+serial";
+
+
+    public static void main(String[] args) throws Exception {
+        Path target = Path.of(args.length > 0 ? args[0] : "../core/target").toAbsolutePath();
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Path csv = Path.of(args.length > 2 ? args[2] : "startup.csv");
+
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String jar = target.resolve("passwordmanager.jar").toString();
+        String archive = target.resolve("passwordmanager-cli.jsa").toString();
+
+        Path directory = Files.createTempDirectory("startup-bench");
+        Path vault = directory.resolve("vault.txt");
+        VaultGenerator.generate(vault, 1000, VaultGenerator.DEFAULT_SEED);
+        List<String> command = List.of("--file", vault.toString(), "get", VaultGenerator.title(500), "password");
+
+        Map<String, List<String>> configurations = new LinkedHashMap<>();
+        configurations.put("default", List.of(java, "-Xshare:auto", "-jar", jar));
+        configurations.put("cds", List.of(java, "-XX:SharedArchiveFile=" + archive, "-Xlog:cds=off", "-jar", jar));
+        configurations.put(LAUNCHER, List.of(java, "-XX:SharedArchiveFile=" + archive, "-Xlog:cds=off",
+                "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-jar", jar));
+
+        Map<String, double[]> results = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> configuration : configurations.entrySet()) {
+            List<String> processCommand = new ArrayList<>(configuration.getValue());
+            processCommand.addAll(command);
+
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                time(processCommand);
+            }
+
+            double[] millis = new double[runs];
+            for (int i = 0; i < runs; i++) {
+                millis[i] = time(processCommand);
+            }
+            Arrays.sort(millis);
+
+            double median = millis[runs / 2];
+            double p90 = millis[(int) Math.ceil(runs * 0.9) - 1];
+            results.put(configuration.getKey(), new double[]{median, p90});
+            System.out.printf("%-15s median %6.1f ms, p90 %6.1f ms%n", configuration.getKey(), median, p90);
+        }
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csv))) {
+            writer.println("\"Configuration\",\"Median\",\"P90\",\"Unit\"");
+            for (Map.Entry<String, double[]> result : results.entrySet()) {
+                writer.printf("\"%s\",%.1f,%.1f,\"ms\"%n", result.getKey(), result.getValue()[0], result.getValue()[1]);
+            }
+        }
+
+        Files.delete(vault);
+        Files.deleteIfExists(directory.resolve("vault.txt.lock"));
+        Files.delete(directory);
+
+        System.exit(compareWithBaseline(Path.of("baseline", "startup.csv"), results) ? 0 : 1);
+    }
+
+
+    /**
+     * Runs a command and returns its wall clock time in milliseconds. The output is discarded.
+     */
+    private static double time(List<String> command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        if (process.waitFor() != 0) {
+            throw new IOException("Failed: " + String.join(" ", command));
+        }
+
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+
+    /**
+     * Compares the median of the launcher configuration with the baseline, if there is one.
+     *
+     * @return False if it got more than MAX_SLOWDOWN slower.
+     */
+    private static boolean compareWithBaseline(Path baseline, Map<String, double[]> results) throws IOException {
+        if (!Files.exists(baseline)) {
+            return true;
+        }
+
+        for (String line : Files.readAllLines(baseline)) {
+            String[] fields = line.split(",");
+            if (fields[0].equals("\"" + LAUNCHER + "\"")) {
+                double baselineMedian = Double.parseDouble(fields[1]);
+                double median = results.get(LAUNCHER)[0];
+                System.out.printf("%s against baseline: %.1f ms instead of %.1f ms%n", LAUNCHER, median, baselineMedian);
+                return median <= baselineMedian * MAX_SLOWDOWN;
+            }
+        }
+
+        return true;
+    }
+}
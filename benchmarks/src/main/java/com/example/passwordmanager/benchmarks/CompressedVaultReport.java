@@ -0,0 +1,187 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.CompressedVault;
+import com.example.passwordmanager.RecordFormat;
+import com.example.passwordmanager.TextVaultFile;
+import com.example.passwordmanager.Vault;
+import com.example.passwordmanager.VaultLoader;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The CompressedVaultReport class compares the compressed vault format (.pwdz) with the text format (.txt)
+ * on generated vaults, once with the three generated fields and once with a URL and notes added to every entry.
+ * For both it reports
+ * <ul>
+ *     <li>the size of the files and the compression ratio,</li>
+ *     <li>reading all entries: VaultLoader.readEntries of the text file against opening the compressed vault
+ *     and decompressing all blocks,</li>
+ *     <li>opening a Vault and looking up one entry, which loads and indexes a text file completely, but only
+ *     reads the block index and one block of a compressed vault, and</li>
+ *     <li>looking up random entries in an open vault.</li>
+ * </ul>
+ * Times are the median of several runs, after the same number of runs to warm up.
+ * <pre>
+ * java -cp target/benchmarks.jar com.example.passwordmanager.benchmarks.CompressedVaultReport [entries] [runs]
+ * </pre>
+ */
+public class CompressedVaultReport {
+
+    // Lookups in an open vault, per run
+    private static final int LOOKUPS = 10_000;
+
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        System.setProperty("passwordmanager.watch", "false");
+
+        System.out.printf("%d entries, %d runs, fork-join parallelism %d%n", entries, runs,
+                ForkJoinPool.getCommonPoolParallelism());
+
+        Path directory = Files.createTempDirectory("compressed-vault");
+        try {
+            report("3 fields", directory, entries, runs, false);
+            report("with URL and notes", directory, entries, runs, true);
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path created : files.toList()) {
+                    Files.delete(created);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+
+    private static void report(String name, Path directory, int entries, int runs, boolean notes) throws Exception {
+        Path textFile = directory.resolve("vault.txt");
+        Path compressedFile = directory.resolve("vault" + CompressedVault.EXTENSION);
+        String textPath = textFile.toString();
+        String compressedPath = compressedFile.toString();
+
+        generate(textFile, entries, notes);
+        long convertStart = System.nanoTime();
+        CompressedVault.convertFromText(textPath, compressedPath);
+        double convertMillis = (System.nanoTime() - convertStart) / 1e6;
+
+        long textSize = Files.size(textFile);
+        long compressedSize = Files.size(compressedFile);
+        System.out.printf("%n%s%n", name);
+        System.out.printf("  size            %10.2f MB text %10.2f MB compressed   ratio %.2f   (written in %.0f ms)%n",
+                textSize / 1e6, compressedSize / 1e6, textSize / (double) compressedSize, convertMillis);
+
+        double textRead = median(runs, () -> VaultLoader.readEntries(textPath).size());
+        double compressedRead = median(runs, () -> {
+            try (CompressedVault vault = CompressedVault.open(compressedPath)) {
+                return vault.getEntries().size();
+            }
+        });
+        printRow("read all", textRead, compressedRead, "ms");
+
+        String title = VaultGenerator.title(entries / 2);
+        double textOpen = median(runs, () -> openAndLookUp(textPath, title));
+        double compressedOpen = median(runs, () -> openAndLookUp(compressedPath, title));
+        printRow("open + lookup", textOpen, compressedOpen, "ms");
+
+        double textLookup = lookups(textPath, entries, runs);
+        double compressedLookup = lookups(compressedPath, entries, runs);
+        printRow("lookup (open)", textLookup, compressedLookup, "µs");
+    }
+
+
+    private static void printRow(String name, double text, double compressed, String unit) {
+        System.out.printf("  %-15s %10.2f %s text %10.2f %s compressed%n", name, text, unit, compressed, unit);
+    }
+
+
+    /**
+     * Writes a text database file of generated entries, with a URL and notes if asked for.
+     */
+    private static void generate(Path target, int entries, boolean notes) throws Exception {
+        if (!notes) {
+            VaultGenerator.generate(target, entries, VaultGenerator.DEFAULT_SEED);
+            return;
+        }
+
+        SplittableRandom random = new SplittableRandom(VaultGenerator.DEFAULT_SEED);
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            writer.write(TextVaultFile.HEADER + "\n");
+            for (int i = 0; i < entries; i++) {
+                String[] entry = Arrays.copyOf(VaultGenerator.entry(i, random), 5);
+                entry[3] = "https://accounts.example" + (i % 500) + ".com/signin/v2/identifier?continue=https%3A%2F%2F"
+                        + "myaccount.example.com%2F&service=accountsettings&flowName=GlifWebSignIn&user=" + i;
+                entry[4] = "Created for the team account. Recovery codes are in the safe, security questions: "
+                        + "first pet, city of birth. Rotate every " + (30 + i % 60) + " days.";
+                writer.write(RecordFormat.encode(entry));
+                writer.write("\n");
+            }
+        }
+    }
+
+
+    /**
+     * Opens a Vault, looks up one entry and closes it again.
+     */
+    private static int openAndLookUp(String path, String title) throws Exception {
+        Vault vault = Vault.open(path, null, false);
+        try {
+            return vault.getEntryDetails(title).length;
+        } finally {
+            vault.close();
+        }
+    }
+
+
+    /**
+     * Returns the median time of looking up a random entry in an open Vault, in microseconds.
+     */
+    private static double lookups(String path, int entries, int runs) throws Exception {
+        Vault vault = Vault.open(path, null, false);
+        try {
+            SplittableRandom random = new SplittableRandom(VaultGenerator.DEFAULT_SEED);
+            return median(runs, () -> {
+                int found = 0;
+                for (int i = 0; i < LOOKUPS; i++) {
+                    found += vault.getEntryDetails(VaultGenerator.title(random.nextInt(entries))).length;
+                }
+                return found;
+            }) * 1000 / LOOKUPS;
+        } finally {
+            vault.close();
+        }
+    }
+
+
+    /**
+     * Runs a task as often as measured to warm up, then measures it.
+     *
+     * @return The median time of the measured runs in milliseconds.
+     */
+    private static double median(int runs, Callable<Integer> task) throws Exception {
+        double[] millis = new double[runs];
+        int checksum = 0;
+
+        for (int i = -runs; i < runs; i++) {
+            long start = System.nanoTime();
+            checksum += task.call();
+            if (i >= 0) {
+                millis[i] = (System.nanoTime() - start) / 1e6;
+            }
+        }
+
+        if (checksum == 42) {
+            System.out.print("");
+        }
+        Arrays.sort(millis);
+        return millis[runs / 2];
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.BinaryVault;
+import com.example.passwordmanager.CompressedVault;
+import com.example.passwordmanager.TextVaultFile;
+import com.example.passwordmanager.Vault;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ConcurrentWriterStress class runs several processes writing the same database file at the same time
+ * and checks that no process lost the changes of another. Every writer process repeatedly
+ * <ul>
+ *     <li>adds an entry of its own,</li>
+ *     <li>updates the entry holding its progress, and</li>
+ *     <li>increments a counter entry shared by all writers, retrying when its update is rejected
+ *     because another writer changed the counter first.</li>
+ * </ul>
+ * Afterwards every added entry must be there exactly once, every progress entry must hold the number of operations,
+ * and the counter must equal the total number of increments. Reports the write throughput and the number of
+ * rejected updates. The mode is one of direct (a text file rewritten on every change), journal (a journaled
+ * text file), binary and compressed.
+ * <pre>
+ * java -cp target/benchmarks.jar com.example.passwordmanager.benchmarks.ConcurrentWriterStress [writers] [operations] [mode]
+ * </pre>
+ * Exits with status 1 if an update was lost.
+ */
+public class ConcurrentWriterStress {
+
+    private static final String COUNTER = "counter";
+
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("worker")) {
+            runWorker(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Boolean.parseBoolean(args[4]));
+            return;
+        }
+
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        String mode = args.length > 2 ? args[2] : "direct";
+        boolean journal = mode.equals("journal");
+
+        Path directory = Files.createTempDirectory("writer-stress");
+
+        // The shared counter and one progress entry per writer
+        List<String[]> initial = new ArrayList<>();
+        initial.add(new String[]{COUNTER, "shared", "0"});
+        for (int writer = 0; writer < writers; writer++) {
+            initial.add(new String[]{progressTitle(writer), "progress", "0"});
+        }
+
+        Path file;
+        switch (mode) {
+            case "binary" -> {
+                file = directory.resolve("vault" + BinaryVault.EXTENSION);
+                BinaryVault.writeEntries(file.toString(), initial, null);
+            }
+            case "compressed" -> {
+                file = directory.resolve("vault" + CompressedVault.EXTENSION);
+                CompressedVault.writeEntries(file.toString(), initial);
+            }
+            case "direct", "journal" -> {
+                file = directory.resolve("vault.txt");
+                TextVaultFile.write(file.toString(), initial);
+            }
+            default -> throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+
+        long start = System.nanoTime();
+        List<Process> processes = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            processes.add(startWorker(file, writer, operations, journal));
+        }
+
+        long rejected = 0;
+        for (Process process : processes) {
+            // Every worker prints its number of rejected updates
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    rejected += Long.parseLong(line.trim());
+                }
+            }
+            if (process.waitFor() != 0) {
+                System.err.println("A writer process failed");
+                System.exit(1);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long writes = 3L * writers * operations;
+        System.out.printf("%d writers x %d operations (%s): %d writes in %.2f s, %.0f writes/s, %d rejected updates%n",
+                writers, operations, mode, writes, seconds, writes / seconds, rejected);
+
+        boolean lost = !verify(file, writers, operations);
+        System.out.println(lost ? "LOST UPDATES" : "No lost updates");
+        System.exit(lost ? 1 : 0);
+    }
+
+
+    /**
+     * Starts a writer process running this class with the same class path.
+     */
+    private static Process startWorker(Path file, int writer, int operations, boolean journal) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "-Dpasswordmanager.watch=false",
+                ConcurrentWriterStress.class.getName(), "worker", file.toString(), Integer.toString(writer),
+                Integer.toString(operations), Boolean.toString(journal))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+
+    /**
+     * Runs the operations of one writer process and prints how many of its updates were rejected.
+     */
+    private static void runWorker(String file, int writer, int operations, boolean journal) throws IOException {
+        Vault vault = Vault.open(file, null, journal);
+        long rejected = 0;
+
+        for (int i = 1; i <= operations; i++) {
+            vault.savePasswordEntry(new String[]{"w" + writer + "-" + i, "user" + writer, "p" + i});
+            vault.updatePasswordEntry(progressTitle(writer), new String[]{progressTitle(writer), "progress", "" + i});
+
+            // Increment the counter based on the value read, retrying if another writer incremented it first
+            while (true) {
+                String[] counter = vault.getEntryDetails(COUNTER);
+                String[] incremented = {COUNTER, "shared", Long.toString(Long.parseLong(counter[2]) + 1)};
+                if (vault.updatePasswordEntry(COUNTER, counter, incremented)) {
+                    break;
+                }
+                rejected++;
+            }
+        }
+
+        vault.close();
+        System.out.println(rejected);
+    }
+
+
+    /**
+     * Checks the file written by all writers for lost updates.
+     */
+    private static boolean verify(Path file, int writers, int operations) throws IOException {
+        Vault vault = Vault.open(file.toString(), null, false);
+        boolean complete = true;
+
+        try {
+            Map<String, Integer> counts = new HashMap<>();
+            for (String[] entry : vault.getPasswordEntries()) {
+                counts.merge(entry[0], 1, Integer::sum);
+            }
+
+            for (int writer = 0; writer < writers; writer++) {
+                for (int i = 1; i <= operations; i++) {
+                    Integer count = counts.get("w" + writer + "-" + i);
+                    if (count == null || count != 1) {
+                        System.out.printf("Entry w%d-%d found %d times%n", writer, i, count == null ? 0 : count);
+                        complete = false;
+                    }
+                }
+
+                String progress = vault.getEntryDetails(progressTitle(writer))[2];
+                if (!progress.equals(Integer.toString(operations))) {
+                    System.out.printf("Writer %d progress is %s instead of %d%n", writer, progress, operations);
+                    complete = false;
+                }
+            }
+
+            String counter = vault.getEntryDetails(COUNTER)[2];
+            if (!counter.equals(Long.toString((long) writers * operations))) {
+                System.out.printf("Counter is %s instead of %d%n", counter, (long) writers * operations);
+                complete = false;
+            }
+        } finally {
+            vault.close();
+        }
+
+        return complete;
+    }
+
+
+    /**
+     * Returns the title of the entry holding the progress of a writer.
+     */
+    private static String progressTitle(int writer) {
+        return "progress" + writer;
+    }
+}
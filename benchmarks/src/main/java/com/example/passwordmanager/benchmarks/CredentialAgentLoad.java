@@ -0,0 +1,178 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.CredentialAgent;
+import com.example.passwordmanager.CredentialAgentClient;
+import com.example.passwordmanager.Vault;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The CredentialAgentLoad class measures the latency and throughput of a CredentialAgent under many concurrent
+ * clients. Every client is a virtual thread with its own connection that sends requests one after another
+ * for a fixed time: lookups of random entries, and every tenth request a search.
+ * <p>
+ * Without a socket argument, the agent runs in this process on a generated vault. With one, the load goes to an
+ * agent that is already running, for example "pwm agent", whose vault must have been generated by VaultGenerator
+ * with the same number of entries.
+ * <pre>
+ * java -cp target/benchmarks.jar com.example.passwordmanager.benchmarks.CredentialAgentLoad [clients] [seconds] [entries] [socket]
+ * </pre>
+ * Reports the requests per second and the 50th, 99th and 99.9th percentile latency, and for comparison
+ * the time to open the vault for a single lookup, which is what every lookup without the agent costs.
+ */
+public class CredentialAgentLoad {
+
+    // Every this many requests of a client is a search instead of a lookup
+    private static final int SEARCH_EVERY = 10;
+
+    // Time the clients run before latencies are recorded
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int entries = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+
+        Path directory = null;
+        Path vaultFile = null;
+        Vault vault = null;
+        CredentialAgent agent = null;
+        Path socket;
+
+        if (args.length > 3) {
+            socket = Path.of(args[3]);
+        } else {
+            directory = Files.createTempDirectory("agent-load");
+            vaultFile = directory.resolve("vault.txt");
+            VaultGenerator.generate(vaultFile, entries, VaultGenerator.DEFAULT_SEED);
+            vault = Vault.open(vaultFile.toString(), null, false);
+            socket = directory.resolve("agent.sock");
+            agent = CredentialAgent.start(vault, socket);
+        }
+
+        System.out.printf("%d clients for %d s on %d entries%n", clients, seconds, entries);
+
+        long start = System.nanoTime();
+        long measureFrom = start + WARMUP_NANOS;
+        long end = measureFrom + seconds * 1_000_000_000L;
+
+        List<Future<long[]>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < clients; client++) {
+                long seed = client;
+                results.add(executor.submit(() -> runClient(socket, entries, seed, measureFrom, end)));
+            }
+        }
+
+        // Merge the latencies of all clients
+        int total = 0;
+        for (Future<long[]> result : results) {
+            total += result.get().length;
+        }
+        long[] latencies = new long[total];
+        int position = 0;
+        for (Future<long[]> result : results) {
+            long[] clientLatencies = result.get();
+            System.arraycopy(clientLatencies, 0, latencies, position, clientLatencies.length);
+            position += clientLatencies.length;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("Requests: %d, %.0f per second%n", total, total / (double) seconds);
+        System.out.printf("Latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                latencies.length > 0 ? latencies[latencies.length - 1] / 1e3 : 0);
+
+        if (agent != null) {
+            agent.close();
+            vault.close();
+
+            // What a lookup costs when every lookup opens the vault
+            int runs = 20;
+            long openStart = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                Vault opened = Vault.open(vaultFile.toString(), null, false);
+                opened.getEntryDetails(VaultGenerator.title(i));
+                opened.close();
+            }
+            System.out.printf("Opening the vault per lookup: %.1f us%n", (System.nanoTime() - openStart) / 1e3 / runs);
+
+            deleteDirectory(directory);
+        }
+    }
+
+
+    /**
+     * Sends requests over one connection until the end time.
+     *
+     * @return The latencies in nanoseconds of the requests sent after the warmup.
+     */
+    private static long[] runClient(Path socket, int entries, long seed, long measureFrom, long end) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] latencies = new long[1024];
+        int count = 0;
+
+        try (CredentialAgentClient client = new CredentialAgentClient(socket)) {
+            for (int request = 0; ; request++) {
+                int index = random.nextInt(entries);
+                String title = VaultGenerator.title(index);
+
+                long requestStart = System.nanoTime();
+                if (requestStart >= end) {
+                    break;
+                }
+
+                if (request % SEARCH_EVERY == SEARCH_EVERY - 1) {
+                    // A username is selective, unlike a title prefix all generated titles share
+                    client.searchEntries("user" + index + "@", 10);
+                } else if (client.getEntryDetails(title) == null) {
+                    throw new IOException("Missing entry " + title);
+                }
+
+                if (requestStart >= measureFrom) {
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - requestStart;
+                }
+            }
+        }
+
+        return Arrays.copyOf(latencies, count);
+    }
+
+
+    /**
+     * Returns a percentile of sorted latencies in microseconds.
+     */
+    private static double percentile(long[] sortedLatencies, double fraction) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(sortedLatencies.length * fraction) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e3;
+    }
+
+
+    /**
+     * Deletes the temporary directory with the vault and the files next to it.
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
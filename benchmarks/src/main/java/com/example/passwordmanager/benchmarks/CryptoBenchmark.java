@@ -0,0 +1,130 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.BinaryVault;
+import com.example.passwordmanager.VaultCipher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of encrypted binary vaults: the cost of unlocking a vault and of decrypting a single entry,
+ * compared with a binary vault that is not encrypted.
+ * The key derivation runs a fixed number of iterations instead of the calibrated one, so runs on different
+ * machines can be compared.
+ * <pre>
+ * java -jar target/benchmarks.jar CryptoBenchmark -prof gc -rf csv -rff results.csv
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpasswordmanager.kdfIterations=" + CryptoBenchmark.KDF_ITERATIONS)
+public class CryptoBenchmark {
+
+    // PBKDF2 iterations of the benchmarked vaults
+    static final int KDF_ITERATIONS = 600_000;
+
+    private static final char[] MASTER_PASSWORD = "correct horse battery staple".toCharArray();
+
+    @Param({"1000", "100000", "1000000"})
+    public int entries;
+
+    private Path directory;
+    private Path encryptedFile;
+    private BinaryVault encryptedVault;
+    private BinaryVault plainVault;
+
+    private SplittableRandom random;
+
+
+    @Setup(Level.Trial)
+    public void generateVaults() throws IOException {
+        directory = Files.createTempDirectory("vault-bench");
+        encryptedFile = directory.resolve("encrypted.pwdb");
+        Path plainFile = directory.resolve("plain.pwdb");
+
+        random = new SplittableRandom(VaultGenerator.DEFAULT_SEED);
+        List<String[]> generated = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            generated.add(VaultGenerator.entry(i, random));
+        }
+
+        BinaryVault.writeEntries(encryptedFile.toString(), generated, MASTER_PASSWORD);
+        BinaryVault.writeEntries(plainFile.toString(), generated, null);
+
+        encryptedVault = BinaryVault.open(encryptedFile.toString(), MASTER_PASSWORD);
+        plainVault = BinaryVault.open(plainFile.toString());
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteVaults() throws IOException {
+        encryptedVault.close();
+        plainVault.close();
+
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+
+    /**
+     * Derives the key from the master password, the fixed part of unlocking a vault.
+     */
+    @Benchmark
+    public VaultCipher deriveKey() throws IOException {
+        return VaultCipher.derive(MASTER_PASSWORD, new byte[VaultCipher.SALT_LENGTH], KDF_ITERATIONS);
+    }
+
+
+    /**
+     * Unlocks the encrypted vault: derives the key and decrypts the title table, but no credentials.
+     */
+    @Benchmark
+    public List<String> unlock() throws IOException {
+        try (BinaryVault vault = BinaryVault.open(encryptedFile.toString(), MASTER_PASSWORD)) {
+            return vault.getTitles();
+        }
+    }
+
+
+    /**
+     * Looks up a random entry in the unlocked vault, decrypting only its credentials.
+     */
+    @Benchmark
+    public String[] decryptEntry() throws IOException {
+        return encryptedVault.getEntry(VaultGenerator.title(random.nextInt(entries)));
+    }
+
+
+    /**
+     * Looks up a random entry in the vault that is not encrypted, for comparison with decryptEntry.
+     */
+    @Benchmark
+    public String[] readPlainEntry() throws IOException {
+        return plainVault.getEntry(VaultGenerator.title(random.nextInt(entries)));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.PasswordAudit;
+import com.example.passwordmanager.RecordFormat;
+import com.example.passwordmanager.TextVaultFile;
+import com.example.passwordmanager.Vault;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the password reuse audit on generated vaults. Every 50th entry reuses the password of the entry
+ * before it, and the passwords of every 70th entry only differ by a counter.
+ * <pre>
+ * java -jar target/benchmarks.jar PasswordAuditBenchmark -rf csv -rff results.csv
+ * </pre>
+ * fullAudit hashes and counts all passwords. updateEntry changes the password of an entry of a journaled vault
+ * and waits until the audit has applied the change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = "-Dpasswordmanager.watch=false")
+public class PasswordAuditBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int entries;
+
+    private Path directory;
+    private Vault vault;
+    private PasswordAudit fullAudit;
+    private PasswordAudit followingAudit;
+
+    // Released by the following audit whenever it has applied a change
+    private final Semaphore applied = new Semaphore(0);
+    private int nextUpdate;
+
+
+    @Setup(Level.Trial)
+    public void generateVault() throws IOException {
+        directory = Files.createTempDirectory("audit-bench");
+        Path file = directory.resolve("vault.txt");
+
+        SplittableRandom random = new SplittableRandom(VaultGenerator.DEFAULT_SEED);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(TextVaultFile.HEADER + "\n");
+            String previousPassword = "";
+            for (int i = 0; i < entries; i++) {
+                String[] entry = VaultGenerator.entry(i, random);
+                if (i % 50 == 0 && i > 0) {
+                    entry[2] = previousPassword;
+                } else if (i % 70 == 0) {
+                    entry[2] = "Summer" + i + "!";
+                }
+                writer.write(RecordFormat.encode(entry));
+                writer.write("\n");
+                previousPassword = entry[2];
+            }
+        }
+
+        vault = Vault.open(file.toString(), null, true);
+        fullAudit = new PasswordAudit(vault);
+
+        followingAudit = new PasswordAudit(vault);
+        followingAudit.addListener(applied::release);
+        followingAudit.start();
+        applied.acquireUninterruptibly();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteVault() throws IOException {
+        followingAudit.close();
+        vault.close();
+
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+
+    /**
+     * Audits all passwords of the vault.
+     */
+    @Benchmark
+    public PasswordAudit fullAudit() {
+        fullAudit.auditNow();
+        return fullAudit;
+    }
+
+
+    /**
+     * Changes the password of an entry and waits for the audit to apply the change.
+     */
+    @Benchmark
+    public void updateEntry() {
+        int index = nextUpdate++ % entries;
+        String title = VaultGenerator.title(index);
+        String[] entry = vault.getEntryDetails(title);
+
+        vault.updatePasswordEntry(title, new String[]{title, entry[1], "changed" + nextUpdate});
+        applied.acquireUninterruptibly();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.TitlePrefixIndex;
+import com.example.passwordmanager.TrigramIndex;
+import com.example.passwordmanager.VaultChange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the title and trigram search indexes on the titles of generated vaults of different sizes.
+ * <pre>
+ * java -jar target/benchmarks.jar SearchBenchmark -prof gc -rf csv -rff results.csv
+ * </pre>
+ * The cost of a trigram search depends a lot on the query, so every iteration runs the same sequence of random
+ * queries, and the trigram searches run for longer iterations. Otherwise the score errors of baseline/search.csv
+ * come close to the 20% tolerance of BaselineComparator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 8, time = 2)
+@Fork(3)
+public class SearchBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int entries;
+
+    private TitlePrefixIndex prefixIndex;
+    private TrigramIndex trigramIndex;
+
+    private SplittableRandom random;
+
+
+    @Setup(Level.Trial)
+    public void buildIndexes() {
+        random = new SplittableRandom(VaultGenerator.DEFAULT_SEED);
+        List<String> titles = new ArrayList<>();
+        List<String[]> generated = new ArrayList<>();
+
+        for (int i = 0; i < entries; i++) {
+            titles.add(VaultGenerator.title(i));
+            generated.add(VaultGenerator.entry(i, random));
+        }
+
+        prefixIndex = TitlePrefixIndex.build(titles);
+        trigramIndex = TrigramIndex.build(generated);
+    }
+
+
+    @Setup(Level.Iteration)
+    public void restartQueries() {
+        random = new SplittableRandom(VaultGenerator.DEFAULT_SEED);
+    }
+
+
+    /**
+     * Finds the titles starting with a random prefix of one to four digits, like a user typing a title.
+     */
+    @Benchmark
+    public int prefixSearch() {
+        String number = Integer.toString(random.nextInt(entries));
+        String prefix = "entry-" + number.substring(0, 1 + random.nextInt(Math.min(4, number.length())));
+        return prefixIndex.find(prefix).size();
+    }
+
+
+    /**
+     * Searches for a random title with two adjacent characters swapped, showing the 200 best matches.
+     */
+    @Benchmark
+    @Warmup(iterations = 3, time = 10)
+    @Measurement(iterations = 8, time = 10)
+    public List<String> fuzzySearch() {
+        char[] title = VaultGenerator.title(random.nextInt(entries)).toCharArray();
+        int swapped = 1 + random.nextInt(title.length - 2);
+        char c = title[swapped];
+        title[swapped] = title[swapped + 1];
+        title[swapped + 1] = c;
+
+        return trigramIndex.search(new String(title), 200, true);
+    }
+
+
+    /**
+     * Searches for the local part of a random username, which is not in any title.
+     */
+    @Benchmark
+    @Warmup(iterations = 3, time = 10)
+    @Measurement(iterations = 8, time = 10)
+    public List<String> usernameSearch() {
+        return trigramIndex.search("user" + random.nextInt(entries) + "@", 200, true);
+    }
+
+
+    /**
+     * Adds a title at a random position to the prefix index, as done when an entry is added.
+     */
+    @Benchmark
+    public TitlePrefixIndex prefixIndexAdd() {
+        int position = random.nextInt(entries);
+        return prefixIndex.withChanges(List.of(
+                new VaultChange(VaultChange.Type.ADDED, position, VaultGenerator.title(position))));
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.SecretTable;
+import com.example.passwordmanager.Vault;
+import com.example.passwordmanager.VaultLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The SecretHeapFootprint class measures how much heap a generated vault takes per entry when it is held
+ * <ul>
+ *     <li>by an open Vault, with its cache and its title and trigram indexes,</li>
+ *     <li>as the String[] entries of the file alone, as the loader returns them, and</li>
+ *     <li>by a SecretTable, with the usernames and passwords in direct memory.</li>
+ * </ul>
+ * The heap is measured after full collections before and after loading, with the loaded object still reachable.
+ * Also reports how long a full collection takes with each of them on the heap.
+ * <pre>
+ * java -Xmx4g -cp target/benchmarks.jar com.example.passwordmanager.benchmarks.SecretHeapFootprint [entries]
+ * </pre>
+ */
+public class SecretHeapFootprint {
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.setProperty("passwordmanager.watch", "false");
+
+        Path directory = Files.createTempDirectory("secret-footprint");
+        Path file = directory.resolve("vault.txt");
+        VaultGenerator.generate(file, entries, VaultGenerator.DEFAULT_SEED);
+        String path = file.toString();
+        System.out.printf("%d entries, %.1f MB file%n", entries, Files.size(file) / 1e6);
+
+        measure("Vault", entries, () -> {
+            try {
+                return Vault.open(path, null, false);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, loaded -> ((Vault) loaded).close());
+
+        measure("String[] entries", entries, () -> VaultLoader.readEntries(path), loaded -> ((List<?>) loaded).size());
+
+        measure("SecretTable", entries, () -> {
+            try {
+                return SecretTable.load(path);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, loaded -> {
+            SecretTable table = (SecretTable) loaded;
+            System.out.printf("%-18s %8.1f bytes per entry in direct memory (%.1f MB allocated)%n", "",
+                    table.getStore().getStoredBytes() / (double) entries,
+                    table.getStore().getAllocatedBytes() / 1e6);
+            table.close();
+        });
+
+        try (var files = Files.list(directory)) {
+            for (Path created : files.toList()) {
+                Files.delete(created);
+            }
+        }
+        Files.delete(directory);
+    }
+
+
+    /**
+     * Loads something, measures the heap it retains and the time of a full collection while it is reachable,
+     * and releases it.
+     */
+    private static void measure(String name, int entries, Supplier<Object> loader,
+                                Consumer<Object> release) {
+        long before = usedHeapAfterGc();
+        Object loaded = loader.get();
+        long after = usedHeapAfterGc();
+
+        long start = System.nanoTime();
+        System.gc();
+        long gcMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%-18s %8.1f bytes per entry on the heap, full GC %d ms%n",
+                name, (after - before) / (double) entries, gcMillis);
+
+        release.accept(loaded);
+    }
+
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
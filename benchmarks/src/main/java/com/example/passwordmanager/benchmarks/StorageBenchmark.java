@@ -0,0 +1,213 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.PasswordDatabase;
+import com.example.passwordmanager.RecordFormat;
+import com.example.passwordmanager.SecretStore;
+import com.example.passwordmanager.VaultLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the PasswordDatabase operations on generated vaults of different sizes.
+ * Run with the GC profiler to also get the allocation rate per operation:
+ * <pre>
+ * java -jar target/benchmarks.jar StorageBenchmark -prof gc -rf csv -rff results.csv
+ * </pre>
+ * Three forks of eight iterations keep the score errors of baseline/storage.csv below the 20% tolerance
+ * of BaselineComparator, which fewer samples didn't on a noisy machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 8, time = 2)
+@Fork(3)
+public class StorageBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int entries;
+
+    // Pristine generated vault, and the copy the benchmarks work on
+    private Path directory;
+    private Path generatedFile;
+    private Path workingFile;
+
+    private SplittableRandom random;
+    private int nextNewEntry;
+
+    // Titles of all generated entries, so revealing a field doesn't build one first
+    private String[] titles;
+
+    // Counts the revealed characters, so revealing can't be optimized away
+    private long revealedCharacters;
+    private SecretStore.SecretConsumer revealConsumer;
+
+
+    @Setup(Level.Trial)
+    public void generateVault() throws IOException {
+        directory = Files.createTempDirectory("vault-bench");
+        generatedFile = directory.resolve("generated.txt");
+        workingFile = directory.resolve("vault.txt");
+        VaultGenerator.generate(generatedFile, entries, VaultGenerator.DEFAULT_SEED);
+
+        titles = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            titles[i] = VaultGenerator.title(i);
+        }
+        revealConsumer = (chars, length) -> revealedCharacters += length;
+    }
+
+
+    @Setup(Level.Iteration)
+    public void openVault() throws IOException {
+        // Undo the changes of the previous iteration, so every iteration starts from the same vault
+        Files.copy(generatedFile, workingFile, StandardCopyOption.REPLACE_EXISTING);
+
+        // Backdate the copy like a vault that has been on disk for a while. A file modified moments ago
+        // has its content hashed on every access until its modification time becomes reliable.
+        Files.setLastModifiedTime(workingFile, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+        PasswordDatabase.setFilePath(workingFile.toString());
+
+        random = new SplittableRandom(VaultGenerator.DEFAULT_SEED);
+        nextNewEntry = entries;
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteVault() throws IOException {
+        PasswordDatabase.setFilePath("");
+
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+
+    /**
+     * Opens the vault, reading and indexing the whole file.
+     */
+    @Benchmark
+    public List<String> open() {
+        PasswordDatabase.setFilePath(workingFile.toString());
+        return PasswordDatabase.getEntryTitles();
+    }
+
+
+    /**
+     * Retrieves all entries of the open vault.
+     */
+    @Benchmark
+    public List<String[]> getPasswordEntries() {
+        return PasswordDatabase.getPasswordEntries();
+    }
+
+
+    /**
+     * Streams the titles and usernames of all entries of the open vault, without building a list.
+     */
+    @Benchmark
+    public void forEachEntry(Blackhole blackhole) {
+        PasswordDatabase.forEachEntry(RecordFormat.TITLE | RecordFormat.USERNAME, blackhole::consume);
+    }
+
+
+    /**
+     * Scans the titles and usernames of all entries straight from the file, without the cache.
+     * Its speed depends on the page cache, which differs between forks, so it runs in more of them.
+     */
+    @Benchmark
+    @Fork(5)
+    public void scanFile(Blackhole blackhole) throws IOException {
+        VaultLoader.scanEntries(workingFile.toString(), RecordFormat.TITLE | RecordFormat.USERNAME,
+                blackhole::consume);
+    }
+
+
+    /**
+     * Looks up a random entry by its title.
+     */
+    @Benchmark
+    public String[] lookup() {
+        return PasswordDatabase.getEntryDetails(VaultGenerator.title(random.nextInt(entries)));
+    }
+
+
+    /**
+     * Reveals the password of a random entry into the wiped buffer of the secret store, the way callers
+     * that only need one field look it up. Allocates nothing once the buffer has grown to the longest password.
+     */
+    @Benchmark
+    public long revealPassword() {
+        PasswordDatabase.revealField(titles[random.nextInt(entries)], 2, revealConsumer);
+        return revealedCharacters;
+    }
+
+
+    /**
+     * Looks up random entries by their title from four threads at once. Lookups only take the read lock
+     * of the vault, so the threads don't wait for each other.
+     */
+    @Benchmark
+    @Threads(4)
+    public String[] concurrentLookup() {
+        return PasswordDatabase.getEntryDetails(VaultGenerator.title(ThreadLocalRandom.current().nextInt(entries)));
+    }
+
+
+    /**
+     * Adds a new entry.
+     */
+    @Benchmark
+    public void add() {
+        PasswordDatabase.savePasswordEntry(VaultGenerator.entry(nextNewEntry++, random));
+    }
+
+
+    /**
+     * Replaces a random entry with new credentials.
+     */
+    @Benchmark
+    public void edit() {
+        int index = random.nextInt(entries);
+        PasswordDatabase.updatePasswordEntry(VaultGenerator.title(index), VaultGenerator.entry(index, random));
+    }
+
+
+    /**
+     * Deletes a random entry and adds it back, so the vault keeps its size.
+     */
+    @Benchmark
+    public void delete() {
+        int index = random.nextInt(entries);
+        PasswordDatabase.deletePasswordEntry(VaultGenerator.title(index));
+        PasswordDatabase.savePasswordEntry(VaultGenerator.entry(index, random));
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.passwordmanager.benchmarks;
+
+import com.example.passwordmanager.BreachedPasswordChecker;
+import com.example.passwordmanager.RecordFormat;
+import com.example.passwordmanager.TextVaultFile;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The VaultGenerator class writes synthetic database files for benchmarking.
+ * Generated files are deterministic for a given entry count and seed, so runs can be compared.
+ */
+public class VaultGenerator {
+
+    // Characters used for generated usernames and passwords
+    private static final String CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789!@#$%^&*()-_=+";
+
+    // Seed used unless another one is given
+    public static final long DEFAULT_SEED = 42;
+
+
+    /**
+     * Returns the title of the generated entry with the given index.
+     *
+     * @param index The index of the entry.
+     * @return The title of the entry.
+     */
+    public static String title(int index) {
+        return "entry-" + index;
+    }
+
+
+    /**
+     * Generates the entry with the given index.
+     *
+     * @param index  The index of the entry.
+     * @param random The random generator used for the credentials.
+     * @return The entry as [title, username, password].
+     */
+    public static String[] entry(int index, SplittableRandom random) {
+        return new String[]{title(index), "user" + index + "@example.com", randomString(random, 20)};
+    }
+
+
+    /**
+     * Writes a text database file with the given number of entries.
+     *
+     * @param target  The file to write.
+     * @param entries The number of entries.
+     * @param seed    The seed for the generated credentials.
+     * @throws IOException If the file can't be written.
+     */
+    public static void generate(Path target, int entries, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            writer.write(TextVaultFile.HEADER + "\n");
+            for (int i = 0; i < entries; i++) {
+                writer.write(RecordFormat.encode(entry(i, random)));
+                writer.write("\n");
+            }
+        }
+    }
+
+
+    /**
+     * Writes a corpus of breached password hashes for BreachedPasswordChecker, sorted like a real one.
+     * The hashes are random, but evenly spread over the whole range like SHA-1 hashes, and include the hashes
+     * of the given passwords. They are generated in order, so corpora of any size can be written.
+     *
+     * @param target    The file to write.
+     * @param records   The number of random hashes, at least 2.
+     * @param passwords Passwords whose hashes are added to the corpus.
+     * @param seed      The seed for the random hashes.
+     * @throws IOException If the file can't be written.
+     */
+    public static void generateBreachCorpus(Path target, long records, List<String> passwords, long seed)
+            throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+
+        List<byte[]> known = new ArrayList<>();
+        for (String password : passwords) {
+            known.add(BreachedPasswordChecker.sha1(password));
+        }
+        known.sort(Arrays::compareUnsigned);
+        int nextKnown = 0;
+
+        // Every hash starts within its own slice of the 64 bit range, so the hashes come out sorted
+        long step = Long.divideUnsigned(-1L, records);
+        ByteBuffer hash = ByteBuffer.allocate(20);
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), 1 << 16)) {
+            for (long i = 0; i < records; i++) {
+                hash.putLong(0, i * step + Long.remainderUnsigned(random.nextLong(), step));
+                hash.putLong(8, random.nextLong());
+                hash.putInt(16, random.nextInt());
+
+                while (nextKnown < known.size() && Arrays.compareUnsigned(known.get(nextKnown), hash.array()) < 0) {
+                    out.write(known.get(nextKnown++));
+                }
+                out.write(hash.array());
+            }
+
+            while (nextKnown < known.size()) {
+                out.write(known.get(nextKnown++));
+            }
+        }
+    }
+
+
+    /**
+     * Returns a random string of the given length.
+     */
+    private static String randomString(SplittableRandom random, int length) {
+        char[] chars = new char[length];
+
+        for (int i = 0; i < length; i++) {
+            chars[i] = CHARACTERS.charAt(random.nextInt(CHARACTERS.length()));
+        }
+
+        return new String(chars);
+    }
+
+
+    /**
+     * Writes vaults with 1k, 100k and 1M entries to the given directory.
+     *
+     * @param args The target directory, defaults to the current directory.
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : ".");
+        Files.createDirectories(directory);
+
+        for (int entries : new int[]{1_000, 100_000, 1_000_000}) {
+            Path target = directory.resolve("vault-" + entries + ".txt");
+            generate(target, entries, DEFAULT_SEED);
+            System.out.println("Wrote " + target + " (" + Files.size(target) + " bytes)");
+        }
+    }
+}
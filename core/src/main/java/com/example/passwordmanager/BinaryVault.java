@@ -0,0 +1,1129 @@
+package com.example.passwordmanager;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The BinaryVault class reads and writes password entries in the binary vault format (.pwdb).
+ * A binary vault consists of a fixed-size header, the credential blobs of the entries, a compact title table
+ * and a chain of change records. The title table holds the title of every entry together with the position of
+ * its blob, and the change records hold the entries added, replaced and removed since the table was written.
+ * Opening a vault only reads the header, the title table and the change records. The blob of an entry is read
+ * with a positional read when the entry is looked up.
+ * <p>
+ * File layout:
+ * <pre>
+ * header:      magic (int), version (int), entry count (int), change count (int), table offset (long),
+ *              table length (long), last change offset (long), last change length (long)
+ * blob:        field count (int), then for each field after the title: length (int), UTF-8 bytes
+ * title table: entry count (int), then for each entry: title length (int), UTF-8 bytes, blob offset (long),
+ *              blob length (int), blob id (long)
+ * change:      previous change offset (long), previous change length (long), operation count (int), then for each
+ *              operation: kind (byte), position (int), and for added and replaced entries their title table entry
+ * </pre>
+ * A change appends the new blobs and one change record to the end of the file, forces them to disk and then points
+ * the header to the record, so it writes a few dozen bytes however many entries the vault has. Opening the vault
+ * replays the chain from the title table to the last record. Once the chain holds more bytes than the title table
+ * or MAX_CHANGES records, a change writes a new title table instead, which starts a new chain.
+ * The space taken by old blobs, tables and change records is reclaimed by rewriting the file once it exceeds
+ * the live data. The blobs are copied as they are, without decoding them.
+ * <p>
+ * An encrypted vault (version 4) extends the header with the salt and iteration count of the key derivation and
+ * an authentication tag over the whole header (see VaultCipher.authenticate), so the header can't be pointed back
+ * to an older title table or change record that is still in the file. Every blob is sealed on its own with AES-GCM
+ * (see VaultCipher), bound to a random id kept with it in the title table, so blobs can't be swapped between
+ * entries but a compaction can move them. The title table and every change record are sealed as a whole and bound
+ * to their offset, and every change record holds the position of the previous one, so the chain can't be changed
+ * either. Opening a vault decrypts all titles at once, and the credentials of an entry are only decrypted when the
+ * entry is looked up. Replacing the whole file with an older copy of it is not detected, since that takes
+ * state kept outside the file.
+ * <pre>
+ * header:      magic, version, entry count, change count, table offset, table length, last change offset,
+ *              last change length, salt (16 bytes), iterations (int), reserved (int), IV (12 bytes),
+ *              authentication tag (16 bytes)
+ * blob:        IV (12 bytes), encrypted blob, authentication tag (16 bytes)
+ * title table: IV (12 bytes), encrypted title table, authentication tag (16 bytes)
+ * change:      IV (12 bytes), encrypted change record, authentication tag (16 bytes)
+ * </pre>
+ * Versions 1 and 2 wrote the whole title table on every change, bound blobs to their offset and didn't
+ * authenticate the header. They are read and rewritten in the current version when they are opened.
+ */
+public class BinaryVault implements VaultFile {
+
+    // File extension of binary vaults
+    public static final String EXTENSION = ".pwdb";
+
+    // "PWDB" in ASCII
+    private static final int MAGIC = 0x50574442;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 48;
+
+    // Version and header size of encrypted vaults, including the authentication tag
+    private static final int ENCRYPTED_VERSION = 4;
+    private static final int ENCRYPTED_HEADER_SIZE =
+            HEADER_SIZE + VaultCipher.SALT_LENGTH + 2 * Integer.BYTES + VaultCipher.OVERHEAD;
+
+    // Versions and header size of vaults that wrote the whole title table on every change
+    private static final int LEGACY_VERSION = 1;
+    private static final int LEGACY_ENCRYPTED_VERSION = 2;
+    private static final int LEGACY_HEADER_SIZE = 32;
+
+    // Maximum number of change records after a title table
+    private static final int MAX_CHANGES = 4096;
+
+    // Kinds of operations in a change record
+    private static final byte ADD = 1;
+    private static final byte REPLACE = 2;
+    private static final byte REMOVE = 3;
+
+    // Minimum number of unused bytes before the file is rewritten
+    private static final long MIN_GARBAGE_BYTES = 1024 * 1024;
+
+    // Source of the blob ids
+    private static final SecureRandom random = new SecureRandom();
+
+    private final Path path;
+    private FileChannel channel;
+
+    // Cipher of an encrypted vault, or null if the vault is not encrypted
+    private VaultCipher cipher;
+
+    // Title table entries in file order, and an index from title to the first entry that has it
+    private final List<TitleRecord> records = new ArrayList<>();
+    private final Map<String, TitleSlot> titleIndex = new HashMap<>();
+
+    // What the header points to
+    private Header header;
+
+    // Number of bytes taken by the change records after the title table, and by the blobs of the entries
+    private long changeBytes;
+    private long blobBytes;
+
+    // Whether the file is in version 1 or 2, which is rewritten when it is opened, and whether that happened
+    private boolean legacy;
+    private boolean migrated;
+
+
+    /**
+     * Entry of the title table.
+     */
+    private static final class TitleRecord {
+        final String title;
+        final long blobOffset;
+        final int blobLength;
+
+        // The blob is sealed with this id, which stays the same when the blob is moved
+        final long blobId;
+
+        TitleRecord(String title, long blobOffset, int blobLength, long blobId) {
+            this.title = title;
+            this.blobOffset = blobOffset;
+            this.blobLength = blobLength;
+            this.blobId = blobId;
+        }
+    }
+
+
+    /**
+     * The first entry with a title, and the number of entries that have it.
+     */
+    private static final class TitleSlot {
+        TitleRecord first;
+        int count;
+
+        TitleSlot(TitleRecord first) {
+            this.first = first;
+            this.count = 1;
+        }
+    }
+
+
+    /**
+     * Operation of a change record.
+     *
+     * @param kind   ADD, REPLACE or REMOVE.
+     * @param index  The position of the entry.
+     * @param record The added or new entry, or null for REMOVE.
+     */
+    private record Operation(byte kind, int index, TitleRecord record) {
+    }
+
+
+    /**
+     * The fields of the header that change when the vault is changed.
+     *
+     * @param count        The number of entries.
+     * @param changeCount  The number of change records after the title table.
+     * @param tableOffset  The offset of the title table.
+     * @param tableLength  The length of the title table.
+     * @param changeOffset The offset of the last change record, or 0 if there is none.
+     * @param changeLength The length of the last change record, or 0 if there is none.
+     */
+    private record Header(int count, int changeCount, long tableOffset, long tableLength, long changeOffset,
+                          long changeLength) {
+
+        /**
+         * Encodes the header, including the authentication tag if the vault is encrypted.
+         */
+        ByteBuffer encode(VaultCipher cipher) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(headerSize(cipher));
+            buffer.putInt(MAGIC).putInt(cipher == null ? VERSION : ENCRYPTED_VERSION).putInt(count).putInt(changeCount);
+            buffer.putLong(tableOffset).putLong(tableLength).putLong(changeOffset).putLong(changeLength);
+
+            if (cipher != null) {
+                buffer.put(cipher.getSalt()).putInt(cipher.getIterations()).putInt(0);
+                buffer.put(cipher.authenticate(ByteBuffer.wrap(buffer.array(), 0, buffer.position())));
+            }
+
+            return buffer.flip();
+        }
+    }
+
+
+    private BinaryVault(Path path) {
+        this.path = path;
+    }
+
+
+    /**
+     * Checks whether a file path refers to a binary vault, based on its extension.
+     *
+     * @param filePath The path of the database file.
+     * @return True if the file is a binary vault.
+     */
+    public static boolean isBinaryVault(String filePath) {
+        return filePath != null && filePath.toLowerCase().endsWith(EXTENSION);
+    }
+
+
+    /**
+     * Checks whether a binary vault is encrypted, based on its header.
+     *
+     * @param filePath The path of the binary vault.
+     * @return True if the vault is encrypted, false if it isn't or can't be read.
+     */
+    public static boolean isEncrypted(String filePath) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(Path.of(filePath)))) {
+            if (in.readInt() != MAGIC) {
+                return false;
+            }
+
+            int version = in.readInt();
+            return version == ENCRYPTED_VERSION || version == LEGACY_ENCRYPTED_VERSION;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Opens a binary vault that is not encrypted, reading only its header and title table.
+     *
+     * @param filePath The path of the binary vault.
+     * @return The opened vault.
+     * @throws IOException If the file can't be read, isn't a binary vault or is encrypted.
+     */
+    public static BinaryVault open(String filePath) throws IOException {
+        return open(filePath, null);
+    }
+
+
+    /**
+     * Opens a binary vault, reading only its header and title table.
+     * For an encrypted vault the key is derived from the master password, and only the title table is decrypted.
+     *
+     * @param filePath       The path of the binary vault.
+     * @param masterPassword The master password of an encrypted vault, or null. It is not kept.
+     * @return The opened vault.
+     * @throws IOException If the file can't be read or isn't a binary vault, or if the master password is wrong.
+     */
+    public static BinaryVault open(String filePath, char[] masterPassword) throws IOException {
+        BinaryVault vault = new BinaryVault(Path.of(filePath));
+        vault.channel = FileChannel.open(vault.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            vault.unlock(masterPassword);
+            vault.readTitleTable();
+
+            // Bring version 1 and 2 files to the current version, whose changes don't rewrite all titles
+            if (vault.legacy) {
+                vault.compact();
+                vault.migrated = true;
+            }
+        } catch (IOException e) {
+            vault.channel.close();
+            throw e;
+        }
+
+        return vault;
+    }
+
+
+    /**
+     * Creates an empty binary vault that is not encrypted, overwriting the file if it exists.
+     *
+     * @param filePath The path of the binary vault.
+     * @throws IOException If the file can't be written.
+     */
+    public static void create(String filePath) throws IOException {
+        create(filePath, null);
+    }
+
+
+    /**
+     * Creates an empty binary vault, overwriting the file if it exists.
+     *
+     * @param filePath       The path of the binary vault.
+     * @param masterPassword The master password to encrypt the vault with, or null to not encrypt it.
+     * @throws IOException If the file can't be written.
+     */
+    public static void create(String filePath, char[] masterPassword) throws IOException {
+        writeEntries(filePath, new ArrayList<>(), masterPassword);
+    }
+
+
+    /**
+     * Writes a new binary vault holding the given entries, overwriting the file if it exists.
+     *
+     * @param filePath       The path of the binary vault.
+     * @param entries        The entries to write.
+     * @param masterPassword The master password to encrypt the vault with, or null to not encrypt it.
+     * @throws IOException If the file can't be written.
+     */
+    public static void writeEntries(String filePath, List<String[]> entries, char[] masterPassword)
+            throws IOException {
+        VaultCipher newCipher = masterPassword == null ? null : VaultCipher.create(masterPassword);
+        writeVault(Path.of(filePath), entries, newCipher);
+    }
+
+
+    /**
+     * Converts a text database file to a binary vault that is not encrypted.
+     *
+     * @param textPath   The path of the text database file to read.
+     * @param binaryPath The path of the binary vault to write.
+     * @throws IOException If a file can't be read or written.
+     */
+    public static void convertFromText(String textPath, String binaryPath) throws IOException {
+        convertFromText(textPath, binaryPath, null);
+    }
+
+
+    /**
+     * Converts a text database file to a binary vault.
+     *
+     * @param textPath       The path of the text database file to read.
+     * @param binaryPath     The path of the binary vault to write.
+     * @param masterPassword The master password to encrypt the vault with, or null to not encrypt it.
+     * @throws IOException If a file can't be read or written.
+     */
+    public static void convertFromText(String textPath, String binaryPath, char[] masterPassword) throws IOException {
+        // Read the text file the same way it is opened, including changes still held in its journal
+        VaultCache source = new VaultCache();
+        source.load(textPath, () -> VaultLoader.readEntries(textPath));
+        VaultJournal.replay(textPath, source);
+
+        writeEntries(binaryPath, source.getEntries(), masterPassword);
+    }
+
+
+    /**
+     * Converts a binary vault to a text database file.
+     *
+     * @param binaryPath The path of the binary vault to read.
+     * @param textPath   The path of the text database file to write.
+     * @throws IOException If a file can't be read or written.
+     */
+    public static void convertToText(String binaryPath, String textPath) throws IOException {
+        try (BinaryVault vault = open(binaryPath)) {
+            vault.exportToText(textPath);
+        }
+    }
+
+
+    /**
+     * Writes all entries of this vault, decrypted, to a text database file.
+     *
+     * @param textPath The path of the text database file to write.
+     * @throws IOException If a file can't be read or written.
+     */
+    public void exportToText(String textPath) throws IOException {
+        TextVaultFile.write(textPath, getEntries());
+    }
+
+
+    /**
+     * Checks whether this vault is encrypted.
+     *
+     * @return True if the vault is encrypted.
+     */
+    public boolean isEncrypted() {
+        return cipher != null;
+    }
+
+
+    /**
+     * Returns the titles of all entries in file order. Does not read any credentials.
+     *
+     * @return A list of entry titles.
+     */
+    public List<String> getTitles() {
+        List<String> titles = new ArrayList<>(records.size());
+
+        for (TitleRecord record : records) {
+            titles.add(record.title);
+        }
+
+        return titles;
+    }
+
+
+    /**
+     * Reads all entries, including their credentials.
+     *
+     * @return A list of string arrays, each representing a password entry.
+     * @throws IOException If the file can't be read.
+     */
+    public List<String[]> getEntries() throws IOException {
+        List<String[]> entries = new ArrayList<>(records.size());
+
+        for (TitleRecord record : records) {
+            entries.add(readEntry(record));
+        }
+
+        return entries;
+    }
+
+
+    /**
+     * Streams all entries through a visitor in file order, reading only the requested fields.
+     * The visitor gets the same array for every entry, holding the title, username and password,
+     * with null for the fields that were not requested. It must copy what it keeps.
+     * If only the title is requested, no blob is read at all.
+     *
+     * @param fieldMask The fields to read, as a combination of RecordFormat.TITLE, USERNAME and PASSWORD.
+     * @param visitor   Called with the fields of every entry.
+     * @throws IOException If the file can't be read.
+     */
+    public void forEachEntry(int fieldMask, Consumer<String[]> visitor) throws IOException {
+        String[] fields = new String[3];
+        boolean readBlobs = (fieldMask & ~RecordFormat.TITLE) != 0;
+
+        for (TitleRecord record : records) {
+            Arrays.fill(fields, null);
+            if ((fieldMask & RecordFormat.TITLE) != 0) {
+                fields[0] = record.title;
+            }
+
+            if (readBlobs) {
+                ByteBuffer blob = unseal(readFully(record.blobOffset, record.blobLength), record.blobId);
+
+                // Decode the requested fields and skip over the others
+                int count = blob.getInt();
+                for (int i = 1; i <= count && i < fields.length; i++) {
+                    if ((fieldMask & (1 << i)) != 0) {
+                        fields[i] = readString(blob);
+                    } else {
+                        int length = blob.getInt();
+                        blob.position(blob.position() + length);
+                    }
+                }
+            }
+
+            visitor.accept(fields);
+        }
+    }
+
+
+    /**
+     * Looks up an entry by its title and reads its credentials.
+     *
+     * @param title The title of the entry.
+     * @return The first entry with the given title, or null if there is none.
+     * @throws IOException If the file can't be read.
+     */
+    public String[] getEntry(String title) throws IOException {
+        TitleSlot slot = titleIndex.get(title);
+        return slot == null ? null : readEntry(slot.first);
+    }
+
+
+    /**
+     * Adds a new entry to the end of the vault.
+     *
+     * @param entry The entry to add.
+     * @return The position of the added entry.
+     * @throws IOException If the file can't be written.
+     */
+    public int add(String[] entry) throws IOException {
+        int index = records.size();
+        commit(List.of(new Operation(ADD, index, appendBlob(entry))));
+        return index;
+    }
+
+
+    /**
+     * Adds new entries to the end of the vault, committing them with a single change record.
+     *
+     * @param entries The entries to add.
+     * @return The position of the first added entry.
+     * @throws IOException If the file can't be written.
+     */
+    public int addAll(List<String[]> entries) throws IOException {
+        int first = records.size();
+        List<Operation> operations = new ArrayList<>(entries.size());
+
+        for (String[] entry : entries) {
+            operations.add(new Operation(ADD, first + operations.size(), appendBlob(entry)));
+        }
+
+        commit(operations);
+        return first;
+    }
+
+
+    /**
+     * Replaces the first entry with the given title.
+     *
+     * @param title      The title of the entry to replace.
+     * @param newDetails The new entry.
+     * @return The position of the replaced entry, or -1 if there is no entry with the title.
+     * @throws IOException If the file can't be written.
+     */
+    public int update(String title, String[] newDetails) throws IOException {
+        TitleSlot slot = titleIndex.get(title);
+
+        if (slot == null) {
+            return -1;
+        }
+
+        int index = records.indexOf(slot.first);
+        commit(List.of(new Operation(REPLACE, index, appendBlob(newDetails))));
+        return index;
+    }
+
+
+    /**
+     * Removes the first entry with the given title.
+     *
+     * @param title The title of the entry to remove.
+     * @return The position the removed entry had, or -1 if there is no entry with the title.
+     * @throws IOException If the file can't be written.
+     */
+    public int remove(String title) throws IOException {
+        TitleSlot slot = titleIndex.get(title);
+
+        if (slot == null) {
+            return -1;
+        }
+
+        int index = records.indexOf(slot.first);
+        commit(List.of(new Operation(REMOVE, index, null)));
+        return index;
+    }
+
+
+    /**
+     * Opens the file again by its path and reads its title table, after another process changed it.
+     * A compaction by the other process replaces the file, so the channel may still point to the old one.
+     *
+     * @throws IOException If the file can't be read.
+     */
+    public void reload() throws IOException {
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        readTitleTable();
+    }
+
+
+    /**
+     * Checks whether opening the vault rewrote it from version 1 or 2.
+     *
+     * @return True if the file was rewritten when it was opened.
+     */
+    public boolean wasMigrated() {
+        return migrated;
+    }
+
+
+    /**
+     * Closes the vault.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    /**
+     * Derives the key of an encrypted vault from the salt and iteration count in its header.
+     * The key is checked when the header or, in version 2, the title table is authenticated.
+     */
+    private void unlock(char[] masterPassword) throws IOException {
+        ByteBuffer start = readFully(0, 2 * Integer.BYTES);
+
+        if (start.getInt() != MAGIC) {
+            throw new IOException("Not a binary vault: " + path);
+        }
+
+        int version = start.getInt();
+        if (version == ENCRYPTED_VERSION || version == LEGACY_ENCRYPTED_VERSION) {
+            if (masterPassword == null) {
+                throw new IOException("The vault is encrypted: " + path);
+            }
+
+            long parametersOffset = version == ENCRYPTED_VERSION ? HEADER_SIZE : LEGACY_HEADER_SIZE;
+            ByteBuffer parameters = readFully(parametersOffset, VaultCipher.SALT_LENGTH + Integer.BYTES);
+            byte[] salt = new byte[VaultCipher.SALT_LENGTH];
+            parameters.get(salt);
+            cipher = VaultCipher.derive(masterPassword, salt, parameters.getInt());
+        } else if (version != VERSION && version != LEGACY_VERSION) {
+            throw new IOException("Unsupported binary vault version " + version + ": " + path);
+        }
+    }
+
+
+    /**
+     * Reads the header and the title table of the file, and replays the change records after the table.
+     */
+    private void readTitleTable() throws IOException {
+        records.clear();
+        titleIndex.clear();
+        changeBytes = 0;
+        blobBytes = 0;
+        legacy = false;
+
+        ByteBuffer buffer = readFully(0, 2 * Integer.BYTES);
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a binary vault: " + path);
+        }
+
+        int version = buffer.getInt();
+        try {
+            if (version == (cipher == null ? LEGACY_VERSION : LEGACY_ENCRYPTED_VERSION)) {
+                readLegacyTitleTable();
+            } else if (version == (cipher == null ? VERSION : ENCRYPTED_VERSION)) {
+                readCurrentTitleTable();
+            } else {
+                throw new IOException("Not a binary vault: " + path);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Damaged binary vault: " + path, e);
+        }
+    }
+
+
+    /**
+     * Reads the title table and the change records of a file in the current version.
+     */
+    private void readCurrentTitleTable() throws IOException {
+        ByteBuffer buffer = readFully(0, headerSize(cipher));
+
+        if (cipher != null) {
+            int tagOffset = ENCRYPTED_HEADER_SIZE - VaultCipher.OVERHEAD;
+            try {
+                cipher.verify(ByteBuffer.wrap(buffer.array(), 0, tagOffset),
+                        ByteBuffer.wrap(buffer.array(), tagOffset, VaultCipher.OVERHEAD));
+            } catch (IOException e) {
+                throw new IOException("Wrong master password or modified vault header: " + path, e);
+            }
+        }
+
+        buffer.position(2 * Integer.BYTES);
+        Header newHeader = new Header(buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong(),
+                buffer.getLong(), buffer.getLong());
+
+        ByteBuffer table = unseal(readFully(newHeader.tableOffset(), newHeader.tableLength()), newHeader.tableOffset());
+        int count = table.getInt();
+        for (int i = 0; i < count; i++) {
+            apply(new Operation(ADD, i, readTitleRecord(table)));
+        }
+
+        // Follow the chain back from the last change record, then replay it in the order it was written
+        List<ByteBuffer> changes = new ArrayList<>();
+        long offset = newHeader.changeOffset();
+        long length = newHeader.changeLength();
+
+        for (int i = 0; i < newHeader.changeCount(); i++) {
+            ByteBuffer change = unseal(readFully(offset, length), offset);
+            changes.add(change);
+            changeBytes += length;
+            offset = change.getLong();
+            length = change.getLong();
+        }
+
+        if (offset != 0 || length != 0) {
+            throw new IOException("Damaged change records in binary vault: " + path);
+        }
+
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            ByteBuffer change = changes.get(i);
+            int operations = change.getInt();
+
+            for (int j = 0; j < operations; j++) {
+                byte kind = change.get();
+                int index = change.getInt();
+                apply(new Operation(kind, index, kind == REMOVE ? null : readTitleRecord(change)));
+            }
+        }
+
+        if (records.size() != newHeader.count()) {
+            throw new IOException("Damaged change records in binary vault: " + path);
+        }
+
+        header = newHeader;
+    }
+
+
+    /**
+     * Reads the title table of a file in version 1 or 2, which the caller rewrites in the current version.
+     */
+    private void readLegacyTitleTable() throws IOException {
+        ByteBuffer buffer = readFully(0, LEGACY_HEADER_SIZE);
+        buffer.position(2 * Integer.BYTES);
+        int count = buffer.getInt();
+        buffer.getInt();
+        long tableOffset = buffer.getLong();
+        long tableLength = buffer.getLong();
+
+        ByteBuffer table = readFully(tableOffset, tableLength);
+        try {
+            table = unseal(table, tableOffset);
+        } catch (IOException e) {
+            throw new IOException("Wrong master password: " + path, e);
+        }
+
+        for (int i = 0; i < count; i++) {
+            String title = readString(table);
+            long blobOffset = table.getLong();
+
+            // These versions sealed the blobs with their offset
+            apply(new Operation(ADD, i, new TitleRecord(title, blobOffset, table.getInt(), blobOffset)));
+        }
+
+        header = new Header(count, 0, tableOffset, tableLength, 0, 0);
+        legacy = true;
+    }
+
+
+    /**
+     * Applies an operation to the title table held in memory.
+     */
+    private void apply(Operation operation) throws IOException {
+        int index = operation.index();
+        boolean valid = operation.kind() == ADD ? index == records.size() : index >= 0 && index < records.size();
+
+        if (!valid) {
+            throw new IOException("Damaged change records in binary vault: " + path);
+        }
+
+        TitleRecord oldRecord = null;
+        switch (operation.kind()) {
+            case ADD -> records.add(operation.record());
+            case REPLACE -> oldRecord = records.set(index, operation.record());
+            case REMOVE -> oldRecord = records.remove(index);
+            default -> throw new IOException("Damaged change records in binary vault: " + path);
+        }
+
+        if (oldRecord != null) {
+            unindex(oldRecord, index);
+            blobBytes -= oldRecord.blobLength;
+        }
+
+        if (operation.record() != null) {
+            index(operation.record(), index);
+            blobBytes += operation.record().blobLength;
+        }
+    }
+
+
+    /**
+     * Adds an entry at the given position to the title index.
+     */
+    private void index(TitleRecord record, int position) {
+        TitleSlot slot = titleIndex.get(record.title);
+
+        if (slot == null) {
+            titleIndex.put(record.title, new TitleSlot(record));
+            return;
+        }
+
+        // Another entry has the title already. Only look for it if this entry isn't the last one.
+        slot.count++;
+        if (slot.first != record && position < records.size() - 1
+                && records.subList(0, position).indexOf(slot.first) < 0) {
+            slot.first = record;
+        }
+    }
+
+
+    /**
+     * Removes an entry from the title index after it was taken out of the title table at the given position.
+     */
+    private void unindex(TitleRecord record, int position) {
+        TitleSlot slot = titleIndex.get(record.title);
+
+        if (--slot.count == 0) {
+            titleIndex.remove(record.title);
+        } else if (slot.first == record) {
+            // The next entry with the title comes after the position the removed one had
+            for (int i = position; i < records.size(); i++) {
+                if (records.get(i).title.equals(record.title)) {
+                    slot.first = records.get(i);
+                    break;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Reads the blob of an entry with a positional read.
+     */
+    private String[] readEntry(TitleRecord record) throws IOException {
+        ByteBuffer blob = unseal(readFully(record.blobOffset, record.blobLength), record.blobId);
+
+        String[] entry = new String[blob.getInt() + 1];
+        entry[0] = record.title;
+
+        for (int i = 1; i < entry.length; i++) {
+            entry[i] = readString(blob);
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * Appends the blob of an entry to the end of the file.
+     *
+     * @return The title table entry pointing to the new blob.
+     */
+    private TitleRecord appendBlob(String[] entry) throws IOException {
+        long offset = channel.size();
+        long id = random.nextLong();
+        ByteBuffer blob = seal(cipher, encodeBlob(entry), id);
+        int length = blob.remaining();
+        writeFully(blob, offset);
+        return new TitleRecord(entry[0], offset, length, id);
+    }
+
+
+    /**
+     * Applies operations to the title table and makes them durable.
+     * Appends a change record to the end of the file, or a new title table if the chain of change records has grown
+     * too long, forces it to disk and then points the header to it, so a crash at any point leaves either the old
+     * or the new state in effect. If writing fails, the title table is read again from the file.
+     */
+    private void commit(List<Operation> operations) throws IOException {
+        ByteBuffer change = encodeChange(operations, header);
+        boolean newTable = header.changeCount() >= MAX_CHANGES
+                || changeBytes + change.remaining() > header.tableLength();
+
+        try {
+            for (Operation operation : operations) {
+                apply(operation);
+            }
+
+            long offset = channel.size();
+            Header newHeader;
+
+            if (newTable) {
+                ByteBuffer table = seal(cipher, encodeTitleTable(records), offset);
+                newHeader = new Header(records.size(), 0, offset, table.remaining(), 0, 0);
+                writeFully(table, offset);
+            } else {
+                ByteBuffer sealed = seal(cipher, change, offset);
+                newHeader = new Header(records.size(), header.changeCount() + 1, header.tableOffset(),
+                        header.tableLength(), offset, sealed.remaining());
+                writeFully(sealed, offset);
+            }
+            channel.force(false);
+
+            writeFully(newHeader.encode(cipher), 0);
+            channel.force(false);
+
+            changeBytes = newTable ? 0 : changeBytes + newHeader.changeLength();
+            header = newHeader;
+        } catch (IOException e) {
+            // Go back to whichever state the header points to
+            try {
+                readTitleTable();
+            } catch (IOException readFailure) {
+                e.addSuppressed(readFailure);
+            }
+            throw e;
+        }
+
+        // Rewrite the file once most of it is taken by old blobs, tables and change records. The change is
+        // committed already, so a failed compaction is only reported and tried again with the next change.
+        long liveBytes = headerSize(cipher) + header.tableLength() + changeBytes + blobBytes;
+        long garbage = channel.size() - liveBytes;
+        if (garbage > liveBytes && garbage > MIN_GARBAGE_BYTES) {
+            try {
+                compact();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * Rewrites the vault without unused space, through a temporary file that is atomically renamed over it.
+     * The blobs are sealed with their id instead of their position, so they are copied without decrypting them.
+     */
+    private void compact() throws IOException {
+        Path tempPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                List<TitleRecord> moved = new ArrayList<>(records.size());
+                long position = headerSize(cipher);
+                out.position(position);
+
+                for (TitleRecord record : records) {
+                    transferFully(record.blobOffset, record.blobLength, out);
+                    moved.add(new TitleRecord(record.title, position, record.blobLength, record.blobId));
+                    position += record.blobLength;
+                }
+
+                // Keep the key, so the vault doesn't have to be unlocked again
+                writeTable(out, moved, position, cipher);
+                out.force(true);
+            }
+
+            channel.close();
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+
+            // Reopen whichever file is in place now
+            if (!channel.isOpen()) {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+
+        readTitleTable();
+    }
+
+
+    /**
+     * Writes a complete binary vault holding the given entries, encrypted with the given cipher if it isn't null.
+     */
+    private static void writeVault(Path target, List<String[]> entries, VaultCipher cipher) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<TitleRecord> newRecords = new ArrayList<>(entries.size());
+            long position = headerSize(cipher);
+
+            // Blobs first, then the title table pointing to them
+            for (String[] entry : entries) {
+                long id = random.nextLong();
+                ByteBuffer blob = seal(cipher, encodeBlob(entry), id);
+                int length = blob.remaining();
+                writeFully(out, blob, position);
+                newRecords.add(new TitleRecord(entry[0], position, length, id));
+                position += length;
+            }
+
+            writeTable(out, newRecords, position, cipher);
+            out.force(true);
+        }
+    }
+
+
+    /**
+     * Writes a title table at the given position and a header pointing to it, without change records.
+     */
+    private static void writeTable(FileChannel out, List<TitleRecord> tableRecords, long position, VaultCipher cipher)
+            throws IOException {
+        ByteBuffer table = seal(cipher, encodeTitleTable(tableRecords), position);
+        long tableLength = table.remaining();
+        writeFully(out, table, position);
+        writeFully(out, new Header(tableRecords.size(), 0, position, tableLength, 0, 0).encode(cipher), 0);
+    }
+
+
+    private static int headerSize(VaultCipher cipher) {
+        return cipher == null ? HEADER_SIZE : ENCRYPTED_HEADER_SIZE;
+    }
+
+
+    /**
+     * Encrypts a blob, title table or change record with the given id or position, if the vault is encrypted.
+     */
+    private static ByteBuffer seal(VaultCipher cipher, ByteBuffer plaintext, long id) throws IOException {
+        return cipher == null ? plaintext : ByteBuffer.wrap(cipher.seal(plaintext, id));
+    }
+
+
+    /**
+     * Decrypts a blob, title table or change record sealed with the given id or position, if the vault is encrypted.
+     */
+    private ByteBuffer unseal(ByteBuffer sealed, long id) throws IOException {
+        return cipher == null ? sealed : cipher.open(sealed, id);
+    }
+
+
+    private static ByteBuffer encodeTitleTable(List<TitleRecord> tableRecords) {
+        List<byte[]> titles = new ArrayList<>(tableRecords.size());
+        int size = Integer.BYTES;
+
+        for (TitleRecord record : tableRecords) {
+            byte[] title = record.title.getBytes(StandardCharsets.UTF_8);
+            titles.add(title);
+            size += titleRecordSize(title);
+        }
+
+        ByteBuffer table = ByteBuffer.allocate(size);
+        table.putInt(tableRecords.size());
+        for (int i = 0; i < tableRecords.size(); i++) {
+            putTitleRecord(table, tableRecords.get(i), titles.get(i));
+        }
+
+        return table.flip();
+    }
+
+
+    /**
+     * Encodes a change record that follows the last one the header points to.
+     */
+    private static ByteBuffer encodeChange(List<Operation> operations, Header previous) {
+        List<byte[]> titles = new ArrayList<>(operations.size());
+        int size = 2 * Long.BYTES + Integer.BYTES;
+
+        for (Operation operation : operations) {
+            byte[] title = operation.record() == null ? null : operation.record().title.getBytes(StandardCharsets.UTF_8);
+            titles.add(title);
+            size += 1 + Integer.BYTES + (title == null ? 0 : titleRecordSize(title));
+        }
+
+        ByteBuffer change = ByteBuffer.allocate(size);
+        change.putLong(previous.changeOffset()).putLong(previous.changeLength()).putInt(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            change.put(operation.kind()).putInt(operation.index());
+            if (operation.record() != null) {
+                putTitleRecord(change, operation.record(), titles.get(i));
+            }
+        }
+
+        return change.flip();
+    }
+
+
+    private static int titleRecordSize(byte[] title) {
+        return Integer.BYTES + title.length + Long.BYTES + Integer.BYTES + Long.BYTES;
+    }
+
+
+    private static void putTitleRecord(ByteBuffer buffer, TitleRecord record, byte[] title) {
+        buffer.putInt(title.length).put(title);
+        buffer.putLong(record.blobOffset).putInt(record.blobLength).putLong(record.blobId);
+    }
+
+
+    private static TitleRecord readTitleRecord(ByteBuffer buffer) {
+        return new TitleRecord(readString(buffer), buffer.getLong(), buffer.getInt(), buffer.getLong());
+    }
+
+
+    private static ByteBuffer encodeBlob(String[] entry) {
+        byte[][] fields = new byte[Math.max(entry.length - 1, 0)][];
+        int size = Integer.BYTES;
+
+        // The title is stored in the title table, so the blob only holds the remaining fields
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = entry[i + 1].getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + fields[i].length;
+        }
+
+        ByteBuffer blob = ByteBuffer.allocate(size);
+        blob.putInt(fields.length);
+        for (byte[] field : fields) {
+            blob.putInt(field.length).put(field);
+        }
+
+        return blob.flip();
+    }
+
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Reads a range of the file, checking it against the size of the file first, so a damaged length doesn't
+     * allocate a huge buffer.
+     */
+    private ByteBuffer readFully(long position, long length) throws IOException {
+        if (position < 0 || length < 0 || length > Integer.MAX_VALUE - 8 || position > channel.size() - length) {
+            throw new IOException("Unexpected end of binary vault: " + path);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of binary vault: " + path);
+            }
+        }
+
+        return buffer.flip();
+    }
+
+
+    /**
+     * Copies a range of the file to the current position of another file.
+     */
+    private void transferFully(long position, long length, FileChannel out) throws IOException {
+        if (position < 0 || length < 0 || position > channel.size() - length) {
+            throw new IOException("Unexpected end of binary vault: " + path);
+        }
+
+        while (length > 0) {
+            long transferred = channel.transferTo(position, length, out);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of binary vault: " + path);
+            }
+            position += transferred;
+            length -= transferred;
+        }
+    }
+
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        writeFully(channel, buffer, position);
+    }
+
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+}
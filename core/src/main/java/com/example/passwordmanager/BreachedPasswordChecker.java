@@ -0,0 +1,497 @@
+package com.example.passwordmanager;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * The BreachedPasswordChecker class checks passwords against a local list of breached passwords, without any
+ * network access. The list (the corpus) is a file of SHA-1 hashes of the breached passwords, 20 bytes each,
+ * sorted in ascending order, as created by importHashList from a local copy of an "ordered by hash" list.
+ * The application never downloads a list itself; the corpus is whatever file the user configured.
+ * <p>
+ * The corpus may hold hundreds of millions of hashes, so it is memory-mapped instead of read. A blocked Bloom filter
+ * in front of it answers most lookups of passwords that are not in the corpus with a single cache line read.
+ * Hashes that pass the filter are confirmed by an interpolation search in the corpus, which finds a hash
+ * in a handful of probes since SHA-1 hashes are evenly distributed. The filter is built on the first open of
+ * a corpus and stored next to it, so later opens only map both files.
+ * <p>
+ * The default corpus is set with the system property passwordmanager.breachCorpus.
+ * A checker is immutable once opened and can be used by any number of threads.
+ */
+public class BreachedPasswordChecker {
+
+    // Size of a SHA-1 hash
+    private static final int RECORD_SIZE = 20;
+
+    // Suffix of the Bloom filter file, appended to the path of the corpus
+    private static final String BLOOM_SUFFIX = ".bloom";
+
+    // The Bloom filter file starts with a header identifying the corpus it was built for
+    private static final int BLOOM_MAGIC = 0x50574246;
+    private static final int BLOOM_HEADER_SIZE = 32;
+
+    // The filter is split into blocks of one cache line. All bits of a hash are set in the same block.
+    private static final int BLOCK_SIZE = 64;
+    private static final int BITS_PER_BLOCK = BLOCK_SIZE * 8;
+
+    // Filter bits per corpus hash and bits set per hash, for a false positive rate of about 1%
+    private static final int BITS_PER_RECORD = 10;
+    private static final int HASHES = 7;
+
+    // Number of interpolation steps before the search falls back to halving the range
+    private static final int INTERPOLATION_STEPS = 4;
+
+    // Digest for hashing passwords, one per thread since digests are not thread-safe
+    private static final ThreadLocal<MessageDigest> sha1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    // The checker of the corpus set by the system property, once it has been opened
+    private static volatile BreachedPasswordChecker defaultChecker;
+    private static boolean defaultOpened;
+
+    private final MappedRegion records;
+    private final long recordCount;
+    private final MappedRegion bloom;
+    private final long blockCount;
+
+
+    private BreachedPasswordChecker(MappedRegion records, long recordCount, MappedRegion bloom, long blockCount) {
+        this.records = records;
+        this.recordCount = recordCount;
+        this.bloom = bloom;
+        this.blockCount = blockCount;
+    }
+
+
+    /**
+     * Returns the checker of the corpus set by the system property passwordmanager.breachCorpus,
+     * opening it on the first call. Opening a corpus for the first time builds its Bloom filter,
+     * which reads the whole corpus, so this must not be called on the JavaFX thread.
+     *
+     * @return The checker, or null if no corpus is set or it can't be opened.
+     */
+    public static synchronized BreachedPasswordChecker getDefault() {
+        if (!defaultOpened) {
+            defaultOpened = true;
+            String corpus = System.getProperty("passwordmanager.breachCorpus");
+
+            if (corpus != null && !corpus.isEmpty()) {
+                try {
+                    defaultChecker = open(Path.of(corpus));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return defaultChecker;
+    }
+
+
+    /**
+     * Returns the checker of the default corpus if it has been opened already, without waiting for it.
+     *
+     * @return The checker, or null if it isn't open (yet).
+     */
+    public static BreachedPasswordChecker getDefaultIfOpen() {
+        return defaultChecker;
+    }
+
+
+    /**
+     * Opens a corpus, building its Bloom filter if it doesn't have an up-to-date one.
+     *
+     * @param corpus The path of the corpus.
+     * @return The checker.
+     * @throws IOException If the corpus can't be read, is not sorted, or the filter can't be written.
+     */
+    public static BreachedPasswordChecker open(Path corpus) throws IOException {
+        try (FileChannel channel = FileChannel.open(corpus, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % RECORD_SIZE != 0) {
+                throw new IOException("Not a corpus of SHA-1 hashes: " + corpus);
+            }
+
+            long recordCount = size / RECORD_SIZE;
+            MappedRegion records = MappedRegion.map(channel, FileChannel.MapMode.READ_ONLY, 0, size, RECORD_SIZE);
+
+            // Round up to a whole number of blocks, with at least one block
+            long blockCount = Math.max(1, (recordCount * BITS_PER_RECORD + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK);
+            Path bloomPath = Path.of(corpus + BLOOM_SUFFIX);
+            long modified = Files.getLastModifiedTime(corpus).toMillis();
+
+            if (!isBloomUpToDate(bloomPath, recordCount, modified, blockCount)) {
+                buildBloom(records, recordCount, bloomPath, modified, blockCount);
+            }
+
+            try (FileChannel bloomChannel = FileChannel.open(bloomPath, StandardOpenOption.READ)) {
+                MappedRegion bloom = MappedRegion.map(bloomChannel, FileChannel.MapMode.READ_ONLY,
+                        BLOOM_HEADER_SIZE, blockCount * BLOCK_SIZE, BLOCK_SIZE);
+                return new BreachedPasswordChecker(records, recordCount, bloom, blockCount);
+            }
+        }
+    }
+
+
+    /**
+     * Converts a text list of SHA-1 hashes into a corpus. Every line starts with a hash in hexadecimal,
+     * optionally followed by a colon and the number of times it was seen, like "5BAA6...8B7:9545824".
+     * The lines must be sorted by hash, as in the "ordered by hash" downloads, so the corpus can be written
+     * while reading the list, whatever its size.
+     *
+     * @param hashList The text list of hashes.
+     * @param corpus   The path of the corpus to write.
+     * @return The number of hashes written.
+     * @throws IOException If the list can't be read, is not sorted or contains a line that isn't a SHA-1 hash.
+     */
+    public static long importHashList(Path hashList, Path corpus) throws IOException {
+        HexFormat hex = HexFormat.of();
+        byte[] previous = null;
+        long count = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(hashList, StandardCharsets.US_ASCII);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(corpus), 1 << 16)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                int end = line.indexOf(':');
+                String digits = (end >= 0 ? line.substring(0, end) : line).trim();
+                if (digits.length() != RECORD_SIZE * 2) {
+                    throw new IOException("Not a SHA-1 hash in line " + (count + 1) + ": " + line);
+                }
+
+                byte[] hash = hex.parseHex(digits);
+                if (previous != null && Arrays.compareUnsigned(previous, hash) >= 0) {
+                    throw new IOException("The list is not sorted by hash at line " + (count + 1));
+                }
+
+                out.write(hash);
+                previous = hash;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Returns the number of hashes in the corpus.
+     *
+     * @return The number of breached passwords.
+     */
+    public long size() {
+        return recordCount;
+    }
+
+
+    /**
+     * Checks whether a password is in the corpus.
+     *
+     * @param password The password.
+     * @return True if the password has been breached.
+     */
+    public boolean isBreached(String password) {
+        return contains(sha1(password));
+    }
+
+
+    /**
+     * Computes the SHA-1 hash of the UTF-8 encoding of a password, which is how the corpus stores them.
+     *
+     * @param password The password.
+     * @return The hash.
+     */
+    public static byte[] sha1(String password) {
+        return sha1.get().digest(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Checks whether a SHA-1 hash is in the corpus.
+     *
+     * @param hash The 20 byte hash.
+     * @return True if the corpus contains the hash.
+     */
+    public boolean contains(byte[] hash) {
+        ByteBuffer key = ByteBuffer.wrap(hash);
+        long high = key.getLong(0);
+        long middle = key.getLong(8);
+        int low = key.getInt(16);
+
+        return mightContain(high, middle) && search(high, middle, low);
+    }
+
+
+    /**
+     * Finds the entries of a vault whose password is in the corpus. The passwords are hashed and looked up
+     * in parallel on the common fork-join pool.
+     *
+     * @param vault The vault to audit.
+     * @return The titles of the entries with breached passwords, in file order.
+     */
+    public List<String> audit(Vault vault) {
+        List<String[]> credentials = new ArrayList<>();
+        vault.forEachEntry(RecordFormat.TITLE | RecordFormat.PASSWORD, fields -> {
+            if (fields[2] != null && !fields[2].isEmpty()) {
+                credentials.add(new String[]{fields[0], fields[2]});
+            }
+        });
+
+        return credentials.parallelStream()
+                .filter(credential -> isBreached(credential[1]))
+                .map(credential -> credential[0])
+                .toList();
+    }
+
+
+    /**
+     * Checks the Bloom filter. False means the hash is certainly not in the corpus.
+     * The block is picked with the first eight bytes of the hash and the bits within it with the next eight,
+     * nine bits per position, since the bytes of a SHA-1 hash are already evenly distributed.
+     */
+    private boolean mightContain(long high, long middle) {
+        long blockOffset = Long.remainderUnsigned(high, blockCount) * BLOCK_SIZE;
+
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) (middle >>> (9 * i)) & (BITS_PER_BLOCK - 1);
+            long word = bloom.getLong(blockOffset + (bit >>> 6) * 8L);
+
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Searches the corpus for a hash. The position of the hash is first estimated from its value,
+     * which narrows the range to a few records within a few steps, then the range is halved.
+     */
+    private boolean search(long high, long middle, int low) {
+        long first = 0;
+        long last = recordCount - 1;
+        int steps = 0;
+
+        while (first <= last) {
+            long position;
+
+            long firstKey = records.getLong(first * RECORD_SIZE);
+            long lastKey = records.getLong(last * RECORD_SIZE);
+            if (Long.compareUnsigned(high, firstKey) < 0 || Long.compareUnsigned(high, lastKey) > 0) {
+                return false;
+            }
+
+            if (steps++ < INTERPOLATION_STEPS && firstKey != lastKey) {
+                // Both differences are unsigned, and the hash lies between the first and last key
+                double fraction = unsignedToDouble(high - firstKey) / unsignedToDouble(lastKey - firstKey);
+                position = first + (long) (fraction * (last - first));
+            } else {
+                position = (first + last) >>> 1;
+            }
+
+            int comparison = compareRecord(position, high, middle, low);
+            if (comparison == 0) {
+                return true;
+            } else if (comparison < 0) {
+                first = position + 1;
+            } else {
+                last = position - 1;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Compares the record at a position with a hash, as unsigned numbers.
+     */
+    private int compareRecord(long position, long high, long middle, int low) {
+        long offset = position * RECORD_SIZE;
+
+        int comparison = Long.compareUnsigned(records.getLong(offset), high);
+        if (comparison == 0) {
+            comparison = Long.compareUnsigned(records.getLong(offset + 8), middle);
+        }
+        if (comparison == 0) {
+            comparison = Integer.compareUnsigned(records.getInt(offset + 16), low);
+        }
+
+        return comparison;
+    }
+
+
+    /**
+     * Checks whether the Bloom filter file was built for the corpus as it is now.
+     */
+    private static boolean isBloomUpToDate(Path bloomPath, long recordCount, long modified, long blockCount) {
+        if (!Files.exists(bloomPath)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(bloomPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BLOOM_HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return false;
+                }
+            }
+
+            return header.getInt(0) == BLOOM_MAGIC && header.getLong(8) == recordCount
+                    && header.getLong(16) == modified && header.getLong(24) == blockCount
+                    && channel.size() == BLOOM_HEADER_SIZE + blockCount * BLOCK_SIZE;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Builds the Bloom filter of a corpus in a memory-mapped temporary file, which then replaces the old filter.
+     * The filter is never held on the heap, so corpora of any size can be filtered. Checks that the corpus is sorted.
+     */
+    private static void buildBloom(MappedRegion records, long recordCount, Path bloomPath, long modified,
+                                   long blockCount) throws IOException {
+        Path tempPath = Files.createTempFile(bloomPath.toAbsolutePath().getParent(),
+                bloomPath.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedRegion bloom = MappedRegion.map(channel, FileChannel.MapMode.READ_WRITE,
+                        BLOOM_HEADER_SIZE, blockCount * BLOCK_SIZE, BLOCK_SIZE);
+
+                long previousHigh = 0;
+                long previousMiddle = 0;
+
+                for (long i = 0; i < recordCount; i++) {
+                    long high = records.getLong(i * RECORD_SIZE);
+                    long middle = records.getLong(i * RECORD_SIZE + 8);
+
+                    // Equal prefixes of 16 bytes are practically impossible, so they are not compared further
+                    int order = Long.compareUnsigned(high, previousHigh);
+                    if (i > 0 && (order < 0 || (order == 0 && Long.compareUnsigned(middle, previousMiddle) < 0))) {
+                        throw new IOException("The corpus is not sorted at record " + i);
+                    }
+                    previousHigh = high;
+                    previousMiddle = middle;
+
+                    long blockOffset = Long.remainderUnsigned(high, blockCount) * BLOCK_SIZE;
+                    for (int h = 0; h < HASHES; h++) {
+                        int bit = (int) (middle >>> (9 * h)) & (BITS_PER_BLOCK - 1);
+                        long wordOffset = blockOffset + (bit >>> 6) * 8L;
+                        bloom.putLong(wordOffset, bloom.getLong(wordOffset) | (1L << bit));
+                    }
+                }
+                bloom.force();
+
+                // Write the header last, so an interrupted build is never taken for a complete filter
+                ByteBuffer header = ByteBuffer.allocate(BLOOM_HEADER_SIZE);
+                header.putInt(0, BLOOM_MAGIC);
+                header.putLong(8, recordCount);
+                header.putLong(16, modified);
+                header.putLong(24, blockCount);
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            }
+
+            Files.move(tempPath, bloomPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+
+    /**
+     * Converts an unsigned long to a double.
+     */
+    private static double unsignedToDouble(long value) {
+        return value >= 0 ? value : (value >>> 1) * 2.0;
+    }
+
+
+    /**
+     * A file region mapped in segments, since a single mapping is limited to 2 GB.
+     * The segment size is a multiple of the unit, so values within a unit never cross segments.
+     */
+    private static class MappedRegion {
+
+        private final MappedByteBuffer[] segments;
+        private final long segmentSize;
+
+
+        private MappedRegion(MappedByteBuffer[] segments, long segmentSize) {
+            this.segments = segments;
+            this.segmentSize = segmentSize;
+        }
+
+
+        /**
+         * Maps a region of a file. In READ_WRITE mode the file is extended to cover the region.
+         */
+        static MappedRegion map(FileChannel channel, FileChannel.MapMode mode, long position, long size, int unit)
+                throws IOException {
+            long segmentSize = (Integer.MAX_VALUE / unit) * (long) unit;
+            int count = (int) Math.max(1, (size + segmentSize - 1) / segmentSize);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+
+            for (int i = 0; i < count; i++) {
+                long start = i * segmentSize;
+                segments[i] = channel.map(mode, position + start, Math.min(segmentSize, size - start));
+            }
+
+            return new MappedRegion(segments, segmentSize);
+        }
+
+
+        long getLong(long offset) {
+            return segments[(int) (offset / segmentSize)].getLong((int) (offset % segmentSize));
+        }
+
+
+        int getInt(long offset) {
+            return segments[(int) (offset / segmentSize)].getInt((int) (offset % segmentSize));
+        }
+
+
+        void putLong(long offset, long value) {
+            segments[(int) (offset / segmentSize)].putLong((int) (offset % segmentSize), value);
+        }
+
+
+        void force() {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,1073 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The CompressedVault class reads and writes password entries in the compressed vault format (.pwdz).
+ * The entries are stored as lines of the text format, grouped into blocks of about BLOCK_SIZE bytes that are
+ * compressed with Deflater one by one. Every block is followed by its title table, holding the titles of its
+ * entries, and the block index after the blocks holds the position and size of every block and title table.
+ * <p>
+ * Opening a vault only reads the header, the block index and the title tables. Looking up an entry decompresses
+ * the one block that holds it, and reading all entries decompresses the blocks in parallel on the common
+ * fork-join pool.
+ * <p>
+ * File layout:
+ * <pre>
+ * header:      magic (int), version (int), entry count (int), block count (int), index offset (long),
+ *              index length (int), uncompressed index length (int)
+ * block:       Deflate stream of lines of the text format, each ending with "\n"
+ * title table: Deflate stream of: for each entry of the block: title length (int), UTF-8 bytes
+ * block index: Deflate stream of: for each block: offset (long), length (int), uncompressed length (int),
+ *              entry count (int), title table offset (long), length (int), uncompressed length (int)
+ * </pre>
+ * Like in a BinaryVault, changes append the blocks they rewrite and a new block index to the end of the file,
+ * and then point the header to the new index. Adding entries rewrites the last block if it isn't full yet,
+ * updating or removing an entry rewrites the block holding it, each with its title table. The block index has
+ * a fixed size per block and no titles, so a change writes a few kilobytes however many entries the vault has.
+ * The space taken by old blocks and indexes is reclaimed by rewriting the file once it exceeds the live data.
+ * <p>
+ * Version 1 files kept all titles in the block index. They are read and rewritten in the current version
+ * when they are opened.
+ */
+public class CompressedVault implements VaultFile {
+
+    // File extension of compressed vaults
+    public static final String EXTENSION = ".pwdz";
+
+    // "PWDZ" in ASCII
+    private static final int MAGIC = 0x5057445A;
+    private static final int VERSION = 2;
+    private static final int LEGACY_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    // Size of a block in the block index, and in the block index of version 1
+    private static final int INDEX_ENTRY_SIZE = 2 * Long.BYTES + 5 * Integer.BYTES;
+    private static final int LEGACY_INDEX_ENTRY_SIZE = Long.BYTES + 3 * Integer.BYTES;
+
+    // Deflate can't compress more than about 1032:1, so longer uncompressed lengths come from a damaged file
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    // Uncompressed size a block is filled up to. Entries are not split, so a block can be a little larger.
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    // Minimum number of unused bytes before the file is rewritten
+    private static final long MIN_GARBAGE_BYTES = 1024 * 1024;
+
+    private final Path path;
+    private FileChannel channel;
+
+    // The blocks in file order, their positions in that list, and the position of the first entry of each block
+    private List<Block> blocks = new ArrayList<>();
+    private final Map<Block, Integer> blockIndexes = new IdentityHashMap<>();
+    private int[] firstEntries = new int[0];
+    private int entryCount;
+
+    // Index from title to the block holding the first entry that has it
+    private final Map<String, TitleSlot> titleIndex = new HashMap<>();
+
+    // Number of bytes taken by the header, the current block index and the blocks and title tables referenced by it
+    private long liveBytes;
+
+    // Whether the file is in version 1, which is rewritten when it is opened, and whether that happened
+    private boolean legacyIndex;
+    private boolean migrated;
+
+
+    /**
+     * Entry of the block index, with the titles of the entries of the block.
+     * The title table of a block read from a version 1 file has the offset -1.
+     */
+    private record Block(long offset, int length, int rawLength, long titlesOffset, int titlesLength,
+                         int titlesRawLength, List<String> titles) {
+
+        int count() {
+            return titles.size();
+        }
+    }
+
+
+    /**
+     * Lines of the text format for one block and the titles of its entries, before they are compressed.
+     */
+    private record RawBlock(byte[] bytes, List<String> titles) {
+    }
+
+
+    /**
+     * The block holding the first entry with a title, and the number of entries that have the title.
+     */
+    private static class TitleSlot {
+        Block block;
+        int count;
+    }
+
+
+    private CompressedVault(Path path) {
+        this.path = path;
+    }
+
+
+    /**
+     * Checks whether a file path refers to a compressed vault, based on its extension.
+     *
+     * @param filePath The path of the database file.
+     * @return True if the file is a compressed vault.
+     */
+    public static boolean isCompressedVault(String filePath) {
+        return filePath != null && filePath.toLowerCase().endsWith(EXTENSION);
+    }
+
+
+    /**
+     * Opens a compressed vault, reading only its header and block index.
+     *
+     * @param filePath The path of the compressed vault.
+     * @return The opened vault.
+     * @throws IOException If the file can't be read or isn't a compressed vault.
+     */
+    public static CompressedVault open(String filePath) throws IOException {
+        CompressedVault vault = new CompressedVault(Path.of(filePath));
+        vault.channel = FileChannel.open(vault.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            vault.readIndex();
+
+            // Bring version 1 files to the current version, whose changes don't rewrite all titles
+            if (vault.legacyIndex) {
+                vault.compact();
+                vault.migrated = true;
+            }
+        } catch (IOException e) {
+            vault.channel.close();
+            throw e;
+        }
+
+        return vault;
+    }
+
+
+    /**
+     * Creates an empty compressed vault, overwriting the file if it exists.
+     *
+     * @param filePath The path of the compressed vault.
+     * @throws IOException If the file can't be written.
+     */
+    public static void create(String filePath) throws IOException {
+        writeEntries(filePath, new ArrayList<>());
+    }
+
+
+    /**
+     * Writes a new compressed vault holding the given entries, overwriting the file if it exists.
+     *
+     * @param filePath The path of the compressed vault.
+     * @param entries  The entries to write.
+     * @throws IOException If the file can't be written.
+     */
+    public static void writeEntries(String filePath, List<String[]> entries) throws IOException {
+        writeVault(Path.of(filePath), entries);
+    }
+
+
+    /**
+     * Converts a text database file to a compressed vault.
+     *
+     * @param textPath       The path of the text database file to read.
+     * @param compressedPath The path of the compressed vault to write.
+     * @throws IOException If a file can't be read or written.
+     */
+    public static void convertFromText(String textPath, String compressedPath) throws IOException {
+        // Read the text file the same way it is opened, including changes still held in its journal
+        VaultCache source = new VaultCache();
+        source.load(textPath, () -> VaultLoader.readEntries(textPath));
+        VaultJournal.replay(textPath, source);
+
+        writeEntries(compressedPath, source.getEntries());
+    }
+
+
+    /**
+     * Converts a compressed vault to a text database file.
+     *
+     * @param compressedPath The path of the compressed vault to read.
+     * @param textPath       The path of the text database file to write.
+     * @throws IOException If a file can't be read or written.
+     */
+    public static void convertToText(String compressedPath, String textPath) throws IOException {
+        try (CompressedVault vault = open(compressedPath)) {
+            vault.exportToText(textPath);
+        }
+    }
+
+
+    /**
+     * Writes all entries of this vault to a text database file.
+     *
+     * @param textPath The path of the text database file to write.
+     * @throws IOException If a file can't be read or written.
+     */
+    @Override
+    public void exportToText(String textPath) throws IOException {
+        TextVaultFile.write(textPath, getEntries());
+    }
+
+
+    /**
+     * Returns the titles of all entries in file order. Does not decompress any block.
+     *
+     * @return A list of entry titles.
+     */
+    @Override
+    public List<String> getTitles() {
+        List<String> titles = new ArrayList<>(entryCount);
+        for (Block block : blocks) {
+            titles.addAll(block.titles());
+        }
+        return titles;
+    }
+
+
+    /**
+     * Reads all entries, decompressing the blocks in parallel if there are several.
+     *
+     * @return A list of string arrays, each representing a password entry.
+     * @throws IOException If the file can't be read.
+     */
+    @Override
+    public List<String[]> getEntries() throws IOException {
+        List<String[]> entries = new ArrayList<>(entryCount);
+
+        if (blocks.size() < 2 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            for (int i = 0; i < blocks.size(); i++) {
+                entries.addAll(readBlock(i));
+            }
+            return entries;
+        }
+
+        List<InflateBlockTask> tasks = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            tasks.add(new InflateBlockTask(i));
+        }
+
+        try {
+            ForkJoinPool.commonPool().invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    invokeAll(tasks);
+                    return null;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // Merge the results in file order
+        for (InflateBlockTask task : tasks) {
+            entries.addAll(task.join());
+        }
+
+        return entries;
+    }
+
+
+    /**
+     * Streams all entries through a visitor in file order, decoding only the requested fields.
+     * The visitor gets the same array for every entry, holding the title, username and password,
+     * with null for the fields that were not requested. It must copy what it keeps.
+     * If only the title is requested, no block is decompressed at all.
+     *
+     * @param fieldMask The fields to read, as a combination of RecordFormat.TITLE, USERNAME and PASSWORD.
+     * @param visitor   Called with the fields of every entry.
+     * @throws IOException If the file can't be read.
+     */
+    @Override
+    public void forEachEntry(int fieldMask, Consumer<String[]> visitor) throws IOException {
+        String[] fields = new String[3];
+
+        if ((fieldMask & ~RecordFormat.TITLE) == 0) {
+            for (Block block : blocks) {
+                for (String title : block.titles()) {
+                    Arrays.fill(fields, null);
+                    fields[0] = (fieldMask & RecordFormat.TITLE) != 0 ? title : null;
+                    visitor.accept(fields);
+                }
+            }
+            return;
+        }
+
+        RecordFormat format = new RecordFormat();
+        for (int i = 0; i < blocks.size(); i++) {
+            byte[] raw = inflateBlock(blocks.get(i));
+            try {
+                forEachLine(raw, (bytes, start, end) -> {
+                    format.parse(bytes, start, end, fieldMask, fields);
+                    visitor.accept(fields);
+                });
+            } finally {
+                Arrays.fill(raw, (byte) 0);
+            }
+        }
+    }
+
+
+    /**
+     * Looks up an entry by its title, decompressing only the block that holds it.
+     *
+     * @param title The title of the entry.
+     * @return The first entry with the given title, or null if there is none.
+     * @throws IOException If the file can't be read.
+     */
+    @Override
+    public String[] getEntry(String title) throws IOException {
+        int position = positionOf(title);
+        if (position < 0) {
+            return null;
+        }
+
+        int block = blockOf(position);
+        byte[] raw = inflateBlock(blocks.get(block));
+        try {
+            // Skip the lines of the entries before it in the block
+            int skip = position - firstEntries[block];
+            int start = 0;
+            for (int i = 0; i < skip; i++) {
+                start = indexOfNewline(raw, start) + 1;
+            }
+
+            return new RecordFormat().parse(raw, start, indexOfNewline(raw, start));
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+
+
+    /**
+     * Adds a new entry to the end of the vault.
+     *
+     * @param entry The entry to add.
+     * @return The position of the added entry.
+     * @throws IOException If the file can't be written.
+     */
+    @Override
+    public int add(String[] entry) throws IOException {
+        return addAll(List.<String[]>of(entry));
+    }
+
+
+    /**
+     * Adds new entries to the end of the vault, committing the block index once for all of them.
+     * The entries fill up the last block first, so adding entries one at a time doesn't leave tiny blocks behind.
+     *
+     * @param entries The entries to add.
+     * @return The position of the first added entry.
+     * @throws IOException If the file can't be written.
+     */
+    @Override
+    public int addAll(List<String[]> entries) throws IOException {
+        List<Block> newBlocks = new ArrayList<>(blocks);
+        List<Block> removed = new ArrayList<>();
+        List<String[]> pending = new ArrayList<>();
+
+        int last = blocks.size() - 1;
+        if (last >= 0 && blocks.get(last).rawLength() < BLOCK_SIZE) {
+            pending.addAll(readBlock(last));
+            removed.add(newBlocks.remove(last));
+        }
+        pending.addAll(entries);
+
+        List<Block> added = new ArrayList<>();
+        for (RawBlock raw : encodeBlocks(pending)) {
+            added.add(appendBlock(raw));
+        }
+        newBlocks.addAll(added);
+
+        int first = entryCount;
+        commit(newBlocks, removed, added);
+        return first;
+    }
+
+
+    /**
+     * Replaces the first entry with the given title, rewriting the block that holds it.
+     *
+     * @param title      The title of the entry to replace.
+     * @param newDetails The new entry.
+     * @return The position of the replaced entry, or -1 if there is no entry with the title.
+     * @throws IOException If the file can't be written.
+     */
+    @Override
+    public int update(String title, String[] newDetails) throws IOException {
+        int position = positionOf(title);
+        if (position < 0) {
+            return -1;
+        }
+
+        int block = blockOf(position);
+        List<String[]> blockEntries = readBlock(block);
+        blockEntries.set(position - firstEntries[block], newDetails);
+
+        Block replacement = appendBlock(encodeBlock(blockEntries));
+        List<Block> newBlocks = new ArrayList<>(blocks);
+        Block replaced = newBlocks.set(block, replacement);
+
+        commit(newBlocks, List.of(replaced), List.of(replacement));
+        return position;
+    }
+
+
+    /**
+     * Removes the first entry with the given title, rewriting the block that holds it.
+     *
+     * @param title The title of the entry to remove.
+     * @return The position the removed entry had, or -1 if there is no entry with the title.
+     * @throws IOException If the file can't be written.
+     */
+    @Override
+    public int remove(String title) throws IOException {
+        int position = positionOf(title);
+        if (position < 0) {
+            return -1;
+        }
+
+        int block = blockOf(position);
+        List<String[]> blockEntries = readBlock(block);
+        blockEntries.remove(position - firstEntries[block]);
+
+        List<Block> newBlocks = new ArrayList<>(blocks);
+        List<Block> added = new ArrayList<>();
+        if (blockEntries.isEmpty()) {
+            newBlocks.remove(block);
+        } else {
+            added.add(appendBlock(encodeBlock(blockEntries)));
+            newBlocks.set(block, added.get(0));
+        }
+
+        commit(newBlocks, List.of(blocks.get(block)), added);
+        return position;
+    }
+
+
+    /**
+     * Opens the file again by its path and reads its block index, after another process changed it.
+     * A compaction by the other process replaces the file, so the channel may still point to the old one.
+     *
+     * @throws IOException If the file can't be read.
+     */
+    @Override
+    public void reload() throws IOException {
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        readIndex();
+    }
+
+
+    /**
+     * Checks whether opening the vault rewrote it from version 1.
+     *
+     * @return True if the file was rewritten when it was opened.
+     */
+    @Override
+    public boolean wasMigrated() {
+        return migrated;
+    }
+
+
+    /**
+     * Closes the vault.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    /**
+     * Reads the header, the block index and the title tables of the file.
+     * Every length read from the file is checked against the size of the file before anything is allocated for it,
+     * so a damaged file fails with an IOException.
+     */
+    private void readIndex() throws IOException {
+        ByteBuffer header = readFully(0, HEADER_SIZE);
+
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a compressed vault: " + path);
+        }
+        int version = header.getInt();
+        if (version != VERSION && version != LEGACY_VERSION) {
+            throw new IOException("Unsupported compressed vault version " + version + ": " + path);
+        }
+
+        int count = header.getInt();
+        int blockCount = header.getInt();
+        long indexOffset = header.getLong();
+        int indexLength = header.getInt();
+        int rawIndexLength = header.getInt();
+
+        // The block index has a fixed size per block, followed by the titles in version 1
+        long blocksLength = (long) blockCount * (version == VERSION ? INDEX_ENTRY_SIZE : LEGACY_INDEX_ENTRY_SIZE);
+        if (count < 0 || blockCount < 0
+                || (version == VERSION ? rawIndexLength != blocksLength : rawIndexLength < blocksLength)) {
+            throw new IOException("Corrupt header of compressed vault: " + path);
+        }
+
+        byte[] compressedIndex = readFully(indexOffset, indexLength).array();
+        ByteBuffer index = ByteBuffer.wrap(inflate(compressedIndex, rawIndexLength));
+
+        List<Block> newBlocks = new ArrayList<>(blockCount);
+        long total = 0;
+
+        if (version == VERSION) {
+            for (int i = 0; i < blockCount; i++) {
+                long offset = index.getLong();
+                int length = index.getInt();
+                int rawLength = index.getInt();
+                int blockEntries = index.getInt();
+                long titlesOffset = index.getLong();
+                int titlesLength = index.getInt();
+                int titlesRawLength = index.getInt();
+
+                byte[] titleTable = inflate(readFully(titlesOffset, titlesLength).array(), titlesRawLength);
+                List<String> blockTitles = readTitles(ByteBuffer.wrap(titleTable), blockEntries);
+                newBlocks.add(new Block(offset, length, rawLength, titlesOffset, titlesLength, titlesRawLength,
+                        blockTitles));
+                total += blockEntries;
+            }
+        } else {
+            int[] counts = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                newBlocks.add(new Block(index.getLong(), index.getInt(), index.getInt(), -1, 0, 0, null));
+                counts[i] = index.getInt();
+                total += counts[i];
+            }
+
+            List<String> allTitles = readTitles(index, count);
+            int first = 0;
+            for (int i = 0; i < blockCount && total == count; i++) {
+                Block block = newBlocks.get(i);
+                newBlocks.set(i, new Block(block.offset(), block.length(), block.rawLength(), -1, 0, 0,
+                        new ArrayList<>(allTitles.subList(first, first + counts[i]))));
+                first += counts[i];
+            }
+        }
+
+        if (total != count || index.hasRemaining()) {
+            throw new IOException("Corrupt block index in compressed vault: " + path);
+        }
+
+        setBlocks(newBlocks, indexLength);
+        legacyIndex = version == LEGACY_VERSION;
+
+        titleIndex.clear();
+        for (Block block : blocks) {
+            for (String title : block.titles()) {
+                TitleSlot slot = titleIndex.computeIfAbsent(title, key -> new TitleSlot());
+                if (slot.block == null) {
+                    slot.block = block;
+                }
+                slot.count++;
+            }
+        }
+    }
+
+
+    /**
+     * Reads a number of length-prefixed titles.
+     */
+    private List<String> readTitles(ByteBuffer table, int count) throws IOException {
+        List<String> titles = new ArrayList<>(Math.min(count, table.remaining() / Integer.BYTES));
+
+        for (int i = 0; i < count; i++) {
+            int length = table.remaining() >= Integer.BYTES ? table.getInt() : -1;
+            if (length < 0 || length > table.remaining()) {
+                throw new IOException("Corrupt title table in compressed vault: " + path);
+            }
+
+            titles.add(new String(table.array(), table.position(), length, StandardCharsets.UTF_8));
+            table.position(table.position() + length);
+        }
+
+        return titles;
+    }
+
+
+    /**
+     * Replaces the blocks held in memory and the positions derived from them.
+     * Takes time proportional to the number of blocks, not of entries.
+     */
+    private void setBlocks(List<Block> newBlocks, int indexLength) {
+        blocks = newBlocks;
+        blockIndexes.clear();
+        firstEntries = new int[newBlocks.size()];
+        liveBytes = HEADER_SIZE + indexLength;
+
+        int position = 0;
+        for (int i = 0; i < newBlocks.size(); i++) {
+            Block block = newBlocks.get(i);
+            blockIndexes.put(block, i);
+            firstEntries[i] = position;
+            position += block.count();
+            liveBytes += block.length() + block.titlesLength();
+        }
+        entryCount = position;
+    }
+
+
+    /**
+     * Updates the title index for blocks that were removed from or added to the block index.
+     * Only the titles of these blocks are touched, except when the first entry with a title was removed
+     * while later entries with the same title remain, which searches the blocks for the next one.
+     */
+    private void updateTitleIndex(List<Block> removed, List<Block> added) {
+        // Titles whose first entry was in a removed block
+        List<String> orphaned = new ArrayList<>();
+        for (Block block : removed) {
+            for (String title : block.titles()) {
+                TitleSlot slot = titleIndex.get(title);
+                slot.count--;
+                if (slot.block == block) {
+                    slot.block = null;
+                    orphaned.add(title);
+                }
+            }
+        }
+
+        for (Block block : added) {
+            int index = blockIndexes.get(block);
+            for (String title : block.titles()) {
+                TitleSlot slot = titleIndex.computeIfAbsent(title, key -> new TitleSlot());
+                slot.count++;
+                if (slot.block == null || index < blockIndexes.get(slot.block)) {
+                    slot.block = block;
+                }
+            }
+        }
+
+        for (String title : orphaned) {
+            TitleSlot slot = titleIndex.get(title);
+            if (slot.count == 0) {
+                titleIndex.remove(title);
+            } else if (slot.block == null) {
+                slot.block = findFirstBlock(title);
+            }
+        }
+    }
+
+
+    /**
+     * Finds the first block holding an entry with a title.
+     */
+    private Block findFirstBlock(String title) {
+        for (Block block : blocks) {
+            if (block.titles().contains(title)) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the position of the first entry with a title.
+     *
+     * @return The position, or -1 if there is no entry with the title.
+     */
+    private int positionOf(String title) {
+        TitleSlot slot = titleIndex.get(title);
+        if (slot == null) {
+            return -1;
+        }
+
+        return firstEntries[blockIndexes.get(slot.block)] + slot.block.titles().indexOf(title);
+    }
+
+
+    /**
+     * Finds the block holding the entry at a position.
+     */
+    private int blockOf(int position) {
+        int block = Arrays.binarySearch(firstEntries, position);
+        return block >= 0 ? block : -block - 2;
+    }
+
+
+    /**
+     * Decompresses a block and parses all of its entries.
+     */
+    private List<String[]> readBlock(int block) throws IOException {
+        byte[] raw = inflateBlock(blocks.get(block));
+        List<String[]> entries = new ArrayList<>(blocks.get(block).count());
+        RecordFormat format = new RecordFormat();
+
+        try {
+            forEachLine(raw, (bytes, start, end) -> entries.add(format.parse(bytes, start, end)));
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+
+        return entries;
+    }
+
+
+    /**
+     * Reads a block and decompresses it.
+     */
+    private byte[] inflateBlock(Block block) throws IOException {
+        return inflate(readFully(block.offset(), block.length()).array(), block.rawLength());
+    }
+
+
+    /**
+     * Decompresses and parses one block, for reading all entries in parallel.
+     */
+    private class InflateBlockTask extends RecursiveTask<List<String[]>> {
+
+        private final int block;
+
+        InflateBlockTask(int block) {
+            this.block = block;
+        }
+
+        @Override
+        protected List<String[]> compute() {
+            try {
+                return readBlock(block);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+
+    /**
+     * Compresses a block and its title table and appends them to the end of the file.
+     *
+     * @return The block index entry pointing to the new block.
+     */
+    private Block appendBlock(RawBlock raw) throws IOException {
+        return writeBlock(channel, raw, channel.size());
+    }
+
+
+    /**
+     * Makes the given block index the current one.
+     * Appends the index to the end of the file, forces it to disk and then points the header to it,
+     * so a crash at any point leaves either the old or the new index in effect.
+     *
+     * @param newBlocks The blocks of the new index.
+     * @param removed   The blocks of the current index that are not in the new one.
+     * @param added     The blocks of the new index that are not in the current one.
+     */
+    private void commit(List<Block> newBlocks, List<Block> removed, List<Block> added) throws IOException {
+        long indexOffset = channel.size();
+        int indexLength = writeIndex(channel, newBlocks, indexOffset);
+        channel.force(false);
+
+        setBlocks(newBlocks, indexLength);
+        updateTitleIndex(removed, added);
+
+        // Rewrite the file once most of it is taken by old blocks and indexes
+        long garbage = channel.size() - liveBytes;
+        if (garbage > liveBytes && garbage > MIN_GARBAGE_BYTES) {
+            compact();
+        }
+    }
+
+
+    /**
+     * Rewrites the vault without unused space, through a temporary file that is atomically renamed over it.
+     */
+    private void compact() throws IOException {
+        List<String[]> entries = getEntries();
+        Path tempPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+
+        try {
+            writeVault(tempPath, entries);
+            channel.close();
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+
+            // Reopen whichever file is in place now
+            if (!channel.isOpen()) {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+
+        readIndex();
+    }
+
+
+    /**
+     * Writes a complete compressed vault holding the given entries.
+     */
+    private static void writeVault(Path target, List<String[]> entries) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Block> newBlocks = new ArrayList<>();
+            long position = HEADER_SIZE;
+
+            // Blocks first, then the block index pointing to them
+            for (RawBlock raw : encodeBlocks(entries)) {
+                Block block = writeBlock(out, raw, position);
+                newBlocks.add(block);
+                position = block.titlesOffset() + block.titlesLength();
+            }
+
+            writeIndex(out, newBlocks, position);
+            out.force(true);
+        }
+    }
+
+
+    /**
+     * Compresses a block, writes it at a position followed by its title table, and wipes the uncompressed lines.
+     */
+    private static Block writeBlock(FileChannel out, RawBlock raw, long position) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = deflate(raw.bytes());
+        } finally {
+            Arrays.fill(raw.bytes(), (byte) 0);
+        }
+
+        byte[] rawTitles = encodeTitles(raw.titles());
+        byte[] titleTable = deflate(rawTitles);
+        long titlesOffset = position + compressed.length;
+
+        writeFully(out, ByteBuffer.wrap(compressed), position);
+        writeFully(out, ByteBuffer.wrap(titleTable), titlesOffset);
+        return new Block(position, compressed.length, raw.bytes().length, titlesOffset, titleTable.length,
+                rawTitles.length, raw.titles());
+    }
+
+
+    /**
+     * Compresses a block index and writes it at a position, followed by the header pointing to it.
+     * The header is only written after the index has been forced to disk.
+     *
+     * @return The length of the compressed index.
+     */
+    private static int writeIndex(FileChannel out, List<Block> indexBlocks, long position) throws IOException {
+        byte[] rawIndex = encodeIndex(indexBlocks);
+        byte[] index = deflate(rawIndex);
+        writeFully(out, ByteBuffer.wrap(index), position);
+        out.force(false);
+
+        int count = 0;
+        for (Block block : indexBlocks) {
+            count += block.count();
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(indexBlocks.size());
+        header.putLong(position).putInt(index.length).putInt(rawIndex.length);
+        writeFully(out, header.flip(), 0);
+
+        return index.length;
+    }
+
+
+    private static byte[] encodeIndex(List<Block> indexBlocks) {
+        ByteBuffer index = ByteBuffer.allocate(indexBlocks.size() * INDEX_ENTRY_SIZE);
+
+        for (Block block : indexBlocks) {
+            index.putLong(block.offset()).putInt(block.length()).putInt(block.rawLength()).putInt(block.count());
+            index.putLong(block.titlesOffset()).putInt(block.titlesLength()).putInt(block.titlesRawLength());
+        }
+
+        return index.array();
+    }
+
+
+    private static byte[] encodeTitles(List<String> titles) {
+        List<byte[]> encodedTitles = new ArrayList<>(titles.size());
+        int size = 0;
+
+        for (String title : titles) {
+            byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+            encodedTitles.add(bytes);
+            size += Integer.BYTES + bytes.length;
+        }
+
+        ByteBuffer table = ByteBuffer.allocate(size);
+        for (byte[] title : encodedTitles) {
+            table.putInt(title.length).put(title);
+        }
+
+        return table.array();
+    }
+
+
+    /**
+     * Encodes entries as lines of the text format and groups them into blocks of about BLOCK_SIZE bytes.
+     */
+    private static List<RawBlock> encodeBlocks(List<String[]> entries) {
+        List<RawBlock> rawBlocks = new ArrayList<>();
+        List<String[]> blockEntries = new ArrayList<>();
+        int size = 0;
+
+        for (String[] entry : entries) {
+            blockEntries.add(entry);
+            for (String field : entry) {
+                // Close enough for filling blocks, the exact size is taken after encoding
+                size += field.length() + 1;
+            }
+
+            if (size >= BLOCK_SIZE) {
+                rawBlocks.add(encodeBlock(blockEntries));
+                blockEntries.clear();
+                size = 0;
+            }
+        }
+
+        if (!blockEntries.isEmpty()) {
+            rawBlocks.add(encodeBlock(blockEntries));
+        }
+
+        return rawBlocks;
+    }
+
+
+    /**
+     * Encodes entries as the lines of a single block.
+     */
+    private static RawBlock encodeBlock(List<String[]> entries) {
+        StringBuilder lines = new StringBuilder();
+        List<String> titles = new ArrayList<>(entries.size());
+
+        for (String[] entry : entries) {
+            RecordFormat.append(lines, entry).append('\n');
+            titles.add(entry[0]);
+        }
+
+        return new RawBlock(lines.toString().getBytes(StandardCharsets.UTF_8), titles);
+    }
+
+
+    /**
+     * Passes every line of a decompressed block to the visitor, without its line break.
+     */
+    private static void forEachLine(byte[] raw, VaultLoader.LineVisitor visitor) {
+        for (int start = 0; start < raw.length; ) {
+            int end = indexOfNewline(raw, start);
+            visitor.line(raw, start, end);
+            start = end + 1;
+        }
+    }
+
+
+    private static int indexOfNewline(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return bytes.length;
+    }
+
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            byte[] compressed = new byte[Math.max(bytes.length / 2, 64)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+
+            return Arrays.copyOf(compressed, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+
+    /**
+     * Decompresses a Deflate stream of a known length, checking that it has exactly that length.
+     */
+    private byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        if (rawLength < 0 || rawLength > (long) compressed.length * MAX_DEFLATE_RATIO + 64) {
+            throw new IOException("Corrupt length in compressed vault: " + path);
+        }
+
+        Inflater inflater = new Inflater();
+        byte[] raw = new byte[rawLength];
+
+        try {
+            inflater.setInput(compressed);
+
+            int length = 0;
+            while (length < rawLength) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+
+            // Reading past the end also checks the checksum at the end of the stream
+            if (length < rawLength || inflater.inflate(new byte[1]) != 0 || !inflater.finished()) {
+                throw new DataFormatException("Length doesn't match the block index");
+            }
+
+            return raw;
+        } catch (DataFormatException e) {
+            Arrays.fill(raw, (byte) 0);
+            throw new IOException("Corrupt block in compressed vault: " + path, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        // Positions and lengths come from the file, and must not point outside of it
+        if (position < 0 || length < 0 || position > channel.size() - length) {
+            throw new IOException("Corrupt position in compressed vault: " + path);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of compressed vault: " + path);
+            }
+        }
+
+        return buffer.flip();
+    }
+
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.passwordmanager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The CredentialAgent class keeps an unlocked vault open and answers lookups from other processes over
+ * a Unix domain socket, like ssh-agent does for keys. Scripts that need credentials many times then neither
+ * start a JVM nor open and decrypt the vault for every lookup.
+ * <p>
+ * Every connection is handled on its own virtual thread, so thousands of clients can wait on their sockets
+ * without a platform thread each. Lookups go through the cache of the vault, which the VaultWatcher keeps up
+ * to date when other processes change the file.
+ * <p>
+ * Requests and responses are single lines encoded with RecordFormat, so fields can contain commas and line breaks.
+ * A connection may send any number of requests, and may send the next one before reading the previous response.
+ * <pre>
+ * get,title                -> ok,title,username,password
+ * get,title,username       -> ok,username
+ * get,title,password       -> ok,password
+ * search,query[,max]       -> ok,title,title,...
+ * ping                     -> ok
+ * </pre>
+ * An entry that doesn't exist is answered with "notfound", a malformed request with "error,message".
+ * <p>
+ * The socket file is only accessible by its owner. Anyone who can connect to it can read every password
+ * in the vault, so it should be in a directory that is private as well, like the default one.
+ */
+public class CredentialAgent implements AutoCloseable {
+
+    // Maximum number of search results if the request doesn't say
+    private static final int DEFAULT_MAX_RESULTS = 20;
+
+    // Connections waiting to be accepted. Clients trying to connect beyond that fail instead of waiting.
+    private static final int BACKLOG = 4096;
+
+    private final Vault vault;
+    private final Path socketPath;
+    private final ServerSocketChannel server;
+
+    // One virtual thread per connection
+    private final ExecutorService connections = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("credential-agent-connection-", 0).factory());
+
+    // The open connections, closed when the agent is closed
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+
+    private CredentialAgent(Vault vault, Path socketPath, ServerSocketChannel server) {
+        this.vault = vault;
+        this.socketPath = socketPath;
+        this.server = server;
+        this.acceptor = Thread.ofPlatform().name("credential-agent").daemon().unstarted(this::acceptConnections);
+    }
+
+
+    /**
+     * Starts an agent that answers lookups in a vault.
+     *
+     * @param vault      The open vault. The agent doesn't close it.
+     * @param socketPath The path of the socket file. A socket file left behind by an agent that is no longer
+     *                   running is replaced.
+     * @return The running agent.
+     * @throws IOException If the socket can't be created, or another agent is listening on it.
+     */
+    public static CredentialAgent start(Vault vault, Path socketPath) throws IOException {
+        if (Files.exists(socketPath)) {
+            if (isRunning(socketPath)) {
+                throw new IOException("An agent is already listening on " + socketPath);
+            }
+            Files.delete(socketPath);
+        }
+
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socketPath), BACKLOG);
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (IOException | UnsupportedOperationException e) {
+            server.close();
+            Files.deleteIfExists(socketPath);
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+
+        CredentialAgent agent = new CredentialAgent(vault, socketPath, server);
+        agent.acceptor.start();
+        return agent;
+    }
+
+
+    /**
+     * Returns the default path of the socket file: agent.sock in the directory passwordmanager-user in
+     * $XDG_RUNTIME_DIR, or in the temporary directory if that isn't set. The directory is created if necessary,
+     * accessible by its owner only. In a shared temporary directory another user may have created it first,
+     * so it is only used if it is a directory owned by the current user with mode 0700.
+     *
+     * @return The path of the socket file.
+     * @throws IOException If the directory can't be created, or belongs to someone else or is accessible by others.
+     */
+    public static Path defaultSocketPath() throws IOException {
+        String runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+        Path parent = Path.of(runtimeDirectory != null ? runtimeDirectory : System.getProperty("java.io.tmpdir"));
+        Path directory = parent.resolve("passwordmanager-" + System.getProperty("user.name"));
+        Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+
+        try {
+            Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(ownerOnly));
+        } catch (FileAlreadyExistsException e) {
+            // Created before, by this user or not, which is checked below
+        }
+
+        // A symbolic link is not followed, so it is rejected as not being a directory
+        PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+
+        if (!attributes.isDirectory()) {
+            throw new IOException(directory + " must be a directory, not a file or a symbolic link");
+        }
+        if (!attributes.owner().equals(user) || !attributes.permissions().equals(ownerOnly)) {
+            throw new IOException(directory + " must be a directory owned by " + user.getName()
+                    + " with mode 0700, but is owned by " + attributes.owner().getName() + " with mode "
+                    + PosixFilePermissions.toString(attributes.permissions()));
+        }
+
+        return directory.resolve("agent.sock");
+    }
+
+
+    /**
+     * Checks whether an agent is listening on a socket file.
+     */
+    private static boolean isRunning(Path socketPath) {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            return channel.isConnected();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Returns the path of the socket file.
+     */
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+
+    /**
+     * Accepts connections until the agent is closed, and hands each to a virtual thread.
+     */
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                SocketChannel client = server.accept();
+                clients.add(client);
+                connections.execute(() -> serve(client));
+            } catch (AsynchronousCloseException e) {
+                // The agent was closed
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * Answers the requests of one connection until the client disconnects.
+     */
+    private void serve(SocketChannel client) {
+        RecordFormat format = new RecordFormat();
+        StringBuilder response = new StringBuilder();
+
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     Channels.newInputStream(client), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                     Channels.newOutputStream(client), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                response.setLength(0);
+                answer(format.parse(line), response);
+                out.append(response).append('\n');
+
+                // Pipelined requests are answered together with a single write
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The client went away in the middle of a request, or the agent was closed
+            if (!closed) {
+                e.printStackTrace();
+            }
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+
+    /**
+     * Answers a single request.
+     *
+     * @param request  The fields of the request.
+     * @param response The builder to append the encoded response to, without the line break.
+     */
+    private void answer(String[] request, StringBuilder response) {
+        switch (request[0]) {
+            case "get" -> {
+                if (request.length < 2 || request.length > 3) {
+                    RecordFormat.append(response, "error", "get needs a title and optionally a field");
+                    return;
+                }
+
+                String[] entry = vault.getEntryDetails(request[1]);
+                if (entry == null) {
+                    response.append("notfound");
+                } else if (request.length == 2) {
+                    RecordFormat.append(response, "ok", entry[0], entry[1], entry[2]);
+                } else if (request[2].equals("username") || request[2].equals("password")) {
+                    RecordFormat.append(response, "ok", request[2].equals("username") ? entry[1] : entry[2]);
+                } else {
+                    RecordFormat.append(response, "error", "Unknown field " + request[2]);
+                }
+            }
+            case "search" -> {
+                if (request.length < 2 || request.length > 3) {
+                    RecordFormat.append(response, "error", "search needs a query and optionally a maximum");
+                    return;
+                }
+
+                int maxResults = DEFAULT_MAX_RESULTS;
+                try {
+                    if (request.length == 3) {
+                        maxResults = Integer.parseInt(request[2]);
+                    }
+                } catch (NumberFormatException e) {
+                    RecordFormat.append(response, "error", "Not a number: " + request[2]);
+                    return;
+                }
+
+                if (maxResults < 0) {
+                    RecordFormat.append(response, "error", "The maximum must not be negative: " + request[2]);
+                    return;
+                }
+
+                List<String> titles = vault.searchEntries(request[1], maxResults, true);
+                response.append("ok");
+                for (String title : titles) {
+                    RecordFormat.append(response.append(','), title);
+                }
+            }
+            case "ping" -> response.append("ok");
+            default -> RecordFormat.append(response, "error", "Unknown request " + request[0]);
+        }
+    }
+
+
+    /**
+     * Stops accepting connections, closes the open ones and removes the socket file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        try {
+            server.close();
+            acceptor.join();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (SocketChannel client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        connections.close();
+
+        try {
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.passwordmanager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The CredentialAgentClient class sends lookups to a running CredentialAgent over its socket.
+ * A client keeps its connection open, so it can send any number of requests. It is not thread-safe,
+ * every thread needs its own.
+ */
+public class CredentialAgentClient implements AutoCloseable {
+
+    private final SocketChannel channel;
+    private final BufferedReader in;
+    private final BufferedWriter out;
+    private final RecordFormat format = new RecordFormat();
+
+
+    /**
+     * Connects to an agent.
+     *
+     * @param socketPath The path of the socket file of the agent.
+     * @throws IOException If no agent is listening on the socket.
+     */
+    public CredentialAgentClient(Path socketPath) throws IOException {
+        channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+        in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Looks up an entry by its title.
+     *
+     * @param title The title of the entry.
+     * @return The title, username and password of the entry, or null if there is none.
+     * @throws IOException If the agent can't be reached or rejects the request.
+     */
+    public String[] getEntryDetails(String title) throws IOException {
+        String[] response = send("get", title);
+        return response == null ? null : Arrays.copyOfRange(response, 1, response.length);
+    }
+
+
+    /**
+     * Looks up a single field of an entry.
+     *
+     * @param title The title of the entry.
+     * @param field "username" or "password".
+     * @return The value of the field, or null if there is no such entry.
+     * @throws IOException If the agent can't be reached or rejects the request.
+     */
+    public String getField(String title, String field) throws IOException {
+        String[] response = send("get", title, field);
+        return response == null ? null : response[1];
+    }
+
+
+    /**
+     * Finds the entries whose title or username contains the query, allowing for typos, best match first.
+     *
+     * @param query      The text to search for.
+     * @param maxResults The maximum number of results.
+     * @return The titles of the matching entries.
+     * @throws IOException If the agent can't be reached or rejects the request.
+     */
+    public List<String> searchEntries(String query, int maxResults) throws IOException {
+        String[] response = send("search", query, Integer.toString(maxResults));
+        return Arrays.asList(response).subList(1, response.length);
+    }
+
+
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @return The fields of the response, starting with "ok", or null if the entry was not found.
+     * @throws IOException If the agent can't be reached or answers with an error.
+     */
+    private String[] send(String... request) throws IOException {
+        out.write(RecordFormat.encode(request));
+        out.write('\n');
+        out.flush();
+
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("The agent closed the connection");
+        }
+
+        String[] response = format.parse(line);
+        return switch (response[0]) {
+            case "ok" -> response;
+            case "notfound" -> null;
+            default -> throw new IOException(response.length > 1 ? response[1] : line);
+        };
+    }
+
+
+    /**
+     * Closes the connection.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.passwordmanager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CsvReader class reads records from CSV text one at a time, as exported by other password managers.
+ * Fields may be quoted with double quotes, in which case they can contain commas, line breaks and
+ * doubled double quotes (""), which stand for a single one. Records end at "\n", "\r\n" or "\r" outside quotes.
+ * <p>
+ * Characters are read through a fixed-size buffer, so memory use doesn't depend on the size of the input.
+ */
+public class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    // The field being read, and the fields of the record read so far. Reused for every record.
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<>();
+
+    // Number of records read so far
+    private long recordCount;
+
+
+    /**
+     * Creates a reader for CSV text.
+     *
+     * @param reader The source of the text. It is closed when this reader is closed.
+     */
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+
+    /**
+     * Reads the next record.
+     * Empty lines are skipped.
+     *
+     * @return The fields of the record, or null at the end of the input.
+     * @throws IOException If the input can't be read or ends inside a quoted field.
+     */
+    public String[] next() throws IOException {
+        while (true) {
+            fields.clear();
+            field.setLength(0);
+
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+
+            boolean quoted = false;
+            boolean fieldStarted = false;
+
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IOException("Unterminated quoted field in record " + (recordCount + 1));
+                    } else if (c == '"') {
+                        // A doubled quote stands for a quote, a single one ends the quoted part
+                        if (peek() == '"') {
+                            read();
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    fieldStarted = true;
+                } else if (c == '\n' || c == '\r' || c < 0) {
+                    if (c == '\r' && peek() == '\n') {
+                        read();
+                    }
+                    break;
+                } else if (c == '"' && field.isEmpty()) {
+                    quoted = true;
+                    fieldStarted = true;
+                } else {
+                    field.append((char) c);
+                    fieldStarted = true;
+                }
+
+                c = read();
+            }
+
+            // Skip empty lines, but not records of empty fields
+            if (!fieldStarted && field.isEmpty()) {
+                continue;
+            }
+
+            fields.add(field.toString());
+            recordCount++;
+            return fields.toArray(new String[0]);
+        }
+    }
+
+
+    /**
+     * Returns the number of records read so far.
+     *
+     * @return The number of records.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+
+    private boolean fill() throws IOException {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,404 @@
+package com.example.passwordmanager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * The CsvTransfer class imports CSV exports of other password managers into the open database file,
+ * and exports the open database file as CSV.
+ * <p>
+ * An import streams the file through a bounded pipeline of three stages, each on its own thread:
+ * <pre>
+ * parse (CsvReader) -> normalize and dedupe by title -> write batches with Vault.savePasswordEntries
+ * </pre>
+ * The stages are connected by bounded queues, so a slow stage holds back the ones before it and memory stays flat
+ * however large the input is. Only the set of titles seen so far grows with it, to drop duplicates.
+ * <p>
+ * The columns are recognized by the header row of the export (for example "name", "login_username" and
+ * "login_password" of Bitwarden, or "title", "username" and "password"). Without a recognized header the
+ * columns are taken as title, username and password.
+ */
+public class CsvTransfer {
+
+    // Number of entries written to the database at once
+    private static final int BATCH_SIZE = 1000;
+
+    // Capacity of the queues between the stages, in records and in batches
+    private static final int RECORD_QUEUE_CAPACITY = 4096;
+    private static final int BATCH_QUEUE_CAPACITY = 16;
+
+    // Marks the end of the records and of the batches
+    private static final String[] END_OF_RECORDS = new String[0];
+    private static final List<String[]> END_OF_BATCHES = new ArrayList<>();
+
+    // Header names of the title, username, password and URL columns used by common password managers
+    private static final Set<String> TITLE_COLUMNS = Set.of("title", "name", "account", "item name");
+    private static final Set<String> USERNAME_COLUMNS = Set.of("username", "login_username", "login name", "login",
+            "user name", "email");
+    private static final Set<String> PASSWORD_COLUMNS = Set.of("password", "login_password");
+    private static final Set<String> URL_COLUMNS = Set.of("url", "login_uri", "web site", "website");
+
+
+    /**
+     * Progress of an import or export.
+     *
+     * @param bytesRead    The number of bytes of the source read so far (imports), or 0.
+     * @param totalBytes   The size of the source (imports), or 0.
+     * @param rows         The number of rows read (imports) or written (exports) so far.
+     * @param imported     The number of entries added to the database so far.
+     * @param duplicates   The number of rows skipped because an entry with the same title exists.
+     * @param rejected     The number of rows skipped because they lack a title or password.
+     * @param elapsedNanos The time since the transfer started.
+     */
+    public record Progress(long bytesRead, long totalBytes, long rows, long imported, long duplicates, long rejected,
+                           long elapsedNanos) {
+
+        /**
+         * Returns the number of rows processed per second.
+         *
+         * @return The throughput of the transfer.
+         */
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+        }
+
+
+        /**
+         * Returns the share of the source processed so far, between 0 and 1.
+         *
+         * @return The progress of an import, or -1 if the size of the source is unknown.
+         */
+        public double fraction() {
+            return totalBytes <= 0 ? -1 : Math.min(1.0, (double) bytesRead / totalBytes);
+        }
+    }
+
+
+    /**
+     * Imports a CSV file into the active vault. The import keeps writing to that vault if another one
+     * becomes the active vault while it runs.
+     * Rows without a title or password are rejected, and rows whose title is already in the database
+     * or earlier in the file are skipped. The progress is reported after every write.
+     *
+     * @param source   The CSV file to import.
+     * @param progress Receives the progress of the import. Called on the calling thread.
+     * @return The final progress, with the number of imported, duplicate and rejected rows.
+     * @throws IOException          If no file is open, or the file can't be read or isn't valid CSV.
+     * @throws InterruptedException If the calling thread is interrupted, which stops the import.
+     */
+    public static Progress importCsv(Path source, Consumer<Progress> progress)
+            throws IOException, InterruptedException {
+        Vault vault = requireActiveVault();
+        long startNanos = System.nanoTime();
+        long totalBytes = Files.size(source);
+        CountingInputStream input = new CountingInputStream(Files.newInputStream(source));
+
+        BlockingQueue<String[]> records = new ArrayBlockingQueue<>(RECORD_QUEUE_CAPACITY);
+        BlockingQueue<List<String[]>> batches = new ArrayBlockingQueue<>(BATCH_QUEUE_CAPACITY);
+        Normalizer normalizer = new Normalizer(new HashSet<>(vault.getEntryTitles()));
+
+        ExecutorService stages = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "csv-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (CsvReader reader = new CsvReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            Future<?> parser = stages.submit(() -> {
+                try {
+                    parse(reader, records);
+                } finally {
+                    records.put(END_OF_RECORDS);
+                }
+                return null;
+            });
+            Future<?> batcher = stages.submit(() -> {
+                try {
+                    normalizer.run(records, batches);
+                } finally {
+                    batches.put(END_OF_BATCHES);
+                }
+                return null;
+            });
+
+            // Write the batches on the calling thread, which also reports the progress
+            long imported = 0;
+            List<List<String[]>> queued = new ArrayList<>();
+            boolean done = false;
+
+            while (!done) {
+                // Write the batches queued while the previous write ran together. When writes get slower, as they do
+                // for binary vaults that rewrite their title table on every write, they also get fewer.
+                queued.add(batches.take());
+                batches.drainTo(queued);
+                done = queued.remove(END_OF_BATCHES);
+
+                List<String[]> batch = new ArrayList<>();
+                for (List<String[]> next : queued) {
+                    batch.addAll(next);
+                }
+                queued.clear();
+
+                vault.savePasswordEntries(batch);
+                imported += batch.size();
+                progress.accept(new Progress(input.count, totalBytes, normalizer.rows, imported,
+                        normalizer.duplicates, normalizer.rejected, System.nanoTime() - startNanos));
+            }
+
+            // Rethrow a failure of the parser or the normalizer
+            try {
+                parser.get();
+                batcher.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException(e.getCause());
+            }
+
+            Progress result = new Progress(input.count, totalBytes, normalizer.rows, imported,
+                    normalizer.duplicates, normalizer.rejected, System.nanoTime() - startNanos);
+            progress.accept(result);
+            return result;
+        } finally {
+            // Stop the stages if the import failed or was interrupted, and make room for their end markers
+            stages.shutdownNow();
+            records.clear();
+            batches.clear();
+        }
+    }
+
+
+    /**
+     * Exports all entries of the active vault to a CSV file with a "title,username,password" header.
+     * The progress is reported every BATCH_SIZE rows.
+     *
+     * @param target   The CSV file to write.
+     * @param progress Receives the progress of the export. Called on the calling thread.
+     * @return The final progress, with the number of exported rows.
+     * @throws IOException If no file is open or the file can't be written.
+     */
+    public static Progress exportCsv(Path target, Consumer<Progress> progress) throws IOException {
+        long startNanos = System.nanoTime();
+        List<String[]> entries = requireActiveVault().getPasswordEntries();
+        long rows = 0;
+
+        try (CsvWriter writer = new CsvWriter(Files.newBufferedWriter(target, StandardCharsets.UTF_8))) {
+            writer.write("title", "username", "password");
+
+            for (String[] entry : entries) {
+                writer.write(entry);
+
+                if (++rows % BATCH_SIZE == 0) {
+                    progress.accept(new Progress(0, 0, rows, 0, 0, 0, System.nanoTime() - startNanos));
+                }
+            }
+        }
+
+        Progress result = new Progress(0, 0, rows, 0, 0, 0, System.nanoTime() - startNanos);
+        progress.accept(result);
+        return result;
+    }
+
+
+    /**
+     * Returns the active vault.
+     *
+     * @throws IOException If no file is open.
+     */
+    private static Vault requireActiveVault() throws IOException {
+        Vault vault = PasswordDatabase.getActiveVault();
+        if (vault == null) {
+            throw new IOException("No database file is open");
+        }
+        return vault;
+    }
+
+
+    /**
+     * First stage of an import: reads the records of the file into the queue.
+     */
+    private static void parse(CsvReader reader, BlockingQueue<String[]> records)
+            throws IOException, InterruptedException {
+        String[] record;
+
+        while ((record = reader.next()) != null) {
+            records.put(record);
+        }
+    }
+
+
+    /**
+     * Second stage of an import: maps the columns of the records to entries, drops invalid and duplicate ones,
+     * and groups the rest into batches.
+     */
+    private static class Normalizer {
+
+        // Titles in the database or imported so far
+        private final Set<String> titles;
+
+        // Positions of the columns, or -1 if the export doesn't have them
+        private int titleColumn = 0;
+        private int usernameColumn = 1;
+        private int passwordColumn = 2;
+        private int urlColumn = -1;
+
+        // Counters read by the writing thread for progress reports. Rows don't include the header.
+        volatile long rows;
+        volatile long duplicates;
+        volatile long rejected;
+
+
+        Normalizer(Set<String> titles) {
+            this.titles = titles;
+        }
+
+
+        void run(BlockingQueue<String[]> records, BlockingQueue<List<String[]>> batches)
+                throws InterruptedException {
+            List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+            boolean first = true;
+            String[] record;
+
+            while ((record = records.take()) != END_OF_RECORDS) {
+                // The first row is skipped if it is a header
+                if (first) {
+                    first = false;
+                    if (readHeader(record)) {
+                        continue;
+                    }
+                }
+
+                rows++;
+                String[] entry = normalize(record);
+                if (entry == null) {
+                    rejected++;
+                } else if (!titles.add(entry[0])) {
+                    duplicates++;
+                } else {
+                    batch.add(entry);
+                    if (batch.size() == BATCH_SIZE) {
+                        batches.put(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                batches.put(batch);
+            }
+        }
+
+
+        /**
+         * Looks for the title, username and password columns in the first row.
+         *
+         * @return True if the row is a header.
+         */
+        private boolean readHeader(String[] record) {
+            int title = -1;
+            int username = -1;
+            int password = -1;
+            int url = -1;
+
+            for (int i = 0; i < record.length; i++) {
+                String name = record[i].strip().toLowerCase(Locale.ROOT);
+
+                if (title < 0 && TITLE_COLUMNS.contains(name)) {
+                    title = i;
+                } else if (username < 0 && USERNAME_COLUMNS.contains(name)) {
+                    username = i;
+                } else if (password < 0 && PASSWORD_COLUMNS.contains(name)) {
+                    password = i;
+                } else if (url < 0 && URL_COLUMNS.contains(name)) {
+                    url = i;
+                }
+            }
+
+            // A header needs at least a password column, and a title or URL column to name the entries
+            if (password < 0 || (title < 0 && url < 0)) {
+                return false;
+            }
+
+            titleColumn = title;
+            usernameColumn = username;
+            passwordColumn = password;
+            urlColumn = url;
+            return true;
+        }
+
+
+        /**
+         * Maps a record to an entry, using the URL as the title if the record has none.
+         *
+         * @return The entry, or null if it has no title or password.
+         */
+        private String[] normalize(String[] record) {
+            String title = column(record, titleColumn).strip();
+            if (title.isEmpty()) {
+                title = column(record, urlColumn).strip();
+            }
+            String username = column(record, usernameColumn).strip();
+            String password = column(record, passwordColumn);
+
+            if (title.isEmpty() || password.isEmpty()) {
+                return null;
+            }
+
+            return new String[]{title, username, password};
+        }
+
+
+        private static String column(String[] record, int column) {
+            return column >= 0 && column < record.length ? record[column] : "";
+        }
+    }
+
+
+    /**
+     * Counts the bytes read from a stream, for progress reports.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.passwordmanager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The CsvWriter class writes records as CSV text that CsvReader and other password managers can read back.
+ * Fields containing commas, double quotes or line breaks are quoted, and their double quotes doubled.
+ * Records end with "\n".
+ */
+public class CsvWriter implements Closeable {
+
+    private final Writer writer;
+
+
+    /**
+     * Creates a writer for CSV text.
+     *
+     * @param writer The destination of the text. It is closed when this writer is closed.
+     */
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+
+    /**
+     * Writes a record.
+     *
+     * @param fields The fields of the record.
+     * @throws IOException If the record can't be written.
+     */
+    public void write(String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeField(fields[i]);
+        }
+        writer.write('\n');
+    }
+
+
+    private void writeField(String field) throws IOException {
+        boolean needsQuotes = false;
+
+        for (int i = 0; i < field.length() && !needsQuotes; i++) {
+            char c = field.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!needsQuotes) {
+            writer.write(field);
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.passwordmanager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts durations in buckets whose width grows with the duration, like HdrHistogram:
+ * every power of two is split into 32 buckets, so a percentile is accurate to about 3% from nanoseconds
+ * to hours, in a fixed 10 KB of counters. Recording is a single atomic increment and never allocates,
+ * so any number of threads can record into the same histogram.
+ * <p>
+ * Percentiles are reported as the upper end of their bucket, so they are never lower than the true value.
+ * Reading while other threads record gives a snapshot that may be off by the values recorded meanwhile.
+ */
+public class LatencyHistogram {
+
+    // Every power of two is split into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Longer durations (about 4.9 hours in nanoseconds) are counted in the last bucket
+    private static final long MAX_VALUE = (1L << 44) - 1;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(bucketOf(MAX_VALUE) + 1);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+
+    /**
+     * Creates an empty histogram. Histograms are usually created through Metrics.histogram.
+     *
+     * @param name The name the histogram is reported under.
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+
+    /**
+     * Returns the name the histogram is reported under.
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds. Negative durations are counted as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+
+    /**
+     * Records the time since a start time taken with Metrics.start, if metrics are enabled.
+     *
+     * @param startNanos The value returned by Metrics.start.
+     */
+    public void recordSince(long startNanos) {
+        if (Metrics.isEnabled() && startNanos != 0) {
+            record(System.nanoTime() - startNanos);
+        }
+    }
+
+
+    /**
+     * Returns the number of recorded durations.
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+
+    /**
+     * Returns the mean of the recorded durations in nanoseconds, or 0 if there are none.
+     */
+    public double getMean() {
+        long count = total.sum();
+        return count == 0 ? 0 : sum.sum() / (double) count;
+    }
+
+
+    /**
+     * Returns the longest recorded duration in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+
+    /**
+     * Returns the duration that the given fraction of the recorded durations don't exceed.
+     *
+     * @param fraction The fraction, for example 0.99 for the 99th percentile.
+     * @return The upper end of the bucket holding the percentile in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double fraction) {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // The exact maximum is known, and is tighter than the end of its bucket
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+
+    /**
+     * Clears all recorded durations.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.reset();
+    }
+
+
+    /**
+     * Returns the bucket of a duration. Durations below 32 have a bucket each, above that every power of two
+     * has 32 buckets.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+
+    /**
+     * Returns the largest duration counted in a bucket.
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
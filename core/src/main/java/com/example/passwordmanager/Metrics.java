@@ -0,0 +1,170 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Metrics class is the registry of the counters and latency histograms of this process, for finding out
+ * why the vault is slow on a user's machine. The same operations are also recorded as JFR events (see VaultEvents),
+ * which give the individual slow operations; the metrics give the totals and the percentiles without a recording.
+ * <p>
+ * Metrics are disabled by default, and then cost a volatile read per operation: Metrics.start returns 0 and
+ * recordSince does nothing. They are enabled with the system property passwordmanager.metrics=true,
+ * or at runtime with setEnabled. If the system property passwordmanager.metrics.file is set, the metrics are
+ * written to that file when the process exits.
+ * <p>
+ * Counters and histograms are created on first use and kept for the lifetime of the process. Callers on hot
+ * paths should look them up once and keep them in a static field.
+ */
+public class Metrics {
+
+    private static volatile boolean enabled = Boolean.getBoolean("passwordmanager.metrics");
+
+    // Sorted by name, so related metrics are reported together
+    private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    static {
+        String file = System.getProperty("passwordmanager.metrics.file");
+        if (file != null && !file.isEmpty()) {
+            enabled = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    writeTo(Path.of(file));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "metrics-dump"));
+        }
+    }
+
+
+    /**
+     * Checks whether metrics are recorded.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Turns recording of metrics on or off. The values recorded so far are kept.
+     *
+     * @param enable True to record metrics.
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+
+    /**
+     * Returns the counter with the given name, creating it if necessary.
+     *
+     * @param name The name of the counter, for example "vault.lookup.misses".
+     * @return The counter.
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+
+    /**
+     * Increments a counter if metrics are enabled.
+     *
+     * @param counter The counter returned by counter.
+     */
+    public static void increment(LongAdder counter) {
+        if (enabled) {
+            counter.increment();
+        }
+    }
+
+
+    /**
+     * Adds to a counter if metrics are enabled.
+     *
+     * @param counter The counter returned by counter.
+     * @param amount  The amount to add.
+     */
+    public static void add(LongAdder counter, long amount) {
+        if (enabled) {
+            counter.add(amount);
+        }
+    }
+
+
+    /**
+     * Returns the latency histogram with the given name, creating it if necessary.
+     *
+     * @param name The name of the histogram, for example "vault.lookup".
+     * @return The histogram.
+     */
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+
+    /**
+     * Returns the start time of an operation to pass to LatencyHistogram.recordSince.
+     *
+     * @return The current value of System.nanoTime, or 0 if metrics are disabled.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+
+    /**
+     * Clears all counters and histograms.
+     */
+    public static void reset() {
+        counters.values().forEach(LongAdder::reset);
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+
+    /**
+     * Formats all counters and histograms as a table. Histograms that recorded nothing are left out.
+     *
+     * @return The table, one metric per line.
+     */
+    public static String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append("# Metrics ").append(enabled ? "enabled" : "disabled").append('\n');
+
+        text.append(String.format("%-36s %12s%n", "Counter", "Value"));
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            text.append(String.format("%-36s %12d%n", counter.getKey(), counter.getValue().sum()));
+        }
+
+        text.append('\n');
+        text.append(String.format("%-36s %10s %10s %10s %10s %10s %10s%n",
+                "Histogram (us)", "Count", "Mean", "P50", "P99", "P99.9", "Max"));
+        for (LatencyHistogram histogram : histograms.values()) {
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            text.append(String.format("%-36s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    histogram.getName(), histogram.getCount(), histogram.getMean() / 1e3,
+                    histogram.getPercentile(0.5) / 1e3, histogram.getPercentile(0.99) / 1e3,
+                    histogram.getPercentile(0.999) / 1e3, histogram.getMax() / 1e3));
+        }
+
+        return text.toString();
+    }
+
+
+    /**
+     * Writes the table of all counters and histograms to a file.
+     *
+     * @param file The file to write, replaced if it exists.
+     * @throws IOException If the file can't be written.
+     */
+    public static void writeTo(Path file) throws IOException {
+        Files.writeString(file, dump());
+    }
+}
@@ -0,0 +1,543 @@
+package com.example.passwordmanager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * The PasswordAudit class finds passwords that are used by more than one entry of a vault, and passwords that
+ * only differ from another one by a counter, like "Summer2023!" and "Summer2024!".
+ * <p>
+ * Every password is reduced to two 64 bit keys: a digest of the password, and a digest of its base, which is the
+ * password without its last run of digits. The digests are salted with a random salt of the audit, so the keys
+ * kept in memory can't be looked up in a list of known password hashes. Hashing is the expensive part of an audit,
+ * so it runs in parallel. A single pass then counts the keys in hash tables:
+ * <ul>
+ *     <li>an entry is REUSED if another entry has the same password key,</li>
+ *     <li>an entry is SIMILAR if another entry has the same base key but a different password key.</li>
+ * </ul>
+ * Two different passwords get the same key with a probability of about 1 in 10^7 for a million entries.
+ * <p>
+ * The keys are kept in file order, like the titles in the ListView. After the first audit only the entries named by
+ * the changes of the vault are hashed again, so the flags stay current while entries are edited. The audit runs
+ * on its own thread, and its listeners are notified there whenever the flags may have changed.
+ */
+public class PasswordAudit {
+
+    /**
+     * What an audit found for an entry.
+     */
+    public enum Flag {
+        NONE,
+
+        // Another entry has the same password
+        REUSED,
+
+        // Another entry has the same password apart from a counter
+        SIMILAR
+    }
+
+    // Bases shorter than this are too common to mean anything, so they are not compared
+    private static final int MIN_BASE_LENGTH = 4;
+
+    // Key of empty passwords and of bases that are too short, which are never flagged
+    private static final long NO_KEY = 0;
+
+    // Thread running the audits of all vaults, one change at a time and in the order the changes were made
+    private static final ExecutorService auditor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "password-audit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Digest for hashing passwords, one per thread since digests are not thread-safe
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Vault vault;
+    private final byte[] salt = new byte[16];
+    private final Consumer<VaultChange> changeListener = this::changed;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // Password and base keys of the entries in file order, and how often every key occurs. Guarded by this.
+    private long[] passwordKeys = new long[0];
+    private long[] baseKeys = new long[0];
+    private int size;
+    private KeyCounts passwordCounts = new KeyCounts(0);
+    private KeyCounts baseCounts = new KeyCounts(0);
+
+    // Number of changes seen, and the change after which the keys were last read from the vault.
+    // Changes up to that one are already part of the keys.
+    private long changeCount;
+    private long auditedChange = -1;
+    private long lastReload;
+
+    private volatile boolean closed;
+
+
+    /**
+     * Creates an audit of a vault. Nothing is audited before start is called.
+     *
+     * @param vault The vault to audit.
+     */
+    public PasswordAudit(Vault vault) {
+        this.vault = vault;
+        new SecureRandom().nextBytes(salt);
+    }
+
+
+    /**
+     * Audits all entries of the vault in the background and keeps the result current as entries change.
+     */
+    public void start() {
+        vault.addChangeListener(changeListener);
+        changed(new VaultChange(VaultChange.Type.RELOADED, -1, null));
+    }
+
+
+    /**
+     * Stops following the changes of the vault and releases the keys.
+     */
+    public void close() {
+        closed = true;
+        vault.removeChangeListener(changeListener);
+
+        synchronized (this) {
+            passwordKeys = new long[0];
+            baseKeys = new long[0];
+            size = 0;
+            passwordCounts = new KeyCounts(0);
+            baseCounts = new KeyCounts(0);
+        }
+    }
+
+
+    /**
+     * Returns the audited vault.
+     *
+     * @return The vault.
+     */
+    public Vault getVault() {
+        return vault;
+    }
+
+
+    /**
+     * Registers a listener that is notified on the audit thread whenever flags may have changed.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+
+    /**
+     * Checks whether the first audit of the vault has completed.
+     *
+     * @return True once flags are available.
+     */
+    public synchronized boolean isReady() {
+        return auditedChange >= 0;
+    }
+
+
+    /**
+     * Returns what the audit found for an entry.
+     * The audit may lag shortly behind the vault, in which case the flag may be that of a neighboring entry
+     * until the listeners are notified.
+     *
+     * @param index The position of the entry in file order.
+     * @return The flag of the entry, NONE if the index is out of range.
+     */
+    public synchronized Flag getFlag(int index) {
+        if (index < 0 || index >= size) {
+            return Flag.NONE;
+        }
+
+        long passwordKey = passwordKeys[index];
+        if (passwordKey == NO_KEY) {
+            return Flag.NONE;
+        }
+
+        int sameCount = passwordCounts.get(passwordKey);
+        if (sameCount > 1) {
+            return Flag.REUSED;
+        }
+
+        // The base is derived from the password, so every entry with the same password also has the same base
+        long baseKey = baseKeys[index];
+        if (baseKey != NO_KEY && baseCounts.get(baseKey) > sameCount) {
+            return Flag.SIMILAR;
+        }
+
+        return Flag.NONE;
+    }
+
+
+    /**
+     * Returns the positions of all flagged entries.
+     *
+     * @param flag REUSED or SIMILAR.
+     * @return The positions in file order.
+     */
+    public synchronized List<Integer> getFlaggedIndexes(Flag flag) {
+        List<Integer> indexes = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            if (getFlag(i) == flag) {
+                indexes.add(i);
+            }
+        }
+
+        return indexes;
+    }
+
+
+    /**
+     * Audits all entries of the vault now, on the calling thread.
+     * For tools and benchmarks that audit a vault once, without calling start.
+     */
+    public void auditNow() {
+        scan();
+    }
+
+
+    /**
+     * Queues a change of the vault for the audit thread. Called while the vault holds its write lock,
+     * so changes are numbered in the order they were made.
+     */
+    private synchronized void changed(VaultChange change) {
+        if (closed) {
+            return;
+        }
+
+        long number = ++changeCount;
+        if (change.type() == VaultChange.Type.RELOADED) {
+            lastReload = number;
+        }
+
+        auditor.execute(() -> apply(change, number));
+    }
+
+
+    /**
+     * Applies a change on the audit thread, then notifies the listeners.
+     */
+    private void apply(VaultChange change, long number) {
+        if (closed) {
+            return;
+        }
+
+        try {
+            synchronized (this) {
+                // Skip changes the keys already include, and reloads followed by another one
+                if (number <= auditedChange || number < lastReload) {
+                    return;
+                }
+            }
+
+            if (change.type() == VaultChange.Type.RELOADED || !applyEntryChange(change, number)) {
+                scan();
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+
+    /**
+     * Updates the keys for a single added, updated or removed entry.
+     * The password is read from the vault now, so it may already be that of a later change of the same entry,
+     * which then only hashes the same password again.
+     *
+     * @return False if the keys are out of sync with the vault and it must be audited again.
+     */
+    private boolean applyEntryChange(VaultChange change, long number) {
+        long[] keys = null;
+        if (change.type() != VaultChange.Type.REMOVED) {
+            String[] entry = vault.getEntryDetails(change.title());
+            keys = keys(entry != null && entry.length > 2 ? entry[2] : null);
+        }
+
+        synchronized (this) {
+            int index = change.index();
+            int limit = change.type() == VaultChange.Type.ADDED ? size : size - 1;
+            if (index < 0 || index > limit) {
+                return false;
+            }
+
+            switch (change.type()) {
+                case ADDED -> {
+                    ensureCapacity(size + 1);
+                    System.arraycopy(passwordKeys, index, passwordKeys, index + 1, size - index);
+                    System.arraycopy(baseKeys, index, baseKeys, index + 1, size - index);
+                    size++;
+                    setKeys(index, keys);
+                }
+                case UPDATED -> {
+                    countKeys(index, -1);
+                    setKeys(index, keys);
+                }
+                case REMOVED -> {
+                    countKeys(index, -1);
+                    System.arraycopy(passwordKeys, index + 1, passwordKeys, index, size - index - 1);
+                    System.arraycopy(baseKeys, index + 1, baseKeys, index, size - index - 1);
+                    size--;
+                }
+                default -> {
+                    return false;
+                }
+            }
+
+            auditedChange = number;
+            return true;
+        }
+    }
+
+
+    /**
+     * Reads all passwords of the vault, hashes them in parallel and counts the keys.
+     * The vault fires its changes while holding its write lock, and calls the visitor while holding its read lock,
+     * so the number of changes seen during the visit tells exactly which queued changes the keys already include.
+     */
+    private void scan() {
+        List<String> passwords = new ArrayList<>();
+        long[] readAt = {-1};
+
+        while (readAt[0] < 0) {
+            long before = currentChange();
+            vault.forEachEntry(RecordFormat.PASSWORD, fields -> {
+                if (readAt[0] < 0) {
+                    readAt[0] = currentChange();
+                }
+                passwords.add(fields[2]);
+            });
+
+            // Without entries the visitor is never called, so check that no entry was added meanwhile
+            if (readAt[0] < 0 && currentChange() == before) {
+                readAt[0] = before;
+            }
+        }
+
+        // Hashing is the expensive part, so every entry is hashed on its own
+        int count = passwords.size();
+        long[] newPasswordKeys = new long[count];
+        long[] newBaseKeys = new long[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            long[] keys = keys(passwords.get(i));
+            newPasswordKeys[i] = keys[0];
+            newBaseKeys[i] = keys[1];
+        });
+
+        // Count the keys in a single pass
+        KeyCounts newPasswordCounts = new KeyCounts(count);
+        KeyCounts newBaseCounts = new KeyCounts(count);
+        for (int i = 0; i < count; i++) {
+            newPasswordCounts.add(newPasswordKeys[i], 1);
+            newBaseCounts.add(newBaseKeys[i], 1);
+        }
+
+        synchronized (this) {
+            passwordKeys = newPasswordKeys;
+            baseKeys = newBaseKeys;
+            size = count;
+            passwordCounts = newPasswordCounts;
+            baseCounts = newBaseCounts;
+            auditedChange = readAt[0];
+        }
+    }
+
+
+    /**
+     * Returns the number of changes seen so far.
+     */
+    private synchronized long currentChange() {
+        return changeCount;
+    }
+
+
+    /**
+     * Sets the keys of an entry and counts them.
+     */
+    private void setKeys(int index, long[] keys) {
+        passwordKeys[index] = keys[0];
+        baseKeys[index] = keys[1];
+        countKeys(index, 1);
+    }
+
+
+    /**
+     * Adds the keys of an entry to the counts, or removes them.
+     */
+    private void countKeys(int index, int delta) {
+        passwordCounts.add(passwordKeys[index], delta);
+        baseCounts.add(baseKeys[index], delta);
+    }
+
+
+    /**
+     * Grows the key arrays to hold at least the given number of entries.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > passwordKeys.length) {
+            int newLength = Math.max(capacity, passwordKeys.length + (passwordKeys.length >> 1) + 16);
+            passwordKeys = Arrays.copyOf(passwordKeys, newLength);
+            baseKeys = Arrays.copyOf(baseKeys, newLength);
+        }
+    }
+
+
+    /**
+     * Returns the password key and the base key of a password.
+     */
+    private long[] keys(String password) {
+        if (password == null || password.isEmpty()) {
+            return new long[]{NO_KEY, NO_KEY};
+        }
+
+        String base = base(password);
+        return new long[]{key(password), base.length() >= MIN_BASE_LENGTH ? key(base) : NO_KEY};
+    }
+
+
+    /**
+     * Returns the password without its last run of digits, which is where people put counters.
+     *
+     * @param password The password.
+     * @return The base of the password, or the password itself if it has no digits.
+     */
+    static String base(String password) {
+        int end = password.length();
+        while (end > 0 && !Character.isDigit(password.charAt(end - 1))) {
+            end--;
+        }
+
+        int start = end;
+        while (start > 0 && Character.isDigit(password.charAt(start - 1))) {
+            start--;
+        }
+
+        return start == end ? password : password.substring(0, start) + password.substring(end);
+    }
+
+
+    /**
+     * Returns the first 64 bits of the salted SHA-256 digest of a string, never NO_KEY.
+     */
+    private long key(String value) {
+        MessageDigest digest = sha256.get();
+        digest.update(salt);
+        byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            key = key << 8 | (hash[i] & 0xff);
+        }
+
+        return key == NO_KEY ? 1 : key;
+    }
+
+
+    /**
+     * An open addressing hash table counting how often every key occurs, without boxing.
+     * Keys whose count drops to zero stay in the table, so entries edited back and forth don't fill it with
+     * tombstones. NO_KEY is never counted.
+     */
+    private static final class KeyCounts {
+
+        private long[] keys;
+        private int[] counts;
+        private int used;
+
+
+        KeyCounts(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            keys = new long[capacity];
+            counts = new int[capacity];
+        }
+
+
+        /**
+         * Returns how often a key occurs.
+         */
+        int get(long key) {
+            int slot = slot(key);
+            return keys[slot] == key ? counts[slot] : 0;
+        }
+
+
+        /**
+         * Changes the count of a key.
+         */
+        void add(long key, int delta) {
+            if (key == NO_KEY) {
+                return;
+            }
+
+            int slot = slot(key);
+            if (keys[slot] != key) {
+                keys[slot] = key;
+                if (++used * 2 > keys.length) {
+                    counts[slot] = delta;
+                    grow();
+                    return;
+                }
+            }
+            counts[slot] += delta;
+        }
+
+
+        /**
+         * Returns the slot holding a key, or the empty slot where it belongs.
+         */
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key ^ key >>> 32) & mask;
+
+            while (keys[slot] != key && keys[slot] != NO_KEY) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+
+        /**
+         * Doubles the table.
+         */
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldCounts.length * 2];
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != NO_KEY) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The PasswordDatabase class provides methods for reading and writing password entries to a file.
+ * <p>
+ * Any number of database files can be open at the same time, each as its own Vault handle.
+ * One of them is the active vault, which the static entry methods of this class work on. Switching the active vault
+ * doesn't read anything from disk, since every open vault keeps its own cache and indexes.
+ * The entry methods don't lock this class, so reads on the active vault don't block each other.
+ */
+public class PasswordDatabase {
+
+    // Delimiter used to separate fields in the file.
+    static final String DELIMITER = ",";
+
+    // All open vaults in the order they were opened, and the one the entry methods work on, or null
+    private static final List<Vault> openVaults = new CopyOnWriteArrayList<>();
+    private static volatile Vault activeVault;
+
+    // Whether changes are appended to a journal instead of rewriting the whole file
+    private static volatile boolean journalingEnabled = Boolean.getBoolean("passwordmanager.journal");
+
+    // Listeners notified about changes made to the active vault
+    private static final List<Consumer<VaultChange>> changeListeners = new CopyOnWriteArrayList<>();
+
+
+    /**
+     * Retrieves a list of password entries from the file.
+     * The entries are served from the in-memory cache, which is reloaded only if the file has changed.
+     *
+     * @return A list of string arrays, each representing a password entry.
+     */
+    public static List<String[]> getPasswordEntries() {
+        Vault vault = activeVault;
+        return vault != null ? vault.getPasswordEntries() : new ArrayList<>();
+    }
+
+
+    /**
+     * Streams all password entries of the open file through a visitor in file order, without building a list.
+     * See Vault.forEachEntry.
+     *
+     * @param fieldMask The fields to visit, as a combination of RecordFormat.TITLE, USERNAME and PASSWORD.
+     * @param visitor   Called with the fields of every entry.
+     */
+    public static void forEachEntry(int fieldMask, Consumer<String[]> visitor) {
+        Vault vault = activeVault;
+        if (vault != null) {
+            vault.forEachEntry(fieldMask, visitor);
+        }
+    }
+
+
+    /**
+     * Retrieves the titles of all password entries in file order.
+     * For binary vaults this does not read any credentials.
+     *
+     * @return A list of entry titles.
+     */
+    public static List<String> getEntryTitles() {
+        Vault vault = activeVault;
+        return vault != null ? vault.getEntryTitles() : new ArrayList<>();
+    }
+
+
+    /**
+     * Saves a new password entry to the file.
+     * Notifies the change listeners that the entry was added.
+     *
+     * @param entry An array of strings representing the fields of the password entry.
+     */
+    public static void savePasswordEntry(String[] entry) {
+        Vault vault = activeVault;
+        if (vault != null) {
+            vault.savePasswordEntry(entry);
+        }
+    }
+
+
+    /**
+     * Saves a batch of new password entries to the file, for bulk imports.
+     * The change listeners are notified once, with a RELOADED change, instead of once per entry.
+     *
+     * @param entries The entries to add, each as an array of strings representing its fields.
+     */
+    public static void savePasswordEntries(List<String[]> entries) {
+        Vault vault = activeVault;
+        if (vault != null) {
+            vault.savePasswordEntries(entries);
+        }
+    }
+
+
+    /**
+     * Retrieves the details of a specific password entry based on its title.
+     * The lookup goes through the title index of the cache and does not read the file.
+     *
+     * @param entryTitle The title of the entry to retrieve.
+     * @return The details of the entry as a string array, newly decoded for the caller.
+     */
+    public static String[] getEntryDetails(String entryTitle) {
+        Vault vault = activeVault;
+        return vault != null ? vault.getEntryDetails(entryTitle) : null;
+    }
+
+
+    /**
+     * Passes a credential of a password entry to a consumer as characters that are wiped afterwards,
+     * without creating a String.
+     *
+     * @param entryTitle The title of the entry.
+     * @param field      The field, 1 for the username and 2 for the password.
+     * @param consumer   Receives the characters of the field, which it must not keep.
+     * @return True if the entry was found.
+     */
+    public static boolean revealField(String entryTitle, int field, SecretStore.SecretConsumer consumer) {
+        Vault vault = activeVault;
+        return vault != null && vault.revealField(entryTitle, field, consumer);
+    }
+
+
+    /**
+     * Updates an existing password entry in the file.
+     * Notifies the change listeners that the entry was updated.
+     *
+     * @param entryTitle The title of the entry to update.
+     * @param newDetails The new details to set for the entry.
+     */
+    public static void updatePasswordEntry(String entryTitle, String[] newDetails) {
+        Vault vault = activeVault;
+        if (vault != null) {
+            vault.updatePasswordEntry(entryTitle, newDetails);
+        }
+    }
+
+
+    /**
+     * Updates an existing password entry in the file, unless it was changed or deleted since the caller read it,
+     * for example by another instance of the application writing the same file.
+     * Notifies the change listeners that the entry was updated.
+     *
+     * @param entryTitle      The title of the entry to update.
+     * @param expectedDetails The details the entry had when the caller read it.
+     * @param newDetails      The new details to set for the entry.
+     * @return True if the entry was updated, false if it was changed in the meantime or no file is open.
+     */
+    public static boolean updatePasswordEntry(String entryTitle, String[] expectedDetails, String[] newDetails) {
+        Vault vault = activeVault;
+        return vault != null && vault.updatePasswordEntry(entryTitle, expectedDetails, newDetails);
+    }
+
+
+    /**
+     * Deletes a password entry from the file.
+     * Notifies the change listeners that the entry was removed.
+     *
+     * @param entryTitle The title of the entry to delete.
+     */
+    public static void deletePasswordEntry(String entryTitle) {
+        Vault vault = activeVault;
+        if (vault != null) {
+            vault.deletePasswordEntry(entryTitle);
+        }
+    }
+
+
+    /**
+     * Finds the titles of the open file starting with the given prefix, ignoring case.
+     * The lookup is a binary search in the title index and does not lock the database,
+     * so it can be called on the UI thread on every keystroke.
+     *
+     * @param prefix The prefix to search for.
+     * @return The matching titles in sorted order, with the positions of their entries in the list returned by
+     *         getEntryTitles. The list is a read-only snapshot.
+     */
+    public static TitleMatches findTitlesByPrefix(String prefix) {
+        Vault vault = activeVault;
+        return vault != null ? vault.findTitlesByPrefix(prefix) : TitleMatches.EMPTY;
+    }
+
+
+    /**
+     * Finds the entries whose title or username contains the query, allowing for typos, best match first.
+     * See Vault.searchEntries.
+     *
+     * @param query                The text to search for.
+     * @param maxResults           The maximum number of results.
+     * @param includeTitlePrefixes Whether to include entries whose title starts with the query,
+     *                             for callers that already have them from findTitlesByPrefix.
+     * @return The titles of the matching entries, with the positions of the entries.
+     */
+    public static TitleMatches searchEntries(String query, int maxResults, boolean includeTitlePrefixes) {
+        Vault vault = activeVault;
+        return vault != null ? vault.searchEntries(query, maxResults, includeTitlePrefixes) : TitleMatches.EMPTY;
+    }
+
+
+    /**
+     * Registers a listener that is notified after every change made through this class to the active vault,
+     * and with a RELOADED change whenever another vault becomes the active one.
+     * Listeners are called on the thread that made the change.
+     *
+     * @param listener The listener to add.
+     */
+    public static void addChangeListener(Consumer<VaultChange> listener) {
+        changeListeners.add(listener);
+    }
+
+
+    /**
+     * Unregisters a change listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public static void removeChangeListener(Consumer<VaultChange> listener) {
+        changeListeners.remove(listener);
+    }
+
+
+    /**
+     * Notifies all change listeners about a change.
+     *
+     * @param change The change made to the active vault.
+     */
+    private static void fireChange(VaultChange change) {
+        for (Consumer<VaultChange> listener : changeListeners) {
+            listener.accept(change);
+        }
+    }
+
+
+    /**
+     * Sets filepath to the database file used currently and loads its entries into the cache
+     */
+    public static void setFilePath(String newPath) {
+        setFilePath(newPath, null);
+    }
+
+
+    /**
+     * Sets filepath to the database file used currently and loads its entries into the cache.
+     * The active vault is closed and replaced by the given file, or by none if the path is empty.
+     * The other open vaults stay open.
+     * An encrypted binary vault is unlocked with the given master password, which derives its key once for the session.
+     *
+     * @param newPath        The path of the database file.
+     * @param masterPassword The master password of an encrypted vault, or null. It is not kept.
+     * @return False if the file is a binary vault that can't be opened, for example because the password is wrong.
+     */
+    public static synchronized boolean setFilePath(String newPath, char[] masterPassword) {
+        // Close the active vault, writing the entries that are still queued for it. The file is read again
+        // even if it is the same, like when it was first opened.
+        Vault previous = activeVault;
+        if (previous != null) {
+            openVaults.remove(previous);
+            previous.close();
+            activeVault = null;
+        }
+
+        if (newPath == null || newPath.isEmpty()) {
+            fireChange(new VaultChange(VaultChange.Type.RELOADED, -1, null));
+            return true;
+        }
+
+        Vault vault = openVault(newPath, masterPassword);
+        activeVault = vault;
+        fireChange(new VaultChange(VaultChange.Type.RELOADED, -1, null));
+        return vault != null;
+    }
+
+
+    /**
+     * Opens a database file next to the vaults that are already open, without making it the active vault.
+     * If the file is open already, its existing handle is returned.
+     *
+     * @param path           The path of the database file.
+     * @param masterPassword The master password of an encrypted vault, or null. It is not kept.
+     * @return The open vault, or null if the file is a binary vault that can't be opened,
+     *         for example because the password is wrong.
+     */
+    public static Vault openVault(String path, char[] masterPassword) {
+        Vault existing = findOpenVault(path);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Read the file without locking this class, so switching between the other vaults isn't blocked meanwhile
+        Vault vault;
+        try {
+            vault = Vault.open(path, masterPassword, journalingEnabled);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        synchronized (PasswordDatabase.class) {
+            // The same file may have been opened by another thread in the meantime
+            existing = findOpenVault(path);
+            if (existing != null) {
+                vault.close();
+                return existing;
+            }
+
+            // Pass on the changes of the vault while it is the active one
+            vault.addChangeListener(change -> {
+                if (activeVault == vault) {
+                    fireChange(change);
+                }
+            });
+
+            openVaults.add(vault);
+            return vault;
+        }
+    }
+
+
+    /**
+     * Finds the open vault of a database file.
+     *
+     * @param path The path of the database file.
+     * @return The vault, or null if the file is not open.
+     */
+    private static Vault findOpenVault(String path) {
+        for (Vault vault : openVaults) {
+            if (vault.getFilePath().equals(path)) {
+                return vault;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Makes an open vault the one the entry methods of this class work on.
+     * Notifies the change listeners with a RELOADED change. The entries are served from the cache of the vault,
+     * so nothing is read from disk unless the file has changed.
+     *
+     * @param vault The vault, which must have been opened with openVault, or null for none.
+     */
+    public static synchronized void setActiveVault(Vault vault) {
+        if (vault != null && !openVaults.contains(vault)) {
+            throw new IllegalArgumentException("The vault is not open: " + vault);
+        }
+
+        if (activeVault != vault) {
+            activeVault = vault;
+            fireChange(new VaultChange(VaultChange.Type.RELOADED, -1, null));
+        }
+    }
+
+
+    /**
+     * Returns the vault the entry methods of this class work on.
+     *
+     * @return The active vault, or null if no file is open.
+     */
+    public static Vault getActiveVault() {
+        return activeVault;
+    }
+
+
+    /**
+     * Returns all open vaults in the order they were opened.
+     *
+     * @return A snapshot of the open vaults.
+     */
+    public static List<Vault> getOpenVaults() {
+        return new ArrayList<>(openVaults);
+    }
+
+
+    /**
+     * Closes an open vault, writing the entries that are still queued for it.
+     * If it was the active vault, the most recently opened remaining vault becomes the active one.
+     *
+     * @param vault The vault to close.
+     */
+    public static synchronized void closeVault(Vault vault) {
+        if (!openVaults.remove(vault)) {
+            return;
+        }
+
+        vault.close();
+
+        if (activeVault == vault) {
+            setActiveVault(openVaults.isEmpty() ? null : openVaults.get(openVaults.size() - 1));
+        }
+    }
+
+
+    /**
+     * Writes the entries queued by savePasswordEntry to the open files and forces them to disk.
+     * Called before the application quits, so no added entry is lost.
+     *
+     * @throws IOException If the queued entries of a file can't be written. The other files are flushed anyway.
+     */
+    public static void flush() throws IOException {
+        IOException failure = null;
+
+        for (Vault vault : openVaults) {
+            try {
+                vault.flush();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+
+    /**
+     * Sets how long entries added with savePasswordEntry may be queued before they are written,
+     * and how many are written at once.
+     *
+     * @param flushIntervalMillis The longest time in milliseconds an added entry is queued.
+     * @param batchSize           The number of queued entries that are written right away.
+     */
+    public static void setWriteBehind(long flushIntervalMillis, int batchSize) {
+        VaultWriter.setWriteBehind(flushIntervalMillis, batchSize);
+    }
+
+
+    /**
+     * Enables or disables the durable mode, in which every batch of added entries is forced to disk.
+     *
+     * @param enabled True to fsync once per batch.
+     */
+    public static void setDurable(boolean enabled) {
+        VaultWriter.setDurable(enabled);
+    }
+
+
+    /**
+     * Converts a database file between the text, binary vault and compressed vault formats.
+     * The formats are chosen by the extensions of the two files. A binary vault converted to a binary vault
+     * is written again, which decrypts an encrypted one. Other conversions to the same format are rejected.
+     *
+     * @param sourcePath The path of the file to convert.
+     * @param targetPath The path of the converted file.
+     * @throws IOException If a file can't be read or written, or if both files are text or compressed files.
+     */
+    public static void convertFile(String sourcePath, String targetPath) throws IOException {
+        convertFile(sourcePath, targetPath, null);
+    }
+
+
+    /**
+     * Converts a database file between the text, binary vault and compressed vault formats.
+     * The formats are chosen by the extensions of the two files. A binary vault converted to a binary vault
+     * is written again with the given master password, so it can be encrypted, decrypted or given a new password.
+     * Other conversions to the same format are rejected. An encrypted vault can only be converted while it is open,
+     * since its key is only derived when it is unlocked.
+     *
+     * @param sourcePath     The path of the file to convert.
+     * @param targetPath     The path of the converted file.
+     * @param masterPassword The master password to encrypt a binary target with, or null to not encrypt it.
+     * @throws IOException If a file can't be read or written, or if both files are text or compressed files.
+     */
+    public static void convertFile(String sourcePath, String targetPath, char[] masterPassword)
+            throws IOException {
+        // An open source is converted through its handle, which writes its queued entries first
+        Vault vault = findOpenVault(sourcePath);
+        if (vault != null) {
+            vault.convertTo(targetPath, masterPassword);
+            return;
+        }
+
+        // Read the source in its own format, then write the entries in the format of the target
+        if (BinaryVault.isBinaryVault(sourcePath)) {
+            try (BinaryVault source = BinaryVault.open(sourcePath)) {
+                if (BinaryVault.isBinaryVault(targetPath)) {
+                    BinaryVault.writeEntries(targetPath, source.getEntries(), masterPassword);
+                } else if (CompressedVault.isCompressedVault(targetPath)) {
+                    CompressedVault.writeEntries(targetPath, source.getEntries());
+                } else {
+                    source.exportToText(targetPath);
+                }
+            }
+        } else if (CompressedVault.isCompressedVault(sourcePath)) {
+            if (CompressedVault.isCompressedVault(targetPath)) {
+                throw new IOException("Both files are compressed vaults: " + sourcePath + ", " + targetPath);
+            }
+
+            try (CompressedVault source = CompressedVault.open(sourcePath)) {
+                if (BinaryVault.isBinaryVault(targetPath)) {
+                    BinaryVault.writeEntries(targetPath, source.getEntries(), masterPassword);
+                } else {
+                    source.exportToText(targetPath);
+                }
+            }
+        } else if (BinaryVault.isBinaryVault(targetPath)) {
+            BinaryVault.convertFromText(sourcePath, targetPath, masterPassword);
+        } else if (CompressedVault.isCompressedVault(targetPath)) {
+            CompressedVault.convertFromText(sourcePath, targetPath);
+        } else {
+            throw new IOException("Both files are text database files: " + sourcePath + ", " + targetPath);
+        }
+    }
+
+
+    /**
+     * Checks whether a file path refers to a binary vault.
+     *
+     * @param path The path of the database file.
+     * @return True if the file is stored in the binary vault format.
+     */
+    public static boolean isBinaryVault(String path) {
+        return BinaryVault.isBinaryVault(path);
+    }
+
+
+    /**
+     * Checks whether a file path refers to a compressed vault.
+     *
+     * @param path The path of the database file.
+     * @return True if the file is stored in the compressed vault format.
+     */
+    public static boolean isCompressedVault(String path) {
+        return CompressedVault.isCompressedVault(path);
+    }
+
+
+    /**
+     * Checks whether a file path refers to an encrypted binary vault, which needs a master password to open.
+     *
+     * @param path The path of the database file.
+     * @return True if the file is an encrypted binary vault.
+     */
+    public static boolean isEncryptedVault(String path) {
+        return BinaryVault.isBinaryVault(path) && BinaryVault.isEncrypted(path);
+    }
+
+
+    /**
+     * Enables or disables the journaled storage mode.
+     * Takes effect the next time a file is opened.
+     *
+     * @param enabled True to append changes to a journal, false to rewrite the file on every change.
+     */
+    public static synchronized void setJournalingEnabled(boolean enabled) {
+        journalingEnabled = enabled;
+    }
+
+
+    /**
+     * Gets filepath to the database file used currently
+     */
+    public static String getFilePath() {
+        Vault vault = activeVault;
+        return vault != null ? vault.getFilePath() : "";
+    }
+}
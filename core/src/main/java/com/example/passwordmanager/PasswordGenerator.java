@@ -0,0 +1,363 @@
+package com.example.passwordmanager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The PasswordGenerator class creates random passwords and passphrases following a PasswordPolicy.
+ * <p>
+ * Every thread has its own SecureRandom, so threads generating passwords at the same time don't contend
+ * for one generator. DRBG instances are used where available, since each keeps its own state, while the
+ * default NativePRNG of Linux reads from one shared source behind a global lock. Random bytes are drawn
+ * a block at a time, which is much cheaper than a call into the generator per character.
+ * <p>
+ * Characters are chosen by rejection sampling: a random byte outside the largest multiple of the alphabet size
+ * is discarded, so every character is equally likely. Passwords that must contain every character class are
+ * generated again until they do, which keeps all valid passwords equally likely. Passphrase words are chosen
+ * the same way from a list of 1584 words bundled with the application, about 10.6 bits per word.
+ * <p>
+ * The char[] methods write into the caller's buffer without creating Strings, so the caller can wipe
+ * the passwords once they have been used.
+ */
+public class PasswordGenerator {
+
+    // Number of random bytes drawn from the SecureRandom at a time
+    private static final int RANDOM_BLOCK_SIZE = 256;
+
+    // Word list for passphrases, next to this class
+    private static final String WORD_LIST = "passphrase-words.txt";
+
+    // Random bytes of every thread
+    private static final ThreadLocal<RandomBytes> randomBytes = ThreadLocal.withInitial(RandomBytes::new);
+
+    // Alphabets and word lists prepared for the policies used so far
+    private static final Map<PasswordPolicy, PreparedPolicy> preparedPolicies = new ConcurrentHashMap<>();
+
+
+    /**
+     * Generates a password.
+     *
+     * @param policy The policy of the password.
+     * @return The password.
+     */
+    public static String generate(PasswordPolicy policy) {
+        char[] password = generateChars(policy);
+        String result = new String(password);
+        Arrays.fill(password, '\0');
+        return result;
+    }
+
+
+    /**
+     * Generates a password as a char array, which the caller can wipe after use.
+     *
+     * @param policy The policy of the password.
+     * @return The password, exactly as long as the password.
+     */
+    public static char[] generateChars(PasswordPolicy policy) {
+        char[] buffer = new char[maxLength(policy)];
+        int length = generate(policy, buffer, 0);
+
+        if (length == buffer.length) {
+            return buffer;
+        }
+
+        char[] password = Arrays.copyOf(buffer, length);
+        Arrays.fill(buffer, '\0');
+        return password;
+    }
+
+
+    /**
+     * Generates a password into a buffer.
+     *
+     * @param policy The policy of the password.
+     * @param buffer The buffer, with room for maxLength(policy) characters from the offset.
+     * @param offset The position of the first character.
+     * @return The number of characters written.
+     */
+    public static int generate(PasswordPolicy policy, char[] buffer, int offset) {
+        PreparedPolicy prepared = prepare(policy);
+        return generate(prepared, randomBytes.get(), buffer, offset);
+    }
+
+
+    /**
+     * Generates many passwords back to back into one buffer, for example to rotate the passwords of many entries.
+     * The password i ends before ends[i] and starts at ends[i - 1], or at 0 for the first one.
+     *
+     * @param policy The policy of the passwords.
+     * @param buffer The buffer, with room for ends.length * maxLength(policy) characters.
+     * @param ends   Receives the end of every password. Its length is the number of passwords to generate.
+     * @return The number of characters written.
+     */
+    public static int generateAll(PasswordPolicy policy, char[] buffer, int[] ends) {
+        PreparedPolicy prepared = prepare(policy);
+        RandomBytes random = randomBytes.get();
+        int position = 0;
+
+        for (int i = 0; i < ends.length; i++) {
+            position += generate(prepared, random, buffer, position);
+            ends[i] = position;
+        }
+
+        return position;
+    }
+
+
+    /**
+     * Returns the largest number of characters a password of a policy can have.
+     *
+     * @param policy The policy.
+     * @return The maximum length.
+     */
+    public static int maxLength(PasswordPolicy policy) {
+        if (!policy.isPassphrase()) {
+            return policy.length();
+        }
+
+        return policy.passphraseWords() * prepare(policy).maxWordLength
+                + (policy.passphraseWords() - 1) * policy.separator().length();
+    }
+
+
+    /**
+     * Returns the entropy of the passwords of a policy in bits, the base 2 logarithm of the number of
+     * possible passwords. Passwords requiring every character class have slightly less.
+     *
+     * @param policy The policy.
+     * @return The entropy in bits.
+     */
+    public static double entropyBits(PasswordPolicy policy) {
+        PreparedPolicy prepared = prepare(policy);
+
+        if (policy.isPassphrase()) {
+            return policy.passphraseWords() * Math.log(prepared.words.length) / Math.log(2);
+        }
+
+        return policy.length() * Math.log(prepared.alphabet.length) / Math.log(2);
+    }
+
+
+    /**
+     * Generates a password of a prepared policy.
+     */
+    private static int generate(PreparedPolicy prepared, RandomBytes random, char[] buffer, int offset) {
+        if (prepared.words != null) {
+            return generatePassphrase(prepared, random, buffer, offset);
+        }
+
+        char[] alphabet = prepared.alphabet;
+        byte[] classes = prepared.classes;
+        int length = prepared.length;
+
+        while (true) {
+            int foundClasses = 0;
+
+            for (int i = 0; i < length; i++) {
+                int index = random.nextIndex(alphabet.length);
+                buffer[offset + i] = alphabet[index];
+                foundClasses |= 1 << classes[index];
+            }
+
+            // Start over if a required class is missing, so every valid password stays equally likely
+            if ((foundClasses & prepared.requiredClasses) == prepared.requiredClasses) {
+                return length;
+            }
+        }
+    }
+
+
+    /**
+     * Generates a passphrase of a prepared policy.
+     */
+    private static int generatePassphrase(PreparedPolicy prepared, RandomBytes random, char[] buffer, int offset) {
+        char[] separator = prepared.separator;
+        int position = offset;
+
+        for (int i = 0; i < prepared.wordCount; i++) {
+            if (i > 0) {
+                System.arraycopy(separator, 0, buffer, position, separator.length);
+                position += separator.length;
+            }
+
+            char[] word = prepared.words[random.nextIndex(prepared.words.length)];
+            System.arraycopy(word, 0, buffer, position, word.length);
+            position += word.length;
+        }
+
+        return position - offset;
+    }
+
+
+    /**
+     * Returns the alphabet or word list of a policy, preparing it on first use.
+     */
+    private static PreparedPolicy prepare(PasswordPolicy policy) {
+        return preparedPolicies.computeIfAbsent(policy, PreparedPolicy::new);
+    }
+
+
+    /**
+     * A policy prepared for generating passwords.
+     */
+    private static final class PreparedPolicy {
+
+        private final int length;
+        private final char[] alphabet;
+
+        // Class of every character of the alphabet, and the classes every password must contain
+        private final byte[] classes;
+        private final int requiredClasses;
+
+        // Words without excluded characters, for passphrases, or null
+        private final char[][] words;
+        private final int wordCount;
+        private final int maxWordLength;
+        private final char[] separator;
+
+
+        PreparedPolicy(PasswordPolicy policy) {
+            length = policy.length();
+            alphabet = policy.alphabet();
+            classes = new byte[alphabet.length];
+            separator = policy.separator().toCharArray();
+            wordCount = policy.passphraseWords();
+
+            for (int i = 0; i < alphabet.length; i++) {
+                for (byte c = 0; c < PasswordPolicy.CLASS_CHARACTERS.length; c++) {
+                    if (PasswordPolicy.CLASS_CHARACTERS[c].indexOf(alphabet[i]) >= 0) {
+                        classes[i] = c;
+                    }
+                }
+            }
+            requiredClasses = policy.everyClassRequired() ? policy.characterClasses() & PasswordPolicy.ALL_CLASSES : 0;
+
+            if (policy.isPassphrase()) {
+                words = WordList.without(policy.excludedCharacters());
+                if (words.length < 2) {
+                    throw new IllegalArgumentException("The excluded characters leave too few words");
+                }
+                maxWordLength = Arrays.stream(words).mapToInt(word -> word.length).max().orElse(0);
+            } else {
+                words = null;
+                maxWordLength = 0;
+            }
+        }
+    }
+
+
+    /**
+     * The bundled word list, loaded on first use.
+     */
+    private static final class WordList {
+
+        private static final List<String> WORDS = load();
+
+
+        /**
+         * Returns the words that contain none of the excluded characters.
+         */
+        static char[][] without(String excludedCharacters) {
+            return WORDS.stream()
+                    .filter(word -> word.chars().noneMatch(c -> excludedCharacters.indexOf(c) >= 0))
+                    .map(String::toCharArray)
+                    .toArray(char[][]::new);
+        }
+
+
+        /**
+         * Reads the words, one per line.
+         */
+        private static List<String> load() {
+            List<String> words = new ArrayList<>();
+
+            try (InputStream in = PasswordGenerator.class.getResourceAsStream(WORD_LIST)) {
+                if (in == null) {
+                    throw new IOException("Missing word list " + WORD_LIST);
+                }
+
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        words.add(line.strip());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return words;
+        }
+    }
+
+
+    /**
+     * Random bytes of one thread, drawn from its own SecureRandom a block at a time.
+     * Bytes are wiped as they are used, so unused ones are the only ones left in memory.
+     */
+    private static final class RandomBytes {
+
+        private final SecureRandom random = newSecureRandom();
+        private final byte[] block = new byte[RANDOM_BLOCK_SIZE];
+        private int position = RANDOM_BLOCK_SIZE;
+
+
+        /**
+         * Returns a random byte as a value from 0 to 255.
+         */
+        int nextByte() {
+            if (position == block.length) {
+                random.nextBytes(block);
+                position = 0;
+            }
+
+            int value = block[position] & 0xff;
+            block[position++] = 0;
+            return value;
+        }
+
+
+        /**
+         * Returns a uniformly distributed index from 0 to bound - 1, for bounds up to 65536.
+         * Uses one random byte for bounds up to 256 and two bytes above.
+         */
+        int nextIndex(int bound) {
+            int range = bound <= 256 ? 256 : 65536;
+
+            // Values from the limit on would make the first indexes more likely
+            int limit = range - range % bound;
+
+            while (true) {
+                int value = range == 256 ? nextByte() : nextByte() << 8 | nextByte();
+                if (value < limit) {
+                    return value % bound;
+                }
+            }
+        }
+
+
+        /**
+         * Returns a DRBG SecureRandom, or the default one if DRBG is not available.
+         */
+        private static SecureRandom newSecureRandom() {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                return new SecureRandom();
+            }
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package com.example.passwordmanager;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The PasswordManagerCli class looks up and changes entries of a database file from the command line, for scripts.
+ * It only uses the core classes, so it starts without loading a UI toolkit:
+ * <pre>
+ * pwm [--file vault] list
+ * pwm [--file vault] get title [username|password]
+ * pwm [--file vault] add title username [password|-]
+ * pwm [--file vault] edit title [--title new] [--username new] [--password new|-] [--generate]
+ * pwm [--file vault] delete title
+ * pwm [--file vault] search query [max]
+ * pwm [--file vault] agent [--socket path]
+ * </pre>
+ * The file is taken from --file, the system property passwordmanager.vault or the environment variable
+ * PASSWORDMANAGER_VAULT, in that order. A password of "-" is read from the standard input, and add generates one
+ * if none is given. Encrypted vaults are unlocked with the environment variable PASSWORDMANAGER_MASTER_PASSWORD,
+ * or by asking on the console.
+ * <p>
+ * The agent command keeps the vault open and answers lookups of other processes on a socket until the process
+ * is stopped, see CredentialAgent. If the environment variable PASSWORDMANAGER_AGENT_SOCKET is set, get and search
+ * are sent to the agent listening there instead of opening the vault.
+ * <p>
+ * get reads a text file into a SecretTable instead of opening a Vault, so the credentials stay off the heap
+ * and are only decoded to be printed.
+ * <p>
+ * Except for the agent, the vault is not watched for changes, since the process ends after one command.
+ * The exit status is 0 on success, 1 if the entry was not found or already exists,
+ * 2 for wrong arguments and 3 if the file can't be opened.
+ * <p>
+ * The build runs "--train directory" once to record the classes of a typical run in an AppCDS archive.
+ * It runs every command on a new vault in that directory.
+ */
+public class PasswordManagerCli {
+
+    // Exit statuses
+    private static final int OK = 0;
+    private static final int NOT_FOUND = 1;
+    private static final int USAGE = 2;
+    private static final int CANT_OPEN = 3;
+
+    private static final String USAGE_TEXT = """
+            Usage: pwm [--file vault] command
+              list                              List the titles of all entries
+              get title [username|password]     Show an entry, or one of its fields
+              add title username [password|-]   Add an entry, generating a password if none is given
+              edit title [--title new] [--username new] [--password new|-] [--generate]
+                                                Change an entry
+              delete title                      Delete an entry
+              search query [max]                Find entries by title and username, 20 at most by default
+              agent [--socket path]             Keep the vault open and answer get and search on a socket
+            The vault is --file, -Dpasswordmanager.vault or $PASSWORDMANAGER_VAULT.
+            If $PASSWORDMANAGER_AGENT_SOCKET is set, get and search ask the agent listening there.""";
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+
+    private PasswordManagerCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+
+    public static void main(String[] args) {
+        // A single command doesn't need to follow changes of other processes, and the watcher would start threads
+        if (System.getProperty("passwordmanager.watch") == null && !isAgentCommand(args)) {
+            System.setProperty("passwordmanager.watch", "false");
+        }
+
+        if (args.length == 2 && args[0].equals("--train")) {
+            System.exit(train(Path.of(args[1])));
+        }
+
+        int status = new PasswordManagerCli(System.out, System.err).run(args);
+        System.out.flush();
+        System.exit(status);
+    }
+
+
+    /**
+     * Checks whether the arguments start the agent, which keeps following changes to the vault.
+     */
+    private static boolean isAgentCommand(String[] args) {
+        int command = args.length >= 2 && args[0].equals("--file") ? 2 : 0;
+        return command < args.length && args[command].equals("agent");
+    }
+
+
+    /**
+     * Parses the arguments, opens the vault and runs the command.
+     *
+     * @param args The command line arguments.
+     * @return The exit status.
+     */
+    private int run(String[] args) {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        String file = System.getProperty("passwordmanager.vault", System.getenv("PASSWORDMANAGER_VAULT"));
+
+        if (arguments.size() >= 2 && arguments.get(0).equals("--file")) {
+            file = arguments.get(1);
+            arguments = arguments.subList(2, arguments.size());
+        }
+
+        if (arguments.isEmpty() || arguments.get(0).equals("--help") || arguments.get(0).equals("-h")) {
+            out.println(USAGE_TEXT);
+            return arguments.isEmpty() ? USAGE : OK;
+        }
+
+        String command = arguments.get(0);
+        List<String> parameters = arguments.subList(1, arguments.size());
+        if (!isValid(command, parameters)) {
+            err.println(USAGE_TEXT);
+            return USAGE;
+        }
+
+        String agentSocket = System.getenv("PASSWORDMANAGER_AGENT_SOCKET");
+        if (agentSocket != null && !agentSocket.isEmpty() && (command.equals("get") || command.equals("search"))) {
+            return askAgent(Path.of(agentSocket), command, parameters);
+        }
+
+        if (file == null || file.isEmpty()) {
+            err.println("No vault given. Use --file or set PASSWORDMANAGER_VAULT.");
+            return USAGE;
+        }
+
+        // Only adding may create the file
+        if (!Files.exists(Path.of(file))) {
+            if (!command.equals("add")) {
+                err.println("No such file: " + file);
+                return CANT_OPEN;
+            }
+
+            try {
+                if (PasswordDatabase.isCompressedVault(file)) {
+                    CompressedVault.create(file);
+                } else {
+                    TextVaultFile.create(file);
+                }
+            } catch (IOException e) {
+                err.println("Can't create " + file + ": " + e.getMessage());
+                return CANT_OPEN;
+            }
+        }
+
+        // Reading an entry needs none of the indexes of a Vault, and keeps the credentials off the heap
+        if (command.equals("get") && !PasswordDatabase.isBinaryVault(file) && !PasswordDatabase.isCompressedVault(file)
+                && !VaultJournal.exists(file)) {
+            return getFromTable(file, parameters);
+        }
+
+        char[] masterPassword = null;
+        Vault vault;
+        try {
+            if (PasswordDatabase.isEncryptedVault(file)) {
+                masterPassword = readMasterPassword();
+                if (masterPassword == null) {
+                    err.println("The vault is encrypted. Set PASSWORDMANAGER_MASTER_PASSWORD or run on a console.");
+                    return CANT_OPEN;
+                }
+            }
+            vault = Vault.open(file, masterPassword, Boolean.getBoolean("passwordmanager.journal"));
+        } catch (IOException e) {
+            err.println("Can't open " + file + ": " + e.getMessage());
+            return CANT_OPEN;
+        } finally {
+            if (masterPassword != null) {
+                Arrays.fill(masterPassword, '\0');
+            }
+        }
+
+        try {
+            return runCommand(vault, command, parameters);
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return USAGE;
+        } finally {
+            // Writes the entries that are still queued
+            vault.close();
+        }
+    }
+
+
+    /**
+     * Checks the number of parameters of a command.
+     */
+    private static boolean isValid(String command, List<String> parameters) {
+        return switch (command) {
+            case "list" -> parameters.isEmpty();
+            case "get" -> parameters.size() == 1 || parameters.size() == 2
+                    && (parameters.get(1).equals("username") || parameters.get(1).equals("password"));
+            case "add" -> parameters.size() == 2 || parameters.size() == 3;
+            case "edit" -> parameters.size() >= 2;
+            case "delete" -> parameters.size() == 1;
+            case "search" -> parameters.size() == 1 || parameters.size() == 2 && parameters.get(1).matches("\\d+");
+            case "agent" -> parameters.isEmpty() || parameters.size() == 2 && parameters.get(0).equals("--socket");
+            default -> false;
+        };
+    }
+
+
+    /**
+     * Runs a command on an open vault.
+     *
+     * @return The exit status.
+     * @throws IOException If a password can't be read from the standard input.
+     */
+    private int runCommand(Vault vault, String command, List<String> parameters) throws IOException {
+        switch (command) {
+            case "list" -> {
+                StringBuilder titles = new StringBuilder();
+                for (String title : vault.getEntryTitles()) {
+                    titles.append(title).append('\n');
+                }
+                out.print(titles);
+                return OK;
+            }
+            case "get" -> {
+                String[] entry = vault.getEntryDetails(parameters.get(0));
+                if (entry == null) {
+                    return notFound(parameters.get(0));
+                }
+
+                if (parameters.size() == 2) {
+                    out.println(parameters.get(1).equals("username") ? entry[1] : entry[2]);
+                } else {
+                    out.println("Title:    " + entry[0]);
+                    out.println("Username: " + entry[1]);
+                    out.println("Password: " + entry[2]);
+                }
+                return OK;
+            }
+            case "add" -> {
+                String title = parameters.get(0);
+                if (vault.getEntryDetails(title) != null) {
+                    err.println("An entry titled " + title + " already exists");
+                    return NOT_FOUND;
+                }
+
+                String password = parameters.size() == 3 ? readPassword(parameters.get(2)) : null;
+                if (password == null) {
+                    password = PasswordGenerator.generate(PasswordPolicy.DEFAULT);
+                    out.println(password);
+                }
+
+                vault.savePasswordEntry(new String[]{title, parameters.get(1), password});
+                return OK;
+            }
+            case "edit" -> {
+                return edit(vault, parameters);
+            }
+            case "delete" -> {
+                if (vault.getEntryDetails(parameters.get(0)) == null) {
+                    return notFound(parameters.get(0));
+                }
+
+                vault.deletePasswordEntry(parameters.get(0));
+                return OK;
+            }
+            case "search" -> {
+                int max = parameters.size() == 2 ? Integer.parseInt(parameters.get(1)) : 20;
+                for (String title : vault.searchEntries(parameters.get(0), max, true)) {
+                    out.println(title);
+                }
+                return OK;
+            }
+            case "agent" -> {
+                return runAgent(vault, parameters);
+            }
+            default -> {
+                return USAGE;
+            }
+        }
+    }
+
+
+    /**
+     * Runs get on a text file read into a SecretTable. The credentials are written from the buffer they are
+     * revealed into, which is wiped afterwards, without becoming Strings.
+     *
+     * @return The exit status.
+     */
+    private int getFromTable(String file, List<String> parameters) {
+        try (SecretTable table = SecretTable.load(file)) {
+            String title = parameters.get(0);
+            int index = table.indexOf(title);
+            if (index < 0) {
+                return notFound(title);
+            }
+
+            PrintWriter writer = new PrintWriter(out);
+            SecretStore.SecretConsumer print = (chars, length) -> {
+                writer.write(chars, 0, length);
+                writer.println();
+            };
+
+            if (parameters.size() == 2) {
+                if (parameters.get(1).equals("username")) {
+                    table.revealUsername(index, print);
+                } else {
+                    table.revealPassword(index, print);
+                }
+            } else {
+                writer.println("Title:    " + title);
+                writer.print("Username: ");
+                table.revealUsername(index, print);
+                writer.print("Password: ");
+                table.revealPassword(index, print);
+            }
+            writer.flush();
+            return OK;
+        } catch (IOException e) {
+            err.println("Can't open " + file + ": " + e.getMessage());
+            return CANT_OPEN;
+        }
+    }
+
+
+    /**
+     * Changes the fields of an entry given as options. The update is rejected if another process changed
+     * the entry between reading and writing it.
+     *
+     * @return The exit status.
+     */
+    private int edit(Vault vault, List<String> parameters) throws IOException {
+        String title = parameters.get(0);
+        String[] entry = vault.getEntryDetails(title);
+        if (entry == null) {
+            return notFound(title);
+        }
+
+        String[] newDetails = entry.clone();
+        boolean generated = false;
+
+        for (int i = 1; i < parameters.size(); i++) {
+            String option = parameters.get(i);
+            boolean hasValue = i + 1 < parameters.size();
+
+            switch (option) {
+                case "--title", "--username", "--password" -> {
+                    if (!hasValue) {
+                        throw new IOException(option + " needs a value");
+                    }
+                    String value = parameters.get(++i);
+                    int field = option.equals("--title") ? 0 : option.equals("--username") ? 1 : 2;
+                    newDetails[field] = field == 2 ? readPassword(value) : value;
+                }
+                case "--generate" -> {
+                    newDetails[2] = PasswordGenerator.generate(PasswordPolicy.DEFAULT);
+                    generated = true;
+                }
+                default -> throw new IOException("Unknown option " + option);
+            }
+        }
+
+        if (!newDetails[0].equals(title) && vault.getEntryDetails(newDetails[0]) != null) {
+            err.println("An entry titled " + newDetails[0] + " already exists");
+            return NOT_FOUND;
+        }
+
+        if (!vault.updatePasswordEntry(title, entry, newDetails)) {
+            err.println("The entry was changed by another process meanwhile, try again");
+            return NOT_FOUND;
+        }
+
+        if (generated) {
+            out.println(newDetails[2]);
+        }
+        return OK;
+    }
+
+
+    /**
+     * Serves the vault on a socket until the process is stopped.
+     *
+     * @return The exit status, if the agent can't be started.
+     */
+    private int runAgent(Vault vault, List<String> parameters) throws IOException {
+        Path socket = parameters.isEmpty() ? CredentialAgent.defaultSocketPath() : Path.of(parameters.get(1));
+
+        CredentialAgent agent;
+        try {
+            agent = CredentialAgent.start(vault, socket);
+        } catch (IOException e) {
+            err.println("Can't start the agent: " + e.getMessage());
+            return CANT_OPEN;
+        }
+
+        // Removes the socket file and writes queued entries when the process is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            agent.close();
+            vault.close();
+        }));
+
+        out.println("PASSWORDMANAGER_AGENT_SOCKET=" + socket);
+        out.flush();
+
+        while (true) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                return OK;
+            }
+        }
+    }
+
+
+    /**
+     * Runs get or search through a running agent instead of opening the vault.
+     *
+     * @return The exit status.
+     */
+    private int askAgent(Path socket, String command, List<String> parameters) {
+        try (CredentialAgentClient client = new CredentialAgentClient(socket)) {
+            if (command.equals("search")) {
+                int max = parameters.size() == 2 ? Integer.parseInt(parameters.get(1)) : 20;
+                for (String title : client.searchEntries(parameters.get(0), max)) {
+                    out.println(title);
+                }
+                return OK;
+            }
+
+            String title = parameters.get(0);
+            if (parameters.size() == 2) {
+                String value = client.getField(title, parameters.get(1));
+                if (value == null) {
+                    return notFound(title);
+                }
+                out.println(value);
+            } else {
+                String[] entry = client.getEntryDetails(title);
+                if (entry == null) {
+                    return notFound(title);
+                }
+                out.println("Title:    " + entry[0]);
+                out.println("Username: " + entry[1]);
+                out.println("Password: " + entry[2]);
+            }
+            return OK;
+        } catch (IOException e) {
+            err.println("Can't ask the agent at " + socket + ": " + e.getMessage());
+            return CANT_OPEN;
+        }
+    }
+
+
+    /**
+     * Reports an entry that doesn't exist.
+     *
+     * @return The exit status.
+     */
+    private int notFound(String title) {
+        err.println("No entry titled " + title);
+        return NOT_FOUND;
+    }
+
+
+    /**
+     * Returns a password argument, reading it from the first line of the standard input if it is "-".
+     */
+    private static String readPassword(String argument) throws IOException {
+        if (!argument.equals("-")) {
+            return argument;
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line = in.readLine();
+        if (line == null || line.isEmpty()) {
+            throw new IOException("No password on the standard input");
+        }
+
+        return line;
+    }
+
+
+    /**
+     * Reads the master password of an encrypted vault from the environment, or asks for it on the console.
+     *
+     * @return The master password, or null if there is neither.
+     */
+    private static char[] readMasterPassword() {
+        String fromEnvironment = System.getenv("PASSWORDMANAGER_MASTER_PASSWORD");
+        if (fromEnvironment != null) {
+            return fromEnvironment.toCharArray();
+        }
+
+        Console console = System.console();
+        return console != null ? console.readPassword("Master password: ") : null;
+    }
+
+
+    /**
+     * Runs every command on a new vault in a directory, for recording the classes they load.
+     *
+     * @param directory The directory for the vault, created if needed.
+     * @return The exit status.
+     */
+    private static int train(Path directory) {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        PasswordManagerCli cli = new PasswordManagerCli(discard, discard);
+
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve("training.txt");
+            Files.deleteIfExists(file);
+            String path = file.toString();
+
+            int status = OK;
+            status |= cli.run(new String[]{"--file", path, "add", "mail", "user@example.com"});
+            status |= cli.run(new String[]{"--file", path, "add", "bank", "user", "secret"});
+            status |= cli.run(new String[]{"--file", path, "list"});
+            status |= cli.run(new String[]{"--file", path, "get", "mail"});
+            status |= cli.run(new String[]{"--file", path, "get", "bank", "password"});
+            status |= cli.run(new String[]{"--file", path, "search", "mai"});
+            status |= cli.run(new String[]{"--file", path, "edit", "bank", "--username", "other", "--generate"});
+            status |= cli.run(new String[]{"--file", path, "delete", "bank"});
+            return status;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return CANT_OPEN;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.passwordmanager;
+
+/**
+ * The PasswordPolicy record describes the passwords PasswordGenerator creates: either random characters
+ * from a set of character classes, or a passphrase of random words.
+ *
+ * @param length             The number of characters of a password. Ignored for passphrases.
+ * @param characterClasses   The character classes to draw from, as a combination of LOWERCASE, UPPERCASE,
+ *                           DIGITS and SYMBOLS.
+ * @param excludedCharacters Characters never used, for example ones that look alike. Passphrases skip words
+ *                           containing them.
+ * @param everyClassRequired Whether every password has at least one character of every class.
+ * @param passphraseWords    The number of words of a passphrase, or 0 for random characters.
+ * @param separator          The text between the words of a passphrase.
+ */
+public record PasswordPolicy(int length, int characterClasses, String excludedCharacters, boolean everyClassRequired,
+                             int passphraseWords, String separator) {
+
+    // Character classes, combined into masks
+    public static final int LOWERCASE = 1;
+    public static final int UPPERCASE = 1 << 1;
+    public static final int DIGITS = 1 << 2;
+    public static final int SYMBOLS = 1 << 3;
+    public static final int ALL_CLASSES = LOWERCASE | UPPERCASE | DIGITS | SYMBOLS;
+
+    // Characters of every class, in the order of the class bits
+    static final String[] CLASS_CHARACTERS = {
+            "abcdefghijklmnopqrstuvwxyz",
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+            "0123456789",
+            "!@#$%^&*()-_=+"
+    };
+
+    // Passwords for new entries: 20 characters of all classes, as generated before policies existed
+    public static final PasswordPolicy DEFAULT = new PasswordPolicy(20, ALL_CLASSES, "", true, 0, "-");
+
+    // Characters that are easily confused when a password is read or typed
+    public static final String AMBIGUOUS_CHARACTERS = "Il1O0";
+
+
+    /**
+     * Validates the policy.
+     *
+     * @throws IllegalArgumentException If the policy can't produce any password.
+     */
+    public PasswordPolicy {
+        if (excludedCharacters == null) {
+            excludedCharacters = "";
+        }
+        if (separator == null) {
+            separator = "";
+        }
+
+        if (passphraseWords < 0 || passphraseWords > 64) {
+            throw new IllegalArgumentException("A passphrase has 1 to 64 words");
+        }
+
+        if (passphraseWords == 0) {
+            if (length < 1 || length > 1024) {
+                throw new IllegalArgumentException("A password has 1 to 1024 characters");
+            }
+            if ((characterClasses & ALL_CLASSES) == 0) {
+                throw new IllegalArgumentException("No character class selected");
+            }
+
+            // Every selected class must keep at least one character, so it can be required
+            int classCount = 0;
+            for (int i = 0; i < CLASS_CHARACTERS.length; i++) {
+                if ((characterClasses & (1 << i)) != 0) {
+                    classCount++;
+                    boolean usable = false;
+                    for (char c : CLASS_CHARACTERS[i].toCharArray()) {
+                        usable |= excludedCharacters.indexOf(c) < 0;
+                    }
+                    if (!usable) {
+                        throw new IllegalArgumentException("All characters of a class are excluded");
+                    }
+                }
+            }
+
+            if (everyClassRequired && length < classCount) {
+                throw new IllegalArgumentException("The password is too short to hold every character class");
+            }
+        }
+    }
+
+
+    /**
+     * Returns a policy for passphrases of random words.
+     *
+     * @param words     The number of words.
+     * @param separator The text between the words.
+     * @return The policy.
+     */
+    public static PasswordPolicy passphrase(int words, String separator) {
+        return new PasswordPolicy(DEFAULT.length, DEFAULT.characterClasses, "", false, words, separator);
+    }
+
+
+    /**
+     * Returns a copy of this policy with another length.
+     *
+     * @param newLength The number of characters.
+     * @return The policy.
+     */
+    public PasswordPolicy withLength(int newLength) {
+        return new PasswordPolicy(newLength, characterClasses, excludedCharacters, everyClassRequired,
+                passphraseWords, separator);
+    }
+
+
+    /**
+     * Returns a copy of this policy with other character classes.
+     *
+     * @param classes The character classes, as a combination of LOWERCASE, UPPERCASE, DIGITS and SYMBOLS.
+     * @return The policy.
+     */
+    public PasswordPolicy withCharacterClasses(int classes) {
+        return new PasswordPolicy(length, classes, excludedCharacters, everyClassRequired, passphraseWords, separator);
+    }
+
+
+    /**
+     * Returns a copy of this policy that never uses the given characters.
+     *
+     * @param excluded The excluded characters, for example AMBIGUOUS_CHARACTERS.
+     * @return The policy.
+     */
+    public PasswordPolicy withExcludedCharacters(String excluded) {
+        return new PasswordPolicy(length, characterClasses, excluded, everyClassRequired, passphraseWords, separator);
+    }
+
+
+    /**
+     * Returns a copy of this policy that does or doesn't require every character class.
+     *
+     * @param required Whether every password has at least one character of every class.
+     * @return The policy.
+     */
+    public PasswordPolicy withEveryClassRequired(boolean required) {
+        return new PasswordPolicy(length, characterClasses, excludedCharacters, required, passphraseWords, separator);
+    }
+
+
+    /**
+     * Checks whether this policy creates passphrases.
+     *
+     * @return True for passphrases, false for random characters.
+     */
+    public boolean isPassphrase() {
+        return passphraseWords > 0;
+    }
+
+
+    /**
+     * Returns the characters a password may contain, without the excluded ones.
+     *
+     * @return The characters, grouped by class.
+     */
+    public char[] alphabet() {
+        StringBuilder alphabet = new StringBuilder();
+
+        for (int i = 0; i < CLASS_CHARACTERS.length; i++) {
+            if ((characterClasses & (1 << i)) != 0) {
+                for (char c : CLASS_CHARACTERS[i].toCharArray()) {
+                    if (excludedCharacters.indexOf(c) < 0) {
+                        alphabet.append(c);
+                    }
+                }
+            }
+        }
+
+        return alphabet.toString().toCharArray();
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.passwordmanager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The RecordFormat class encodes and parses the lines of text database files and their journals.
+ * A line holds the fields of one record separated by commas. Commas, line breaks and backslashes inside a field
+ * are escaped with a backslash ("\,", "\n", "\r" and "\\"), so fields can contain them and every record stays
+ * on a single line. A backslash followed by any other character is read as is.
+ * <p>
+ * Text database files written before fields were escaped are parsed by a parser created without escaping,
+ * chosen by TextVaultFile from the header line of the file. It splits lines at every comma like String.split,
+ * dropping empty fields at the end of the line, and reads backslashes as ordinary characters.
+ * <p>
+ * Lines are parsed from UTF-8 bytes in a single pass, without decoding the line into a String first.
+ * Fields the caller doesn't ask for are skipped without being decoded, and escaped fields are unescaped into
+ * a buffer that is reused, so the decoded fields are the only allocations per record.
+ * A parser is not thread-safe, every thread needs its own.
+ */
+public class RecordFormat {
+
+    // Fields of an entry, combined into masks to select the fields to parse
+    public static final int TITLE = 1;
+    public static final int USERNAME = 1 << 1;
+    public static final int PASSWORD = 1 << 2;
+    public static final int ALL_FIELDS = -1;
+
+    // Buffer for unescaping fields, grown as needed
+    private byte[] scratch = new byte[256];
+
+    // False for legacy text files, whose fields are not escaped
+    private final boolean escaping;
+
+
+    /**
+     * Creates a parser for lines with escaped fields.
+     */
+    public RecordFormat() {
+        this(true);
+    }
+
+
+    /**
+     * Creates a parser for lines with or without escaped fields.
+     *
+     * @param escaping False to parse the lines of legacy text files, whose fields are not escaped.
+     */
+    public RecordFormat(boolean escaping) {
+        this.escaping = escaping;
+    }
+
+
+    /**
+     * Encodes the fields of a record as a line, without the line break.
+     *
+     * @param fields The fields of the record.
+     * @return The encoded line.
+     */
+    public static String encode(String... fields) {
+        return append(new StringBuilder(), fields).toString();
+    }
+
+
+    /**
+     * Appends the fields of a record, encoded as a line without the line break.
+     *
+     * @param line   The builder to append to.
+     * @param fields The fields of the record.
+     * @return The builder.
+     */
+    public static StringBuilder append(StringBuilder line, String... fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+
+            String field = fields[i];
+            for (int j = 0; j < field.length(); j++) {
+                char c = field.charAt(j);
+                switch (c) {
+                    case ',' -> line.append("\\,");
+                    case '\\' -> line.append("\\\\");
+                    case '\n' -> line.append("\\n");
+                    case '\r' -> line.append("\\r");
+                    default -> line.append(c);
+                }
+            }
+        }
+
+        return line;
+    }
+
+
+    /**
+     * Parses all fields of a line.
+     *
+     * @param line The line, without the line break.
+     * @return The fields of the line. An empty line has a single empty field.
+     */
+    public String[] parse(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return parse(bytes, 0, bytes.length);
+    }
+
+
+    /**
+     * Parses all fields of a line stored as UTF-8 bytes.
+     *
+     * @param bytes The bytes holding the line.
+     * @param start The position of the first byte of the line.
+     * @param end   The position after the last byte of the line, without the line break.
+     * @return The fields of the line. An empty line has a single empty field.
+     */
+    public String[] parse(byte[] bytes, int start, int end) {
+        String[] fields = new String[countFields(bytes, start, end)];
+        parse(bytes, start, end, ALL_FIELDS, fields);
+        return fields;
+    }
+
+
+    /**
+     * Parses the selected fields of a line stored as UTF-8 bytes into an array.
+     * Fields that are not selected, or don't fit into the array, are skipped without being decoded
+     * and their elements of the array are set to null.
+     *
+     * @param bytes     The bytes holding the line.
+     * @param start     The position of the first byte of the line.
+     * @param end       The position after the last byte of the line, without the line break.
+     * @param fieldMask The fields to parse, as a combination of TITLE, USERNAME and PASSWORD, or ALL_FIELDS.
+     * @param fields    Receives the parsed fields.
+     * @return The number of fields in the line.
+     */
+    public int parse(byte[] bytes, int start, int end, int fieldMask, String[] fields) {
+        Arrays.fill(fields, null);
+
+        if (!escaping) {
+            end = trimEmptyFields(bytes, start, end);
+        }
+
+        int field = 0;
+        int fieldStart = start;
+        boolean escaped = false;
+
+        for (int i = start; ; i++) {
+            if (i == end || bytes[i] == ',') {
+                if (field < fields.length && isSelected(fieldMask, field)) {
+                    fields[field] = decode(bytes, fieldStart, i, escaped);
+                }
+                field++;
+
+                if (i == end) {
+                    return field;
+                }
+                fieldStart = i + 1;
+                escaped = false;
+            } else if (escaping && bytes[i] == '\\' && i + 1 < end) {
+                // The next byte is part of the escape sequence and can't end the field
+                escaped = true;
+                i++;
+            }
+        }
+    }
+
+
+    /**
+     * Receives a field of a line as a range of unescaped UTF-8 bytes. The bytes are only valid during the call.
+     */
+    public interface FieldVisitor {
+        void field(int field, byte[] bytes, int from, int to);
+    }
+
+
+    /**
+     * Passes the selected fields of a line stored as UTF-8 bytes to a visitor without decoding them,
+     * for callers that keep the bytes instead of Strings. Escaped fields are unescaped into the scratch buffer,
+     * which is wiped afterwards, since the fields may be secrets.
+     *
+     * @param bytes     The bytes holding the line.
+     * @param start     The position of the first byte of the line.
+     * @param end       The position after the last byte of the line, without the line break.
+     * @param fieldMask The fields to pass, as a combination of TITLE, USERNAME and PASSWORD, or ALL_FIELDS.
+     * @param visitor   Receives the selected fields in order.
+     * @return The number of fields in the line.
+     */
+    public int forEachField(byte[] bytes, int start, int end, int fieldMask, FieldVisitor visitor) {
+        if (!escaping) {
+            end = trimEmptyFields(bytes, start, end);
+        }
+
+        int field = 0;
+        int fieldStart = start;
+        boolean escaped = false;
+
+        for (int i = start; ; i++) {
+            if (i == end || bytes[i] == ',') {
+                if (isSelected(fieldMask, field)) {
+                    if (escaped) {
+                        int length = unescape(bytes, fieldStart, i);
+                        visitor.field(field, scratch, 0, length);
+                        Arrays.fill(scratch, 0, length, (byte) 0);
+                    } else {
+                        visitor.field(field, bytes, fieldStart, i);
+                    }
+                }
+                field++;
+
+                if (i == end) {
+                    return field;
+                }
+                fieldStart = i + 1;
+                escaped = false;
+            } else if (escaping && bytes[i] == '\\' && i + 1 < end) {
+                // The next byte is part of the escape sequence and can't end the field
+                escaped = true;
+                i++;
+            }
+        }
+    }
+
+
+    /**
+     * Counts the fields of a line stored as UTF-8 bytes.
+     */
+    private int countFields(byte[] bytes, int start, int end) {
+        if (!escaping) {
+            end = trimEmptyFields(bytes, start, end);
+        }
+
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == ',') {
+                count++;
+            } else if (escaping && bytes[i] == '\\') {
+                i++;
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Drops the empty fields at the end of a legacy line, which String.split dropped when such files were read.
+     *
+     * @return The end of the line without its trailing commas.
+     */
+    private static int trimEmptyFields(byte[] bytes, int start, int end) {
+        while (end > start && bytes[end - 1] == ',') {
+            end--;
+        }
+        return end;
+    }
+
+
+    private static boolean isSelected(int fieldMask, int field) {
+        return fieldMask == ALL_FIELDS || (field < Integer.SIZE && (fieldMask & (1 << field)) != 0);
+    }
+
+
+    /**
+     * Decodes a field, unescaping it through the scratch buffer if it contains backslashes.
+     */
+    private String decode(byte[] bytes, int from, int to, boolean escaped) {
+        if (!escaped) {
+            return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        int length = unescape(bytes, from, to);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Unescapes a field into the scratch buffer.
+     *
+     * @return The number of unescaped bytes at the start of the scratch buffer.
+     */
+    private int unescape(byte[] bytes, int from, int to) {
+        if (scratch.length < to - from) {
+            scratch = new byte[Math.max(to - from, scratch.length * 2)];
+        }
+
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+
+            if (b == '\\' && i + 1 < to) {
+                byte next = bytes[i + 1];
+                switch (next) {
+                    case ',', '\\' -> b = next;
+                    case 'n' -> b = '\n';
+                    case 'r' -> b = '\r';
+                    default -> {
+                        // Not an escape sequence, keep the backslash and read the next byte normally
+                        scratch[length++] = b;
+                        continue;
+                    }
+                }
+                i++;
+            }
+
+            scratch[length++] = b;
+        }
+
+        return length;
+    }
+}
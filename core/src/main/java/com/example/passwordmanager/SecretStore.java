@@ -0,0 +1,374 @@
+package com.example.passwordmanager;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The SecretStore class keeps usernames and passwords outside the Java heap, as UTF-8 bytes in direct buffers,
+ * instead of as Strings. Strings can't be wiped and stay in memory until the garbage collector happens to reuse
+ * their space, and a large vault's worth of them makes every collection slower. A secret in the store is
+ * referenced by a long handle holding its chunk, offset and length, so an entry costs 8 bytes of heap per secret.
+ * <p>
+ * Secrets are only decoded when they are needed, into a char[] that is reused by the thread and wiped as soon as
+ * the consumer returns (see reveal). Removing a secret overwrites its bytes with zeros, and closing the store
+ * overwrites all of them. The space of removed secrets is not reused, so the owner of a store rebuilds it once
+ * enough secrets were removed (see getRemovedBytes).
+ * <p>
+ * Adding and removing secrets is synchronized. Revealing doesn't take a lock, since the bytes of a secret never
+ * change while it is in the store; revealing a removed secret gives zeros.
+ */
+public class SecretStore implements AutoCloseable {
+
+    // Size of a chunk of direct memory. A handle has 20 bits each for the offset and the length.
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MASK = CHUNK_SIZE - 1;
+
+    // Longest secret that can be stored, in UTF-8 bytes
+    public static final int MAX_LENGTH = CHUNK_SIZE - 1;
+
+    // Per thread: the buffer secrets are decoded into
+    private static final ThreadLocal<char[]> revealBuffer = ThreadLocal.withInitial(() -> new char[64]);
+
+    // The chunks of direct memory. The list only grows, so readers can use the chunks without a lock.
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int position = CHUNK_SIZE;
+
+    private long storedBytes;
+    private long removedBytes;
+    private boolean closed;
+
+
+    /**
+     * Receives a revealed secret. The characters are only valid during the call and are wiped afterwards,
+     * so they must not be kept.
+     */
+    public interface SecretConsumer {
+        void accept(char[] chars, int length);
+    }
+
+
+    /**
+     * Stores a secret given as UTF-8 bytes, for example a field read from the database file.
+     *
+     * @param bytes The bytes holding the secret.
+     * @param from  The position of the first byte of the secret.
+     * @param to    The position after the last byte of the secret.
+     * @return The handle of the secret.
+     * @throws IllegalArgumentException If the secret is longer than MAX_LENGTH bytes.
+     */
+    public synchronized long put(byte[] bytes, int from, int to) {
+        int length = to - from;
+        ByteBuffer chunk = reserve(length);
+        int offset = position;
+
+        chunk.put(offset, bytes, from, length);
+        position += length;
+        storedBytes += length;
+
+        return handle(chunks.length - 1, offset, length);
+    }
+
+
+    /**
+     * Stores a secret given as characters, for example typed by the user. The characters are not wiped,
+     * that is up to the caller.
+     *
+     * @param chars  The characters of the secret.
+     * @param length The number of characters.
+     * @return The handle of the secret.
+     * @throws IllegalArgumentException If the secret is longer than MAX_LENGTH bytes.
+     */
+    public long put(char[] chars, int length) {
+        return put(CharBuffer.wrap(chars, 0, length));
+    }
+
+
+    /**
+     * Stores a secret given as a character sequence, for example a field of an entry that is saved.
+     *
+     * @param chars The characters of the secret.
+     * @return The handle of the secret.
+     * @throws IllegalArgumentException If the secret is longer than MAX_LENGTH bytes.
+     */
+    public synchronized long put(CharSequence chars) {
+        // Encode straight into the chunk, so the bytes are never on the heap
+        ByteBuffer chunk = reserve(encodedLength(chars));
+        int offset = position;
+
+        ByteBuffer target = chunk.slice(offset, chunk.capacity() - offset);
+        StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .encode(CharBuffer.wrap(chars), target, true);
+
+        int encoded = target.position();
+        position += encoded;
+        storedBytes += encoded;
+
+        return handle(chunks.length - 1, offset, encoded);
+    }
+
+
+    /**
+     * Makes room for a secret, starting a new chunk if it doesn't fit into the current one.
+     *
+     * @return The chunk to write the secret to at the current position.
+     */
+    private ByteBuffer reserve(int length) {
+        if (closed) {
+            throw new IllegalStateException("The secret store is closed");
+        }
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Secret longer than " + MAX_LENGTH + " bytes");
+        }
+
+        if (position + length > CHUNK_SIZE) {
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[grown.length - 1] = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            chunks = grown;
+            position = 0;
+        }
+
+        return chunks[chunks.length - 1];
+    }
+
+
+    /**
+     * Counts the UTF-8 bytes of characters, with unpaired surrogates counting as the replacement "?".
+     */
+    private static int encodedLength(CharSequence chars) {
+        int length = chars.length();
+        int bytes = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes += 1;
+            } else {
+                bytes += 3;
+            }
+        }
+
+        return bytes;
+    }
+
+
+    private static long handle(int chunk, int offset, int length) {
+        return ((long) chunk << (2 * CHUNK_BITS)) | ((long) offset << CHUNK_BITS) | length;
+    }
+
+
+    /**
+     * Returns the length of a secret in UTF-8 bytes.
+     *
+     * @param handle The handle of the secret.
+     * @return The number of bytes.
+     */
+    public static int byteLength(long handle) {
+        return (int) (handle & MASK);
+    }
+
+
+    /**
+     * Decodes a secret into the reused buffer of the calling thread, passes it to the consumer
+     * and wipes the buffer when the consumer returns.
+     *
+     * @param handle   The handle returned by put.
+     * @param consumer Receives the characters of the secret.
+     */
+    public void reveal(long handle, SecretConsumer consumer) {
+        int length = byteLength(handle);
+        if (length == 0) {
+            // Also the handle of fields that were never stored
+            consumer.accept(revealBuffer.get(), 0);
+            return;
+        }
+
+        ByteBuffer chunk = chunks[(int) (handle >>> (2 * CHUNK_BITS))];
+
+        // A UTF-8 byte never decodes to more than one char
+        char[] buffer = revealBuffer.get();
+        if (buffer.length < length) {
+            Arrays.fill(buffer, '\0');
+            buffer = new char[Math.max(length, buffer.length * 2)];
+            revealBuffer.set(buffer);
+        }
+
+        int decoded = decode(chunk, (int) ((handle >>> CHUNK_BITS) & MASK), length, buffer);
+        try {
+            consumer.accept(buffer, decoded);
+        } finally {
+            Arrays.fill(buffer, 0, decoded, '\0');
+        }
+    }
+
+
+    /**
+     * Decodes UTF-8 bytes of a chunk into characters. Every byte of a malformed sequence is replaced with U+FFFD.
+     * Reads the chunk with absolute gets instead of through a slice and a CharsetDecoder, so revealing a secret
+     * allocates nothing.
+     *
+     * @return The number of characters written.
+     */
+    private static int decode(ByteBuffer chunk, int offset, int length, char[] target) {
+        int end = offset + length;
+        int count = 0;
+        int i = offset;
+
+        while (i < end) {
+            int b = chunk.get(i) & 0xFF;
+            if (b < 0x80) {
+                target[count++] = (char) b;
+                i++;
+                continue;
+            }
+
+            // The number of continuation bytes, the bits of the lead byte, and the smallest code point of that length
+            int continuations;
+            int codePoint;
+            int min;
+            if (b >= 0xC2 && b <= 0xDF) {
+                continuations = 1;
+                codePoint = b & 0x1F;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                continuations = 2;
+                codePoint = b & 0x0F;
+                min = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                continuations = 3;
+                codePoint = b & 0x07;
+                min = 0x10000;
+            } else {
+                target[count++] = '\uFFFD';
+                i++;
+                continue;
+            }
+
+            int read = 0;
+            while (read < continuations && i + 1 + read < end && (chunk.get(i + 1 + read) & 0xC0) == 0x80) {
+                codePoint = (codePoint << 6) | (chunk.get(i + 1 + read) & 0x3F);
+                read++;
+            }
+
+            // Truncated sequences, overlong encodings, surrogates and code points past U+10FFFF
+            if (read < continuations || codePoint < min || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                target[count++] = '\uFFFD';
+                i++;
+                continue;
+            }
+
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                target[count++] = Character.highSurrogate(codePoint);
+                target[count++] = Character.lowSurrogate(codePoint);
+            } else {
+                target[count++] = (char) codePoint;
+            }
+            i += 1 + continuations;
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Compares a secret with characters, without decoding it into a String.
+     *
+     * @param handle The handle of the secret.
+     * @param chars  The characters to compare with.
+     * @return True if the secret consists of exactly these characters.
+     */
+    public boolean contentEquals(long handle, CharSequence chars) {
+        boolean[] equal = {false};
+        reveal(handle, (secret, length) -> {
+            if (length != chars.length()) {
+                return;
+            }
+            for (int i = 0; i < length; i++) {
+                if (secret[i] != chars.charAt(i)) {
+                    return;
+                }
+            }
+            equal[0] = true;
+        });
+        return equal[0];
+    }
+
+
+    /**
+     * Overwrites the bytes of a secret with zeros. Its space is not reused.
+     *
+     * @param handle The handle of the secret.
+     */
+    public synchronized void remove(long handle) {
+        int length = byteLength(handle);
+        if (closed || length == 0) {
+            return;
+        }
+
+        ByteBuffer chunk = chunks[(int) (handle >>> (2 * CHUNK_BITS))];
+        int offset = (int) ((handle >>> CHUNK_BITS) & MASK);
+        for (int i = 0; i < length; i++) {
+            chunk.put(offset + i, (byte) 0);
+        }
+
+        removedBytes += length;
+    }
+
+
+    /**
+     * Returns the number of bytes of direct memory the store has allocated.
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) chunks.length * CHUNK_SIZE;
+    }
+
+
+    /**
+     * Returns the number of bytes of the secrets in the store, not counting removed ones.
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes - removedBytes;
+    }
+
+
+    /**
+     * Returns the number of bytes of removed secrets, whose space is not reused.
+     */
+    public synchronized long getRemovedBytes() {
+        return removedBytes;
+    }
+
+
+    /**
+     * Overwrites all secrets with zeros and releases the direct memory once the buffers are collected.
+     * The handles must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        byte[] zeros = new byte[8192];
+        for (ByteBuffer chunk : chunks) {
+            for (int offset = 0; offset < CHUNK_SIZE; offset += zeros.length) {
+                chunk.put(offset, zeros);
+            }
+        }
+        chunks = new ByteBuffer[0];
+    }
+}
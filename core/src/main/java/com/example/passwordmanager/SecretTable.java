@@ -0,0 +1,210 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The SecretTable class is a read-only snapshot of the entries of a text database file that keeps the usernames
+ * and passwords in a SecretStore instead of on the heap. Only the titles are Strings, for looking entries up;
+ * the credentials of an entry are two handles in long arrays, and are copied from the bytes of the file into the
+ * store without ever being decoded. They are decoded into a wiped buffer when they are revealed.
+ * <p>
+ * A Vault keeps every field as a String, since it edits, indexes and searches them. A table is meant for reading
+ * the credentials of a large file, for example by the command line, without keeping them on the heap.
+ * Like the VaultCache, looking up a title gives the first entry with that title.
+ * The file is read under its VaultFileLock, so no other process writes it meanwhile. Files with a journal
+ * are not supported, since the journal holds changes that are not in the file yet.
+ */
+public class SecretTable implements AutoCloseable {
+
+    private final SecretStore store = new SecretStore();
+
+    // The fields of the entries in file order: titles on the heap, usernames and passwords as handles into the store
+    private String[] titles = new String[1024];
+    private long[] usernames = new long[1024];
+    private long[] passwords = new long[1024];
+    private int size;
+
+    // Open addressing table from titles to their index + 1, 0 for an empty slot
+    private int[] slots = new int[2048];
+
+
+    private SecretTable() {
+    }
+
+
+    /**
+     * Reads the entries of a text database file.
+     *
+     * @param filePath The path of the database file.
+     * @return The table of the entries of the file.
+     * @throws IOException If the file can't be read, is a binary or compressed vault or has a journal.
+     */
+    public static SecretTable load(String filePath) throws IOException {
+        if (BinaryVault.isBinaryVault(filePath)) {
+            throw new IOException("Binary vaults keep their credentials in the file: " + filePath);
+        }
+        if (CompressedVault.isCompressedVault(filePath)) {
+            throw new IOException("Compressed vaults are read through their block index: " + filePath);
+        }
+        if (VaultJournal.exists(filePath)) {
+            throw new IOException("The journal of the file has changes that are not in the file yet: " + filePath);
+        }
+
+        SecretTable table = new SecretTable();
+        int fieldMask = RecordFormat.TITLE | RecordFormat.USERNAME | RecordFormat.PASSWORD;
+
+        VaultFileLock fileLock = new VaultFileLock(filePath);
+        fileLock.lock();
+        try {
+            RecordFormat format = TextVaultFile.formatOf(filePath);
+            VaultLoader.scanLines(filePath, (bytes, start, end) -> {
+                int index = table.size;
+                table.grow();
+                table.size++;
+
+                // Lines with fewer fields have empty credentials
+                table.titles[index] = "";
+                format.forEachField(bytes, start, end, fieldMask, (field, fieldBytes, from, to) -> {
+                    switch (field) {
+                        case 0 -> table.titles[index] = new String(fieldBytes, from, to - from, StandardCharsets.UTF_8);
+                        case 1 -> table.usernames[index] = table.store.put(fieldBytes, from, to);
+                        default -> table.passwords[index] = table.store.put(fieldBytes, from, to);
+                    }
+                });
+
+                table.index(index);
+            });
+        } catch (IOException | RuntimeException e) {
+            table.close();
+            throw e;
+        } finally {
+            fileLock.unlock();
+            fileLock.close();
+        }
+
+        return table;
+    }
+
+
+    /**
+     * Makes room for one more entry.
+     */
+    private void grow() {
+        if (size == titles.length) {
+            titles = Arrays.copyOf(titles, size * 2);
+            usernames = Arrays.copyOf(usernames, size * 2);
+            passwords = Arrays.copyOf(passwords, size * 2);
+        }
+
+        // Keep the table of titles at most half full
+        if (size * 2 >= slots.length) {
+            slots = new int[slots.length * 2];
+            for (int i = 0; i < size; i++) {
+                index(i);
+            }
+        }
+    }
+
+
+    /**
+     * Adds the title of an entry to the table of titles, unless an earlier entry has the same title.
+     */
+    private void index(int index) {
+        String title = titles[index];
+        int mask = slots.length - 1;
+
+        for (int slot = spread(title.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            if (slots[slot] == 0) {
+                slots[slot] = index + 1;
+                return;
+            }
+            if (titles[slots[slot] - 1].equals(title)) {
+                return;
+            }
+        }
+    }
+
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+
+    /**
+     * Returns the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Finds the first entry with a title.
+     *
+     * @param title The title of the entry.
+     * @return The index of the entry, or -1 if there is none.
+     */
+    public int indexOf(String title) {
+        int mask = slots.length - 1;
+
+        for (int slot = spread(title.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (titles[slots[slot] - 1].equals(title)) {
+                return slots[slot] - 1;
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Returns the title of an entry.
+     *
+     * @param index The index of the entry.
+     * @return The title.
+     */
+    public String getTitle(int index) {
+        return titles[index];
+    }
+
+
+    /**
+     * Decodes the username of an entry and passes it to a consumer, wiping it afterwards.
+     *
+     * @param index    The index of the entry.
+     * @param consumer Receives the characters of the username, which it must not keep.
+     */
+    public void revealUsername(int index, SecretStore.SecretConsumer consumer) {
+        store.reveal(usernames[index], consumer);
+    }
+
+
+    /**
+     * Decodes the password of an entry and passes it to a consumer, wiping it afterwards.
+     *
+     * @param index    The index of the entry.
+     * @param consumer Receives the characters of the password, which it must not keep.
+     */
+    public void revealPassword(int index, SecretStore.SecretConsumer consumer) {
+        store.reveal(passwords[index], consumer);
+    }
+
+
+    /**
+     * Returns the store holding the usernames and passwords, for reporting its size.
+     */
+    public SecretStore getStore() {
+        return store;
+    }
+
+
+    /**
+     * Wipes the usernames and passwords. The table can't be used afterwards.
+     */
+    @Override
+    public void close() {
+        store.close();
+    }
+}
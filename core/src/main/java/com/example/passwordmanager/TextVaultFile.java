@@ -0,0 +1,230 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The TextVaultFile class knows the version of a text database file and writes complete text files.
+ * <p>
+ * Text files in the current format start with the HEADER line, and their fields are escaped by RecordFormat.
+ * Files without it are legacy files, written before fields were escaped: their lines are split at every comma,
+ * and backslashes are ordinary characters. Such files are read with the legacy rules, so a password ending in
+ * a backslash or containing "\n" reads back exactly as it was written. A Vault migrates a legacy file to the
+ * current format when it opens it, since the fields it writes are escaped. The original file is kept next
+ * to it with the LEGACY_BACKUP_SUFFIX.
+ * <p>
+ * Complete files are written to a temporary file in the same directory, forced to disk and then atomically
+ * renamed over the old file, so a crash leaves either the old or the new file in place.
+ */
+public class TextVaultFile {
+
+    // First line of text files whose fields are escaped
+    public static final String HEADER = "#passwordmanager text vault 2";
+
+    // Suffix of the copy of a legacy file kept when it is migrated
+    public static final String LEGACY_BACKUP_SUFFIX = ".legacy";
+
+    private static final byte[] HEADER_LINE = (HEADER + "\n").getBytes(StandardCharsets.UTF_8);
+
+
+    /**
+     * Returns the length of the header line at the start of a file.
+     *
+     * @param channel The open database file.
+     * @return The number of bytes of the header line, or 0 if the file is a legacy file.
+     * @throws IOException If the file can't be read.
+     */
+    static int headerLength(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_LINE.length) {
+            return 0;
+        }
+
+        ByteBuffer start = ByteBuffer.allocate(HEADER_LINE.length);
+        while (start.hasRemaining()) {
+            if (channel.read(start, start.position()) < 0) {
+                return 0;
+            }
+        }
+
+        return start.flip().equals(ByteBuffer.wrap(HEADER_LINE)) ? HEADER_LINE.length : 0;
+    }
+
+
+    /**
+     * Checks whether a text database file is in the legacy format, without the header line.
+     * An empty file is not a legacy file, but it doesn't have the header yet either.
+     *
+     * @param filePath The path of the database file.
+     * @return True if the file has content but no header line.
+     * @throws IOException If the file can't be read.
+     */
+    public static boolean isLegacy(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            return channel.size() > 0 && headerLength(channel) == 0;
+        }
+    }
+
+
+    /**
+     * Returns a parser for the lines of a text database file, with or without escaping depending on its version.
+     *
+     * @param filePath The path of the database file.
+     * @return A new parser for the file.
+     * @throws IOException If the file can't be read.
+     */
+    public static RecordFormat formatOf(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            return new RecordFormat(headerLength(channel) > 0);
+        }
+    }
+
+
+    /**
+     * Creates an empty text database file in the current format, overwriting the file if it exists.
+     *
+     * @param filePath The path of the database file.
+     * @throws IOException If the file can't be written.
+     */
+    public static void create(String filePath) throws IOException {
+        write(filePath, List.of());
+    }
+
+
+    /**
+     * Returns the header line to put in front of lines appended to a file of the given size.
+     *
+     * @param fileSize The size of the file before appending.
+     * @return The header line if the file is empty, otherwise an empty string.
+     */
+    static String headerFor(long fileSize) {
+        return fileSize == 0 ? HEADER + "\n" : "";
+    }
+
+
+    /**
+     * Writes a complete text database file in the current format, through a temporary file that is atomically
+     * renamed over the old one.
+     *
+     * @param filePath The path of the database file.
+     * @param entries  The entries to write.
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(String filePath, List<String[]> entries) throws IOException {
+        Path path = Path.of(filePath);
+        Path tempPath = writeTemporary(path, entries, new CRC32C());
+
+        try {
+            replace(tempPath, path);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+
+    /**
+     * Writes a complete text database file in the current format to a new temporary file next to the given file
+     * and forces it to disk. The caller renames it over the file with replace, or deletes it.
+     *
+     * @param filePath The path of the database file the temporary file will replace.
+     * @param entries  The entries to write.
+     * @param crc      Updated with the bytes of the written file.
+     * @return The path of the temporary file.
+     * @throws IOException If the file can't be written. The temporary file is deleted then.
+     */
+    static Path writeTemporary(Path filePath, List<String[]> entries, CRC32C crc) throws IOException {
+        // The same directory, so it can be renamed atomically
+        Path directory = filePath.toAbsolutePath().getParent();
+        Path tempPath = Files.createTempFile(directory, filePath.getFileName().toString(), ".tmp");
+
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.wrap(HEADER_LINE);
+            crc.update(header.duplicate());
+            writeFully(out, header);
+
+            // Encode the lines in batches, so large files are written with few system calls
+            StringBuilder lines = new StringBuilder();
+            for (String[] entry : entries) {
+                RecordFormat.append(lines, entry).append('\n');
+                if (lines.length() >= 64 * 1024) {
+                    writeLines(out, lines, crc);
+                }
+            }
+            writeLines(out, lines, crc);
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+
+        return tempPath;
+    }
+
+
+    /**
+     * Atomically renames a temporary file written by writeTemporary over the database file.
+     *
+     * @param tempPath The temporary file.
+     * @param filePath The database file.
+     * @throws IOException If the file can't be renamed.
+     */
+    static void replace(Path tempPath, Path filePath) throws IOException {
+        Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    /**
+     * Migrates a legacy text database file to the current format, keeping a copy of the legacy file.
+     * The entries are read with the legacy rules and written with escaping, so they read back unchanged.
+     * An empty file only gets the header line. A file in the current format is left alone.
+     * Must be called while holding the file lock, before the file is loaded.
+     *
+     * @param filePath The path of the database file.
+     * @return True if the file was changed.
+     * @throws IOException If the file can't be read or written.
+     */
+    public static boolean migrate(String filePath) throws IOException {
+        Path path = Path.of(filePath);
+        long size;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            if (size > 0 && headerLength(channel) > 0) {
+                return false;
+            }
+        }
+
+        if (size > 0) {
+            // Keep the legacy file, unless an earlier migration already did
+            Path backupPath = Path.of(filePath + LEGACY_BACKUP_SUFFIX);
+            if (!Files.exists(backupPath)) {
+                Files.copy(path, backupPath, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+
+        write(filePath, VaultLoader.readEntries(filePath));
+        return true;
+    }
+
+
+    private static void writeLines(FileChannel out, StringBuilder lines, CRC32C crc) throws IOException {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+        crc.update(buffer.duplicate());
+        writeFully(out, buffer);
+        lines.setLength(0);
+    }
+
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
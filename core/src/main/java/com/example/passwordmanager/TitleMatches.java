@@ -0,0 +1,71 @@
+package com.example.passwordmanager;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The TitleMatches class is the result of a title or fuzzy search: a read-only list of the matching titles
+ * that also knows the position of every matching entry in file order. Callers showing the entries in file order
+ * can map the results to them by position, without looking up the titles.
+ * <p>
+ * A result is a view of arrays that are never modified, so it can be handed to the UI thread without copying.
+ * The positions are those of the vault when it was searched and go stale when entries are added or removed.
+ */
+public class TitleMatches extends AbstractList<String> implements RandomAccess {
+
+    // Matches without titles
+    public static final TitleMatches EMPTY = new TitleMatches(new String[0], new int[0], 0, 0);
+
+    // The matching titles and the positions of their entries, from the first to before the last match
+    private final String[] titles;
+    private final int[] positions;
+    private final int from;
+    private final int to;
+
+
+    /**
+     * Creates a view of the matches between two positions of the arrays.
+     *
+     * @param titles    The titles.
+     * @param positions The position in file order of the entry of every title.
+     * @param from      The index of the first match.
+     * @param to        The index after the last match.
+     */
+    TitleMatches(String[] titles, int[] positions, int from, int to) {
+        this.titles = titles;
+        this.positions = positions;
+        this.from = from;
+        this.to = to;
+    }
+
+
+    @Override
+    public String get(int index) {
+        return titles[from + checkIndex(index)];
+    }
+
+
+    /**
+     * Returns the position in file order of the entry of a match.
+     *
+     * @param index The index of the match.
+     * @return The position of the entry when the vault was searched.
+     */
+    public int getPosition(int index) {
+        return positions[from + checkIndex(index)];
+    }
+
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= to - from) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return index;
+    }
+}
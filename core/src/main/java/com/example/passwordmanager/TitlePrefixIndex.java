@@ -0,0 +1,310 @@
+package com.example.passwordmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The TitlePrefixIndex class is a sorted index over entry titles for case-insensitive prefix search.
+ * Titles are kept in a sorted array, so all titles starting with a prefix form one contiguous range
+ * that is found with two binary searches. Next to every title the index keeps the position of its entry
+ * in file order, so a match can be mapped to its entry without looking up the title.
+ * <p>
+ * An index is immutable. Changes return a new index, which costs a copy of the arrays, so changes are best
+ * applied in batches with withChanges. This way a query result can be handed to the UI thread
+ * as a view of the arrays without copying or locking.
+ */
+public class TitlePrefixIndex {
+
+    // An index without titles
+    public static final TitlePrefixIndex EMPTY = new TitlePrefixIndex(new String[0], new String[0], new int[0]);
+
+    // Lower-cased titles in sorted order, the original titles in the same order, and the positions of their entries
+    private final String[] keys;
+    private final String[] titles;
+    private final int[] positions;
+
+
+    private TitlePrefixIndex(String[] keys, String[] titles, int[] positions) {
+        this.keys = keys;
+        this.titles = titles;
+        this.positions = positions;
+    }
+
+
+    /**
+     * Builds an index over the given titles.
+     *
+     * @param titles The titles to index, in file order.
+     * @return The index.
+     */
+    public static TitlePrefixIndex build(Collection<String> titles) {
+        Title[] sorted = new Title[titles.size()];
+        int count = 0;
+
+        for (String title : titles) {
+            sorted[count] = new Title(toKey(title), title, count);
+            count++;
+        }
+        Arrays.sort(sorted);
+
+        String[] keys = new String[count];
+        String[] sortedTitles = new String[count];
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = sorted[i].key;
+            sortedTitles[i] = sorted[i].title;
+            positions[i] = sorted[i].position;
+        }
+
+        return new TitlePrefixIndex(keys, sortedTitles, positions);
+    }
+
+
+    /**
+     * Returns the titles starting with the given prefix, ignoring case, in sorted order.
+     *
+     * @param prefix The prefix to search for.
+     * @return A view of the matching titles and the positions of their entries.
+     */
+    public TitleMatches find(String prefix) {
+        String key = toKey(prefix);
+        int from = lowerBound(key);
+
+        // Every key starting with the prefix sorts before the prefix followed by the highest character
+        int to = key.isEmpty() ? keys.length : lowerBound(key + Character.MAX_VALUE);
+
+        return new TitleMatches(titles, positions, from, to);
+    }
+
+
+    /**
+     * Returns the number of indexed titles.
+     *
+     * @return The number of titles.
+     */
+    public int size() {
+        return titles.length;
+    }
+
+
+    /**
+     * Returns an index with the given changes applied in order, copying the index only once
+     * however many titles changed. The positions of the entries after a changed one are moved accordingly.
+     * An edited title is expected as the removal of the old title followed by the addition of the new one.
+     *
+     * @param changes The ADDED and REMOVED changes of the entries, with their positions at the time of the change.
+     * @return The new index.
+     */
+    public TitlePrefixIndex withChanges(List<VaultChange> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+
+        // Replay the changes on the file as a list of runs, each a range of entries of this index
+        // or of added titles. A change only splits the run it falls into, so the entries are visited once at the end.
+        List<Run> runs = new ArrayList<>();
+        if (titles.length > 0) {
+            runs.add(new Run(false, 0, titles.length));
+        }
+        List<String> added = new ArrayList<>();
+
+        for (VaultChange change : changes) {
+            switch (change.type()) {
+                case ADDED -> {
+                    added.add(change.title());
+                    insertAt(runs, change.index(), added.size() - 1);
+                }
+                case REMOVED -> removeAt(runs, change.index());
+                default -> {
+                    // Titles only change by being removed and added
+                }
+            }
+        }
+
+        // The new position of every entry of this index by its old position, and of every added title,
+        // or -1 if it was removed
+        int[] newPositions = new int[titles.length];
+        int[] addedPositions = new int[added.size()];
+        Arrays.fill(newPositions, -1);
+        Arrays.fill(addedPositions, -1);
+
+        int position = 0;
+        for (Run run : runs) {
+            int[] target = run.added ? addedPositions : newPositions;
+            for (int i = 0; i < run.length; i++) {
+                target[run.start + i] = position++;
+            }
+        }
+
+        Title[] addedTitles = new Title[added.size()];
+        int addedCount = 0;
+        for (int i = 0; i < added.size(); i++) {
+            if (addedPositions[i] >= 0) {
+                addedTitles[addedCount++] = new Title(toKey(added.get(i)), added.get(i), addedPositions[i]);
+            }
+        }
+        Arrays.sort(addedTitles, 0, addedCount);
+
+        // Merge the sorted new titles with the remaining ones
+        String[] newKeys = new String[titles.length + addedCount];
+        String[] newTitles = new String[titles.length + addedCount];
+        int[] newTitlePositions = new int[titles.length + addedCount];
+        int count = 0;
+        int j = 0;
+
+        for (int i = 0; i <= titles.length; i++) {
+            int oldPosition = i < titles.length ? newPositions[positions[i]] : -1;
+            if (i < titles.length && oldPosition < 0) {
+                continue;
+            }
+
+            while (j < addedCount && (i == titles.length
+                    || compare(addedTitles[j], keys[i], titles[i], oldPosition) < 0)) {
+                newKeys[count] = addedTitles[j].key;
+                newTitles[count] = addedTitles[j].title;
+                newTitlePositions[count++] = addedTitles[j++].position;
+            }
+
+            if (i < titles.length) {
+                newKeys[count] = keys[i];
+                newTitles[count] = titles[i];
+                newTitlePositions[count++] = oldPosition;
+            }
+        }
+
+        return new TitlePrefixIndex(Arrays.copyOf(newKeys, count), Arrays.copyOf(newTitles, count),
+                Arrays.copyOf(newTitlePositions, count));
+    }
+
+
+    /**
+     * A range of consecutive entries in file order: entries of the index by their old position,
+     * or titles added since, by the order they were added in.
+     */
+    private static class Run {
+
+        final boolean added;
+        int start;
+        int length;
+
+
+        Run(boolean added, int start, int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+
+    /**
+     * Inserts an added title into the runs at the given position, splitting the run it falls into.
+     */
+    private static void insertAt(List<Run> runs, int position, int addedIndex) {
+        int offset = 0;
+        int i = 0;
+
+        while (i < runs.size() && offset + runs.get(i).length <= position) {
+            offset += runs.get(i).length;
+            i++;
+        }
+
+        if (i < runs.size() && position > offset) {
+            Run run = runs.get(i);
+            int at = position - offset;
+            runs.add(i + 1, new Run(run.added, run.start + at, run.length - at));
+            run.length = at;
+            i++;
+        }
+
+        // Titles added one after the other, like those of an import, extend the same run
+        Run previous = i > 0 ? runs.get(i - 1) : null;
+        if (previous != null && previous.added && previous.start + previous.length == addedIndex) {
+            previous.length++;
+        } else {
+            runs.add(i, new Run(true, addedIndex, 1));
+        }
+    }
+
+
+    /**
+     * Removes the entry at the given position from the runs, splitting the run it falls into.
+     */
+    private static void removeAt(List<Run> runs, int position) {
+        int offset = 0;
+
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+
+            if (position < offset + run.length) {
+                int at = position - offset;
+                if (run.length == 1) {
+                    runs.remove(i);
+                } else if (at == 0) {
+                    run.start++;
+                    run.length--;
+                } else if (at == run.length - 1) {
+                    run.length--;
+                } else {
+                    runs.add(i + 1, new Run(run.added, run.start + at + 1, run.length - at - 1));
+                    run.length = at;
+                }
+                return;
+            }
+
+            offset += run.length;
+        }
+    }
+
+
+    /**
+     * A title with its key and the position of its entry, sorted together while building an index.
+     */
+    private record Title(String key, String title, int position) implements Comparable<Title> {
+
+        @Override
+        public int compareTo(Title other) {
+            return compare(this, other.key, other.title, other.position);
+        }
+    }
+
+
+    /**
+     * Returns the position of the first key that is not less than the given key.
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+
+    /**
+     * Orders titles by their lower-cased key, titles differing only in case by the titles themselves,
+     * and entries with the same title by their position.
+     */
+    private static int compare(Title title, String key, String otherTitle, int position) {
+        int result = title.key.compareTo(key);
+        if (result == 0) {
+            result = title.title.compareTo(otherTitle);
+        }
+        return result != 0 ? result : Integer.compare(title.position, position);
+    }
+
+
+    private static String toKey(String title) {
+        return title.toLowerCase(Locale.ROOT);
+    }
+}
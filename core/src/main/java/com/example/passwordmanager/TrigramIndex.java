@@ -0,0 +1,462 @@
+package com.example.passwordmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * The TrigramIndex class is an inverted index of the three-character sequences (trigrams) in the titles and
+ * usernames of the entries, used for substring and typo-tolerant search.
+ * <p>
+ * Every entry gets an int ID, and every trigram maps to a posting list: a sorted int array of the IDs of the
+ * entries containing it. A query matches the entries containing all of its trigrams but those a single typo
+ * can change, and at least half of them, so "gthub" still finds "GitHub - work".
+ * Results are ranked by match quality and carry the position of each entry in file order.
+ * <p>
+ * IDs are never reused. A removed or edited entry is marked as removed instead of being taken out of the posting
+ * lists, and an edited entry is indexed again under a new ID. The index is rebuilt whenever the file is reloaded.
+ * All methods are synchronized, so queries on the UI thread see a consistent index while entries are changed.
+ * <p>
+ * The lower-cased usernames are kept in a SecretStore rather than as Strings, like the credentials in the
+ * VaultCache, and are wiped when their entry is removed or the index is closed.
+ */
+public class TrigramIndex {
+
+    // Minimum share of the trigrams of a query an entry must contain to match
+    private static final double MIN_MATCH_RATIO = 0.5;
+
+    // Number of trigrams of a query a single typo can affect. A changed, missing or extra character affects up to
+    // three, two swapped characters up to four.
+    private static final int TRIGRAMS_PER_TYPO = 4;
+
+    // Posting list of every trigram, keyed by the three characters packed into a long.
+    // An open-addressing table, so looking up a trigram doesn't box its key.
+    private long[] trigramKeys = new long[1024];
+    private PostingList[] postingLists = new PostingList[1024];
+    private int trigramCount;
+
+    // Title of every ID, lower-cased for matching, and the original title
+    private final List<String> titleKeys = new ArrayList<>();
+    private final List<String> titles = new ArrayList<>();
+
+    // Handle of the lower-cased username of every ID in the store
+    private final SecretStore usernameKeys = new SecretStore();
+    private long[] usernameHandles = new long[16];
+    private boolean closed;
+
+    // IDs of entries that were removed or replaced
+    private final BitSet removed = new BitSet();
+
+    // ID of the entry at each position of the file
+    private int[] order = new int[16];
+    private int orderSize;
+
+    // Position of the entry of each ID, or null until a search needs it after the entries changed
+    private int[] positions;
+
+
+    /**
+     * Builds an index over the given entries.
+     *
+     * @param entries The entries in file order, as [title, username, password].
+     * @return The index.
+     */
+    public static TrigramIndex build(List<String[]> entries) {
+        TrigramIndex index = new TrigramIndex();
+
+        for (String[] entry : entries) {
+            index.add(index.orderSize, entry);
+        }
+
+        return index;
+    }
+
+
+    /**
+     * Indexes an entry inserted at the given position of the file.
+     *
+     * @param position The position of the entry in the file.
+     * @param entry    The entry as [title, username, password].
+     */
+    public synchronized void add(int position, String[] entry) {
+        if (closed) {
+            return;
+        }
+
+        int id = titles.size();
+        String titleKey = toKey(entry[0]);
+        String usernameKey = entry.length > 1 && entry[1] != null ? toKey(entry[1]) : "";
+
+        titles.add(entry[0]);
+        titleKeys.add(titleKey);
+        if (id == usernameHandles.length) {
+            usernameHandles = Arrays.copyOf(usernameHandles, id * 2);
+        }
+        usernameHandles[id] = usernameKeys.put(usernameKey);
+        addTrigrams(titleKey, id);
+        addTrigrams(usernameKey, id);
+
+        // Insert the ID at the position of the entry
+        if (orderSize == order.length) {
+            order = Arrays.copyOf(order, orderSize * 2);
+        }
+        System.arraycopy(order, position, order, position + 1, orderSize - position);
+        order[position] = id;
+        orderSize++;
+        positions = null;
+    }
+
+
+    /**
+     * Indexes the new details of the entry at the given position of the file.
+     *
+     * @param position The position of the entry in the file.
+     * @param entry    The new details of the entry.
+     */
+    public synchronized void update(int position, String[] entry) {
+        remove(position);
+        add(position, entry);
+    }
+
+
+    /**
+     * Removes the entry at the given position of the file from the index.
+     *
+     * @param position The position of the entry in the file.
+     */
+    public synchronized void remove(int position) {
+        removed.set(order[position]);
+        usernameKeys.remove(usernameHandles[order[position]]);
+        System.arraycopy(order, position + 1, order, position, orderSize - position - 1);
+        orderSize--;
+        positions = null;
+    }
+
+
+    /**
+     * Finds the entries whose title or username contains the query or something close to it.
+     * Queries shorter than a trigram are matched as plain substrings.
+     *
+     * @param query                The text to search for.
+     * @param maxResults           The maximum number of results.
+     * @param includeTitlePrefixes Whether to include entries whose title starts with the query.
+     * @return The titles of the matching entries, best match first, with the positions of the entries.
+     */
+    public synchronized TitleMatches search(String query, int maxResults, boolean includeTitlePrefixes) {
+        String queryKey = toKey(query.strip());
+        if (queryKey.isEmpty() || maxResults <= 0 || closed) {
+            return TitleMatches.EMPTY;
+        }
+
+        Comparator<Match> byQuality = Comparator.comparingInt((Match match) -> match.rank)
+                .thenComparing(Comparator.comparingDouble((Match match) -> match.similarity).reversed())
+                .thenComparingInt(match -> titleKeys.get(match.id).length())
+                .thenComparing(match -> titleKeys.get(match.id));
+
+        // Keep only the best matches while searching, with the worst of them at the head of the queue
+        PriorityQueue<Match> best = new PriorityQueue<>(byQuality.reversed());
+        int minRank = includeTitlePrefixes ? 0 : 1;
+        Consumer<Match> collector = match -> {
+            if (match.rank >= minRank) {
+                best.add(match);
+                if (best.size() > maxResults) {
+                    best.poll();
+                }
+            }
+        };
+
+        if (queryKey.length() < 3) {
+            findSubstrings(queryKey, collector);
+        } else {
+            findTrigrams(queryKey, trigrams(queryKey), collector);
+        }
+
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(byQuality);
+
+        int[] positionOfId = getPositions();
+        String[] resultTitles = new String[matches.size()];
+        int[] resultPositions = new int[matches.size()];
+        for (int i = 0; i < matches.size(); i++) {
+            resultTitles[i] = titles.get(matches.get(i).id);
+            resultPositions[i] = positionOfId[matches.get(i).id];
+        }
+
+        return new TitleMatches(resultTitles, resultPositions, 0, resultTitles.length);
+    }
+
+
+    /**
+     * Returns the position of the entry of every ID, -1 for removed IDs.
+     * Changing an entry moves the positions of all entries after it, so they are only worked out again
+     * by the first search after a change.
+     */
+    private int[] getPositions() {
+        if (positions == null) {
+            int[] positionOfId = new int[titles.size()];
+            Arrays.fill(positionOfId, -1);
+            for (int i = 0; i < orderSize; i++) {
+                positionOfId[order[i]] = i;
+            }
+            positions = positionOfId;
+        }
+
+        return positions;
+    }
+
+
+    /**
+     * A matching entry with its rank (lower is better) and the share of query trigrams it contains.
+     */
+    private record Match(int id, int rank, double similarity) {
+    }
+
+
+    /**
+     * Finds the entries sharing enough trigrams with the query.
+     * Only the rarest posting lists are scanned for candidates. An entry missing from all of them can't reach the
+     * minimum number of shared trigrams, so the longer lists only need to be checked for the candidates.
+     */
+    private void findTrigrams(String queryKey, long[] queryTrigrams, Consumer<Match> collector) {
+        PostingList[] lists = new PostingList[queryTrigrams.length];
+        for (int i = 0; i < queryTrigrams.length; i++) {
+            PostingList list = postingLists[slot(queryTrigrams[i])];
+            lists[i] = list != null ? list : PostingList.EMPTY;
+        }
+        Arrays.sort(lists, Comparator.comparingInt((PostingList list) -> list.size));
+
+        int required = Math.max(1, Math.max((int) Math.ceil(queryTrigrams.length * MIN_MATCH_RATIO),
+                queryTrigrams.length - TRIGRAMS_PER_TYPO));
+        int scanned = queryTrigrams.length - required + 1;
+
+        // Merge the rarest lists. Each step takes the lowest ID at the head of any list and counts the lists it is in.
+        int[] heads = new int[scanned];
+
+        while (true) {
+            int id = Integer.MAX_VALUE;
+            for (int i = 0; i < scanned; i++) {
+                if (heads[i] < lists[i].size) {
+                    id = Math.min(id, lists[i].ids[heads[i]]);
+                }
+            }
+            if (id == Integer.MAX_VALUE) {
+                break;
+            }
+
+            int shared = 0;
+            for (int i = 0; i < scanned; i++) {
+                if (heads[i] < lists[i].size && lists[i].ids[heads[i]] == id) {
+                    shared++;
+                    heads[i]++;
+                }
+            }
+
+            if (removed.get(id)) {
+                continue;
+            }
+
+            // Look the candidate up in the remaining lists, as long as it can still reach the required count
+            for (int j = scanned; j < lists.length && shared + lists.length - j >= required; j++) {
+                if (lists[j].contains(id)) {
+                    shared++;
+                }
+            }
+
+            if (shared >= required) {
+                collector.accept(new Match(id, rank(id, queryKey), (double) shared / queryTrigrams.length));
+            }
+        }
+    }
+
+
+    /**
+     * Finds the entries containing the query by scanning them, for queries too short to have trigrams.
+     */
+    private void findSubstrings(String queryKey, Consumer<Match> collector) {
+        for (int i = 0; i < orderSize; i++) {
+            int id = order[i];
+            int rank = rank(id, queryKey);
+            if (rank < 3) {
+                collector.accept(new Match(id, rank, 1));
+            }
+        }
+    }
+
+
+    /**
+     * Ranks how an entry matches the query: 0 if the title starts with it, 1 if the title contains it,
+     * 2 if the username contains it, 3 if the title shares at least half of its trigrams, and 4 otherwise.
+     */
+    private int rank(int id, String queryKey) {
+        String titleKey = titleKeys.get(id);
+
+        if (titleKey.startsWith(queryKey)) {
+            return 0;
+        } else if (titleKey.contains(queryKey)) {
+            return 1;
+        } else if (usernameContains(id, queryKey)) {
+            return 2;
+        }
+
+        // Prefer typos in the title over matches spread across the title and username
+        int trigramCount = queryKey.length() - 2;
+        int inTitle = 0;
+        for (int i = 0; i < trigramCount; i++) {
+            if (titleKey.contains(queryKey.substring(i, i + 3))) {
+                inTitle++;
+            }
+        }
+
+        return inTitle * 2 >= trigramCount ? 3 : 4;
+    }
+
+
+    /**
+     * Checks whether the username of an entry contains the query, without decoding it into a String.
+     */
+    private boolean usernameContains(int id, String queryKey) {
+        boolean[] found = {false};
+
+        usernameKeys.reveal(usernameHandles[id], (chars, length) -> {
+            for (int start = 0; start + queryKey.length() <= length && !found[0]; start++) {
+                int i = 0;
+                while (i < queryKey.length() && chars[start + i] == queryKey.charAt(i)) {
+                    i++;
+                }
+                found[0] = i == queryKey.length();
+            }
+        });
+
+        return found[0];
+    }
+
+
+    /**
+     * Wipes the usernames. The index finds nothing afterwards.
+     */
+    public synchronized void close() {
+        closed = true;
+        usernameKeys.close();
+    }
+
+
+    /**
+     * Adds an ID to the posting lists of all trigrams of a field.
+     * A trigram occurring twice adds the ID twice in a row, which the posting list ignores.
+     */
+    private void addTrigrams(String key, int id) {
+        for (int i = 0; i + 3 <= key.length(); i++) {
+            long trigram = trigram(key, i);
+            int slot = slot(trigram);
+
+            if (postingLists[slot] == null) {
+                trigramKeys[slot] = trigram;
+                postingLists[slot] = new PostingList();
+                if (++trigramCount * 2 > trigramKeys.length) {
+                    growTable();
+                    slot = slot(trigram);
+                }
+            }
+
+            postingLists[slot].add(id);
+        }
+    }
+
+
+    /**
+     * Returns the slot of a trigram in the table: the slot holding it, or the empty slot where it belongs.
+     */
+    private int slot(long trigram) {
+        int mask = trigramKeys.length - 1;
+        int slot = Long.hashCode(trigram * 0x9E3779B97F4A7C15L) & mask;
+
+        while (postingLists[slot] != null && trigramKeys[slot] != trigram) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+
+    /**
+     * Doubles the size of the trigram table, keeping it at most half full so lookups stay short.
+     */
+    private void growTable() {
+        long[] oldKeys = trigramKeys;
+        PostingList[] oldLists = postingLists;
+        trigramKeys = new long[oldKeys.length * 2];
+        postingLists = new PostingList[oldLists.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldLists[i] != null) {
+                int slot = slot(oldKeys[i]);
+                trigramKeys[slot] = oldKeys[i];
+                postingLists[slot] = oldLists[i];
+            }
+        }
+    }
+
+
+    /**
+     * Returns the distinct trigrams of a lower-cased query.
+     */
+    private static long[] trigrams(String key) {
+        long[] trigrams = new long[Math.max(0, key.length() - 2)];
+
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = trigram(key, i);
+        }
+
+        return Arrays.stream(trigrams).distinct().toArray();
+    }
+
+
+    /**
+     * Packs the three characters starting at the given position into a long.
+     */
+    private static long trigram(String key, int position) {
+        return ((long) key.charAt(position) << 32) | ((long) key.charAt(position + 1) << 16) | key.charAt(position + 2);
+    }
+
+
+    private static String toKey(String field) {
+        return field.toLowerCase(Locale.ROOT);
+    }
+
+
+    /**
+     * A growable sorted array of entry IDs.
+     */
+    private static class PostingList {
+
+        // A list without IDs, used for trigrams that are not in the index
+        static final PostingList EMPTY = new PostingList();
+
+        int[] ids = new int[4];
+        int size;
+
+
+        /**
+         * Appends an ID. IDs are handed out in increasing order, so appending keeps the list sorted.
+         */
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
@@ -0,0 +1,1487 @@
+package com.example.passwordmanager;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * The Vault class is the handle of an open database file, either a text file, a binary vault or a compressed vault.
+ * Every vault has its own cache, title and trigram indexes, journal or write queue and file channel,
+ * so several vaults can be open at the same time (for example a personal and a team vault).
+ * <p>
+ * Reads and writes are coordinated with a read-write lock per vault. Any number of threads can read entries,
+ * look them up and search at the same time, while adding, updating and deleting entries takes the lock exclusively.
+ * A reader that finds the file changed on disk reloads it under the write lock first.
+ * The prefix search doesn't take the lock at all, it has its own.
+ * <p>
+ * Other processes writing the same text file are coordinated with a VaultFileLock. Every write reloads the changes
+ * of the other processes under that lock first, so it is applied on top of them instead of overwriting them.
+ */
+public class Vault {
+
+    // Path to the file where the password entries of this vault are stored
+    private final String filePath;
+
+    // Lock coordinating readers and writers of this vault
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // In-memory copy of the file, indexed by entry title
+    private final VaultCache cache = new VaultCache();
+
+    // Journal of the file, or null if journaling is disabled
+    private VaultJournal journal;
+
+    // Queue of added entries appended to the text file in batches, or null if changes go to the journal
+    private VaultWriter writer;
+
+    // The binary or compressed vault, or null if the file is a text file
+    private VaultFile vaultFile;
+
+    // Lock coordinating the processes writing the file, or null if it couldn't be opened
+    private VaultFileLock fileLock;
+
+    // Sorted index of the entry titles for prefix search. Changing it copies the whole index,
+    // so changes are collected and merged into it in one go on the next search.
+    private TitlePrefixIndex titleIndex = TitlePrefixIndex.EMPTY;
+    private final List<VaultChange> titleChanges = new ArrayList<>();
+
+    // Lock guarding the title index, separate so searches are not blocked by file writes
+    private final Object titleIndexLock = new Object();
+
+    // Trigram index of the titles and usernames for fuzzy search, or null if it hasn't been built yet
+    private volatile TrigramIndex trigramIndex;
+
+    // Listeners notified about changes made to this vault
+    private final List<Consumer<VaultChange>> changeListeners = new CopyOnWriteArrayList<>();
+
+    private boolean closed;
+
+    // Whether the vault has been loaded when it was opened. Later reloads notify the change listeners.
+    private boolean opened;
+
+    // Reloads changing more entries than this notify the change listeners with a single RELOADED change
+    private static final int MAX_DELTAS = 1000;
+
+    // Metrics of the storage operations, also recorded as VaultEvents
+    private static final LatencyHistogram LOAD_TIME = Metrics.histogram("vault.load");
+    private static final LongAdder LOADED_BYTES = Metrics.counter("vault.load.bytes");
+    private static final LongAdder LOADED_ENTRIES = Metrics.counter("vault.load.entries");
+    private static final LatencyHistogram REWRITE_TIME = Metrics.histogram("vault.rewrite");
+    private static final LongAdder REWRITTEN_BYTES = Metrics.counter("vault.rewrite.bytes");
+    private static final LongAdder REWRITE_FAILURES = Metrics.counter("vault.rewrite.failures");
+    private static final LatencyHistogram APPEND_TIME = Metrics.histogram("vault.append");
+    private static final LongAdder APPEND_FAILURES = Metrics.counter("vault.append.failures");
+    private static final LatencyHistogram LOOKUP_TIME = Metrics.histogram("vault.lookup");
+    private static final LongAdder LOOKUP_MISSES = Metrics.counter("vault.lookup.misses");
+
+
+    private Vault(String filePath) {
+        this.filePath = filePath;
+    }
+
+
+    /**
+     * Opens a database file and loads its entries into the cache.
+     * An encrypted binary vault is unlocked with the given master password, which derives its key once for the session.
+     *
+     * @param filePath       The path of the database file.
+     * @param masterPassword The master password of an encrypted vault, or null. It is not kept.
+     * @param journaling     True to append changes to a journal, false to rewrite the file on every change.
+     * @return The open vault.
+     * @throws IOException If the file is a binary vault that can't be opened, for example because the password is wrong.
+     */
+    public static Vault open(String filePath, char[] masterPassword, boolean journaling) throws IOException {
+        Vault vault = new Vault(filePath);
+        vault.lock.writeLock().lock();
+
+        try {
+            vault.load(masterPassword, journaling);
+            vault.opened = true;
+        } catch (IOException e) {
+            // Release the lock file
+            vault.close();
+            throw e;
+        } finally {
+            vault.lock.writeLock().unlock();
+        }
+
+        // The file may be changed by other processes, for example a vault shared through a network drive
+        VaultWatcher.watch(vault);
+
+        return vault;
+    }
+
+
+    /**
+     * Loads the file when the vault is opened. Called while holding the write lock.
+     */
+    private void load(char[] masterPassword, boolean journaling) throws IOException {
+        try {
+            fileLock = new VaultFileLock(filePath);
+        } catch (IOException e) {
+            // Changes are written without coordinating with other processes
+            e.printStackTrace();
+        }
+
+        // Binary and compressed vaults only read (and decrypt) their titles here, credentials are read on lookup
+        if (BinaryVault.isBinaryVault(filePath) || CompressedVault.isCompressedVault(filePath)) {
+            VaultEvents.Load event = new VaultEvents.Load();
+            event.begin();
+            long start = Metrics.start();
+
+            // Opening an old version of the format rewrites the file, and no other process may write in between
+            lockFile();
+            try {
+                if (BinaryVault.isBinaryVault(filePath)) {
+                    vaultFile = BinaryVault.open(filePath, masterPassword);
+                } else {
+                    vaultFile = CompressedVault.open(filePath);
+                }
+
+                if (fileLock != null) {
+                    if (vaultFile.wasMigrated()) {
+                        fileLock.markRewritten();
+                    }
+                    // The changes of other processes so far are in what was just read
+                    fileLock.clearForeignChanges();
+                }
+            } finally {
+                unlockFile();
+            }
+
+            List<String> titles = vaultFile.getTitles();
+            resetTitleIndex(TitlePrefixIndex.build(titles));
+
+            LOAD_TIME.recordSince(start);
+            recordLoad(event, titles.size(), true, false);
+            return;
+        }
+
+        lockFile();
+        try {
+            // Finish a compaction that was interrupted by a crash, then load the file with its journal replayed
+            VaultJournal.recover(filePath);
+            migrateLegacyFile();
+            reloadIfStale();
+
+            if (journaling) {
+                try {
+                    journal = new VaultJournal(filePath, cache, lock.writeLock(), fileLock);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            } else if (VaultJournal.exists(filePath)) {
+                // The file was journaled before. Fold the journal into the file, since changes are now written directly.
+                if (updateFile()) {
+                    VaultJournal.delete(filePath);
+                }
+            }
+
+            if (journal == null) {
+                try {
+                    writer = new VaultWriter(filePath, cache, lock.writeLock(), fileLock);
+                } catch (IOException e) {
+                    // Added entries are appended one at a time instead
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            unlockFile();
+        }
+    }
+
+
+    /**
+     * Migrates a legacy text file, written before fields were escaped, to the current format before it is loaded.
+     * Entries written by this vault are escaped, so appending them to a legacy file would mix both formats.
+     * Called while holding the write lock and the file lock.
+     */
+    private void migrateLegacyFile() {
+        try {
+            if (new File(filePath).length() > 0 && TextVaultFile.migrate(filePath) && fileLock != null) {
+                fileLock.markRewritten();
+            }
+        } catch (IOException e) {
+            // The file is still read with the legacy rules, but entries written to it are escaped
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Returns the path of the database file of this vault.
+     *
+     * @return The file path.
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+
+    /**
+     * Checks whether this vault is stored in the binary vault format.
+     *
+     * @return True for a binary vault, false for a text file or a compressed vault.
+     */
+    public boolean isBinary() {
+        return vaultFile instanceof BinaryVault;
+    }
+
+
+    /**
+     * Retrieves a list of password entries from the file.
+     * The entries are served from the in-memory cache, which is reloaded only if the file has changed.
+     *
+     * @return A list of string arrays, each representing a password entry.
+     */
+    public List<String[]> getPasswordEntries() {
+        lockForReading();
+        try {
+            if (vaultFile != null) {
+                return vaultFile.getEntries();
+            }
+
+            return new ArrayList<>(cache.getEntries());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Streams all password entries through a visitor in file order, without building a list.
+     * The visitor gets the same array for every entry, holding the title, username and password, with null for
+     * the fields that were not requested or that the entry doesn't have. It must copy what it keeps.
+     * For binary and compressed vaults only the requested fields are decoded, and nothing but the titles
+     * if only the title is requested.
+     * The visitor is called while holding the read lock of the vault, so it must not change the vault.
+     *
+     * @param fieldMask The fields to visit, as a combination of RecordFormat.TITLE, USERNAME and PASSWORD.
+     * @param visitor   Called with the fields of every entry.
+     */
+    public void forEachEntry(int fieldMask, Consumer<String[]> visitor) {
+        lockForReading();
+        try {
+            if (vaultFile != null) {
+                vaultFile.forEachEntry(fieldMask, visitor);
+                return;
+            }
+
+            // The entries of text files are in the cache already, only the requested fields are decoded
+            String[] fields = new String[3];
+            for (int index = 0; index < cache.size(); index++) {
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = (fieldMask & (1 << i)) != 0 ? cache.getField(index, i) : null;
+                }
+                visitor.accept(fields);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Retrieves the titles of all password entries in file order.
+     * For binary and compressed vaults this does not read any credentials.
+     *
+     * @return A list of entry titles.
+     */
+    public List<String> getEntryTitles() {
+        lockForReading();
+        try {
+            if (vaultFile != null) {
+                return vaultFile.getTitles();
+            }
+
+            List<String> titles = new ArrayList<>(cache.size());
+            for (int index = 0; index < cache.size(); index++) {
+                titles.add(cache.getTitle(index));
+            }
+
+            return titles;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Retrieves the details of a specific password entry based on its title.
+     * The lookup goes through the title index of the cache and does not read the file.
+     *
+     * @param entryTitle The title of the entry to retrieve.
+     * @return The details of the entry as a string array, newly decoded for the caller.
+     */
+    public String[] getEntryDetails(String entryTitle) {
+        VaultEvents.Lookup event = new VaultEvents.Lookup();
+        event.begin();
+        long start = Metrics.start();
+        String[] entry = null;
+
+        lockForReading();
+        try {
+            if (vaultFile != null) {
+                // Read the credentials of the entry from the vault file
+                entry = vaultFile.getEntry(entryTitle);
+            } else {
+                entry = cache.get(entryTitle); // null if the entry is not found
+            }
+            return entry;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            lock.readLock().unlock();
+
+            LOOKUP_TIME.recordSince(start);
+            if (entry == null) {
+                Metrics.increment(LOOKUP_MISSES);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = filePath;
+                event.found = entry != null;
+                event.commit();
+            }
+        }
+    }
+
+
+    /**
+     * Passes a credential of a password entry to a consumer as characters that are wiped afterwards.
+     * For text files the field is decoded straight from the secret store of the cache, so no String is created.
+     * Binary and compressed vaults decode the entry, and only the copy of the field is wiped.
+     *
+     * @param entryTitle The title of the entry.
+     * @param field      The field, 1 for the username and 2 for the password.
+     * @param consumer   Receives the characters of the field, which it must not keep.
+     * @return True if the entry was found.
+     */
+    public boolean revealField(String entryTitle, int field, SecretStore.SecretConsumer consumer) {
+        lockForReading();
+        try {
+            if (vaultFile == null) {
+                return cache.reveal(entryTitle, field, consumer);
+            }
+
+            String[] entry = vaultFile.getEntry(entryTitle);
+            if (entry == null) {
+                return false;
+            }
+
+            char[] chars = field < entry.length && entry[field] != null ? entry[field].toCharArray() : new char[0];
+            try {
+                consumer.accept(chars, chars.length);
+            } finally {
+                Arrays.fill(chars, '\0');
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Takes the read lock, reloading the cache first under the write lock if the file has changed on disk.
+     * The caller must release the read lock.
+     */
+    private void lockForReading() {
+        lock.readLock().lock();
+
+        if (needsReload()) {
+            // A read lock can't be upgraded, so release it and check again under the write lock
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                reloadIfStale();
+
+                // Downgrade to the read lock, so no writer can get in between
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Checks whether the cache of a text file, or the titles read from a binary or compressed vault,
+     * no longer reflect the file on disk.
+     */
+    private boolean needsReload() {
+        if (closed) {
+            return false;
+        }
+        if (vaultFile != null) {
+            // Other processes change these files in place, which only the version counter tells reliably
+            return fileLock != null && fileLock.isOutdated();
+        }
+        return cache.isStale(filePath);
+    }
+
+
+    /**
+     * Checks whether the file has changed on disk, for example because another process wrote it,
+     * and if so reloads it and notifies the change listeners of the entries that changed.
+     * Called by the VaultWatcher when the file changes, but can be called at any time.
+     */
+    public void refresh() {
+        // Changes other processes made to the journal don't change the file, but they do change its version
+        VaultFileLock versionLock = fileLock;
+        if (versionLock != null && versionLock.isOutdated()) {
+            lock.writeLock().lock();
+            try {
+                if (!closed) {
+                    reloadIfStale();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lockForReading();
+        lock.readLock().unlock();
+    }
+
+
+    /**
+     * Reloads the cache of a text file if the file has changed on disk. Called while holding the write lock.
+     * If entries were only appended to the file, only the appended part is read. Otherwise the whole file is read
+     * and compared with the cache. Either way the change listeners are notified of the individual changes,
+     * unless there are too many of them. Holds the file lock while reading, so no other process writes in between.
+     */
+    private void reloadIfStale() {
+        // Without the file lock, changes of other processes can only be noticed by the size and modification time
+        if (!needsReload() && (fileLock == null || !fileLock.isHeld())) {
+            return;
+        }
+
+        lockFile();
+        try {
+            reloadLocked();
+        } finally {
+            unlockFile();
+        }
+    }
+
+
+    /**
+     * Reloads the cache of a text file if the file has changed on disk. Called while holding both locks.
+     */
+    private void reloadLocked() {
+        if (vaultFile != null) {
+            try {
+                reloadVaultFile();
+            } catch (IOException e) {
+                // Tried again the next time the file lock is taken
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        // The file lock knows about changes of other processes that the size and modification time may not show
+        boolean appendsOnly = true;
+        if (fileLock != null && fileLock.hasForeignChanges()) {
+            appendsOnly = fileLock.hasForeignAppendsOnly();
+            fileLock.clearForeignChanges();
+            cache.invalidate();
+
+            // Another process may have compacted the journal, replacing its file
+            if (journal != null) {
+                try {
+                    journal.reopen();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            // Another process may have rewritten the file, and the queued entries must not go to the replaced one.
+            // The writer no longer sees the foreign changes once they are cleared here.
+            if (writer != null) {
+                try {
+                    writer.reopenFile();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        if (!needsReload()) {
+            return;
+        }
+
+        // When the vault is opened, or the cache was cleared after a failed write, there is nothing to compare with
+        if (!opened || !cache.isLoaded()) {
+            loadCache();
+            rebuildIndexes();
+            if (opened) {
+                fireChange(new VaultChange(VaultChange.Type.RELOADED, -1, null));
+            }
+            return;
+        }
+
+        List<VaultChange> changes;
+        List<String[]> entries;
+
+        if (appendsOnly && journal == null && (writer == null || !writer.hasPending()) && cache.isAppended()) {
+            // Someone else appended entries, so only read those
+            VaultEvents.Load event = new VaultEvents.Load();
+            event.begin();
+            long start = Metrics.start();
+
+            int first = cache.getEntries().size();
+            List<String[]> appended = cache.loadAppended((from, to) -> VaultLoader.readEntries(filePath, from, to));
+
+            LOAD_TIME.recordSince(start);
+            recordLoad(event, appended.size(), false, true);
+
+            changes = new ArrayList<>(appended.size());
+            for (int i = 0; i < appended.size(); i++) {
+                changes.add(new VaultChange(VaultChange.Type.ADDED, first + i, appended.get(i)[0]));
+            }
+            entries = cache.getEntries();
+        } else {
+            List<String[]> oldEntries = new ArrayList<>(cache.getEntries());
+            loadCache();
+
+            entries = cache.getEntries();
+            changes = VaultDiff.diff(oldEntries, entries);
+            if (changes.size() > MAX_DELTAS) {
+                rebuildIndexes();
+                fireChange(new VaultChange(VaultChange.Type.RELOADED, -1, null));
+                return;
+            }
+        }
+
+        // Update the indexes and the listeners one change at a time
+        for (VaultChange change : changes) {
+            switch (change.type()) {
+                case ADDED -> {
+                    titleAdded(change.index(), change.title());
+                    trigramIndex.add(change.index(), entries.get(change.index()));
+                }
+                case UPDATED -> trigramIndex.update(change.index(), entries.get(change.index()));
+                case REMOVED -> {
+                    titleRemoved(change.index(), change.title());
+                    trigramIndex.remove(change.index());
+                }
+            }
+            fireChange(change);
+        }
+    }
+
+
+    /**
+     * Reads the titles of a binary or compressed vault again if another process changed the file since this
+     * process last held the file lock, and notifies the change listeners with a RELOADED change.
+     * Called while holding both locks, before anything is read for a change or written.
+     *
+     * @throws IOException If the file can't be read again. Nothing may be written to it then.
+     */
+    private void reloadVaultFile() throws IOException {
+        if (fileLock == null || !fileLock.hasForeignChanges()) {
+            return;
+        }
+
+        // Another process may have compacted the file, so it is opened again by its path
+        vaultFile.reload();
+        fileLock.clearForeignChanges();
+
+        resetTitleIndex(TitlePrefixIndex.build(vaultFile.getTitles()));
+        closeTrigramIndex();
+        if (opened) {
+            fireChange(new VaultChange(VaultChange.Type.RELOADED, -1, null));
+        }
+    }
+
+
+    /**
+     * Reads the whole text file into the cache. Called while holding the write lock.
+     */
+    private void loadCache() {
+        // Write the queued entries first, so they are read back with the rest of the file
+        boolean drained = drainWriter();
+
+        VaultEvents.Load event = new VaultEvents.Load();
+        event.begin();
+        long start = Metrics.start();
+
+        // Large files are memory-mapped and parsed in parallel
+        cache.load(filePath, () -> VaultLoader.readEntries(filePath));
+
+        // Apply the changes recorded in the journal on top of the file
+        VaultJournal.replay(filePath, cache);
+
+        // Entries that couldn't be written yet are still queued, and still belong in the cache
+        if (!drained) {
+            for (String[] entry : writer.getPending()) {
+                cache.add(entry);
+            }
+        }
+
+        LOAD_TIME.recordSince(start);
+        recordLoad(event, cache.getEntries().size(), false, false);
+    }
+
+
+    /**
+     * Commits the event of a load, if it is recorded, and counts the loaded entries and bytes.
+     *
+     * @param event        The event, begun when the load started.
+     * @param entries      The number of entries read.
+     * @param binary       Whether the file is a binary or compressed vault.
+     * @param appendedOnly Whether only the entries appended by another process were read.
+     */
+    private void recordLoad(VaultEvents.Load event, int entries, boolean binary, boolean appendedOnly) {
+        event.end();
+        boolean commit = event.shouldCommit();
+        if (!commit && !Metrics.isEnabled()) {
+            return;
+        }
+
+        long bytes = new File(filePath).length();
+        Metrics.add(LOADED_ENTRIES, entries);
+        Metrics.add(LOADED_BYTES, bytes);
+
+        if (commit) {
+            event.path = filePath;
+            event.entries = entries;
+            event.bytes = bytes;
+            event.binary = binary;
+            event.appendedOnly = appendedOnly;
+            event.commit();
+        }
+    }
+
+
+    /**
+     * Builds the title and trigram indexes of a text file from the cache. Called while holding the write lock.
+     */
+    private void rebuildIndexes() {
+        List<String> titles = new ArrayList<>(cache.size());
+        for (int index = 0; index < cache.size(); index++) {
+            titles.add(cache.getTitle(index));
+        }
+        resetTitleIndex(TitlePrefixIndex.build(titles));
+        closeTrigramIndex();
+        trigramIndex = TrigramIndex.build(cache.getEntries());
+    }
+
+
+    /**
+     * Saves a new password entry to the file.
+     * Notifies the change listeners that the entry was added.
+     *
+     * @param entry An array of strings representing the fields of the password entry.
+     */
+    public void savePasswordEntry(String[] entry) {
+        VaultEvents.Append event = new VaultEvents.Append();
+        event.begin();
+        long start = Metrics.start();
+
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            int index;
+
+            if (vaultFile != null) {
+                event.mode = vaultFile instanceof BinaryVault ? "binary" : "compressed";
+                lockFile();
+                try {
+                    reloadVaultFile();
+                    index = vaultFile.add(entry);
+                    markVaultFileWritten();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    Metrics.increment(APPEND_FAILURES);
+                    return;
+                } finally {
+                    unlockFile();
+                }
+            } else {
+                // Queued entries are only written with their batch, which takes the file lock then
+                boolean queued = journal == null && writer != null;
+                if (!queued) {
+                    lockFile();
+                }
+
+                try {
+                    // Make sure the cache is in sync with the file before appending to both
+                    reloadIfStale();
+
+                    try {
+                        if (journal != null) {
+                            event.mode = "journal";
+                            journal.appendAdd(entry);
+                        } else if (writer != null) {
+                            // Queued and written with the next batch
+                            event.mode = "queued";
+                            writer.append(entry);
+                        } else {
+                            event.mode = "direct";
+                            appendToFile(entry);
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        Metrics.increment(APPEND_FAILURES);
+
+                        // A failed batch leaves the file as it was, without the entry. A direct or journaled write
+                        // may or may not have reached the file, so read it again on next access.
+                        if (!queued) {
+                            cache.clear();
+                        }
+                        return;
+                    }
+
+                    index = cache.add(entry);
+
+                    if (journal == null && writer == null) {
+                        cache.takeFingerprint();
+                    }
+                } finally {
+                    if (!queued) {
+                        unlockFile();
+                    }
+                }
+            }
+
+            titleAdded(index, entry[0]);
+            if (trigramIndex != null) {
+                trigramIndex.add(index, entry);
+            }
+            event.succeeded = true;
+            fireChange(new VaultChange(VaultChange.Type.ADDED, index, entry[0]));
+        } finally {
+            lock.writeLock().unlock();
+
+            APPEND_TIME.recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = filePath;
+                event.commit();
+            }
+        }
+    }
+
+
+    /**
+     * Saves a batch of new password entries to the file, for bulk imports.
+     * The batch is written with a single write (and a single fsync where changes are forced to disk),
+     * and the change listeners are notified once, with a RELOADED change, instead of once per entry.
+     *
+     * @param entries The entries to add, each as an array of strings representing its fields.
+     */
+    public void savePasswordEntries(List<String[]> entries) {
+        lock.writeLock().lock();
+        try {
+            if (closed || entries.isEmpty()) {
+                return;
+            }
+
+            int firstIndex;
+
+            if (vaultFile != null) {
+                lockFile();
+                try {
+                    reloadVaultFile();
+                    firstIndex = vaultFile.addAll(entries);
+                    markVaultFileWritten();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                } finally {
+                    unlockFile();
+                }
+            } else {
+                lockFile();
+                try {
+                    // Make sure the cache is in sync with the file before appending to both
+                    reloadIfStale();
+
+                    try {
+                        if (journal != null) {
+                            journal.appendAdds(entries);
+                        } else if (writer != null) {
+                            writer.appendAll(entries);
+                        } else {
+                            appendToFile(entries);
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        Metrics.increment(APPEND_FAILURES);
+
+                        // A failed batch leaves the file as it was, without the entries
+                        if (journal != null || writer == null) {
+                            // The file may or may not contain the entries now, so read it again on next access
+                            cache.clear();
+                            fireChange(new VaultChange(VaultChange.Type.RELOADED, -1, null));
+                        }
+                        return;
+                    }
+
+                    firstIndex = cache.getEntries().size();
+                    for (String[] entry : entries) {
+                        cache.add(entry);
+                    }
+
+                    if (journal == null && writer == null) {
+                        cache.takeFingerprint();
+                    }
+                } finally {
+                    unlockFile();
+                }
+            }
+
+            for (int i = 0; i < entries.size(); i++) {
+                titleAdded(firstIndex + i, entries.get(i)[0]);
+                if (trigramIndex != null) {
+                    trigramIndex.add(firstIndex + i, entries.get(i));
+                }
+            }
+            fireChange(new VaultChange(VaultChange.Type.RELOADED, -1, null));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Appends password entries to the end of the file with a single write.
+     *
+     * @param entries The entries to append.
+     * @throws IOException If the file can't be written.
+     */
+    private void appendToFile(List<String[]> entries) throws IOException {
+        StringBuilder lines = new StringBuilder();
+
+        for (String[] entry : entries) {
+            RecordFormat.append(lines, entry).append('\n');
+        }
+
+        if (fileLock != null) {
+            fileLock.markAppended();
+        }
+        try (FileWriter writer = new FileWriter(filePath, true)) {
+            // A file that is still empty gets the header first, so the escaped lines are read back unescaped
+            writer.write(TextVaultFile.headerFor(new File(filePath).length()));
+            writer.write(lines.toString());
+        }
+    }
+
+
+    /**
+     * Appends a password entry to the end of the file.
+     *
+     * @param entry An array of strings representing the fields of the password entry.
+     * @throws IOException If the file can't be written.
+     */
+    private void appendToFile(String[] entry) throws IOException {
+        if (fileLock != null) {
+            fileLock.markAppended();
+        }
+        try (FileWriter writer = new FileWriter(filePath, true)) {
+            writer.write(TextVaultFile.headerFor(new File(filePath).length()));
+
+            // Join the fields of the entry into a single line and write it to the file
+            String line = RecordFormat.encode(entry);
+            writer.write(line + "\n");
+        }
+    }
+
+
+    /**
+     * Updates an existing password entry in the file.
+     * Notifies the change listeners that the entry was updated.
+     *
+     * @param entryTitle The title of the entry to update.
+     * @param newDetails The new details to set for the entry.
+     */
+    public void updatePasswordEntry(String entryTitle, String[] newDetails) {
+        updatePasswordEntry(entryTitle, null, newDetails);
+    }
+
+
+    /**
+     * Updates an existing password entry in the file, unless it was changed since the caller read it.
+     * The check is made after the changes of other processes have been reloaded, while holding the file lock,
+     * so an edit based on outdated details is rejected instead of overwriting a concurrent edit.
+     * Notifies the change listeners that the entry was updated.
+     *
+     * @param entryTitle      The title of the entry to update.
+     * @param expectedDetails The details the entry had when the caller read it, or null to update it regardless.
+     * @param newDetails      The new details to set for the entry.
+     * @return True if the entry was updated, false if it was changed or deleted in the meantime.
+     */
+    public boolean updatePasswordEntry(String entryTitle, String[] expectedDetails, String[] newDetails) {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return false;
+            }
+
+            int index;
+
+            if (vaultFile != null) {
+                lockFile();
+                try {
+                    // Compare with the entry as the other processes left it
+                    reloadVaultFile();
+                    if (expectedDetails != null && !Arrays.equals(vaultFile.getEntry(entryTitle), expectedDetails)) {
+                        return false;
+                    }
+                    index = vaultFile.update(entryTitle, newDetails);
+                    if (index >= 0) {
+                        markVaultFileWritten();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return false;
+                } finally {
+                    unlockFile();
+                }
+            } else {
+                lockFile();
+                try {
+                    reloadIfStale();
+
+                    // Reject the update if the entry doesn't exist or has been changed by someone else
+                    String[] currentDetails = cache.get(entryTitle);
+                    if (currentDetails == null
+                            || (expectedDetails != null && !Arrays.equals(currentDetails, expectedDetails))) {
+                        return false;
+                    }
+
+                    if (journal != null) {
+                        // Record the change in the journal instead of rewriting the file
+                        try {
+                            journal.appendUpdate(entryTitle, newDetails);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            return false;
+                        }
+                        index = cache.update(entryTitle, newDetails);
+                    } else {
+                        // Update the entry in the cache and write the modified entries to the file
+                        index = cache.update(entryTitle, newDetails);
+                        if (!updateFile()) {
+                            return false;
+                        }
+                    }
+                } finally {
+                    unlockFile();
+                }
+            }
+
+            if (index < 0) {
+                return false;
+            }
+
+            titleRemoved(index, entryTitle);
+            titleAdded(index, newDetails[0]);
+            if (trigramIndex != null) {
+                trigramIndex.update(index, newDetails);
+            }
+            fireChange(new VaultChange(VaultChange.Type.UPDATED, index, newDetails[0]));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Deletes a password entry from the file.
+     * Notifies the change listeners that the entry was removed.
+     *
+     * @param entryTitle The title of the entry to delete.
+     */
+    public void deletePasswordEntry(String entryTitle) {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            int index;
+
+            if (vaultFile != null) {
+                lockFile();
+                try {
+                    reloadVaultFile();
+                    index = vaultFile.remove(entryTitle);
+                    if (index >= 0) {
+                        markVaultFileWritten();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                } finally {
+                    unlockFile();
+                }
+            } else {
+                lockFile();
+                try {
+                    reloadIfStale();
+
+                    // Nothing to write if the entry doesn't exist, for example because another process deleted it
+                    if (!cache.contains(entryTitle)) {
+                        return;
+                    }
+
+                    if (journal != null) {
+                        // Record a tombstone in the journal instead of rewriting the file
+                        try {
+                            journal.appendDelete(entryTitle);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            return;
+                        }
+                        index = cache.remove(entryTitle);
+                    } else {
+                        // Remove the entry from the cache and write the remaining entries to the file
+                        index = cache.remove(entryTitle);
+                        if (!updateFile()) {
+                            return;
+                        }
+                    }
+                } finally {
+                    unlockFile();
+                }
+            }
+
+            if (index >= 0) {
+                titleRemoved(index, entryTitle);
+                if (trigramIndex != null) {
+                    trigramIndex.remove(index);
+                }
+                fireChange(new VaultChange(VaultChange.Type.REMOVED, index, entryTitle));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Takes the lock coordinating the processes writing the text file. Called while holding the write lock.
+     * If it can't be taken, the file is written without it.
+     */
+    private void lockFile() {
+        if (fileLock != null) {
+            try {
+                fileLock.lock();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * Releases the lock taken by lockFile.
+     */
+    private void unlockFile() {
+        if (fileLock != null) {
+            fileLock.unlock();
+        }
+    }
+
+
+    /**
+     * Records that a binary or compressed vault was changed while holding the file lock, so the other processes
+     * read it again before their next change. A change may have compacted the file, which replaces it.
+     */
+    private void markVaultFileWritten() {
+        if (fileLock != null) {
+            fileLock.markRewritten();
+        }
+    }
+
+
+    /**
+     * Writes the entries of the cache to the text file. Called while holding the write lock.
+     *
+     * @return True if the file was written successfully.
+     */
+    private boolean updateFile() {
+        // The cache includes the queued entries, but write them anyway so the file never misses them
+        drainWriter();
+
+        VaultEvents.Rewrite event = new VaultEvents.Rewrite();
+        event.begin();
+        long start = Metrics.start();
+        int entries = cache.getEntries().size();
+
+        // Write the updated entries to a temporary file and rename it over the file, so a crash or a full disk
+        // leaves the old file in place instead of a truncated one
+        try {
+            TextVaultFile.write(filePath, cache.getEntries());
+            if (fileLock != null) {
+                fileLock.markRewritten();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            Metrics.increment(REWRITE_FAILURES);
+            recordRewrite(event, entries, false);
+
+            // The file still holds the old entries, so read it again on next access instead of showing unsaved changes
+            cache.clear();
+            return false;
+        }
+
+        // The writer still has the replaced file open
+        if (writer != null) {
+            try {
+                writer.reopen();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        REWRITE_TIME.recordSince(start);
+        recordRewrite(event, entries, true);
+
+        cache.takeFingerprint();
+        return true;
+    }
+
+
+    /**
+     * Commits the event of a rewrite, if it is recorded, and counts the written bytes.
+     *
+     * @param event     The event, begun when the rewrite started.
+     * @param entries   The number of entries written.
+     * @param succeeded Whether the file was written completely.
+     */
+    private void recordRewrite(VaultEvents.Rewrite event, int entries, boolean succeeded) {
+        event.end();
+        boolean commit = event.shouldCommit();
+        if (!commit && !Metrics.isEnabled()) {
+            return;
+        }
+
+        long bytes = new File(filePath).length();
+        if (succeeded) {
+            Metrics.add(REWRITTEN_BYTES, bytes);
+        }
+
+        if (commit) {
+            event.path = filePath;
+            event.entries = entries;
+            event.bytes = bytes;
+            event.succeeded = succeeded;
+            event.commit();
+        }
+    }
+
+
+    /**
+     * Finds the titles starting with the given prefix, ignoring case.
+     * The lookup is a binary search in the title index and does not take the lock of the vault,
+     * so it can be called on the UI thread on every keystroke. Titles changed since the last search
+     * are merged into the index first.
+     *
+     * @param prefix The prefix to search for.
+     * @return The matching titles in sorted order, with the positions of their entries. The list is a read-only snapshot.
+     */
+    public TitleMatches findTitlesByPrefix(String prefix) {
+        synchronized (titleIndexLock) {
+            if (!titleChanges.isEmpty()) {
+                titleIndex = titleIndex.withChanges(titleChanges);
+                titleChanges.clear();
+            }
+
+            return titleIndex.find(prefix);
+        }
+    }
+
+
+    /**
+     * Replaces the title index, dropping the changes collected for the previous one.
+     *
+     * @param index The new title index.
+     */
+    private void resetTitleIndex(TitlePrefixIndex index) {
+        synchronized (titleIndexLock) {
+            titleIndex = index;
+            titleChanges.clear();
+        }
+    }
+
+
+    /**
+     * Records an added title, to be merged into the title index on the next search.
+     *
+     * @param index The position of the added entry.
+     * @param title The added title.
+     */
+    private void titleAdded(int index, String title) {
+        synchronized (titleIndexLock) {
+            titleChanges.add(new VaultChange(VaultChange.Type.ADDED, index, title));
+        }
+    }
+
+
+    /**
+     * Records a removed title, to be merged into the title index on the next search.
+     *
+     * @param index The position the removed entry had.
+     * @param title The removed title.
+     */
+    private void titleRemoved(int index, String title) {
+        synchronized (titleIndexLock) {
+            titleChanges.add(new VaultChange(VaultChange.Type.REMOVED, index, title));
+        }
+    }
+
+
+    /**
+     * Finds the entries whose title or username contains the query, allowing for typos, best match first.
+     * Uses the trigram index of the vault. For binary and compressed vaults the index is built on the first search,
+     * since it needs the usernames, which are not read when the vault is opened.
+     *
+     * @param query                The text to search for.
+     * @param maxResults           The maximum number of results.
+     * @param includeTitlePrefixes Whether to include entries whose title starts with the query,
+     *                             for callers that already have them from findTitlesByPrefix.
+     * @return The titles of the matching entries, with the positions of the entries.
+     */
+    public TitleMatches searchEntries(String query, int maxResults, boolean includeTitlePrefixes) {
+        TrigramIndex index = trigramIndex;
+
+        if (index == null) {
+            index = getTrigramIndex();
+        }
+
+        return index != null ? index.search(query, maxResults, includeTitlePrefixes) : TitleMatches.EMPTY;
+    }
+
+
+    /**
+     * Wipes the usernames of the trigram index and drops it. Called while holding the write lock.
+     */
+    private void closeTrigramIndex() {
+        if (trigramIndex != null) {
+            trigramIndex.close();
+            trigramIndex = null;
+        }
+    }
+
+
+    /**
+     * Returns the trigram index, building it if necessary.
+     *
+     * @return The trigram index, or null if the vault is closed.
+     */
+    private TrigramIndex getTrigramIndex() {
+        if (vaultFile == null) {
+            // Text files are indexed when they are loaded into the cache
+            lockForReading();
+            lock.readLock().unlock();
+            return trigramIndex;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (trigramIndex == null && !closed) {
+                // Only the titles and usernames are indexed, so the passwords are never decrypted
+                TrigramIndex index = new TrigramIndex();
+                int[] position = {0};
+                vaultFile.forEachEntry(RecordFormat.TITLE | RecordFormat.USERNAME,
+                        fields -> index.add(position[0]++, fields));
+                trigramIndex = index;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        return trigramIndex;
+    }
+
+
+    /**
+     * Registers a listener that is notified after every change made through this handle.
+     * Listeners are called on the thread that made the change, while it holds the write lock.
+     *
+     * @param listener The listener to add.
+     */
+    public void addChangeListener(Consumer<VaultChange> listener) {
+        changeListeners.add(listener);
+    }
+
+
+    /**
+     * Unregisters a change listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeChangeListener(Consumer<VaultChange> listener) {
+        changeListeners.remove(listener);
+    }
+
+
+    /**
+     * Notifies all change listeners about a change.
+     *
+     * @param change The change made to the vault.
+     */
+    private void fireChange(VaultChange change) {
+        for (Consumer<VaultChange> listener : changeListeners) {
+            listener.accept(change);
+        }
+    }
+
+
+    /**
+     * Writes the entries queued by savePasswordEntry to the file and forces it to disk.
+     *
+     * @throws IOException If the queued entries can't be written. They stay queued, so flushing can be retried.
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (writer != null) {
+                writer.flush();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Writes the entries queued by savePasswordEntry to the file, without forcing them to disk.
+     * Called while holding the write lock.
+     *
+     * @return False if queued entries couldn't be written and are still queued.
+     */
+    private boolean drainWriter() {
+        if (writer != null) {
+            try {
+                writer.drain();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Converts the file of this vault to another file format, chosen by the extension of the target file.
+     * An encrypted vault is exported with the key it was unlocked with. A binary vault converted to a binary vault
+     * is written again with the given master password. Other conversions to the same format are rejected.
+     *
+     * @param targetPath     The path of the converted file.
+     * @param masterPassword The master password to encrypt a binary target with, or null to not encrypt it.
+     * @throws IOException If a file can't be read or written, or if the vault is already a text or compressed file.
+     */
+    public void convertTo(String targetPath, char[] masterPassword) throws IOException {
+        // Converting reads the file, so make sure it contains every added entry
+        lock.writeLock().lock();
+        try {
+            drainWriter();
+
+            // A binary or compressed vault hands out its entries, and a text file is read again with its journal
+            if (vaultFile != null) {
+                if (vaultFile instanceof CompressedVault && CompressedVault.isCompressedVault(targetPath)) {
+                    throw new IOException("The vault is already a compressed vault: " + filePath);
+                }
+
+                if (BinaryVault.isBinaryVault(targetPath)) {
+                    BinaryVault.writeEntries(targetPath, vaultFile.getEntries(), masterPassword);
+                } else if (CompressedVault.isCompressedVault(targetPath)) {
+                    CompressedVault.writeEntries(targetPath, vaultFile.getEntries());
+                } else {
+                    vaultFile.exportToText(targetPath);
+                }
+            } else if (BinaryVault.isBinaryVault(targetPath)) {
+                BinaryVault.convertFromText(filePath, targetPath, masterPassword);
+            } else if (CompressedVault.isCompressedVault(targetPath)) {
+                CompressedVault.convertFromText(filePath, targetPath);
+            } else {
+                throw new IOException("The vault is already a text database file: " + filePath);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Closes the vault, writing the entries that are still queued. The handle can't be used afterwards.
+     */
+    public void close() {
+        VaultWatcher.unwatch(this);
+
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            // Write the queued entries
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+
+            // Stop journaling
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+
+            if (vaultFile != null) {
+                try {
+                    vaultFile.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                vaultFile = null;
+            }
+
+            if (fileLock != null) {
+                fileLock.close();
+                fileLock = null;
+            }
+
+            cache.clear();
+            resetTitleIndex(TitlePrefixIndex.EMPTY);
+            closeTrigramIndex();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return filePath;
+    }
+}
@@ -0,0 +1,575 @@
+package com.example.passwordmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * The VaultCache class keeps the entries of an open database file resident in memory.
+ * Entries are kept in file order, and a title-keyed hash index allows constant time lookups.
+ * The cache remembers the size, modification time and (when needed) a content hash of the file,
+ * so it only has to be reloaded when the file has actually changed on disk.
+ * It also remembers a checksum of the last bytes of the file, so a file that was only appended to
+ * can be brought up to date by reading just the appended part.
+ * The cache is guarded by the read-write lock of its Vault: any number of threads may read it, one may change it.
+ * <p>
+ * Only the titles are kept as Strings. The other fields of the entries, the usernames and passwords, are kept in a
+ * SecretStore outside the heap, and an entry holds their handles. They are decoded into new Strings when an entry
+ * is read as a String[], which is short-lived, or into a wiped char[] by reveal. Entries that are loaded or added
+ * pass through the cache as Strings, which are not kept. Removed fields are wiped, and the store is rebuilt once
+ * most of it is taken by removed fields.
+ */
+public class VaultCache {
+
+    // File systems only store modification times with a limited precision. A file that was modified
+    // within this window of being loaded may change again without its modification time changing.
+    private static final long MTIME_GRANULARITY_MILLIS = 2000;
+
+    // Number of bytes at the end of the file whose checksum tells whether a larger file was only appended to
+    private static final int TAIL_LENGTH = 4096;
+
+    // Minimum number of bytes of removed fields before the secret store is rebuilt
+    private static final long MIN_REMOVED_BYTES = 1024 * 1024;
+
+    // All entries of the file, in file order
+    private final List<CachedEntry> entries = new ArrayList<>();
+
+    // Index from entry title to the first entry in the file with that title
+    private final Map<String, CachedEntry> titleIndex = new HashMap<>();
+
+    // The fields of the entries after the title
+    private SecretStore secrets = new SecretStore();
+
+    // The entries decoded on every access, as returned by getEntries
+    private final List<String[]> entryView = new EntryView();
+
+    // The file the cache was loaded from, or null if nothing is loaded
+    private File file;
+
+    // Fingerprint of the file at the time the cache was last synchronized with it
+    private long fileSize = -1;
+    private long lastModified = -1;
+    private long contentHash;
+    private long tailHash = -1;
+
+    // Whether the modification time can't be trusted yet. Cleared by isStale, which readers may call concurrently.
+    private volatile boolean racy;
+
+
+    /**
+     * An entry of the cache: its title, and the handles of its other fields in the secret store.
+     */
+    private static final class CachedEntry {
+        final String title;
+        final long[] fields;
+
+        CachedEntry(String title, long[] fields) {
+            this.title = title;
+            this.fields = fields;
+        }
+    }
+
+
+    /**
+     * Read-only view of the entries that decodes an entry into a new String[] every time it is read.
+     */
+    private final class EntryView extends AbstractList<String[]> implements RandomAccess {
+
+        @Override
+        public String[] get(int index) {
+            return decode(entries.get(index));
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+    }
+
+
+    /**
+     * Checks whether the cache needs to be (re)loaded for the given file path.
+     * Compares the size and modification time of the file against the remembered fingerprint,
+     * and falls back to comparing content hashes if the modification time can't be trusted.
+     *
+     * @param filePath The path of the database file.
+     * @return True if the cache doesn't reflect the current contents of the file.
+     */
+    public boolean isStale(String filePath) {
+        if (file == null || !file.getPath().equals(filePath)) {
+            return true;
+        }
+
+        if (file.length() != fileSize || file.lastModified() != lastModified) {
+            return true;
+        }
+
+        if (racy) {
+            // Size and modification time match, but the file may have been rewritten within the same tick
+            long currentHash = hashFile(file);
+
+            if (currentHash != contentHash) {
+                return true;
+            }
+
+            // Once enough time has passed, any further change is guaranteed to change the modification time
+            racy = isRacy(lastModified);
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Loads the cache from the given file, replacing anything previously cached.
+     * The fingerprint is taken before reading, so changes made while reading are detected later.
+     *
+     * @param filePath The path of the database file.
+     * @param reader   Reads all entries from the file.
+     */
+    public void load(String filePath, Supplier<List<String[]>> reader) {
+        clear();
+        file = new File(filePath);
+        fingerprint();
+
+        for (String[] entry : reader.get()) {
+            add(entry);
+        }
+    }
+
+
+    /**
+     * Checks whether the file has only been appended to since the cache was last synchronized with it:
+     * it has grown, the bytes before the old end are unchanged, and the old content ended with a complete line.
+     *
+     * @return True if reading the appended part brings the cache up to date.
+     */
+    public boolean isAppended() {
+        if (file == null || file.length() <= fileSize) {
+            return false;
+        }
+
+        // An empty file has no line to complete
+        return fileSize == 0 || (tailHash >= 0 && hashTail(file, fileSize) == tailHash);
+    }
+
+
+    /**
+     * Adds the entries appended to the file since the cache was last synchronized with it.
+     * Only call this if isAppended returned true. The new fingerprint is taken before reading,
+     * so anything appended while reading is detected later.
+     *
+     * @param reader Reads the entries stored between two positions of the file.
+     * @return The appended entries, which were added to the end of the cache.
+     */
+    public List<String[]> loadAppended(BiFunction<Long, Long, List<String[]>> reader) {
+        long from = fileSize;
+        fingerprint();
+
+        List<String[]> appended = reader.apply(from, fileSize);
+        for (String[] entry : appended) {
+            add(entry);
+        }
+
+        return appended;
+    }
+
+
+    /**
+     * Checks whether the cache holds the entries of a file, rather than having been cleared.
+     *
+     * @return True if the cache was loaded and not cleared since.
+     */
+    public boolean isLoaded() {
+        return file != null;
+    }
+
+
+    /**
+     * Remembers the size, modification time and checksums of the file.
+     */
+    private void fingerprint() {
+        fileSize = file.length();
+        lastModified = file.lastModified();
+        racy = isRacy(lastModified);
+
+        // Only a recently modified file needs its content hash to detect further changes
+        if (racy) {
+            contentHash = hashFile(file);
+        }
+        tailHash = hashTail(file, fileSize);
+    }
+
+
+    /**
+     * Takes a new fingerprint of the file after the cache has been synchronized with it.
+     * Called after this application has written the file itself. The cache holds exactly what was written,
+     * so the file is not hashed here. Doing so would make every write and the lookups following it read
+     * the whole file again. Only its last few kilobytes are, to detect appends by others later.
+     */
+    public void takeFingerprint() {
+        // Nothing to do if the cache was cleared in the meantime
+        if (file == null) {
+            return;
+        }
+
+        fileSize = file.length();
+        lastModified = file.lastModified();
+        racy = false;
+        tailHash = hashTail(file, fileSize);
+    }
+
+
+    /**
+     * Marks the cache as outdated while keeping its entries, for a file changed by another process in a way
+     * its size and modification time may not show. The size and tail checksum are kept, so a file that was
+     * only appended to can still be brought up to date by reading the appended part.
+     */
+    public void invalidate() {
+        lastModified = -1;
+        racy = false;
+    }
+
+
+    /**
+     * Clears the cache.
+     */
+    public void clear() {
+        entries.clear();
+        titleIndex.clear();
+        secrets.close();
+        secrets = new SecretStore();
+        file = null;
+        fileSize = -1;
+        lastModified = -1;
+        tailHash = -1;
+        racy = false;
+    }
+
+
+    /**
+     * Returns the cached entries in file order. Every entry that is read from the list is decoded into a new
+     * String[], so callers that only need the titles or a single field use getTitle, getField or reveal.
+     *
+     * @return An unmodifiable view of the cached entries.
+     */
+    public List<String[]> getEntries() {
+        return entryView;
+    }
+
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Returns the title of an entry, without decoding its other fields.
+     *
+     * @param index The position of the entry.
+     * @return The title.
+     */
+    public String getTitle(int index) {
+        return entries.get(index).title;
+    }
+
+
+    /**
+     * Decodes a single field of an entry.
+     *
+     * @param index The position of the entry.
+     * @param field The field, 0 for the title.
+     * @return The field, or null if the entry doesn't have it.
+     */
+    public String getField(int index, int field) {
+        CachedEntry entry = entries.get(index);
+        if (field == 0) {
+            return entry.title;
+        }
+
+        return field <= entry.fields.length ? decode(entry.fields[field - 1]) : null;
+    }
+
+
+    /**
+     * Looks up an entry by its title.
+     *
+     * @param title The title of the entry.
+     * @return The first entry with the given title, decoded into a new array, or null if there is none.
+     */
+    public String[] get(String title) {
+        CachedEntry entry = titleIndex.get(title);
+        return entry == null ? null : decode(entry);
+    }
+
+
+    /**
+     * Checks whether an entry has the given title, without decoding it.
+     *
+     * @param title The title of the entry.
+     * @return True if there is an entry with the title.
+     */
+    public boolean contains(String title) {
+        return titleIndex.containsKey(title);
+    }
+
+
+    /**
+     * Decodes a field of the first entry with a title into the wiped buffer of the secret store and passes it
+     * to a consumer, without creating a String.
+     *
+     * @param title    The title of the entry.
+     * @param field    The field, 1 for the username and 2 for the password.
+     * @param consumer Receives the characters of the field, which it must not keep. An entry without the field
+     *                 gives no characters.
+     * @return True if there is an entry with the title.
+     */
+    public boolean reveal(String title, int field, SecretStore.SecretConsumer consumer) {
+        CachedEntry entry = titleIndex.get(title);
+        if (entry == null) {
+            return false;
+        }
+
+        secrets.reveal(field >= 1 && field <= entry.fields.length ? entry.fields[field - 1] : 0, consumer);
+        return true;
+    }
+
+
+    /**
+     * Adds a new entry to the end of the cache.
+     *
+     * @param entry The entry to add.
+     * @return The position of the added entry.
+     */
+    public int add(String[] entry) {
+        CachedEntry cached = store(entry);
+        entries.add(cached);
+        titleIndex.putIfAbsent(cached.title, cached);
+        return entries.size() - 1;
+    }
+
+
+    /**
+     * Replaces the first entry with the given title.
+     *
+     * @param title      The title of the entry to replace.
+     * @param newDetails The new entry.
+     * @return The position of the replaced entry, or -1 if there is no entry with the title.
+     */
+    public int update(String title, String[] newDetails) {
+        CachedEntry oldEntry = titleIndex.get(title);
+
+        if (oldEntry == null) {
+            return -1;
+        }
+
+        int index = indexOf(oldEntry);
+        entries.set(index, store(newDetails));
+        wipe(oldEntry);
+
+        // The old and the new title may now point to different entries
+        reindexTitle(title);
+        reindexTitle(newDetails[0]);
+        return index;
+    }
+
+
+    /**
+     * Removes the first entry with the given title.
+     *
+     * @param title The title of the entry to remove.
+     * @return The position the removed entry had, or -1 if there is no entry with the title.
+     */
+    public int remove(String title) {
+        CachedEntry oldEntry = titleIndex.get(title);
+
+        if (oldEntry == null) {
+            return -1;
+        }
+
+        int index = indexOf(oldEntry);
+        entries.remove(index);
+        wipe(oldEntry);
+
+        // A later entry with the same title, if any, becomes the one found by lookups
+        reindexTitle(title);
+        return index;
+    }
+
+
+    /**
+     * Finds the position of an entry in the cache by identity.
+     */
+    private int indexOf(CachedEntry entry) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i) == entry) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Points the index for the given title to the first entry that has it.
+     */
+    private void reindexTitle(String title) {
+        titleIndex.remove(title);
+
+        for (CachedEntry entry : entries) {
+            if (entry.title.equals(title)) {
+                titleIndex.put(title, entry);
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Puts the fields of an entry after the title into the secret store.
+     */
+    private CachedEntry store(String[] entry) {
+        long[] fields = new long[Math.max(entry.length - 1, 0)];
+
+        for (int i = 0; i < fields.length; i++) {
+            // A missing field is kept as an empty one
+            fields[i] = entry[i + 1] != null ? secrets.put(entry[i + 1]) : 0;
+        }
+
+        return new CachedEntry(entry[0], fields);
+    }
+
+
+    /**
+     * Decodes an entry into a new array.
+     */
+    private String[] decode(CachedEntry cached) {
+        String[] entry = new String[cached.fields.length + 1];
+        entry[0] = cached.title;
+
+        for (int i = 0; i < cached.fields.length; i++) {
+            entry[i + 1] = decode(cached.fields[i]);
+        }
+
+        return entry;
+    }
+
+
+    private String decode(long handle) {
+        String[] field = new String[1];
+        secrets.reveal(handle, (chars, length) -> field[0] = new String(chars, 0, length));
+        return field[0];
+    }
+
+
+    /**
+     * Wipes the fields of an entry that was replaced or removed, and rebuilds the secret store once most of it
+     * is taken by wiped fields, since their space is not reused.
+     */
+    private void wipe(CachedEntry entry) {
+        for (long handle : entry.fields) {
+            secrets.remove(handle);
+        }
+
+        long removed = secrets.getRemovedBytes();
+        if (removed < MIN_REMOVED_BYTES || removed < secrets.getStoredBytes()) {
+            return;
+        }
+
+        SecretStore rebuilt = new SecretStore();
+        for (CachedEntry cached : entries) {
+            for (int i = 0; i < cached.fields.length; i++) {
+                int field = i;
+                secrets.reveal(cached.fields[i], (chars, length) -> cached.fields[field] = rebuilt.put(chars, length));
+            }
+        }
+
+        secrets.close();
+        secrets = rebuilt;
+    }
+
+
+    /**
+     * Checks whether a modification time is too recent to detect further changes by it alone.
+     */
+    private static boolean isRacy(long modifiedMillis) {
+        return System.currentTimeMillis() - modifiedMillis < MTIME_GRANULARITY_MILLIS;
+    }
+
+
+    /**
+     * Computes a checksum of the contents of the file.
+     *
+     * @return The checksum, or -1 if the file couldn't be read.
+     */
+    private static long hashFile(File file) {
+        CRC32C crc = new CRC32C();
+
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+
+        return crc.getValue();
+    }
+
+
+    /**
+     * Computes a checksum of the last bytes of the file before the given size.
+     * The last byte must be a line break, since a line that was still being written may be completed later.
+     *
+     * @return The checksum, or -1 if the file couldn't be read or doesn't end with a complete line there.
+     */
+    private static long hashTail(File file, long size) {
+        if (size <= 0) {
+            return -1;
+        }
+
+        ByteBuffer tail = ByteBuffer.allocate((int) Math.min(size, TAIL_LENGTH));
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = size - tail.capacity();
+
+            while (tail.hasRemaining()) {
+                if (channel.read(tail, position + tail.position()) < 0) {
+                    return -1;
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+
+        if (tail.get(tail.capacity() - 1) != '\n') {
+            return -1;
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(tail.flip());
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.passwordmanager;
+
+/**
+ * The VaultChange record describes a single change made to the entries of the open database file.
+ * The index is the position of the entry in file order, which is also its position in the list
+ * returned by PasswordDatabase.getEntryTitles.
+ *
+ * @param type  The kind of change.
+ * @param index The position of the added or updated entry, or the position the removed entry had.
+ *              -1 for RELOADED.
+ * @param title The title of the entry after the change. For removals, the title of the removed entry.
+ *              Null for RELOADED.
+ */
+public record VaultChange(Type type, int index, String title) {
+
+    /**
+     * The kinds of changes made to entries.
+     */
+    public enum Type {
+        ADDED,
+        UPDATED,
+        REMOVED,
+
+        // Many entries were changed at once, for example by an import. Listeners should read the entries again.
+        RELOADED
+    }
+}
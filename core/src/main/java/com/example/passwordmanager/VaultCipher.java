@@ -0,0 +1,282 @@
+package com.example.passwordmanager;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * The VaultCipher class encrypts the records of an encrypted binary vault.
+ * The key is derived from the master password with PBKDF2 (HMAC-SHA256) once, when the vault is unlocked.
+ * Every record is sealed on its own with AES-GCM under a fresh random IV, so a single record can be decrypted
+ * without touching the others. A number identifying the record, such as its position in the file, is bound to it as
+ * additional authenticated data, so records can't be swapped around without being detected. Data stored in the clear,
+ * such as the header of a vault, is protected by an authentication tag of its own (GMAC, see authenticate).
+ * <p>
+ * The number of PBKDF2 iterations is chosen by timing the key derivation on this machine, so that unlocking
+ * takes about the target time (500 ms by default, or the passwordmanager.unlockMillis system property).
+ * The iteration count is stored in the vault, so a vault created on a fast machine unlocks with the same cost elsewhere.
+ */
+public class VaultCipher {
+
+    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final int KEY_BITS = 256;
+    private static final int TAG_BITS = 128;
+
+    // Sizes of the stored parameters and of the overhead added to every sealed record
+    public static final int SALT_LENGTH = 16;
+    public static final int IV_LENGTH = 12;
+    public static final int OVERHEAD = IV_LENGTH + TAG_BITS / 8;
+
+    // Bounds of the calibrated iteration count. The lower bound keeps the key derivation from becoming cheap
+    // to brute-force on a slow machine, the upper bound keeps unlocking bearable on a fast one.
+    private static final int MIN_ITERATIONS = 100_000;
+    private static final int MAX_ITERATIONS = 10_000_000;
+
+    // Iterations per timed key derivation while calibrating, and how long to keep timing them
+    private static final int CALIBRATION_ITERATIONS = 20_000;
+    private static final long CALIBRATION_MILLIS = 3000;
+
+    // Target time to unlock a vault, and a fixed iteration count that skips the calibration if set
+    private static final long TARGET_UNLOCK_MILLIS = Long.getLong("passwordmanager.unlockMillis", 500);
+    private static final int FIXED_ITERATIONS = Integer.getInteger("passwordmanager.kdfIterations", 0);
+
+    // Iteration count found by the calibration, or 0 if it hasn't run yet
+    private static int calibratedIterations;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final SecretKey key;
+    private final byte[] salt;
+    private final int iterations;
+
+    // Reused for every record. Readers of a vault share it, so seal and open are synchronized.
+    private final Cipher cipher;
+
+
+    private VaultCipher(SecretKey key, byte[] salt, int iterations) throws GeneralSecurityException {
+        this.key = key;
+        this.salt = salt;
+        this.iterations = iterations;
+        this.cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+    }
+
+
+    /**
+     * Derives a new key from a master password, with a new random salt and the calibrated iteration count.
+     * Used when an encrypted vault is created.
+     *
+     * @param masterPassword The master password. It is not kept.
+     * @return The cipher for the new vault.
+     * @throws IOException If the key can't be derived.
+     */
+    public static VaultCipher create(char[] masterPassword) throws IOException {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        return derive(masterPassword, salt, calibratedIterations());
+    }
+
+
+    /**
+     * Derives the key of an existing vault from a master password.
+     *
+     * @param masterPassword The master password. It is not kept.
+     * @param salt           The salt stored in the vault.
+     * @param iterations     The iteration count stored in the vault.
+     * @return The cipher for the vault.
+     * @throws IOException If the key can't be derived.
+     */
+    public static VaultCipher derive(char[] masterPassword, byte[] salt, int iterations) throws IOException {
+        PBEKeySpec spec = new PBEKeySpec(masterPassword, salt, iterations, KEY_BITS);
+
+        try {
+            byte[] keyBytes = SecretKeyFactory.getInstance(KDF_ALGORITHM).generateSecret(spec).getEncoded();
+            SecretKey key = new SecretKeySpec(keyBytes, "AES");
+            Arrays.fill(keyBytes, (byte) 0);
+            return new VaultCipher(key, salt.clone(), iterations);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Can't derive the vault key", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+
+    /**
+     * Returns the number of PBKDF2 iterations that takes about the target unlock time on this machine.
+     * The key derivation is timed the first time this is called. The application starts the calibration in the
+     * background at startup, so creating a vault doesn't have to wait for it.
+     *
+     * @return The iteration count for new vaults.
+     */
+    public static synchronized int calibratedIterations() {
+        if (FIXED_ITERATIONS > 0) {
+            return FIXED_ITERATIONS;
+        }
+
+        if (calibratedIterations == 0) {
+            byte[] salt = new byte[SALT_LENGTH];
+            char[] password = "calibration".toCharArray();
+            long bestNanos = Long.MAX_VALUE;
+
+            // Take the fastest run. The first ones include class loading and JIT compilation and are several times
+            // slower, so keep going for a while to time the compiled code an attacker would run.
+            long deadline = System.nanoTime() + CALIBRATION_MILLIS * 1_000_000L;
+            for (int run = 0; run < 3 || System.nanoTime() < deadline; run++) {
+                long start = System.nanoTime();
+                try {
+                    derive(password, salt, CALIBRATION_ITERATIONS);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return MIN_ITERATIONS;
+                }
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            }
+
+            long iterations = TARGET_UNLOCK_MILLIS * 1_000_000L * CALIBRATION_ITERATIONS / Math.max(bestNanos, 1);
+            calibratedIterations = (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations / 1000 * 1000));
+        }
+
+        return calibratedIterations;
+    }
+
+
+    /**
+     * Returns the salt the key was derived with.
+     *
+     * @return The salt.
+     */
+    public byte[] getSalt() {
+        return salt.clone();
+    }
+
+
+    /**
+     * Returns the iteration count the key was derived with.
+     *
+     * @return The iteration count.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+
+    /**
+     * Encrypts a record.
+     *
+     * @param plaintext The record.
+     * @param id        The position of the record in the file, or another number identifying it, authenticated
+     *                  along with it.
+     * @return The IV followed by the ciphertext and the authentication tag.
+     * @throws IOException If the record can't be encrypted.
+     */
+    public synchronized byte[] seal(ByteBuffer plaintext, long id) throws IOException {
+        byte[] sealed = new byte[IV_LENGTH + plaintext.remaining() + TAG_BITS / 8];
+        random.nextBytes(sealed);
+
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_LENGTH));
+            cipher.updateAAD(idBytes(id));
+            cipher.doFinal(plaintext, ByteBuffer.wrap(sealed, IV_LENGTH, sealed.length - IV_LENGTH));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Can't encrypt a vault record", e);
+        }
+
+        return sealed;
+    }
+
+
+    /**
+     * Decrypts a record and checks that it hasn't been modified or moved.
+     *
+     * @param sealed The IV followed by the ciphertext and the authentication tag.
+     * @param id     The position or other number the record was sealed with.
+     * @return The record.
+     * @throws IOException If the record can't be decrypted, for example because the key is wrong.
+     */
+    public synchronized ByteBuffer open(ByteBuffer sealed, long id) throws IOException {
+        if (sealed.remaining() < OVERHEAD) {
+            throw new IOException("Vault record is too short");
+        }
+
+        byte[] iv = new byte[IV_LENGTH];
+        sealed.get(iv);
+
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(idBytes(id));
+            ByteBuffer plaintext = ByteBuffer.allocate(cipher.getOutputSize(sealed.remaining()));
+            cipher.doFinal(sealed, plaintext);
+            return plaintext.flip();
+        } catch (AEADBadTagException e) {
+            throw new IOException("Wrong master password or damaged vault record", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Can't decrypt a vault record", e);
+        }
+    }
+
+
+    /**
+     * Computes an authentication tag over data that is stored in the clear, such as the header of a vault,
+     * so changes to it are detected. The data is authenticated as it is, without encrypting it.
+     *
+     * @param data The data to authenticate.
+     * @return A fresh IV followed by the authentication tag, OVERHEAD bytes in total.
+     * @throws IOException If the tag can't be computed.
+     */
+    public synchronized byte[] authenticate(ByteBuffer data) throws IOException {
+        byte[] tag = new byte[OVERHEAD];
+        random.nextBytes(tag);
+
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, tag, 0, IV_LENGTH));
+            cipher.updateAAD(data);
+            cipher.doFinal(ByteBuffer.allocate(0), ByteBuffer.wrap(tag, IV_LENGTH, tag.length - IV_LENGTH));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Can't authenticate vault data", e);
+        }
+
+        return tag;
+    }
+
+
+    /**
+     * Checks the authentication tag of data stored in the clear.
+     *
+     * @param data The authenticated data.
+     * @param tag  The IV followed by the authentication tag, as returned by authenticate.
+     * @throws IOException If the data or the tag was modified, or the key is wrong.
+     */
+    public synchronized void verify(ByteBuffer data, ByteBuffer tag) throws IOException {
+        if (tag.remaining() != OVERHEAD) {
+            throw new IOException("Vault authentication tag has the wrong length");
+        }
+
+        byte[] iv = new byte[IV_LENGTH];
+        tag.get(iv);
+
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(data);
+            cipher.doFinal(tag, ByteBuffer.allocate(0));
+        } catch (AEADBadTagException e) {
+            throw new IOException("Wrong master password or modified vault data", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Can't check vault data", e);
+        }
+    }
+
+
+    private static byte[] idBytes(long id) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+    }
+}
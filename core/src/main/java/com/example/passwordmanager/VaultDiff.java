@@ -0,0 +1,83 @@
+package com.example.passwordmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The VaultDiff class computes the changes that turn one list of entries into another, keyed by entry title.
+ * It is used when a database file was changed by someone else, so the views of the file only have to apply
+ * the entries that were actually added, updated or removed instead of reading all entries again.
+ * <p>
+ * Applying the changes in order to the old list gives the new list. Removals come first, from the last position
+ * to the first, followed by the additions and updates from the first position to the last. The position of an
+ * added or updated entry is therefore also its position in the new list.
+ */
+public class VaultDiff {
+
+    /**
+     * Computes the changes between two lists of entries.
+     * An entry whose title is still there but whose fields differ is updated. Titles may occur more than once,
+     * the n-th entry with a title is matched with the n-th entry with that title in the other list.
+     *
+     * @param oldEntries The entries before the change, in file order.
+     * @param newEntries The entries after the change, in file order.
+     * @return The changes, in the order they must be applied. For an added or updated entry,
+     *         newEntries.get(change.index()) is the entry.
+     */
+    public static List<VaultChange> diff(List<String[]> oldEntries, List<String[]> newEntries) {
+        List<VaultChange> changes = new ArrayList<>();
+
+        // Count how often every title occurs in the new entries
+        Map<String, Integer> newCounts = new HashMap<>();
+        for (String[] entry : newEntries) {
+            newCounts.merge(entry[0], 1, Integer::sum);
+        }
+
+        // Keep the old entries whose title is still there, as often as it is still there
+        List<String[]> kept = new ArrayList<>(oldEntries.size());
+        List<Integer> removed = new ArrayList<>();
+
+        for (int i = 0; i < oldEntries.size(); i++) {
+            String[] entry = oldEntries.get(i);
+            Integer count = newCounts.get(entry[0]);
+
+            if (count != null && count > 0) {
+                newCounts.put(entry[0], count - 1);
+                kept.add(entry);
+            } else {
+                removed.add(i);
+            }
+        }
+
+        // Remove from the end, so the positions of the entries before are not affected
+        for (int i = removed.size() - 1; i >= 0; i--) {
+            int index = removed.get(i);
+            changes.add(new VaultChange(VaultChange.Type.REMOVED, index, oldEntries.get(index)[0]));
+        }
+
+        // Walk both lists, inserting the new titles and updating the kept entries whose fields changed
+        int k = 0;
+        for (int j = 0; j < newEntries.size(); j++) {
+            String[] entry = newEntries.get(j);
+
+            if (k < kept.size() && kept.get(k)[0].equals(entry[0])) {
+                if (!Arrays.equals(kept.get(k), entry)) {
+                    changes.add(new VaultChange(VaultChange.Type.UPDATED, j, entry[0]));
+                }
+                k++;
+            } else {
+                changes.add(new VaultChange(VaultChange.Type.ADDED, j, entry[0]));
+            }
+        }
+
+        // Kept entries that were moved further down have been added again at their new position
+        for (; k < kept.size(); k++) {
+            changes.add(new VaultChange(VaultChange.Type.REMOVED, newEntries.size(), kept.get(k)[0]));
+        }
+
+        return changes;
+    }
+}
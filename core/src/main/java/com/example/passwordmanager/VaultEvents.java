@@ -0,0 +1,120 @@
+package com.example.passwordmanager;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The VaultEvents class holds the JFR events of the storage operations of a vault, so a flight recording
+ * shows which loads, rewrites, appends and lookups were slow, and what they worked on:
+ * <pre>
+ * java -XX:StartFlightRecording=filename=vault.jfr ...
+ * jfr print --categories "Password Manager" vault.jfr
+ * </pre>
+ * Events cost next to nothing while no recording is running. The same operations are counted in Metrics.
+ */
+public final class VaultEvents {
+
+    private VaultEvents() {
+    }
+
+
+    /**
+     * A database file read and parsed into the cache, when a vault is opened or reloaded after
+     * another process changed it.
+     */
+    @Name("passwordmanager.VaultLoad")
+    @Label("Vault Load")
+    @Category({"Password Manager", "Vault"})
+    @Description("A database file read and parsed into the cache")
+    public static class Load extends Event {
+
+        @Label("File")
+        public String path;
+
+        @Label("Entries")
+        public int entries;
+
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+
+        @Label("Binary")
+        @Description("Whether the file is a binary or compressed vault, of which only the titles are read")
+        public boolean binary;
+
+        @Label("Appended Only")
+        @Description("Whether only entries appended by another process were read")
+        public boolean appendedOnly;
+    }
+
+
+    /**
+     * A text file rewritten from the cache, after an entry was updated or deleted.
+     */
+    @Name("passwordmanager.VaultRewrite")
+    @Label("Vault Rewrite")
+    @Category({"Password Manager", "Vault"})
+    @Description("A text database file rewritten from the cache")
+    public static class Rewrite extends Event {
+
+        @Label("File")
+        public String path;
+
+        @Label("Entries")
+        public int entries;
+
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+
+    /**
+     * An entry added to a vault by savePasswordEntry.
+     */
+    @Name("passwordmanager.VaultAppend")
+    @Label("Vault Append")
+    @Category({"Password Manager", "Vault"})
+    @Description("An entry added to a vault")
+    public static class Append extends Event {
+
+        @Label("File")
+        public String path;
+
+        @Label("Mode")
+        @Description("How the entry was written: binary, compressed, journal, queued (written with the next batch) or direct")
+        public String mode;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+
+    /**
+     * An entry looked up by its title. Lookups are frequent, so only slow ones are recorded,
+     * and without a stack trace.
+     */
+    @Name("passwordmanager.VaultLookup")
+    @Label("Vault Lookup")
+    @Category({"Password Manager", "Vault"})
+    @Description("An entry looked up by its title")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static class Lookup extends Event {
+
+        @Label("File")
+        public String path;
+
+        @Label("Found")
+        public boolean found;
+    }
+}
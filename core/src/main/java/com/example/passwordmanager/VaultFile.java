@@ -0,0 +1,131 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The VaultFile interface is implemented by the file formats a Vault reads and changes in place instead of
+ * keeping all their entries in its cache: BinaryVault and CompressedVault. Opening such a file only reads
+ * its titles, and entries are read from the file when they are needed.
+ * <p>
+ * Entries are found by their title. When several entries have the same title, the first one is read,
+ * replaced or removed.
+ * <p>
+ * Implementations don't coordinate with other processes themselves. The Vault holds its VaultFileLock
+ * around every change and calls reload when another process changed the file.
+ */
+interface VaultFile extends AutoCloseable {
+
+    /**
+     * Returns the titles of all entries in file order, without reading any credentials.
+     *
+     * @return A list of entry titles.
+     */
+    List<String> getTitles();
+
+
+    /**
+     * Reads all entries, including their credentials.
+     *
+     * @return A list of string arrays, each representing a password entry.
+     * @throws IOException If the file can't be read.
+     */
+    List<String[]> getEntries() throws IOException;
+
+
+    /**
+     * Streams all entries through a visitor in file order, decoding only the requested fields.
+     * The visitor gets the same array for every entry, holding the title, username and password,
+     * with null for the fields that were not requested. It must copy what it keeps.
+     *
+     * @param fieldMask The fields to read, as a combination of RecordFormat.TITLE, USERNAME and PASSWORD.
+     * @param visitor   Called with the fields of every entry.
+     * @throws IOException If the file can't be read.
+     */
+    void forEachEntry(int fieldMask, Consumer<String[]> visitor) throws IOException;
+
+
+    /**
+     * Looks up an entry by its title and reads its credentials.
+     *
+     * @param title The title of the entry.
+     * @return The first entry with the given title, or null if there is none.
+     * @throws IOException If the file can't be read.
+     */
+    String[] getEntry(String title) throws IOException;
+
+
+    /**
+     * Adds a new entry to the end of the file.
+     *
+     * @param entry The entry to add.
+     * @return The position of the added entry.
+     * @throws IOException If the file can't be written.
+     */
+    int add(String[] entry) throws IOException;
+
+
+    /**
+     * Adds new entries to the end of the file with a single commit.
+     *
+     * @param entries The entries to add.
+     * @return The position of the first added entry.
+     * @throws IOException If the file can't be written.
+     */
+    int addAll(List<String[]> entries) throws IOException;
+
+
+    /**
+     * Replaces the first entry with the given title.
+     *
+     * @param title      The title of the entry to replace.
+     * @param newDetails The new entry.
+     * @return The position of the replaced entry, or -1 if there is no entry with the title.
+     * @throws IOException If the file can't be written.
+     */
+    int update(String title, String[] newDetails) throws IOException;
+
+
+    /**
+     * Removes the first entry with the given title.
+     *
+     * @param title The title of the entry to remove.
+     * @return The position the removed entry had, or -1 if there is no entry with the title.
+     * @throws IOException If the file can't be written.
+     */
+    int remove(String title) throws IOException;
+
+
+    /**
+     * Opens the file again by its path and reads its titles, after another process changed it.
+     * The other process may have compacted the file, which replaces it with a new one.
+     *
+     * @throws IOException If the file can't be read.
+     */
+    void reload() throws IOException;
+
+
+    /**
+     * Checks whether opening the file rewrote it, because it was in an older version of the format.
+     *
+     * @return True if the file was rewritten when it was opened.
+     */
+    boolean wasMigrated();
+
+
+    /**
+     * Writes all entries to a text database file.
+     *
+     * @param textPath The path of the text database file to write.
+     * @throws IOException If a file can't be read or written.
+     */
+    void exportToText(String textPath) throws IOException;
+
+
+    /**
+     * Closes the file.
+     */
+    @Override
+    void close() throws IOException;
+}
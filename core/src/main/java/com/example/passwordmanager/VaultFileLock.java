@@ -0,0 +1,257 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The VaultFileLock class coordinates processes writing the same database file, for example two instances
+ * of the application opening a vault on a shared drive. Every write takes an exclusive FileChannel lock on a lock
+ * file next to the database file, so writes of different processes never interleave. This holds for text files
+ * as well as for binary and compressed vaults, which are changed in place and compacted by replacing the file.
+ * <p>
+ * The lock file also holds a version counter, which every process increments when it changes the database file
+ * or its journal, and the version at which the file was last rewritten instead of appended to. A process compares
+ * the counter with the version it last saw when it takes the lock. If another process wrote in between, the cache
+ * (or the title table of a binary or compressed vault) must be reloaded before anything is written, so changes are
+ * merged instead of overwriting those of the other process. File sizes and modification times can't tell this
+ * reliably, since they have a limited precision.
+ * <p>
+ * The lock is reentrant and not thread-safe. It is only taken while holding the write lock of the vault.
+ * Only one vault per process may use a lock file, which PasswordDatabase ensures by reusing open vaults.
+ */
+public class VaultFileLock {
+
+    // Suffix of the lock file, appended to the path of the database file
+    private static final String LOCK_SUFFIX = ".lock";
+
+    // Positions of the version counter and of the version of the last rewrite in the lock file
+    private static final int VERSION_POSITION = 0;
+    private static final int REWRITE_VERSION_POSITION = 8;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(16);
+
+    // The lock held on the lock file, and how many times it was taken
+    private FileLock fileLock;
+    private int holds;
+
+    // The version this process last saw. Read without the lock by isOutdated.
+    private volatile long version = -1;
+
+    // Whether another process changed the file since the cache was last reloaded, and whether it only appended
+    private boolean foreignChanges;
+    private boolean foreignAppendsOnly = true;
+
+    // How the file was changed while the lock is held
+    private boolean appended;
+    private boolean rewritten;
+
+
+    /**
+     * Opens the lock file of a database file, creating it if needed.
+     *
+     * @param filePath The path of the database file.
+     * @throws IOException If the lock file can't be opened.
+     */
+    public VaultFileLock(String filePath) throws IOException {
+        channel = FileChannel.open(lockPath(filePath), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+
+    /**
+     * Returns the path of the lock file of a database file.
+     *
+     * @param filePath The path of the database file.
+     * @return The path of the lock file.
+     */
+    public static Path lockPath(String filePath) {
+        return Path.of(filePath + LOCK_SUFFIX);
+    }
+
+
+    /**
+     * Takes the lock, waiting for other processes to release it.
+     * Records whether another process changed the file since this process last held the lock.
+     *
+     * @throws IOException If the lock can't be taken.
+     */
+    public void lock() throws IOException {
+        if (holds > 0) {
+            holds++;
+            return;
+        }
+
+        try {
+            fileLock = channel.lock();
+        } catch (OverlappingFileLockException e) {
+            throw new IOException("The file is already locked by another vault of this process", e);
+        }
+        holds = 1;
+        appended = false;
+        rewritten = false;
+
+        // Compare the versions while holding the lock, so no other process can change them
+        long[] versions = readVersions();
+        if (versions[0] != version) {
+            foreignChanges = true;
+            if (versions[1] > version) {
+                foreignAppendsOnly = false;
+            }
+            version = versions[0];
+        }
+    }
+
+
+    /**
+     * Releases the lock once it has been released as often as it was taken.
+     * Increments the version counter first if the file was changed while holding it.
+     */
+    public void unlock() {
+        if (holds == 0 || --holds > 0) {
+            return;
+        }
+
+        try {
+            if (appended || rewritten) {
+                long newVersion = version + 1;
+                long rewriteVersion = rewritten ? newVersion : readVersions()[1];
+                writeVersions(newVersion, rewriteVersion);
+                version = newVersion;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                fileLock.release();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            fileLock = null;
+        }
+    }
+
+
+    /**
+     * Checks whether this process holds the lock.
+     *
+     * @return True if the lock is held.
+     */
+    public boolean isHeld() {
+        return holds > 0;
+    }
+
+
+    /**
+     * Records that entries were appended to the database file while holding the lock.
+     */
+    public void markAppended() {
+        appended = true;
+    }
+
+
+    /**
+     * Records that the database file was rewritten, or its journal changed, while holding the lock.
+     */
+    public void markRewritten() {
+        rewritten = true;
+    }
+
+
+    /**
+     * Checks whether another process changed the file since the cache was last reloaded.
+     *
+     * @return True if the cache must be reloaded.
+     */
+    public boolean hasForeignChanges() {
+        return foreignChanges;
+    }
+
+
+    /**
+     * Checks whether the changes of other processes only appended entries to the database file,
+     * so reading the appended part of the file brings the cache up to date.
+     *
+     * @return True if other processes only appended entries.
+     */
+    public boolean hasForeignAppendsOnly() {
+        return foreignAppendsOnly;
+    }
+
+
+    /**
+     * Records that the cache has been reloaded with the changes of other processes.
+     */
+    public void clearForeignChanges() {
+        foreignChanges = false;
+        foreignAppendsOnly = true;
+    }
+
+
+    /**
+     * Checks without taking the lock whether another process changed the file since this process last held the lock.
+     * Used to notice changes to the journal, which don't change the database file itself.
+     *
+     * @return True if the version counter has changed.
+     */
+    public boolean isOutdated() {
+        try {
+            ByteBuffer versionBuffer = ByteBuffer.allocate(8);
+            while (versionBuffer.hasRemaining()) {
+                if (channel.read(versionBuffer, VERSION_POSITION + versionBuffer.position()) < 0) {
+                    // A new lock file holds version 0
+                    return version > 0;
+                }
+            }
+            return versionBuffer.getLong(0) != version;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Closes the lock file. The lock must not be held.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Reads the version counter and the version of the last rewrite. A new lock file holds zeros.
+     */
+    private long[] readVersions() throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                return new long[]{0, 0};
+            }
+        }
+
+        return new long[]{buffer.getLong(VERSION_POSITION), buffer.getLong(REWRITE_VERSION_POSITION)};
+    }
+
+
+    /**
+     * Writes the version counter and the version of the last rewrite.
+     */
+    private void writeVersions(long newVersion, long rewriteVersion) throws IOException {
+        buffer.clear();
+        buffer.putLong(VERSION_POSITION, newVersion);
+        buffer.putLong(REWRITE_VERSION_POSITION, rewriteVersion);
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32C;
+
+/**
+ * The VaultJournal class implements the journaled storage mode of a database file.
+ * Instead of rewriting the whole file, changes are appended to a journal file next to it
+ * as small add, update and delete records. Readers replay the journal on top of the file.
+ * When the journal grows past a threshold, a background compactor folds it into a new database file,
+ * which is written to a temporary file first and then atomically renamed over the old one.
+ * Other processes writing the same journal are coordinated through the VaultFileLock of the file.
+ */
+public class VaultJournal {
+
+    // Suffixes of the journal file and of the journal that replaces it at the end of a compaction
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String NEXT_JOURNAL_SUFFIX = ".journal.next";
+
+    // Record types, stored as the first field of each journal line
+    private static final String ADD = "A";
+    private static final String UPDATE = "U";
+    private static final String DELETE = "D";
+    private static final String CHECKPOINT = "C";
+
+    // Journal size in bytes after which the journal is folded into the database file
+    private static volatile long compactionThreshold = 1024 * 1024;
+
+    // Single background thread shared by all journals for running compactions
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vault-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path basePath;
+    private final Path journalPath;
+    private final Path nextJournalPath;
+
+    // The cache holding the current entries, and the lock that guards it
+    private final VaultCache cache;
+    private final Lock lock;
+
+    // Lock coordinating the processes writing the file, or null if it couldn't be opened
+    private final VaultFileLock fileLock;
+
+    // Channel the journal records are appended to
+    private FileChannel channel;
+
+    // Incremented whenever the journal is opened again, so a compaction notices that it was replaced
+    private int generation;
+
+    private boolean compactionPending;
+    private boolean closed;
+
+
+    /**
+     * Opens the journal of a database file for appending.
+     *
+     * @param filePath The path of the database file.
+     * @param cache    The cache holding the entries of the database file, with the journal already replayed.
+     * @param lock     The lock guarding the cache against writes. Compactions hold it while touching shared state.
+     * @param fileLock The lock coordinating the processes writing the file, or null. Taken while holding lock.
+     * @throws IOException If the journal can't be opened.
+     */
+    public VaultJournal(String filePath, VaultCache cache, Lock lock, VaultFileLock fileLock) throws IOException {
+        this.basePath = Path.of(filePath);
+        this.journalPath = Path.of(filePath + JOURNAL_SUFFIX);
+        this.nextJournalPath = Path.of(filePath + NEXT_JOURNAL_SUFFIX);
+        this.cache = cache;
+        this.lock = lock;
+        this.fileLock = fileLock;
+        this.channel = openForAppend(journalPath);
+    }
+
+
+    /**
+     * Opens the journal again, after another process may have replaced it by compacting it.
+     * Must be called while holding the lock.
+     *
+     * @throws IOException If the journal can't be opened.
+     */
+    public void reopen() throws IOException {
+        channel.close();
+        channel = openForAppend(journalPath);
+        generation++;
+    }
+
+
+    /**
+     * Sets the journal size after which journals are compacted.
+     *
+     * @param thresholdBytes The threshold in bytes.
+     */
+    public static void setCompactionThreshold(long thresholdBytes) {
+        compactionThreshold = thresholdBytes;
+    }
+
+
+    /**
+     * Appends a record for a newly added entry.
+     *
+     * @param entry The added entry.
+     * @throws IOException If the record can't be written.
+     */
+    public void appendAdd(String[] entry) throws IOException {
+        append(RecordFormat.append(new StringBuilder(ADD).append(PasswordDatabase.DELIMITER), entry).toString());
+    }
+
+
+    /**
+     * Appends records for a batch of newly added entries with a single write and a single fsync.
+     *
+     * @param entries The added entries.
+     * @throws IOException If the records can't be written.
+     */
+    public void appendAdds(List<String[]> entries) throws IOException {
+        StringBuilder records = new StringBuilder();
+
+        for (String[] entry : entries) {
+            records.append(ADD).append(PasswordDatabase.DELIMITER);
+            RecordFormat.append(records, entry).append('\n');
+        }
+
+        write(records.toString());
+    }
+
+
+    /**
+     * Appends an upsert record replacing the first entry with the given title.
+     *
+     * @param entryTitle The title of the replaced entry.
+     * @param newDetails The new details of the entry.
+     * @throws IOException If the record can't be written.
+     */
+    public void appendUpdate(String entryTitle, String[] newDetails) throws IOException {
+        StringBuilder record = new StringBuilder(UPDATE).append(PasswordDatabase.DELIMITER);
+        RecordFormat.append(record, entryTitle).append(PasswordDatabase.DELIMITER);
+        append(RecordFormat.append(record, newDetails).toString());
+    }
+
+
+    /**
+     * Appends a tombstone record removing the first entry with the given title.
+     *
+     * @param entryTitle The title of the removed entry.
+     * @throws IOException If the record can't be written.
+     */
+    public void appendDelete(String entryTitle) throws IOException {
+        append(DELETE + PasswordDatabase.DELIMITER + RecordFormat.encode(entryTitle));
+    }
+
+
+    /**
+     * Writes a record to the end of the journal and forces it to disk.
+     */
+    private void append(String record) throws IOException {
+        write(record + "\n");
+    }
+
+
+    /**
+     * Writes complete lines to the end of the journal and forces them to disk.
+     * If the write fails, the part of the lines that was written is cut off again, so the next record doesn't
+     * continue a partial one and the journal doesn't hold a change the cache doesn't have.
+     * Must be called while holding the file lock. Schedules a compaction if the journal has grown past the threshold.
+     */
+    private void write(String lines) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+
+        // Other processes may have appended records since this one last wrote
+        long size = channel.size();
+        channel.position(size);
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                if (channel.size() > size) {
+                    channel.truncate(size);
+                }
+            } catch (IOException truncateFailure) {
+                // The journal ends in part of the lines, which other processes must still notice
+                e.addSuppressed(truncateFailure);
+                if (fileLock != null) {
+                    fileLock.markRewritten();
+                }
+            }
+            throw e;
+        }
+
+        if (fileLock != null) {
+            fileLock.markRewritten();
+        }
+
+        if (!compactionPending && channel.size() > compactionThreshold) {
+            compactionPending = true;
+            compactor.execute(this::compact);
+        }
+    }
+
+
+    /**
+     * Folds the journal into a new database file.
+     * The entries are written to a temporary file without holding the lock. The lock is only held at the end,
+     * to carry over records appended in the meantime and to swap in the new files.
+     */
+    private void compact() {
+        List<String[]> snapshot;
+        long journalLength;
+        int snapshotGeneration;
+        Path tempPath = null;
+
+        try {
+            // Take a snapshot of the entries and remember which journal records it includes
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+
+                // The cache doesn't hold the changes of other processes yet. The next write reloads it and compacts again.
+                lockFile();
+                if (hasForeignChanges()) {
+                    return;
+                }
+                snapshot = new ArrayList<>(cache.getEntries());
+                journalLength = channel.size();
+                snapshotGeneration = generation;
+            } finally {
+                unlockFile();
+                lock.unlock();
+            }
+
+            // Write the snapshot to a temporary file in the same directory, so it can be renamed atomically
+            CRC32C crc = new CRC32C();
+            tempPath = TextVaultFile.writeTemporary(basePath, snapshot, crc);
+            long size = Files.size(tempPath);
+
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+
+                // Another process may have written or compacted the journal in the meantime
+                lockFile();
+                if (hasForeignChanges() || generation != snapshotGeneration) {
+                    return;
+                }
+
+                // The new journal starts with a checkpoint identifying the new database file,
+                // followed by the records that were appended while the snapshot was written
+                byte[] checkpoint = (CHECKPOINT + PasswordDatabase.DELIMITER + size
+                        + PasswordDatabase.DELIMITER + crc.getValue() + "\n").getBytes(StandardCharsets.UTF_8);
+                ByteBuffer tail = ByteBuffer.allocate((int) (channel.size() - journalLength));
+                while (tail.hasRemaining()) {
+                    if (channel.read(tail, journalLength + tail.position()) < 0) {
+                        break;
+                    }
+                }
+                tail.flip();
+
+                try (FileChannel next = FileChannel.open(nextJournalPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    writeFully(next, ByteBuffer.wrap(checkpoint));
+                    writeFully(next, tail);
+                    next.force(true);
+                }
+
+                // Swap in the new database file first. If the application crashes before the journal is swapped too,
+                // recover() finds the checkpoint matching the new file and finishes the compaction.
+                TextVaultFile.replace(tempPath, basePath);
+                channel.close();
+                Files.move(nextJournalPath, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                channel = openForAppend(journalPath);
+
+                // The cache already holds these entries, so it only needs to remember the new file
+                cache.takeFingerprint();
+                if (fileLock != null) {
+                    fileLock.markRewritten();
+                }
+            } finally {
+                unlockFile();
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.lock();
+            try {
+                compactionPending = false;
+            } finally {
+                lock.unlock();
+            }
+
+            if (tempPath != null) {
+                try {
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Takes the file lock for a compaction, if there is one.
+     */
+    private void lockFile() throws IOException {
+        if (fileLock != null) {
+            fileLock.lock();
+        }
+    }
+
+
+    /**
+     * Releases the file lock taken by lockFile.
+     */
+    private void unlockFile() {
+        if (fileLock != null) {
+            fileLock.unlock();
+        }
+    }
+
+
+    /**
+     * Checks whether other processes changed the file since the cache was last reloaded.
+     */
+    private boolean hasForeignChanges() {
+        return fileLock != null && fileLock.hasForeignChanges();
+    }
+
+
+    /**
+     * Closes the journal. A compaction that is still running is abandoned.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Checks whether a database file has a journal.
+     *
+     * @param filePath The path of the database file.
+     * @return True if a journal file exists.
+     */
+    public static boolean exists(String filePath) {
+        return Files.exists(Path.of(filePath + JOURNAL_SUFFIX));
+    }
+
+
+    /**
+     * Deletes the journal of a database file.
+     * Called once the database file has been rewritten to include all journaled changes.
+     *
+     * @param filePath The path of the database file.
+     */
+    public static void delete(String filePath) {
+        try {
+            Files.deleteIfExists(Path.of(filePath + JOURNAL_SUFFIX));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Finishes or rolls back a compaction that was interrupted by a crash.
+     * If the database file matches the checkpoint of the pending journal, the compaction got as far as
+     * replacing the database file and the pending journal is put in place. Otherwise it is discarded.
+     *
+     * @param filePath The path of the database file.
+     */
+    public static void recover(String filePath) {
+        Path basePath = Path.of(filePath);
+        Path journalPath = Path.of(filePath + JOURNAL_SUFFIX);
+        Path nextJournalPath = Path.of(filePath + NEXT_JOURNAL_SUFFIX);
+
+        try {
+            if (!Files.exists(nextJournalPath)) {
+                return;
+            }
+
+            String[] checkpoint = new RecordFormat().parse(firstLine(nextJournalPath));
+            boolean compacted = false;
+
+            if (checkpoint.length == 3 && checkpoint[0].equals(CHECKPOINT) && Files.exists(basePath)) {
+                byte[] base = Files.readAllBytes(basePath);
+                CRC32C crc = new CRC32C();
+                crc.update(base);
+                compacted = checkpoint[1].equals(Long.toString(base.length))
+                        && checkpoint[2].equals(Long.toString(crc.getValue()));
+            }
+
+            if (compacted) {
+                Files.move(nextJournalPath, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(nextJournalPath);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Replays the journal of a database file on top of the entries read from the file.
+     * An incomplete last record, left behind by a crash while appending, is ignored.
+     *
+     * @param filePath The path of the database file.
+     * @param cache    The cache holding the entries of the database file.
+     */
+    public static void replay(String filePath, VaultCache cache) {
+        Path journalPath = Path.of(filePath + JOURNAL_SUFFIX);
+
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+
+        String journal;
+        try {
+            journal = Files.readString(journalPath, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        RecordFormat format = new RecordFormat();
+        int start = 0;
+        int end;
+
+        // Only complete lines are records
+        while ((end = journal.indexOf('\n', start)) >= 0) {
+            String[] fields = format.parse(journal.substring(start, end));
+            start = end + 1;
+
+            switch (fields[0]) {
+                case ADD -> cache.add(entryFields(fields, 1));
+                case UPDATE -> cache.update(field(fields, 1), entryFields(fields, 2));
+                case DELETE -> cache.remove(field(fields, 1));
+                default -> {
+                    // Checkpoints only matter to recover()
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns a field of a record, or an empty string if the record is too short.
+     */
+    private static String field(String[] fields, int index) {
+        return index < fields.length ? fields[index] : "";
+    }
+
+
+    /**
+     * Returns the fields of the entry stored in a record, starting at the given index.
+     * Mirrors how a line of the database file is split, where an empty line is a single empty field.
+     */
+    private static String[] entryFields(String[] fields, int from) {
+        if (from >= fields.length) {
+            return new String[]{""};
+        }
+
+        return Arrays.copyOfRange(fields, from, fields.length);
+    }
+
+
+    /**
+     * Opens a journal for appending, dropping an incomplete record at its end.
+     */
+    private static FileChannel openForAppend(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        // Find the end of the last complete record
+        long end = channel.size();
+        ByteBuffer oneByte = ByteBuffer.allocate(1);
+
+        while (end > 0) {
+            oneByte.clear();
+            channel.read(oneByte, end - 1);
+            if (oneByte.get(0) == '\n') {
+                break;
+            }
+            end--;
+        }
+
+        channel.truncate(end);
+        channel.position(end);
+        return channel;
+    }
+
+
+    /**
+     * Reads the first line of a file.
+     */
+    private static String firstLine(Path path) throws IOException {
+        try (var lines = Files.lines(path, StandardCharsets.UTF_8)) {
+            return lines.findFirst().orElse("");
+        }
+    }
+
+
+    /**
+     * Writes the whole buffer to the channel.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * The VaultLoader class reads all password entries from a database file.
+ * Small files are read line by line on the calling thread. Large files are memory-mapped,
+ * split into newline-aligned chunks and parsed in parallel on the common fork-join pool.
+ * Both paths produce exactly the same entries.
+ * <p>
+ * Lines are parsed from the bytes of the file with RecordFormat, without decoding each line into a String first.
+ * The header line of the file is skipped, and legacy files without it are parsed without escaping
+ * (see TextVaultFile).
+ * scanEntries streams the entries of a file through a visitor instead, decoding only the requested fields.
+ */
+public class VaultLoader {
+
+    // Files at least this large are parsed in parallel
+    private static final long PARALLEL_THRESHOLD = 16 * 1024 * 1024;
+
+    // Approximate size of a chunk parsed by a single task
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    // Size of the buffer the file is read through by the sequential path. Grows if a line doesn't fit.
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+
+    /**
+     * Reads all password entries from the file, picking the sequential or the parallel path based on its size.
+     *
+     * @param filePath The path of the database file.
+     * @return A list of string arrays, each representing a password entry.
+     */
+    public static List<String[]> readEntries(String filePath) {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            if (channel.size() >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+                return readEntriesParallel(channel);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+
+        return readEntriesSequential(filePath);
+    }
+
+
+    /**
+     * Reads all password entries from the file line by line.
+     *
+     * @param filePath The path of the database file.
+     * @return A list of string arrays, each representing a password entry.
+     */
+    public static List<String[]> readEntriesSequential(String filePath) {
+        List<String[]> entries = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            int headerLength = TextVaultFile.headerLength(channel);
+            RecordFormat format = new RecordFormat(headerLength > 0);
+
+            // Parse each line of the file into its fields
+            forEachLine(channel, headerLength, Long.MAX_VALUE,
+                    (bytes, start, end) -> entries.add(format.parse(bytes, start, end)));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return entries;
+    }
+
+
+    /**
+     * Reads the password entries stored between two positions of the file, such as the lines appended to it
+     * since it was last read. Both positions must be at the start of a line.
+     *
+     * @param filePath The path of the database file.
+     * @param from     The position of the first byte to read.
+     * @param to       The position after the last byte to read.
+     * @return A list of string arrays, each representing a password entry, in file order.
+     */
+    public static List<String[]> readEntries(String filePath, long from, long to) {
+        List<String[]> entries = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            int headerLength = TextVaultFile.headerLength(channel);
+            RecordFormat format = new RecordFormat(headerLength > 0);
+            forEachLine(channel, Math.max(from, headerLength), to,
+                    (bytes, start, end) -> entries.add(format.parse(bytes, start, end)));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return entries;
+    }
+
+
+    /**
+     * Streams the entries of a file through a visitor, decoding only the requested fields.
+     * The visitor gets the same array for every entry, holding the title, username and password,
+     * with null for the fields that were not requested. It must copy what it keeps.
+     * Scanning a file this way allocates little more than the requested fields, however large the file is.
+     * The file is read as it is on disk, without replaying its journal.
+     *
+     * @param filePath  The path of the database file.
+     * @param fieldMask The fields to decode, as a combination of RecordFormat.TITLE, USERNAME and PASSWORD.
+     * @param visitor   Called with the fields of every entry in file order.
+     * @throws IOException If the file can't be read.
+     */
+    public static void scanEntries(String filePath, int fieldMask, Consumer<String[]> visitor) throws IOException {
+        String[] fields = new String[3];
+
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            int headerLength = TextVaultFile.headerLength(channel);
+            RecordFormat format = new RecordFormat(headerLength > 0);
+            forEachLine(channel, headerLength, Long.MAX_VALUE, (bytes, start, end) -> {
+                format.parse(bytes, start, end, fieldMask, fields);
+                visitor.accept(fields);
+            });
+        }
+    }
+
+
+    /**
+     * Streams the lines of a file through a visitor as ranges of UTF-8 bytes, without decoding them,
+     * for callers that parse the fields with RecordFormat.forEachField.
+     * The header line is skipped; callers get the parser for the lines from TextVaultFile.formatOf.
+     * The file is read as it is on disk, without replaying its journal.
+     *
+     * @param filePath The path of the database file.
+     * @param visitor  Called with every line in file order.
+     * @throws IOException If the file can't be read.
+     */
+    public static void scanLines(String filePath, LineVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            forEachLine(channel, TextVaultFile.headerLength(channel), Long.MAX_VALUE, visitor);
+        }
+    }
+
+
+    /**
+     * Receives a line as a range of bytes. The bytes are only valid during the call.
+     */
+    public interface LineVisitor {
+        void line(byte[] bytes, int start, int end);
+    }
+
+
+    /**
+     * Reads the file between two positions through a reused buffer and passes every line to the visitor,
+     * without its line break. Lines end at "\n", "\r" or "\r\n", like with BufferedReader.readLine.
+     */
+    private static void forEachLine(FileChannel channel, long from, long to, LineVisitor visitor) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long filePosition = from;
+        int lineStart = 0;
+        int position = 0;
+        int limit = 0;
+        boolean afterCarriageReturn = false;
+
+        while (true) {
+            for (; position < limit; position++) {
+                byte b = buffer[position];
+
+                if (b == '\n' && afterCarriageReturn) {
+                    // The second half of a "\r\n" line break
+                    lineStart = position + 1;
+                } else if (b == '\n' || b == '\r') {
+                    visitor.line(buffer, lineStart, position);
+                    lineStart = position + 1;
+                }
+                afterCarriageReturn = b == '\r';
+            }
+
+            // Move the incomplete last line to the front, or make room for it if it fills the buffer
+            if (lineStart > 0) {
+                System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+                position -= lineStart;
+                limit -= lineStart;
+                lineStart = 0;
+            } else if (limit == buffer.length) {
+                byte[] grown = Arrays.copyOf(buffer, buffer.length * 2);
+                Arrays.fill(buffer, (byte) 0);
+                buffer = grown;
+            }
+
+            int length = (int) Math.min(buffer.length - limit, to - filePosition);
+            int read = length > 0 ? channel.read(ByteBuffer.wrap(buffer, limit, length), filePosition) : -1;
+            if (read < 0) {
+                break;
+            }
+            limit += read;
+            filePosition += read;
+        }
+
+        // The last line of the file may not end with a line break
+        if (lineStart < limit) {
+            visitor.line(buffer, lineStart, limit);
+        }
+
+        // The buffer held the passwords of the file, which shouldn't linger until it is collected
+        Arrays.fill(buffer, (byte) 0);
+    }
+
+
+    /**
+     * Reads all password entries from the file by parsing newline-aligned chunks of it in parallel.
+     *
+     * @param filePath The path of the database file.
+     * @return A list of string arrays, each representing a password entry, in file order.
+     */
+    public static List<String[]> readEntriesParallel(String filePath) {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            return readEntriesParallel(channel);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+
+    /**
+     * Splits the file into chunks and parses them on the common fork-join pool.
+     */
+    private static List<String[]> readEntriesParallel(FileChannel channel) throws IOException {
+        List<ParseChunkTask> tasks = new ArrayList<>();
+        long size = channel.size();
+        int headerLength = TextVaultFile.headerLength(channel);
+        boolean escaping = headerLength > 0;
+        long start = headerLength;
+
+        // Each chunk ends right after a newline, so no line is split between two chunks
+        while (start < size) {
+            long end = findChunkEnd(channel, Math.min(start + CHUNK_SIZE, size), size);
+            tasks.add(new ParseChunkTask(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), escaping));
+            start = end;
+        }
+
+        ForkJoinPool.commonPool().invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                invokeAll(tasks);
+                return null;
+            }
+        });
+
+        // Merge the results in file order
+        int total = 0;
+        for (ParseChunkTask task : tasks) {
+            total += task.join().size();
+        }
+
+        List<String[]> entries = new ArrayList<>(total);
+        for (ParseChunkTask task : tasks) {
+            entries.addAll(task.join());
+        }
+
+        return entries;
+    }
+
+
+    /**
+     * Finds the end of the chunk that should end near the given position.
+     *
+     * @return The position right after the first newline at or after the given position, or the file size.
+     */
+    private static long findChunkEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+
+        return size;
+    }
+
+
+    /**
+     * Parses the lines of one mapped chunk into entries.
+     * Lines end at "\n", "\r" or "\r\n", like with BufferedReader.readLine.
+     */
+    private static class ParseChunkTask extends RecursiveTask<List<String[]>> {
+
+        private final MappedByteBuffer chunk;
+        private final boolean escaping;
+
+        ParseChunkTask(MappedByteBuffer chunk, boolean escaping) {
+            this.chunk = chunk;
+            this.escaping = escaping;
+        }
+
+        @Override
+        protected List<String[]> compute() {
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+
+            RecordFormat format = new RecordFormat(escaping);
+            List<String[]> entries = new ArrayList<>();
+            int lineStart = 0;
+            int i = 0;
+
+            while (i < bytes.length) {
+                byte b = bytes[i];
+
+                if (b == '\n' || b == '\r') {
+                    entries.add(format.parse(bytes, lineStart, i));
+
+                    // Treat "\r\n" as a single line break
+                    if (b == '\r' && i + 1 < bytes.length && bytes[i + 1] == '\n') {
+                        i++;
+                    }
+                    lineStart = i + 1;
+                }
+                i++;
+            }
+
+            // The last line of the file may not end with a line break
+            if (lineStart < bytes.length) {
+                entries.add(format.parse(bytes, lineStart, bytes.length));
+            }
+
+            return entries;
+        }
+    }
+}
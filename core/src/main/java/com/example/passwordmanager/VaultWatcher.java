@@ -0,0 +1,223 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The VaultWatcher class watches the files of the open vaults for changes made by other processes,
+ * for example when a vault is shared with a synchronized folder or a network drive.
+ * The directories of the files are registered with a WatchService. Editors and sync tools often write a file
+ * in several steps, so the events for a file are debounced: the vault is only refreshed once no event has come
+ * in for a short while. Refreshing reloads the changed part of a text file and notifies the change listeners
+ * of the vault with the entries that were added, updated or removed. Binary and compressed vaults read their
+ * titles again and notify the listeners with a single RELOADED change.
+ * <p>
+ * Not every file system reports changes (network file systems often don't), so every watched vault is also
+ * refreshed at a longer interval. A refresh of an unchanged file only compares its size and modification time,
+ * or the version counter of its lock file.
+ * Watching can be disabled with the system property passwordmanager.watch=false.
+ */
+public class VaultWatcher {
+
+    // Time in milliseconds without further events before a changed vault is refreshed
+    private static final long DEBOUNCE_MILLIS = 250;
+
+    // Interval in milliseconds at which every watched vault is refreshed, in case events are missed
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+
+    private static final boolean enabled = !"false".equals(System.getProperty("passwordmanager.watch"));
+
+    // The watched vaults
+    private static final List<Vault> vaults = new CopyOnWriteArrayList<>();
+
+    // The registered directories and the scheduled refresh of every vault that changed, guarded by the class
+    private static final Map<Path, WatchKey> watchKeys = new HashMap<>();
+    private static final Map<Vault, ScheduledFuture<?>> scheduledRefreshes = new HashMap<>();
+
+    // Watch service and threads, started when the first vault is watched
+    private static WatchService watchService;
+    private static ScheduledExecutorService refresher;
+
+
+    /**
+     * Starts watching the file of a vault. Does nothing if watching is disabled.
+     *
+     * @param vault The vault to watch.
+     */
+    public static synchronized void watch(Vault vault) {
+        if (!enabled || vaults.contains(vault)) {
+            return;
+        }
+
+        try {
+            start();
+
+            Path directory = directoryOf(vault);
+            if (!watchKeys.containsKey(directory)) {
+                watchKeys.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+            }
+        } catch (IOException e) {
+            // The vault is still refreshed by polling
+            e.printStackTrace();
+        }
+
+        vaults.add(vault);
+    }
+
+
+    /**
+     * Stops watching the file of a vault.
+     *
+     * @param vault The vault to stop watching.
+     */
+    public static synchronized void unwatch(Vault vault) {
+        if (!vaults.remove(vault)) {
+            return;
+        }
+
+        ScheduledFuture<?> scheduledRefresh = scheduledRefreshes.remove(vault);
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+
+        // Stop watching the directory once no vault in it is watched
+        Path directory = directoryOf(vault);
+        for (Vault other : vaults) {
+            if (directoryOf(other).equals(directory)) {
+                return;
+            }
+        }
+
+        WatchKey key = watchKeys.remove(directory);
+        if (key != null) {
+            key.cancel();
+        }
+    }
+
+
+    /**
+     * Starts the watch service, the thread waiting for its events and the thread refreshing the vaults.
+     */
+    private static void start() throws IOException {
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "vault-watcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(VaultWatcher::poll, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+
+            Thread thread = new Thread(VaultWatcher::processEvents, "vault-watcher-events");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+
+    /**
+     * Waits for events of the watch service and schedules a refresh of the vaults whose files changed.
+     */
+    private static void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path directory = (Path) key.watchable();
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                // Events were lost, so any file in the directory may have changed
+                Path changed = event.kind() == StandardWatchEventKinds.OVERFLOW
+                        ? null : directory.resolve((Path) event.context());
+
+                for (Vault vault : vaults) {
+                    // Every process writing the vault also changes the version in its lock file,
+                    // which is the only file that changes when another process writes the journal
+                    Path file = Path.of(vault.getFilePath()).toAbsolutePath();
+                    Path lockFile = VaultFileLock.lockPath(vault.getFilePath()).toAbsolutePath();
+                    if (changed == null ? file.getParent().equals(directory)
+                            : file.equals(changed) || lockFile.equals(changed)) {
+                        scheduleRefresh(vault);
+                    }
+                }
+            }
+
+            key.reset();
+        }
+    }
+
+
+    /**
+     * Refreshes a vault once no further event has come in for the debounce time.
+     */
+    private static synchronized void scheduleRefresh(Vault vault) {
+        if (!vaults.contains(vault)) {
+            return;
+        }
+
+        ScheduledFuture<?> scheduledRefresh = scheduledRefreshes.get(vault);
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+
+        scheduledRefreshes.put(vault, refresher.schedule(() -> {
+            synchronized (VaultWatcher.class) {
+                scheduledRefreshes.remove(vault);
+            }
+            refresh(vault);
+        }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+
+    /**
+     * Refreshes every watched vault, for changes the watch service didn't report.
+     */
+    private static void poll() {
+        for (Vault vault : vaults) {
+            refresh(vault);
+        }
+    }
+
+
+    /**
+     * Refreshes a vault. Errors are printed, so they don't stop the refresh thread.
+     */
+    private static void refresh(Vault vault) {
+        try {
+            vault.refresh();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Returns the absolute path of the directory holding the file of a vault.
+     */
+    private static Path directoryOf(Vault vault) {
+        return Path.of(vault.getFilePath()).toAbsolutePath().getParent();
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.passwordmanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The VaultWriter class appends new entries to a text database file in batches (write-behind).
+ * Added entries are queued in memory and written with a single write on a channel that stays open,
+ * either when the batch is full or when the flush interval has passed since the first queued entry.
+ * In durable mode every batch is forced to disk with one fsync, so bulk adds pay for one fsync per batch
+ * instead of one open, write and close per entry.
+ * <p>
+ * The cache already holds the queued entries, so reads are not affected by the delay. The cache fingerprint is
+ * only taken after a batch has been written, so the file is never mistaken for a changed one in between.
+ * Batches are written while holding the VaultFileLock of the file, so they never interleave with the writes
+ * of other processes.
+ * <p>
+ * Entries stay queued until their batch was written completely. A batch that fails is taken back from the file,
+ * so it never ends in half a line, and stays queued. A failed scheduled flush is retried by the next append,
+ * flush or drain, which throw the exception if it fails again.
+ */
+public class VaultWriter {
+
+    // Time in milliseconds an added entry may wait before it is written, and the number of entries written at once
+    private static volatile long flushIntervalMillis = Long.getLong("passwordmanager.flushInterval", 100);
+    private static volatile int batchSize = Integer.getInteger("passwordmanager.batchSize", 1000);
+
+    // Whether every batch is forced to disk
+    private static volatile boolean durable = Boolean.getBoolean("passwordmanager.durable");
+
+    // Single background thread shared by all writers for flushing batches when their interval has passed
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vault-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The database file, the cache holding its entries, and the lock that guards it
+    private final String filePath;
+    private final VaultCache cache;
+    private final Lock lock;
+
+    // Lock coordinating the processes writing the file, or null if it couldn't be opened
+    private final VaultFileLock fileLock;
+
+    // Channel the entries are appended to
+    private FileChannel channel;
+
+    // The queued entries, in the order they were added
+    private final List<String[]> pending = new ArrayList<>();
+
+    // Why the last scheduled flush failed, or null if it didn't
+    private IOException flushFailure;
+
+    // The scheduled flush of the queued entries, or null if none is scheduled
+    private ScheduledFuture<?> scheduledFlush;
+
+    private boolean closed;
+
+
+    /**
+     * Opens a database file for appending entries.
+     *
+     * @param filePath The path of the database file.
+     * @param cache    The cache holding the entries of the database file.
+     * @param lock     The lock guarding the cache against writes. Scheduled flushes hold it.
+     * @param fileLock The lock coordinating the processes writing the file, or null. Taken while holding lock.
+     * @throws IOException If the file can't be opened.
+     */
+    public VaultWriter(String filePath, VaultCache cache, Lock lock, VaultFileLock fileLock) throws IOException {
+        this.filePath = filePath;
+        this.cache = cache;
+        this.lock = lock;
+        this.fileLock = fileLock;
+        this.channel = openForAppend(filePath);
+    }
+
+
+    /**
+     * Opens the database file for appending.
+     */
+    private static FileChannel openForAppend(String filePath) throws IOException {
+        return FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+
+    /**
+     * Sets how long added entries may be queued and how many are written at once.
+     * Takes effect for entries added afterwards.
+     *
+     * @param intervalMillis The flush interval in milliseconds.
+     * @param entries        The batch size.
+     */
+    public static void setWriteBehind(long intervalMillis, int entries) {
+        flushIntervalMillis = intervalMillis;
+        batchSize = entries;
+    }
+
+
+    /**
+     * Enables or disables forcing every batch to disk.
+     *
+     * @param enabled True to fsync once per batch, false to leave writing back to the operating system.
+     */
+    public static void setDurable(boolean enabled) {
+        durable = enabled;
+    }
+
+
+    /**
+     * Queues an entry for appending. Must be called while holding the lock.
+     * Writes the batch right away if it is full or the last scheduled flush failed, otherwise schedules a flush.
+     *
+     * @param entry The added entry.
+     * @throws IOException If the batch can't be written. The entry is not queued then.
+     */
+    public void append(String[] entry) throws IOException {
+        appendAll(List.<String[]>of(entry));
+    }
+
+
+    /**
+     * Queues entries for appending, all or none of them. Must be called while holding the lock.
+     * Writes the batch right away if it is full or the last scheduled flush failed, otherwise schedules a flush.
+     *
+     * @param entries The added entries.
+     * @throws IOException If the batch can't be written. The entries are not queued then.
+     */
+    public void appendAll(List<String[]> entries) throws IOException {
+        int queued = pending.size();
+        pending.addAll(entries);
+
+        if (pending.size() >= batchSize || flushFailure != null) {
+            try {
+                writePending(durable);
+            } catch (IOException e) {
+                // The caller reports these entries as not added, so they must not be written later
+                pending.subList(queued, pending.size()).clear();
+                throw e;
+            }
+        } else if (scheduledFlush == null) {
+            scheduledFlush = flusher.schedule(this::scheduledFlush, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Writes the queued entries and forces the file to disk. Must be called while holding the lock.
+     *
+     * @throws IOException If the entries can't be written.
+     */
+    public void flush() throws IOException {
+        writePending(true);
+    }
+
+
+    /**
+     * Writes the queued entries now, forcing them to disk only in durable mode. Must be called while holding the lock.
+     * Called before the file is read again, so the queued entries are part of what is read.
+     *
+     * @throws IOException If the entries can't be written.
+     */
+    public void drain() throws IOException {
+        writePending(durable);
+    }
+
+
+    /**
+     * Checks whether added entries are queued and not written yet. Must be called while holding the lock.
+     *
+     * @return True if entries are queued.
+     */
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+
+    /**
+     * Returns the queued entries that are not written yet. Must be called while holding the lock.
+     *
+     * @return The queued entries, in the order they were added.
+     */
+    public List<String[]> getPending() {
+        return Collections.unmodifiableList(pending);
+    }
+
+
+    /**
+     * Opens the database file again after this process replaced it with a rewrite of the cache, so entries are
+     * appended to the new file instead of the replaced one. The rewrite included the queued entries, so they are
+     * dropped. Must be called while holding the lock.
+     *
+     * @throws IOException If the file can't be opened.
+     */
+    public void reopen() throws IOException {
+        pending.clear();
+        flushFailure = null;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        reopenFile();
+    }
+
+
+    /**
+     * Opens the database file again after another process may have replaced it with a rewrite, so the queued
+     * entries are appended to the file that is there now instead of the replaced one. Must be called while holding
+     * the lock.
+     *
+     * @throws IOException If the file can't be opened.
+     */
+    public void reopenFile() throws IOException {
+        channel.close();
+        channel = openForAppend(filePath);
+    }
+
+
+    /**
+     * Writes the queued entries once the flush interval has passed.
+     */
+    private void scheduledFlush() {
+        lock.lock();
+        try {
+            scheduledFlush = null;
+            if (closed) {
+                return;
+            }
+
+            writePending(durable);
+        } catch (IOException e) {
+            // The entries stay queued and in the cache. The next append, flush or drain retries and reports it.
+            e.printStackTrace();
+            flushFailure = e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Writes the queued entries with a single write and optionally forces them to disk.
+     */
+    private void writePending(boolean force) throws IOException {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        if (!pending.isEmpty()) {
+            if (fileLock != null) {
+                fileLock.lock();
+            }
+
+            try {
+                // If the file was changed by someone else, the cache must still notice after this write
+                boolean foreignChanges = fileLock != null && fileLock.hasForeignChanges();
+                boolean inSync = !foreignChanges && !cache.isStale(filePath);
+
+                // Another process may have replaced the file, so append to the one that is there now
+                if (foreignChanges) {
+                    channel.close();
+                    channel = openForAppend(filePath);
+                }
+
+                StringBuilder lines = new StringBuilder(TextVaultFile.headerFor(channel.size()));
+                for (String[] entry : pending) {
+                    RecordFormat.append(lines, entry).append('\n');
+                }
+                write(StandardCharsets.UTF_8.encode(lines.toString()));
+
+                // Only now the entries are in the file, and other processes need to read them
+                pending.clear();
+                flushFailure = null;
+                if (fileLock != null) {
+                    fileLock.markAppended();
+                }
+
+                // The cache holds these entries already, so it only needs to remember the new file
+                if (inSync) {
+                    cache.takeFingerprint();
+                }
+            } finally {
+                if (fileLock != null) {
+                    fileLock.unlock();
+                }
+            }
+        }
+
+        if (force) {
+            channel.force(false);
+        }
+    }
+
+
+    /**
+     * Appends a batch to the file. If the write fails, the part of the batch that was written is cut off again,
+     * so the file is left as it was. Called while holding the file lock.
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        long size = channel.size();
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            try {
+                if (channel.size() > size) {
+                    channel.truncate(size);
+                }
+            } catch (IOException truncateFailure) {
+                // The file ends in part of the batch, which other processes must still notice
+                e.addSuppressed(truncateFailure);
+                if (fileLock != null) {
+                    fileLock.markAppended();
+                }
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * Writes the queued entries, forces them to disk and closes the file. Must be called while holding the lock.
+     */
+    public void close() {
+        try {
+            flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closed = true;
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+module com.example.passwordmanager {
+    requires jdk.jfr;
+
+    exports com.example.passwordmanager;
+}
@@ -0,0 +1,219 @@
+package com.example.passwordmanager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks the output of PasswordGenerator for statistical bias: a chi-squared test on how often every character
+ * occurs at every position, required character classes and excluded characters, and duplicate passwords.
+ * The generator can't be seeded, so every test draws a fixed number of passwords and allows deviations
+ * that occur by chance far less often than once in a million runs.
+ */
+class PasswordGeneratorTest {
+
+    // Number of passwords drawn per policy
+    private static final int PASSWORDS = 50_000;
+
+    // The chi-squared statistic may lie this many standard deviations above its mean.
+    // At 6 an unbiased generator fails by chance about once in a billion checks.
+    private static final double MAX_DEVIATIONS = 6;
+
+
+    @Test
+    void defaultPolicyIsUniform() {
+        assertUniform(PasswordPolicy.DEFAULT);
+    }
+
+
+    @Test
+    void digitsAreUniform() {
+        assertUniform(PasswordPolicy.DEFAULT.withCharacterClasses(PasswordPolicy.DIGITS).withLength(6));
+    }
+
+
+    @Test
+    void lettersWithoutRequiredClassesAreUniform() {
+        assertUniform(PasswordPolicy.DEFAULT.withCharacterClasses(PasswordPolicy.LOWERCASE | PasswordPolicy.UPPERCASE)
+                .withEveryClassRequired(false));
+    }
+
+
+    @Test
+    void excludedCharactersNeverOccur() {
+        PasswordPolicy policy = PasswordPolicy.DEFAULT.withExcludedCharacters(PasswordPolicy.AMBIGUOUS_CHARACTERS)
+                .withLength(12);
+        Generated generated = generate(policy);
+
+        for (char c : generated.buffer) {
+            if (PasswordPolicy.AMBIGUOUS_CHARACTERS.indexOf(c) >= 0) {
+                fail("Excluded character '" + c + "' was generated");
+            }
+        }
+        assertUniform(policy);
+    }
+
+
+    @Test
+    void everyRequiredClassIsPresent() {
+        PasswordPolicy policy = PasswordPolicy.DEFAULT.withLength(4);
+        Generated generated = generate(policy);
+
+        for (int p = 0; p < PASSWORDS; p++) {
+            int found = 0;
+            for (int i = generated.start(p); i < generated.ends[p]; i++) {
+                found |= classOf(generated.buffer[i]);
+            }
+            assertEquals(policy.characterClasses(), found,
+                    "Password misses a class: " + new String(generated.buffer, generated.start(p), 4));
+        }
+    }
+
+
+    @Test
+    void passphraseWordsAreUniform() {
+        PasswordPolicy policy = PasswordPolicy.passphrase(4, " ");
+        Map<String, Long> firstWords = new HashMap<>();
+
+        // Passphrases repeat too often by chance to check for duplicates with this many
+        for (int i = 0; i < PASSWORDS; i++) {
+            String passphrase = PasswordGenerator.generate(policy);
+            String[] words = passphrase.split(policy.separator());
+            assertEquals(policy.passphraseWords(), words.length, passphrase);
+            firstWords.merge(words[0], 1L, Long::sum);
+        }
+
+        // Every word of the list is as likely, including those that weren't drawn at all
+        int wordCount = (int) Math.round(Math.pow(2, PasswordGenerator.entropyBits(policy) / policy.passphraseWords()));
+        long[] counts = new long[wordCount];
+        int i = 0;
+        for (long frequency : firstWords.values()) {
+            counts[i++] = frequency;
+        }
+        double[] expected = new double[wordCount];
+        Arrays.fill(expected, (double) PASSWORDS / wordCount);
+
+        assertDeviation(chiSquaredDeviation(counts, expected), "first word");
+    }
+
+
+    /**
+     * Checks that every character of the alphabet is as likely at every position, that no other characters
+     * occur, and that long passwords are never repeated.
+     */
+    private static void assertUniform(PasswordPolicy policy) {
+        char[] alphabet = policy.alphabet();
+        int length = policy.length();
+        Map<Character, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < alphabet.length; i++) {
+            indexes.put(alphabet[i], i);
+        }
+
+        Generated generated = generate(policy);
+        long[][] counts = new long[length][alphabet.length];
+        Set<String> distinct = new HashSet<>();
+
+        for (int p = 0; p < PASSWORDS; p++) {
+            int from = generated.start(p);
+            assertEquals(length, generated.ends[p] - from);
+
+            for (int i = 0; i < length; i++) {
+                Integer index = indexes.get(generated.buffer[from + i]);
+                if (index == null) {
+                    fail("Unexpected character '" + generated.buffer[from + i] + "'");
+                }
+                counts[i][index]++;
+            }
+            distinct.add(new String(generated.buffer, from, length));
+        }
+
+        // When every class is required, the characters of small classes are a little more likely than uniform.
+        // Every position is compared with the frequencies measured over all positions then.
+        double[] expected = new double[alphabet.length];
+        for (int c = 0; c < alphabet.length; c++) {
+            if (policy.everyClassRequired()) {
+                for (long[] position : counts) {
+                    expected[c] += position[c];
+                }
+                expected[c] /= length;
+            } else {
+                expected[c] = (double) PASSWORDS / alphabet.length;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            assertDeviation(chiSquaredDeviation(counts[i], expected), "position " + i);
+        }
+
+        if (length >= 12) {
+            assertEquals(PASSWORDS, distinct.size(), "Duplicate passwords");
+        }
+    }
+
+
+    /**
+     * Passwords generated into one buffer, with the end of every password.
+     */
+    private record Generated(char[] buffer, int[] ends) {
+
+        int start(int password) {
+            return password == 0 ? 0 : ends[password - 1];
+        }
+    }
+
+
+    private static Generated generate(PasswordPolicy policy) {
+        char[] buffer = new char[PASSWORDS * PasswordGenerator.maxLength(policy)];
+        int[] ends = new int[PASSWORDS];
+        int length = PasswordGenerator.generateAll(policy, buffer, ends);
+        return new Generated(Arrays.copyOf(buffer, length), ends);
+    }
+
+
+    private static void assertDeviation(double deviation, String what) {
+        assertTrue(deviation <= MAX_DEVIATIONS,
+                "Frequencies at " + what + " are biased by " + deviation + " standard deviations");
+    }
+
+
+    /**
+     * Returns by how many standard deviations the chi-squared statistic of observed counts lies above its mean,
+     * as a standard normal deviate. For few categories the statistic is skewed, so its cube root is normalized
+     * instead (the Wilson-Hilferty approximation), which keeps the chance of a false failure as small as intended.
+     */
+    private static double chiSquaredDeviation(long[] observed, double[] expected) {
+        double chiSquared = 0;
+
+        for (int i = 0; i < observed.length; i++) {
+            double difference = observed[i] - expected[i];
+            chiSquared += difference * difference / expected[i];
+        }
+
+        double variance = 2.0 / (9.0 * (observed.length - 1));
+        return (Math.cbrt(chiSquared / (observed.length - 1)) - (1 - variance)) / Math.sqrt(variance);
+    }
+
+
+    /**
+     * Returns the class bit of a character.
+     */
+    private static int classOf(char c) {
+        if (Character.isLowerCase(c)) {
+            return PasswordPolicy.LOWERCASE;
+        }
+        if (Character.isUpperCase(c)) {
+            return PasswordPolicy.UPPERCASE;
+        }
+        if (Character.isDigit(c)) {
+            return PasswordPolicy.DIGITS;
+        }
+        return PasswordPolicy.SYMBOLS;
+    }
+}
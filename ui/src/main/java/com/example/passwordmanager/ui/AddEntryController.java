@@ -1,12 +1,16 @@
-package com.example.passwordmanager;
+package com.example.passwordmanager.ui;
 
+import com.example.passwordmanager.BreachedPasswordChecker;
+import com.example.passwordmanager.PasswordDatabase;
+import com.example.passwordmanager.PasswordGenerator;
+import com.example.passwordmanager.PasswordPolicy;
 import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 
-import java.util.Random;
-
 /**
  * The AddEntryController class is the controller for the add-entry-view.fxml file,
  * managing the UI and interactions for adding a new password entry.
@@ -20,23 +24,26 @@ public class AddEntryController {
     public TextField titleField;
     public Button randomizeButton;
     public TextField passwordField;
-    private MainViewController mainViewController;
 
 
     /**
-     * Sets the reference to the MainViewController.
-     *
-     * @param mainViewController The reference to the MainViewController.
+     * Clears the fields, so the dialog can be shown again for another entry.
      */
-    public void setMainViewController(MainViewController mainViewController) {
-        this.mainViewController = mainViewController;
+    public void reset() {
+        titleField.clear();
+        usernameField.clear();
+        passwordField.clear();
+        titleField.setStyle("");
+        usernameField.setStyle("");
+        passwordField.setStyle("");
+        titleField.requestFocus();
     }
 
 
     /**
      * Handles the action event when the "Add" button is clicked.
      * Retrieves input values, validates them, and saves a new entry to the file.
-     * Closes the current view and refreshes the password entries in the main view.
+     * Closes the current view. The main view picks up the new entry through PasswordDatabase change events.
      */
     @FXML
     private void addEntry() {
@@ -46,24 +53,40 @@ public class AddEntryController {
         String password = passwordField.getText();
 
         // Validate input
-        boolean isInputValid = validateInput(username, title, password);
+        boolean isInputValid = validateInput(username, title, password) && confirmUnbreached(password);
 
         if (isInputValid) {
-            // Save the new entry to the file
+            // Save the new entry to the file. The main view adds it to its list when notified of the change.
             String[] newEntry = {title, username, password};
             PasswordDatabase.savePasswordEntry(newEntry);
 
-            // Refresh password entries in the main view
-            if (mainViewController != null) {
-                mainViewController.loadPasswordEntries();
-            }
-
             // Close the current view
             closeView();
         }
     }
 
 
+    /**
+     * Checks the password against the list of breached passwords, if one is configured,
+     * and asks whether a breached password should be saved anyway.
+     *
+     * @param password The password input.
+     * @return True if the password is not known to be breached, or should be saved anyway.
+     */
+    private boolean confirmUnbreached(String password) {
+        BreachedPasswordChecker checker = BreachedPasswordChecker.getDefaultIfOpen();
+
+        if (checker == null || !checker.isBreached(password)) {
+            return true;
+        }
+
+        passwordField.setStyle("-fx-border-color: red;");
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "This password appears in a list of breached passwords "
+                + "and should not be used. Save it anyway?", ButtonType.YES, ButtonType.NO);
+        return alert.showAndWait().orElse(ButtonType.NO) == ButtonType.YES;
+    }
+
+
     /**
      * Closes the current view (window).
      */
@@ -80,34 +103,12 @@ public class AddEntryController {
      */
     @FXML
     private void generateRandomPassword() {
-        // Add logic to generate a random password and set it to the passwordField
-        String randomPassword = generateRandomPasswordString();
+        // 20 characters of all character classes, from the shared SecureRandom-backed generator
+        String randomPassword = PasswordGenerator.generate(PasswordPolicy.DEFAULT);
         passwordField.setText(randomPassword);
     }
 
 
-    /**
-     * Generates a random password string.
-     *
-     * @return The generated random password.
-     */
-    private String generateRandomPasswordString() {
-        // Add logic to generate a random password string (customize according to requirements)
-        String characters = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789!@#$%^&*()-_=+";
-        int length = 20; // Set the desired length of the random password
-
-        StringBuilder password = new StringBuilder();
-        Random random = new Random();
-
-        for (int i = 0; i < length; i++) {
-            int index = random.nextInt(characters.length());
-            password.append(characters.charAt(index));
-        }
-
-        return password.toString();
-    }
-
-
     /**
      * Validates the input fields and updates styles accordingly.
      *
@@ -0,0 +1,198 @@
+package com.example.passwordmanager.ui;
+
+import com.example.passwordmanager.BreachedPasswordChecker;
+import com.example.passwordmanager.PasswordDatabase;
+import com.example.passwordmanager.PasswordGenerator;
+import com.example.passwordmanager.PasswordPolicy;
+import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.TextField;
+import javafx.stage.Stage;
+
+/**
+ * The EditEntryController class is the controller for the edit-entry-view.fxml file,
+ * managing the UI and interactions for editing an existing password entry.
+ * The entry is only overwritten if it still has the details it was shown with.
+ */
+public class EditEntryController {
+
+    // JavaFX UI elements injected from edit-entry-view.fxml
+    public Button addButton;
+    public Button cancelButton;
+    public TextField usernameField;
+    public TextField titleField;
+    public Button randomizeButton;
+    public TextField passwordField;
+
+    // Title and details of the entry being edited, as they were before editing
+    private String originalTitle;
+    private String[] originalDetails;
+
+
+    /**
+     * Clears the fields and forgets the entry, so the dialog can be shown again for another entry.
+     */
+    public void reset() {
+        originalTitle = null;
+        originalDetails = null;
+        titleField.clear();
+        usernameField.clear();
+        passwordField.clear();
+        titleField.setStyle("");
+        usernameField.setStyle("");
+        passwordField.setStyle("");
+        titleField.requestFocus();
+    }
+
+
+    /**
+     * Handles the action event when the "Save" button is clicked in the Edit Entry view.
+     * Retrieves input values, validates them, edits the current entry with new inputs
+     * Closes the current view. The main view picks up the edited entry through PasswordDatabase change events.
+     * If the entry was changed in the meantime, for example by another instance of the application,
+     * the edit is not saved and the view stays open, so it can be saved again over the new details.
+     * The same happens if the view has no original details to compare with, since then a change can't be ruled out.
+     */
+    @FXML
+    private void editEntry() {
+        // Retrieve input values
+        String username = usernameField.getText();
+        String title = titleField.getText();
+        String password = passwordField.getText();
+
+        // Validate input. An unchanged password was checked when it was saved.
+        boolean isInputValid = validateInput(username, title, password)
+                && ((originalDetails != null && password.equals(originalDetails[2])) || confirmUnbreached(password));
+
+        if (isInputValid) {
+            // The entry is looked up by its original title, since the title may have been edited
+            String selectedEntry = originalTitle;
+
+            // Create the updated entry details
+            String[] newDetails = {title, username, password};
+
+            // Overwrite the existing entry in the database file, unless it has changed since it was shown.
+            // Without the original details the database would overwrite it unchecked, so that counts as a change.
+            // The main view replaces the entry in its list when notified of the change.
+            if (originalDetails != null
+                    && PasswordDatabase.updatePasswordEntry(selectedEntry, originalDetails, newDetails)) {
+                // Close the current view
+                closeView();
+                return;
+            }
+
+            String[] currentDetails = selectedEntry != null ? PasswordDatabase.getEntryDetails(selectedEntry) : null;
+            if (currentDetails == null) {
+                new Alert(Alert.AlertType.WARNING, "The entry has been deleted in the meantime.").showAndWait();
+                closeView();
+            } else {
+                // Saving again overwrites the new details
+                originalDetails = currentDetails;
+                new Alert(Alert.AlertType.WARNING, "The entry has been changed in the meantime. "
+                        + "Save again to overwrite the changes.").showAndWait();
+            }
+        }
+    }
+
+
+    /**
+     * Checks the password against the list of breached passwords, if one is configured,
+     * and asks whether a breached password should be saved anyway.
+     *
+     * @param password The password input.
+     * @return True if the password is not known to be breached, or should be saved anyway.
+     */
+    private boolean confirmUnbreached(String password) {
+        BreachedPasswordChecker checker = BreachedPasswordChecker.getDefaultIfOpen();
+
+        if (checker == null || !checker.isBreached(password)) {
+            return true;
+        }
+
+        passwordField.setStyle("-fx-border-color: red;");
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "This password appears in a list of breached passwords "
+                + "and should not be used. Save it anyway?", ButtonType.YES, ButtonType.NO);
+        return alert.showAndWait().orElse(ButtonType.NO) == ButtonType.YES;
+    }
+
+
+    /**
+     * Closes the current view (window).
+     */
+    @FXML
+    private void closeView() {
+        // Get the stage (window) and close it
+        Stage stage = (Stage) cancelButton.getScene().getWindow();
+        stage.close();
+    }
+
+
+    /**
+     * Generates a random password and sets it to the passwordField.
+     */
+    @FXML
+    private void generateRandomPassword() {
+        // 20 characters of all character classes, from the shared SecureRandom-backed generator
+        String randomPassword = PasswordGenerator.generate(PasswordPolicy.DEFAULT);
+        passwordField.setText(randomPassword);
+    }
+
+
+    /**
+     * Validates the input fields and updates styles accordingly.
+     *
+     * @param username The username input.
+     * @param title    The title input.
+     * @param password The password input.
+     * @return True if the input is valid, false otherwise.
+     */
+    private boolean validateInput(String username, String title, String password) {
+        // Reset styles
+        usernameField.setStyle("");
+        titleField.setStyle("");
+        passwordField.setStyle("");
+
+        boolean isValid = true;
+
+        if (username.isEmpty()) {
+            // Set red border for the username field
+            usernameField.setStyle("-fx-border-color: red;");
+            isValid = false;
+        }
+
+        if (title.isEmpty()) {
+            // Set red border for the title field
+            titleField.setStyle("-fx-border-color: red;");
+            isValid = false;
+        }
+
+        if (password.isEmpty()) {
+            // Set red border for the password field
+            passwordField.setStyle("-fx-border-color: red;");
+            isValid = false;
+        }
+
+        return isValid;
+    }
+
+
+    /**
+     * Sets the details of a password entry in the UI fields.
+     * Used when populating the Edit Entry view with the details of an existing entry.
+     *
+     * @param entryDetails An array containing the details of a password entry: [title, username, password].
+     *                     The method expects a non-null array with exactly three elements.
+     *                     If the array is valid, it sets the corresponding UI fields with the info from entry details.
+     */
+    public void setEntryDetails(String[] entryDetails) {
+        if (entryDetails != null && entryDetails.length == 3) {
+            originalTitle = entryDetails[0];
+            originalDetails = entryDetails;
+            titleField.setText(entryDetails[0]);
+            usernameField.setText(entryDetails[1]);
+            passwordField.setText(entryDetails[2]);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.passwordmanager.ui;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The EntryDialogOpenEvent class is the JFR event of opening the add or edit dialog, from the click
+ * until the dialog was laid out for its first frame.
+ */
+@Name("passwordmanager.EntryDialogOpen")
+@Label("Entry Dialog Open")
+@Category({"Password Manager", "UI"})
+@Description("The add or edit dialog opened")
+class EntryDialogOpenEvent extends Event {
+
+    @Label("Dialog")
+    String dialog;
+
+    @Label("Preloaded")
+    @Description("Whether the dialog was loaded before it was opened")
+    boolean preloaded;
+}
@@ -0,0 +1,37 @@
+package com.example.passwordmanager.ui;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The EntryListLoadEvent class is the JFR event of loading the titles of the active vault into the ListView
+ * of the main view, from starting the load until the last batch was added on the JavaFX thread.
+ * It is recorded together with the storage events in VaultEvents.
+ */
+@Name("passwordmanager.EntryListLoad")
+@Label("Entry List Load")
+@Category({"Password Manager", "UI"})
+@Description("The titles of the active vault loaded into the list of the main view")
+class EntryListLoadEvent extends Event {
+
+    @Label("File")
+    String path;
+
+    @Label("Opened")
+    @Description("Whether the file was opened by the load, rather than already open")
+    boolean opened;
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Batches")
+    @Description("Number of batches added on the JavaFX thread")
+    int batches;
+
+    @Label("Cancelled")
+    @Description("Whether the load was replaced by another one before it finished")
+    boolean cancelled;
+}
@@ -0,0 +1,112 @@
+package com.example.passwordmanager.ui;
+
+import com.example.passwordmanager.Metrics;
+import com.example.passwordmanager.PasswordDatabase;
+import com.example.passwordmanager.VaultCipher;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+public class MainViewApplication extends Application {
+
+    // Time from the start of the process until the first frame of the window, and until the main view was shown
+    private static final String FIRST_FRAME = "ui.startup.firstFrame";
+    private static final String MAIN_VIEW = "ui.startup.mainView";
+
+
+    /**
+     * Shows the window right away with a progress indicator, and replaces it with the main view once that is loaded.
+     * Loading main-view.fxml creates all controls of the main view and opens the current file,
+     * so it is done after the first frame instead of keeping the window from appearing.
+     */
+    @Override
+    public void start(Stage stage) {
+        StackPane placeholder = new StackPane(new ProgressIndicator());
+        Scene scene = new Scene(placeholder, 800, 600);
+        stage.setTitle("Password Manager");
+        stage.setScene(scene);
+
+        // Load the main view once the first frame has been laid out, so it is rendered first
+        runAfterNextPulse(scene, () -> {
+            recordSinceProcessStart(FIRST_FRAME);
+            showMainView(scene);
+        });
+        stage.show();
+
+        // Time the key derivation in the background, so creating an encrypted vault doesn't wait for it
+        CompletableFuture.runAsync(VaultCipher::calibratedIterations);
+    }
+
+
+    /**
+     * Loads the main view into the window, then preloads the dialogs it opens.
+     */
+    private void showMainView(Scene scene) {
+        FXMLLoader fxmlLoader = new FXMLLoader(MainViewApplication.class.getResource("main-view.fxml"));
+        try {
+            scene.setRoot(fxmlLoader.<Parent>load());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        MainViewController controller = fxmlLoader.getController();
+
+        runAfterNextPulse(scene, () -> {
+            recordSinceProcessStart(MAIN_VIEW);
+            controller.preloadDialogs();
+        });
+    }
+
+
+    /**
+     * Runs an action on the JavaFX thread after the next pulse of a scene was laid out, once its frame
+     * has been handed to the renderer.
+     */
+    private static void runAfterNextPulse(Scene scene, Runnable action) {
+        Runnable[] listener = new Runnable[1];
+        listener[0] = () -> {
+            scene.removePostLayoutPulseListener(listener[0]);
+            Platform.runLater(action);
+        };
+        scene.addPostLayoutPulseListener(listener[0]);
+    }
+
+
+    /**
+     * Records the time since the process started in a Metrics histogram, if metrics are enabled.
+     * The start time of the process comes from the operating system, which on Linux counts in 10 ms ticks.
+     */
+    private static void recordSinceProcessStart(String histogram) {
+        if (!Metrics.isEnabled()) {
+            return;
+        }
+
+        ProcessHandle.current().info().startInstant().ifPresent(startTime ->
+                Metrics.histogram(histogram).record(Duration.between(startTime, Instant.now()).toNanos()));
+    }
+
+
+    @Override
+    public void stop() {
+        // Write the entries that are still queued, also when the window is closed instead of using Quit
+        try {
+            PasswordDatabase.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args) {
+        launch();
+    }
+}
@@ -0,0 +1,1206 @@
+package com.example.passwordmanager.ui;
+
+import com.example.passwordmanager.BinaryVault;
+import com.example.passwordmanager.BreachedPasswordChecker;
+import com.example.passwordmanager.CompressedVault;
+import com.example.passwordmanager.CsvTransfer;
+import com.example.passwordmanager.LatencyHistogram;
+import com.example.passwordmanager.Metrics;
+import com.example.passwordmanager.PasswordAudit;
+import com.example.passwordmanager.PasswordDatabase;
+import com.example.passwordmanager.TextVaultFile;
+import com.example.passwordmanager.Vault;
+import com.example.passwordmanager.VaultChange;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.Menu;
+import javafx.scene.control.PasswordField;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.RadioMenuItem;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.VBox;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.text.Text;
+import javafx.stage.Stage;
+import javafx.stage.FileChooser;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The MainViewController class is the controller for the main-view.fxml file, managing the UI and interactions.
+ */
+public class MainViewController {
+
+    // JavaFX UI elements injected from main-view.fxml
+    public TextField passwordTextField;
+    public TextField usernameTextField;
+    public Button addNewButton;
+    public Text currentFileText;
+
+    // Button showing the password of the selected entry instead of the mask
+    @FXML
+    private ToggleButton passwordShowButton;
+
+    // Shown in the password field while the password is hidden
+    private static final String PASSWORD_MASK = "\u2022\u2022\u2022\u2022\u2022\u2022\u2022\u2022";
+
+    // Title of the entry whose details are shown. The credentials are only decoded from the vault to show or copy them.
+    private String shownEntry;
+
+    // Incremented on every selection, so details looked up for an earlier selection are not shown
+    private int selectionCount;
+
+    // ListView element for displaying password entries
+    @FXML
+    private ListView<String> passwordListView;
+
+    // Search field filtering the ListView by title and username as the user types
+    @FXML
+    private TextField searchField;
+
+    // Titles of the open file in file order. Loading and changes are applied here, the ListView shows them
+    // through titleSearchList, which filters them by the text in the search field.
+    private final ObservableList<String> entryTitles = FXCollections.observableArrayList();
+    private final TitleSearchList titleSearchList = new TitleSearchList(entryTitles);
+
+    // Progress bar shown while entries are being loaded
+    @FXML
+    private ProgressBar loadProgressBar;
+
+    // Menu listing the open vaults, with the active one checked. Selecting another one switches to it.
+    @FXML
+    private Menu vaultMenu;
+    private final ToggleGroup vaultToggleGroup = new ToggleGroup();
+
+    // Audit of the active vault for reused and similar passwords, whose flags are shown in the ListView
+    private PasswordAudit passwordAudit;
+
+    // The add and edit dialogs, loaded once after the main window is shown and reused for every entry
+    private final ReusableDialog<AddEntryController> addDialog =
+            new ReusableDialog<>("add", "add-entry-view.fxml", "Add Entry");
+    private final ReusableDialog<EditEntryController> editDialog =
+            new ReusableDialog<>("edit", "edit-entry-view.fxml", "Edit Entry");
+
+    // Menu item turning the recording of performance metrics on and off
+    @FXML
+    private CheckMenuItem recordMetricsMenuItem;
+
+    // Background thread that opens database files and reads their entries, keeping file I/O off the JavaFX thread
+    private static final ExecutorService fileLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vault-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Background thread that opens the list of breached passwords and checks vaults against it. Building the
+    // Bloom filter of a large list takes minutes, which must not hold up the lookups queued on the fileLoader.
+    private static final ExecutorService breachChecker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "breach-checker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Number of titles added to the ListView at a time while loading.
+    // Small enough that adding a batch takes well under a frame (16 ms) on the JavaFX thread.
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    // Time from starting to load the titles into the ListView until the last batch was added
+    private static final LatencyHistogram LOAD_TIME = Metrics.histogram("ui.loadPasswordEntries");
+
+    // The task currently loading entries into the ListView, or null
+    private Task<Void> loadTask;
+
+    // Whether a CSV import is running. The ListView is reloaded once when it finishes, instead of after every batch.
+    private boolean importing;
+
+    // Extension filters for the supported database file formats
+    private static final FileChooser.ExtensionFilter TEXT_FILE_FILTER =
+            new FileChooser.ExtensionFilter("Text files (*.txt)", "*.txt");
+    private static final FileChooser.ExtensionFilter BINARY_VAULT_FILTER =
+            new FileChooser.ExtensionFilter("Binary vault files (*.pwdb)", "*.pwdb");
+    private static final FileChooser.ExtensionFilter ENCRYPTED_VAULT_FILTER =
+            new FileChooser.ExtensionFilter("Encrypted vault files (*.pwdb)", "*.pwdb");
+    private static final FileChooser.ExtensionFilter COMPRESSED_VAULT_FILTER =
+            new FileChooser.ExtensionFilter("Compressed vault files (*.pwdz)", "*.pwdz");
+    private static final FileChooser.ExtensionFilter CSV_FILE_FILTER =
+            new FileChooser.ExtensionFilter("CSV files (*.csv)", "*.csv");
+
+
+    /**
+     * Sets up the initial state of the UI.
+     * - Fetches entries from the file and displays them in the ListView.
+     * - Adds an event handler to handle item selection in the ListView.
+     * - Registers for changes made to the open file.
+     * - Filters the ListView by title and username as the user types in the search field.
+     * The handler (showSelectedEntryDetails) is triggered whenever an item in the ListView is selected.
+     */
+    @FXML
+    public void initialize() {
+        passwordListView.setItems(titleSearchList);
+        passwordListView.setCellFactory(listView -> new AuditedEntryCell());
+        recordMetricsMenuItem.setSelected(Metrics.isEnabled());
+
+        // Check if a file is currently open
+        String currentFilePath = PasswordDatabase.getFilePath();
+
+        if (currentFilePath != null && !currentFilePath.isEmpty()) {
+            // Fetch entries from the file and display them in the ListView
+            loadPasswordEntries();
+            updateCurrentFileIndicator();
+            auditActiveVault();
+        }
+
+        // Adds an event handler to handle item selection in the ListView
+        // Handler (showSelectedEntryDetails) is triggered whenever an item in the ListView is selected.
+        passwordListView.getSelectionModel().selectedItemProperty().addListener(
+                (observable, oldValue, newValue) -> showSelectedEntryDetails(newValue));
+
+        // Apply changes made to the open file to the ListView one entry at a time, instead of reloading it
+        PasswordDatabase.addChangeListener(this::applyChange);
+
+        // Filter the titles on every keystroke, using the title and trigram indexes of the PasswordDatabase
+        searchField.textProperty().addListener(
+                (observable, oldValue, newValue) -> titleSearchList.setQuery(newValue));
+
+        // Open the list of breached passwords in the background, so passwords can be checked when they are saved
+        breachChecker.execute(BreachedPasswordChecker::getDefault);
+    }
+
+
+    /**
+     * Loads the add and edit dialogs in the background, so they open without parsing their FXML files.
+     * Called once the main window is shown.
+     */
+    public void preloadDialogs() {
+        addDialog.preload();
+        editDialog.preload();
+    }
+
+
+    /**
+     * Handles the "Add New" button click event.
+     * Opens the add-entry-view.fxml window for adding a new password entry, with empty fields.
+     */
+    @FXML
+    public void handleAddNewButtonClick() {
+        addDialog.show(AddEntryController::reset);
+    }
+
+
+    /**
+     * Handles the "Delete" button click event.
+     */
+    @FXML
+    public void handleDeleteButtonClick() {
+
+        // Gets the index of the currently selected item in the ListView.
+        int selectedIndex = passwordListView.getSelectionModel().getSelectedIndex();
+
+        // If nothing is selected the index is >= 0
+        if (selectedIndex >= 0) {
+            // Remove the selected item from the list
+            String deletedEntry = passwordListView.getSelectionModel().getSelectedItem();
+
+            // Remove the entry from the passwords.txt file using PasswordDatabase, in the background.
+            // The ListView is updated by applyChange.
+            fileLoader.execute(() -> PasswordDatabase.deletePasswordEntry(deletedEntry));
+        }
+    }
+
+
+    /**
+     * Handles the "Edit" button click event.
+     */
+    @FXML
+    public void handleEditButtonClick() {
+        // Check if an item is selected in the ListView
+        String selectedEntry = passwordListView.getSelectionModel().getSelectedItem();
+        if (selectedEntry != null) {
+            // Retrieve details of the selected entry in the background and pass them to the EditEntryController,
+            // replacing those of the entry it was shown for last
+            fileLoader.execute(() -> {
+                String[] entryDetails = PasswordDatabase.getEntryDetails(selectedEntry);
+                if (entryDetails == null) {
+                    // Deleted in the meantime
+                    return;
+                }
+
+                Platform.runLater(() -> editDialog.show(editEntryController -> {
+                    editEntryController.reset();
+                    editEntryController.setEntryDetails(entryDetails);
+                }));
+            });
+        }
+    }
+
+
+    /**
+     * Handles the "Copy" button click event for the username field.
+     * Copies the username of the shown entry to the clipboard.
+     */
+    @FXML
+    public void handleUsernameCopyButtonClick() {
+        copyFieldToClipboard(1);
+    }
+
+
+    /**
+     * Handles the "Copy" button click event for the password field.
+     * Copies the password of the shown entry to the clipboard, also while it is hidden.
+     */
+    @FXML
+    public void handlePasswordCopyButtonClick() {
+        copyFieldToClipboard(2);
+    }
+
+
+    /**
+     * Handles the "Show" button click event for the password field.
+     * Shows the password of the shown entry while the button is selected, and the mask otherwise.
+     */
+    @FXML
+    public void handlePasswordShowButtonClick() {
+        if (shownEntry == null) {
+            passwordShowButton.setSelected(false);
+            return;
+        }
+
+        if (!passwordShowButton.isSelected()) {
+            passwordTextField.setText(PASSWORD_MASK);
+            return;
+        }
+
+        // Decode the password in the background, and show it unless another entry was selected meanwhile
+        String entry = shownEntry;
+        int selection = selectionCount;
+        fileLoader.execute(() -> {
+            String[] password = new String[1];
+            PasswordDatabase.revealField(entry, 2, (chars, length) -> password[0] = new String(chars, 0, length));
+
+            Platform.runLater(() -> {
+                if (password[0] != null && selection == selectionCount && passwordShowButton.isSelected()) {
+                    passwordTextField.setText(password[0]);
+                }
+            });
+        });
+    }
+
+
+    /**
+     * Copies a credential of the shown entry to the clipboard. It is decoded from the vault into characters that
+     * are wiped afterwards, the clipboard itself only takes a String.
+     *
+     * @param field The field, 1 for the username and 2 for the password.
+     */
+    private void copyFieldToClipboard(int field) {
+        if (shownEntry == null) {
+            return;
+        }
+
+        // Decode the field in the background, the clipboard can only be set on the JavaFX thread
+        String entry = shownEntry;
+        fileLoader.execute(() -> {
+            String[] text = new String[1];
+            PasswordDatabase.revealField(entry, field, (chars, length) -> text[0] = new String(chars, 0, length));
+
+            if (text[0] != null) {
+                Platform.runLater(() -> copyToClipboard(text[0]));
+            }
+        });
+    }
+
+
+    /**
+     * Copies the given text to the clipboard.
+     *
+     * @param text The text to be copied.
+     */
+    private void copyToClipboard(String text) {
+        Clipboard clipboard = Clipboard.getSystemClipboard();
+        ClipboardContent content = new ClipboardContent();
+        content.putString(text);
+        clipboard.setContent(content);
+    }
+
+
+    /**
+     * Updates the username and password text fields when an entry is selected.
+     * This method is called when an item is selected in the ListView.
+     * It looks up the entry with a matching title from the PasswordDatabase in the background, like the loading
+     * of the entries, and shows it unless another entry was selected meanwhile. The password is hidden
+     * until the "Show" button is selected.
+     *
+     * @param selectedEntry The title of the selected entry.
+     */
+    private void showSelectedEntryDetails(String selectedEntry) {
+        passwordShowButton.setSelected(false);
+        int selection = ++selectionCount;
+
+        if (selectedEntry == null) {
+            return;
+        }
+
+        fileLoader.execute(() -> {
+            // Look up the username of the selected entry by its title
+            String[] username = new String[1];
+            PasswordDatabase.revealField(selectedEntry, 1, (chars, length) -> username[0] = new String(chars, 0, length));
+
+            // If a match is found, it updates the usernameTextField and masks the passwordTextField
+            Platform.runLater(() -> {
+                if (username[0] != null && selection == selectionCount) {
+                    shownEntry = selectedEntry;
+                    usernameTextField.setText(username[0]);
+                    passwordTextField.setText(PASSWORD_MASK);
+                }
+            });
+        });
+    }
+
+
+    /**
+     * Load password entries and populate the ListView.
+     * Clears the existing items in the passwordListView and starts loading the entry titles
+     * of the currently open file in the background.
+     */
+    public void loadPasswordEntries() {
+        startLoading(null);
+    }
+
+
+    /**
+     * Opens a database file and populates the ListView with its entries.
+     * The file is opened in the background, so the UI stays responsive while a large file is read.
+     *
+     * @param filePath The path of the database file to open.
+     */
+    private void openFile(String filePath) {
+        char[] masterPassword = null;
+
+        // Encrypted vaults are unlocked with the master password
+        if (PasswordDatabase.isEncryptedVault(filePath)) {
+            masterPassword = askMasterPassword("Unlock " + new File(filePath).getName(), false);
+            if (masterPassword == null) {
+                return;
+            }
+        }
+
+        openFile(filePath, masterPassword);
+    }
+
+
+    /**
+     * Opens a database file with a known master password and populates the ListView with its entries.
+     *
+     * @param filePath       The path of the database file to open.
+     * @param masterPassword The master password of an encrypted vault, or null. It is wiped once the vault is open.
+     */
+    private void openFile(String filePath, char[] masterPassword) {
+        // Clear the password entries in the UI
+        clearGUI();
+        startLoading(filePath, masterPassword);
+    }
+
+
+    /**
+     * Asks the user for a master password.
+     *
+     * @param title   The title of the dialog.
+     * @param confirm Whether the password has to be typed twice, for a new vault.
+     * @return The master password, or null if the dialog was canceled or the passwords didn't match.
+     */
+    private static char[] askMasterPassword(String title, boolean confirm) {
+        PasswordField passwordField = new PasswordField();
+        passwordField.setPromptText("Master password");
+        PasswordField confirmField = new PasswordField();
+        confirmField.setPromptText("Repeat master password");
+
+        VBox fields = new VBox(8, passwordField);
+        if (confirm) {
+            fields.getChildren().add(confirmField);
+        }
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle(title);
+        dialog.setHeaderText(title);
+        dialog.getDialogPane().setContent(fields);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        Platform.runLater(passwordField::requestFocus);
+
+        if (dialog.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK || passwordField.getText().isEmpty()) {
+            return null;
+        }
+
+        if (confirm && !passwordField.getText().equals(confirmField.getText())) {
+            new Alert(Alert.AlertType.ERROR, "The master passwords don't match.").showAndWait();
+            return null;
+        }
+
+        return passwordField.getText().toCharArray();
+    }
+
+
+    /**
+     * Starts a background task that loads entry titles into the ListView, canceling the previous one.
+     *
+     * @param newFilePath The path of a database file to open first, or null to reload the currently open file.
+     */
+    private void startLoading(String newFilePath) {
+        startLoading(newFilePath, null);
+    }
+
+
+    /**
+     * Starts a background task that loads entry titles into the ListView, canceling the previous one.
+     * Titles are added in batches of LOAD_BATCH_SIZE through Platform.runLater. The task waits for each batch
+     * to be added before sending the next one, so the JavaFX thread never has more than one batch to process.
+     *
+     * @param newFilePath    The path of a database file to open first, or null to reload the currently open file.
+     * @param masterPassword The master password of an encrypted vault, or null. It is wiped once the vault is open.
+     */
+    private void startLoading(String newFilePath, char[] masterPassword) {
+        cancelLoading();
+
+        // Clear the existing items in the passwordListView
+        entryTitles.clear();
+
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() throws InterruptedException {
+                EntryListLoadEvent event = new EntryListLoadEvent();
+                event.begin();
+                long start = Metrics.start();
+
+                try {
+                    return load(event);
+                } finally {
+                    event.cancelled = isCancelled();
+                    if (!event.cancelled) {
+                        LOAD_TIME.recordSince(start);
+                    }
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.path = newFilePath != null ? newFilePath : PasswordDatabase.getFilePath();
+                        event.opened = newFilePath != null;
+                        event.commit();
+                    }
+                }
+            }
+
+            private Void load(EntryListLoadEvent event) throws InterruptedException {
+                if (newFilePath != null) {
+                    // Opening the file reads it into the cache of its vault. Unlocking an encrypted vault
+                    // derives its key here, off the JavaFX thread. The other open vaults stay open.
+                    Vault vault = PasswordDatabase.openVault(newFilePath, masterPassword);
+                    if (masterPassword != null) {
+                        Arrays.fill(masterPassword, '\0');
+                    }
+
+                    if (vault == null) {
+                        Platform.runLater(() -> new Alert(Alert.AlertType.ERROR,
+                                "Can't open " + new File(newFilePath).getName()
+                                        + ". The master password may be wrong.").show());
+                    } else {
+                        // Switching to the vault loads its titles into the ListView
+                        Platform.runLater(() -> switchToVault(vault));
+                    }
+                    return null;
+                }
+
+                // Retrieve the entry titles from the PasswordDatabase. Credentials are only needed once an entry is selected.
+                List<String> titles = PasswordDatabase.getEntryTitles();
+                Semaphore batchAdded = new Semaphore(0);
+                event.entries = titles.size();
+
+                for (int from = 0; from < titles.size() && !isCancelled(); from += LOAD_BATCH_SIZE) {
+                    int to = Math.min(from + LOAD_BATCH_SIZE, titles.size());
+                    List<String> batch = titles.subList(from, to);
+
+                    // Populate the ListView with the next batch of titles, unless another file was opened meanwhile
+                    Platform.runLater(() -> {
+                        if (!isCancelled()) {
+                            entryTitles.addAll(batch);
+                        }
+                        batchAdded.release();
+                    });
+
+                    batchAdded.acquire();
+                    event.batches++;
+                    updateProgress(to, titles.size());
+                }
+
+                return null;
+            }
+        };
+
+        task.setOnFailed(event -> task.getException().printStackTrace());
+
+        // Show the progress of the task while it runs
+        loadProgressBar.progressProperty().bind(task.progressProperty());
+        loadProgressBar.visibleProperty().bind(task.runningProperty());
+
+        loadTask = task;
+        fileLoader.execute(task);
+    }
+
+
+    /**
+     * Applies a change made to the open file to the ListView.
+     * Only the changed item is added, replaced or removed, so the scroll position and selection are kept.
+     *
+     * @param change The change made to the open file.
+     */
+    private void applyChange(VaultChange change) {
+        // Changes may be made from other threads, but the ListView may only be modified on the JavaFX thread
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> applyChange(change));
+            return;
+        }
+
+        // Many entries changed at once, or another vault became the active one, so read them again
+        if (change.type() == VaultChange.Type.RELOADED) {
+            updateCurrentFileIndicator();
+            auditActiveVault();
+            if (!importing) {
+                loadPasswordEntries();
+            }
+            return;
+        }
+
+        List<String> items = entryTitles;
+        int index = change.index();
+
+        // While entries are still being loaded, or if the ListView is out of sync with the file, start over
+        boolean loading = loadTask != null && !loadTask.isDone();
+        int size = change.type() == VaultChange.Type.ADDED ? items.size() + 1 : items.size();
+        if (loading || index >= size) {
+            loadPasswordEntries();
+            return;
+        }
+
+        switch (change.type()) {
+            case ADDED -> items.add(index, change.title());
+            case UPDATED -> {
+                // The ListView may be filtered, so translate between its indexes and those of the entries
+                int selectedIndex = passwordListView.getSelectionModel().getSelectedIndex();
+                boolean wasSelected = selectedIndex >= 0 && titleSearchList.getSourceIndex(selectedIndex) == index;
+                items.set(index, change.title());
+
+                // Keep the edited entry selected and show its new details
+                int viewIndex = titleSearchList.getViewIndex(index);
+                if (wasSelected && viewIndex >= 0) {
+                    passwordListView.getSelectionModel().select(viewIndex);
+                    showSelectedEntryDetails(change.title());
+                }
+            }
+            case REMOVED -> items.remove(index);
+        }
+    }
+
+
+    /**
+     * Starts auditing the passwords of the active vault, if it isn't audited already.
+     * The audit follows the changes of the vault itself, and the ListView is repainted whenever its flags change.
+     */
+    private void auditActiveVault() {
+        Vault vault = PasswordDatabase.getActiveVault();
+
+        if (passwordAudit != null && passwordAudit.getVault() == vault) {
+            return;
+        }
+
+        if (passwordAudit != null) {
+            passwordAudit.close();
+            passwordAudit = null;
+        }
+
+        if (vault != null) {
+            PasswordAudit audit = new PasswordAudit(vault);
+            audit.addListener(() -> Platform.runLater(passwordListView::refresh));
+            audit.start();
+            passwordAudit = audit;
+        }
+        passwordListView.refresh();
+    }
+
+
+    /**
+     * A ListView cell that marks entries whose password is reused by another entry, or only differs
+     * from that of another entry by a counter.
+     */
+    private class AuditedEntryCell extends ListCell<String> {
+
+        @Override
+        protected void updateItem(String title, boolean empty) {
+            super.updateItem(title, empty);
+            setText(empty ? null : title);
+
+            // The ListView may be filtered, so translate its index to the position of the entry
+            PasswordAudit.Flag flag = PasswordAudit.Flag.NONE;
+            if (!empty && passwordAudit != null) {
+                int index = getIndex() < titleSearchList.size() ? titleSearchList.getSourceIndex(getIndex()) : -1;
+                flag = passwordAudit.getFlag(index);
+            }
+
+            switch (flag) {
+                case REUSED -> {
+                    setStyle("-fx-text-fill: #c00000;");
+                    setTooltip(new Tooltip("This password is also used by another entry"));
+                }
+                case SIMILAR -> {
+                    setStyle("-fx-text-fill: #b06000;");
+                    setTooltip(new Tooltip("This password only differs from that of another entry by a number"));
+                }
+                default -> {
+                    setStyle("");
+                    setTooltip(null);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Makes an open vault the active one and shows its entries.
+     * The entries come from the cache of the vault, so switching back and forth doesn't read the file again.
+     *
+     * @param vault The vault to switch to.
+     */
+    private void switchToVault(Vault vault) {
+        cancelLoading();
+        clearGUI();
+
+        if (PasswordDatabase.getActiveVault() == vault) {
+            // Already active, so no change is fired
+            loadPasswordEntries();
+            updateCurrentFileIndicator();
+        } else {
+            // applyChange reloads the ListView on the RELOADED change
+            PasswordDatabase.setActiveVault(vault);
+        }
+    }
+
+
+    /**
+     * Cancels loading entries into the ListView, if a load is in progress.
+     */
+    private void cancelLoading() {
+        if (loadTask != null) {
+            loadTask.cancel();
+            loadTask = null;
+        }
+    }
+
+
+    /**
+     * Handles the "Quit" button click event.
+     */
+    @FXML
+    public void handleQuitButtonClick() {
+        // Write the entries that are still queued before quitting
+        try {
+            PasswordDatabase.flush();
+        } catch (IOException e) {
+            // Stay open, so the added entries aren't lost without the user knowing
+            e.printStackTrace();
+            new Alert(Alert.AlertType.ERROR, "Added entries could not be saved: " + e.getMessage()).showAndWait();
+            return;
+        }
+
+        // Terminate the JavaFX application
+        Platform.exit();
+    }
+
+
+    /**
+     * Opens a FileChooser dialog for the user to select a file.
+     * If a file is selected, it is opened next to the files that are open already, and becomes the active one.
+     * The method then triggers loading of password entries from the selected file.
+     */
+    @FXML
+    public void handleOpenFile() {
+        // Create a FileChooser
+        FileChooser fileChooser = new FileChooser();
+
+        // Set the extension filters to restrict to .txt files, binary vault files and compressed vault files
+        fileChooser.getExtensionFilters().addAll(TEXT_FILE_FILTER, BINARY_VAULT_FILTER, COMPRESSED_VAULT_FILTER);
+
+        // Show the file dialog
+        File selectedFile = fileChooser.showOpenDialog(new Stage());
+
+        // Check if a file was selected
+        if (selectedFile != null) {
+            // Get the selected file path
+            String filePath = selectedFile.getAbsolutePath();
+
+            // Open the selected file and load its password entries in the background
+            openFile(filePath);
+        }
+    }
+
+
+    /**
+     * Closes the currently opened file and clears the UI.
+     * If other files are open, the most recently opened one is shown instead.
+     */
+    @FXML
+    public void handleCloseFile() {
+        Vault vault = PasswordDatabase.getActiveVault();
+
+        // Nothing to close if no file is open
+        if (vault == null) {
+            return;
+        }
+
+        // Stop loading the file and clear the password entries in the UI
+        cancelLoading();
+        clearGUI();
+
+        // This runs after any load still in progress, and writes the entries that are still queued for the file
+        // before closing it. The vault that becomes active is loaded by applyChange.
+        fileLoader.execute(() -> PasswordDatabase.closeVault(vault));
+    }
+
+
+    /**
+     * Creates a new file based on user input using a FileChooser.
+     * If the selected file doesn't exist, it creates a new file and sets the file path.
+     * Clears the UI and triggers the loading of password entries from the new file.
+     */
+    @FXML
+    public void handleNewFile() {
+        // Call the helper method to handle the creation of a new password database file
+        NewDatabaseFile newFile = createNewPasswordDatabaseFile();
+
+        // If new file was created successfully, load it in to the GUI
+        if(newFile != null) {
+            // Open the new file and load its password entries in the background, without asking for the password again
+            openFile(newFile.path(), newFile.masterPassword());
+        }
+    }
+
+
+    /**
+     * A newly created database file and the master password it was encrypted with, or null if it isn't encrypted.
+     */
+    public record NewDatabaseFile(String path, char[] masterPassword) {
+    }
+
+
+    /**
+     * Method to create a new password database file.
+     * Opens a "FileChooser" dialog and creates or overwrites existing database file per user input
+     *
+     * @return The absolute path of the created file and its master password, or null if the file creation failed
+     *         or the user canceled the operation.
+     */
+    public static NewDatabaseFile createNewPasswordDatabaseFile() {
+        // Create a FileChooser object, which is a dialog that allows the user to select or create a file.
+        FileChooser fileChooser = new FileChooser();
+
+        // Set extension filters on the FileChooser to choose between a .txt file, a binary, encrypted or compressed vault.
+        fileChooser.getExtensionFilters().addAll(TEXT_FILE_FILTER, BINARY_VAULT_FILTER, ENCRYPTED_VAULT_FILTER,
+                COMPRESSED_VAULT_FILTER);
+
+        // Display the actual file creation dialog and creates createdFile object to represent the created file.
+        File createdFile = withExtension(fileChooser.showSaveDialog(new Stage()), fileChooser.getSelectedExtensionFilter());
+
+        // Check if the user actually created a file (didn't cancel the dialog).
+        if (createdFile != null) {
+            char[] masterPassword = null;
+
+            // An encrypted vault needs a master password, typed twice
+            if (fileChooser.getSelectedExtensionFilter() == ENCRYPTED_VAULT_FILTER) {
+                masterPassword = askMasterPassword("Master password for " + createdFile.getName(), true);
+                if (masterPassword == null) {
+                    return null;
+                }
+            }
+
+            try {
+                if (PasswordDatabase.isBinaryVault(createdFile.getPath())) {
+                    // Write an empty binary vault, overwriting the existing file
+                    BinaryVault.create(createdFile.getAbsolutePath(), masterPassword);
+                } else if (PasswordDatabase.isCompressedVault(createdFile.getPath())) {
+                    // Write an empty compressed vault, overwriting the existing file
+                    CompressedVault.create(createdFile.getAbsolutePath());
+                } else {
+                    // Write an empty text file with only the format header, overwriting the existing file
+                    TextVaultFile.create(createdFile.getAbsolutePath());
+                }
+                // Return the absolute path of the created or overwritten file
+                return new NewDatabaseFile(createdFile.getAbsolutePath(), masterPassword);
+
+            } catch (IOException e) {
+                // Print the stack trace if an IOException occurs during file creation
+                e.printStackTrace();
+
+                // Return null to indicate that the file creation failed
+                return null;
+            }
+        }
+
+        // Return null to indicate that the user canceled the file creation operation
+        return null;
+    }
+
+
+    /**
+     * Converts the currently open file to another file format.
+     * Opens a "FileChooser" dialog for the converted file, converts the open file and opens the converted file.
+     */
+    @FXML
+    public void handleConvertFile() {
+        String currentFilePath = PasswordDatabase.getFilePath();
+
+        // Nothing to convert if no file is open
+        if (currentFilePath == null || currentFilePath.isEmpty()) {
+            return;
+        }
+
+        // Offer only the formats the open file isn't stored in
+        FileChooser fileChooser = new FileChooser();
+        if (PasswordDatabase.isBinaryVault(currentFilePath)) {
+            fileChooser.getExtensionFilters().addAll(TEXT_FILE_FILTER, COMPRESSED_VAULT_FILTER);
+        } else if (PasswordDatabase.isCompressedVault(currentFilePath)) {
+            fileChooser.getExtensionFilters().addAll(TEXT_FILE_FILTER, BINARY_VAULT_FILTER, ENCRYPTED_VAULT_FILTER);
+        } else {
+            fileChooser.getExtensionFilters().addAll(BINARY_VAULT_FILTER, ENCRYPTED_VAULT_FILTER,
+                    COMPRESSED_VAULT_FILTER);
+        }
+
+        File targetFile = withExtension(fileChooser.showSaveDialog(new Stage()), fileChooser.getSelectedExtensionFilter());
+
+        if (targetFile != null) {
+            String targetFilePath = targetFile.getAbsolutePath();
+            char[] masterPassword = null;
+
+            // Converting to an encrypted vault needs a master password, typed twice
+            if (fileChooser.getSelectedExtensionFilter() == ENCRYPTED_VAULT_FILTER) {
+                masterPassword = askMasterPassword("Master password for " + targetFile.getName(), true);
+                if (masterPassword == null) {
+                    return;
+                }
+            }
+            char[] targetPassword = masterPassword;
+
+            // Convert the file in the background, then open the converted file
+            fileLoader.execute(() -> {
+                try {
+                    PasswordDatabase.convertFile(currentFilePath, targetFilePath, targetPassword);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+
+                Platform.runLater(() -> openFile(targetFilePath, targetPassword));
+            });
+        }
+    }
+
+
+    /**
+     * Imports a CSV export of another password manager into the open file.
+     * The import runs in the background with its progress shown in the progress bar, and a summary is shown
+     * when it finishes.
+     */
+    @FXML
+    public void handleImportCsv() {
+        String currentFilePath = PasswordDatabase.getFilePath();
+
+        // Nothing to import into if no file is open
+        if (currentFilePath == null || currentFilePath.isEmpty()) {
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(CSV_FILE_FILTER);
+        File sourceFile = fileChooser.showOpenDialog(new Stage());
+
+        if (sourceFile != null) {
+            Task<CsvTransfer.Progress> task = new Task<>() {
+                @Override
+                protected CsvTransfer.Progress call() throws Exception {
+                    return CsvTransfer.importCsv(sourceFile.toPath(),
+                            progress -> updateProgress(progress.bytesRead(), progress.totalBytes()));
+                }
+            };
+
+            task.setOnSucceeded(event -> {
+                importing = false;
+                loadPasswordEntries();
+
+                CsvTransfer.Progress result = task.getValue();
+                new Alert(Alert.AlertType.INFORMATION, String.format(
+                        "Imported %d entries from %d rows (%.0f rows/s).%nSkipped %d duplicates and %d invalid rows.",
+                        result.imported(), result.rows(), result.rowsPerSecond(), result.duplicates(),
+                        result.rejected())).show();
+            });
+            task.setOnFailed(event -> {
+                importing = false;
+                task.getException().printStackTrace();
+                loadPasswordEntries();
+                new Alert(Alert.AlertType.ERROR, "Import failed: " + task.getException().getMessage()).show();
+            });
+
+            // Show the progress of the import instead of loading the ListView after every batch
+            cancelLoading();
+            importing = true;
+            loadProgressBar.progressProperty().bind(task.progressProperty());
+            loadProgressBar.visibleProperty().bind(task.runningProperty());
+            fileLoader.execute(task);
+        }
+    }
+
+
+    /**
+     * Exports the entries of the open file as a CSV file that other password managers can import.
+     */
+    @FXML
+    public void handleExportCsv() {
+        String currentFilePath = PasswordDatabase.getFilePath();
+
+        // Nothing to export if no file is open
+        if (currentFilePath == null || currentFilePath.isEmpty()) {
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(CSV_FILE_FILTER);
+        File targetFile = withExtension(fileChooser.showSaveDialog(new Stage()), CSV_FILE_FILTER);
+
+        if (targetFile != null) {
+            fileLoader.execute(() -> {
+                try {
+                    CsvTransfer.Progress result = CsvTransfer.exportCsv(targetFile.toPath(), progress -> { });
+                    Platform.runLater(() -> new Alert(Alert.AlertType.INFORMATION,
+                            "Exported " + result.rows() + " entries to " + targetFile.getName() + ".").show());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    Platform.runLater(() -> new Alert(Alert.AlertType.ERROR,
+                            "Export failed: " + e.getMessage()).show());
+                }
+            });
+        }
+    }
+
+
+    /**
+     * Handles the "Record performance metrics" menu item.
+     * Turns the counters and latency histograms of the file operations on or off.
+     */
+    @FXML
+    public void handleRecordMetrics() {
+        Metrics.setEnabled(recordMetricsMenuItem.isSelected());
+    }
+
+
+    /**
+     * Handles the "Export performance metrics" menu item.
+     * Writes the counters and latency histograms recorded so far to a text file, for attaching to a bug report.
+     */
+    @FXML
+    public void handleExportMetrics() {
+        if (!Metrics.isEnabled()) {
+            new Alert(Alert.AlertType.INFORMATION, "No metrics are being recorded. Turn on "
+                    + "\"Record performance metrics\", repeat the slow operations and export again.").show();
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(TEXT_FILE_FILTER);
+        fileChooser.setInitialFileName("passwordmanager-metrics.txt");
+        File targetFile = withExtension(fileChooser.showSaveDialog(new Stage()), TEXT_FILE_FILTER);
+
+        if (targetFile != null) {
+            try {
+                Metrics.writeTo(targetFile.toPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+                new Alert(Alert.AlertType.ERROR, "Export failed: " + e.getMessage()).show();
+            }
+        }
+    }
+
+
+    /**
+     * Handles the "Check for breached passwords" menu item.
+     * Checks the passwords of all entries of the active vault against the list of breached passwords
+     * in the background and lists the entries whose password has been breached.
+     */
+    @FXML
+    public void handleAuditBreachedPasswords() {
+        Vault vault = PasswordDatabase.getActiveVault();
+
+        // Nothing to check if no file is open
+        if (vault == null) {
+            return;
+        }
+
+        breachChecker.execute(() -> {
+            BreachedPasswordChecker checker = BreachedPasswordChecker.getDefault();
+            if (checker == null) {
+                Platform.runLater(() -> new Alert(Alert.AlertType.INFORMATION, "No list of breached passwords is set. "
+                        + "Start the application with -Dpasswordmanager.breachCorpus=<file>.").show());
+                return;
+            }
+
+            List<String> breached = checker.audit(vault);
+            String message = breached.isEmpty()
+                    ? "None of the passwords appears in the list of breached passwords."
+                    : breached.size() + " entries use a breached password:\n" + String.join("\n",
+                    breached.subList(0, Math.min(breached.size(), 20))) + (breached.size() > 20 ? "\n..." : "");
+            Platform.runLater(() -> new Alert(breached.isEmpty() ? Alert.AlertType.INFORMATION
+                    : Alert.AlertType.WARNING, message).show());
+        });
+    }
+
+
+    /**
+     * Handles the "Check for reused passwords" menu item.
+     * Lists the entries of the active vault whose password is reused by another entry, or only differs
+     * from that of another entry by a counter. They are also marked in the ListView.
+     */
+    @FXML
+    public void handleAuditReusedPasswords() {
+        if (passwordAudit == null) {
+            return;
+        }
+
+        if (!passwordAudit.isReady()) {
+            new Alert(Alert.AlertType.INFORMATION, "The passwords are still being checked. Try again shortly.").show();
+            return;
+        }
+
+        List<String> reused = flaggedTitles(PasswordAudit.Flag.REUSED);
+        List<String> similar = flaggedTitles(PasswordAudit.Flag.SIMILAR);
+
+        if (reused.isEmpty() && similar.isEmpty()) {
+            new Alert(Alert.AlertType.INFORMATION, "Every entry has a password of its own.").show();
+            return;
+        }
+
+        String message = reused.size() + " entries share their password with another entry:\n" + summarize(reused)
+                + "\n\n" + similar.size() + " entries only differ from another password by a number:\n"
+                + summarize(similar);
+        new Alert(Alert.AlertType.WARNING, message).show();
+    }
+
+
+    /**
+     * Returns the titles of the entries with a flag, as far as the ListView has them.
+     */
+    private List<String> flaggedTitles(PasswordAudit.Flag flag) {
+        List<String> titles = new ArrayList<>();
+
+        for (int index : passwordAudit.getFlaggedIndexes(flag)) {
+            if (index < entryTitles.size()) {
+                titles.add(entryTitles.get(index));
+            }
+        }
+
+        return titles;
+    }
+
+
+    /**
+     * Joins the first 20 titles into lines for an alert.
+     */
+    private static String summarize(List<String> titles) {
+        return String.join("\n", titles.subList(0, Math.min(titles.size(), 20))) + (titles.size() > 20 ? "\n..." : "");
+    }
+
+
+    /**
+     * Adds the extension of the selected extension filter to a file chosen in a save dialog, if it is missing.
+     *
+     * @param file   The chosen file, or null if the dialog was canceled.
+     * @param filter The selected extension filter.
+     * @return The file with the extension of the filter, or null if the dialog was canceled.
+     */
+    private static File withExtension(File file, FileChooser.ExtensionFilter filter) {
+        if (file == null || filter == null) {
+            return file;
+        }
+
+        // Extensions are stored as patterns like "*.txt"
+        String extension = filter.getExtensions().get(0).substring(1);
+
+        if (file.getName().toLowerCase().endsWith(extension)) {
+            return file;
+        }
+
+        return new File(file.getPath() + extension);
+    }
+
+
+    /**
+     * Clears the currently displayed entries from the GUI
+     */
+    public void clearGUI() {
+        // Clear the password entries and the search in the GUI
+        searchField.clear();
+        entryTitles.clear();
+        usernameTextField.clear();
+        passwordTextField.clear();
+        passwordShowButton.setSelected(false);
+        shownEntry = null;
+
+    }
+
+
+    /**
+     * Updates the current file indicator text and the Vaults menu based on the open database files.
+     */
+    public void updateCurrentFileIndicator() {
+        updateVaultMenu();
+
+        // Get the current file path
+        String currentFilePath = PasswordDatabase.getFilePath();
+
+        // Check if a file is currently open
+        if (currentFilePath != null && !currentFilePath.isEmpty()) {
+            // File is open, display the file name
+            currentFileText.setText("Currently open database file: " + new File(currentFilePath).getName());
+        } else {
+            // No file is open
+            currentFileText.setText("No database file currently open.");
+        }
+    }
+
+
+    /**
+     * Lists the open vaults in the Vaults menu, with the active one checked.
+     */
+    private void updateVaultMenu() {
+        Vault activeVault = PasswordDatabase.getActiveVault();
+        vaultMenu.getItems().clear();
+
+        for (Vault vault : PasswordDatabase.getOpenVaults()) {
+            RadioMenuItem item = new RadioMenuItem(new File(vault.getFilePath()).getName());
+            item.setToggleGroup(vaultToggleGroup);
+            item.setSelected(vault == activeVault);
+            item.setOnAction(event -> switchToVault(vault));
+            vaultMenu.getItems().add(item);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.passwordmanager.ui;
+
+import com.example.passwordmanager.LatencyHistogram;
+import com.example.passwordmanager.Metrics;
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * The ReusableDialog class holds a modal dialog loaded from an FXML file once and shown again and again,
+ * instead of parsing the file and creating a new window on every click.
+ * <p>
+ * preload parses the file on a background thread, which is allowed since the nodes are not part of a shown
+ * window yet, and then creates the window on the JavaFX thread and applies the CSS, so the skins of the controls
+ * exist before the dialog is opened for the first time. A dialog opened before the preload finished is shown once
+ * the preload is done, or starts it if it was never preloaded, without blocking the JavaFX thread. If loading
+ * fails an error alert is shown, and the next show tries again. Closing the dialog only hides its window.
+ * <p>
+ * The caller resets the controller before every show, since it keeps the fields of the previous use.
+ * Every open is recorded in the Metrics histogram ui.dialog.name, from the click until the dialog was laid out,
+ * and as an EntryDialogOpenEvent.
+ *
+ * @param <C> The type of the controller of the FXML file.
+ */
+class ReusableDialog<C> {
+
+    private final String name;
+    private final String fxmlFile;
+    private final String title;
+    private final LatencyHistogram openTime;
+
+    // The parsed file, or null until preload is called
+    private CompletableFuture<FXMLLoader> loading;
+
+    // Whether a show is waiting for the file to be loaded, so further clicks don't queue more
+    private boolean opening;
+
+    // The window of the dialog, created on the JavaFX thread when the file is loaded
+    private Stage stage;
+    private C controller;
+
+
+    /**
+     * Creates a dialog that is loaded on preload or on the first show.
+     *
+     * @param name     The name of the dialog in metrics and events, for example "add".
+     * @param fxmlFile The FXML file, relative to this class.
+     * @param title    The title of the window.
+     */
+    ReusableDialog(String name, String fxmlFile, String title) {
+        this.name = name;
+        this.fxmlFile = fxmlFile;
+        this.title = title;
+        this.openTime = Metrics.histogram("ui.dialog." + name);
+    }
+
+
+    /**
+     * Starts parsing the FXML file on a background thread, and creates the window on the JavaFX thread
+     * once it is parsed. Does nothing if the dialog is already loading or loaded.
+     */
+    void preload() {
+        if (loading != null) {
+            return;
+        }
+
+        loading = CompletableFuture.supplyAsync(this::parse);
+        loading.thenAccept(loader -> Platform.runLater(() -> createStage(loader)));
+    }
+
+
+    /**
+     * Shows the dialog. If it isn't loaded yet, it is shown on the JavaFX thread once the preload is done,
+     * which is started if necessary. Must be called on the JavaFX thread.
+     *
+     * @param prepare Resets the controller and fills in the fields for this use, called before the window is shown.
+     */
+    void show(Consumer<C> prepare) {
+        EntryDialogOpenEvent event = new EntryDialogOpenEvent();
+        event.begin();
+        long start = Metrics.start();
+        event.preloaded = stage != null;
+
+        if (stage != null) {
+            open(prepare, event, start);
+            return;
+        }
+
+        if (opening) {
+            return;
+        }
+        opening = true;
+        preload();
+
+        loading.thenAcceptAsync(loader -> {
+            createStage(loader);
+            open(prepare, event, start);
+        }, Platform::runLater).whenCompleteAsync((ignored, error) -> {
+            opening = false;
+            if (error != null) {
+                loadFailed(error);
+            }
+        }, Platform::runLater);
+    }
+
+
+    /**
+     * Shows an error alert for a dialog that could not be loaded, and forgets the failed load so the next show
+     * tries again. Called on the JavaFX thread.
+     */
+    private void loadFailed(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof UncheckedIOException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        cause.printStackTrace();
+
+        if (stage == null) {
+            loading = null;
+        }
+        new Alert(Alert.AlertType.ERROR, "The " + title + " dialog could not be opened: " + cause.getMessage()).show();
+    }
+
+
+    /**
+     * Prepares the loaded dialog for this use and shows it. Called on the JavaFX thread.
+     */
+    private void open(Consumer<C> prepare, EntryDialogOpenEvent event, long start) {
+        prepare.accept(controller);
+
+        // Measured until the dialog was laid out for its first frame
+        Runnable[] recorded = new Runnable[1];
+        recorded[0] = () -> {
+            stage.getScene().removePostLayoutPulseListener(recorded[0]);
+            openTime.recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.dialog = name;
+                event.commit();
+            }
+        };
+        stage.getScene().addPostLayoutPulseListener(recorded[0]);
+
+        stage.show();
+        stage.toFront();
+    }
+
+
+    /**
+     * Parses the FXML file, which creates the nodes and the controller.
+     */
+    private FXMLLoader parse() {
+        FXMLLoader loader = new FXMLLoader(ReusableDialog.class.getResource(fxmlFile));
+        try {
+            loader.load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return loader;
+    }
+
+
+    /**
+     * Creates the window of the parsed file and applies its CSS. Called on the JavaFX thread.
+     * Does nothing if the window exists already.
+     */
+    private void createStage(FXMLLoader loader) {
+        if (stage != null) {
+            return;
+        }
+
+        Parent root = loader.getRoot();
+        controller = loader.getController();
+
+        stage = new Stage();
+        stage.initModality(Modality.APPLICATION_MODAL);
+        stage.initStyle(StageStyle.UNDECORATED);
+        stage.setTitle(title);
+        stage.setScene(new Scene(root));
+
+        // Creates the skins of the controls now instead of when the dialog is first shown
+        root.applyCss();
+        root.layout();
+    }
+}
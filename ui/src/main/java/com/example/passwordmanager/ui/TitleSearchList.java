@@ -0,0 +1,323 @@
+package com.example.passwordmanager.ui;
+
+import com.example.passwordmanager.PasswordDatabase;
+import com.example.passwordmanager.TitleMatches;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.TransformationList;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The TitleSearchList class is a view of the entry titles shown in the ListView, filtered by a search query.
+ * <p>
+ * Without a query it shows the titles of its source list in file order and passes changes of the source through
+ * one by one. With a query it shows the titles starting with it from the title index of the PasswordDatabase in
+ * sorted order, followed by the best fuzzy matches of the title or username from the trigram index.
+ * Unlike a FilteredList, changing the query does not test every title: the prefix index finds its matches with a
+ * binary search, so filtering takes the same time for a thousand or a million entries.
+ * The fuzzy search can take longer for common trigrams, so it runs in the background and its matches are
+ * appended once they are found.
+ * <p>
+ * The indexes return the position of every match in file order along with it, so the ListView's selection and
+ * cells map between the view and the source without searching the source, also for entries with the same title.
+ * The source catches up with changes of the database a little later than the indexes, so a position is only
+ * used if the source has the matching title there.
+ */
+public class TitleSearchList extends TransformationList<String, String> {
+
+    // Maximum number of fuzzy matches shown after the prefix matches
+    private static final int MAX_FUZZY_MATCHES = 200;
+
+    // Background thread running the fuzzy searches
+    private static final ExecutorService fuzzySearcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vault-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The fuzzy search for the current matches, or null
+    private Future<?> fuzzySearch;
+
+    // Incremented whenever the matches are replaced, so results of an outdated fuzzy search are dropped
+    private int generation;
+
+    // The current search query, empty if the titles are not filtered
+    private String query = "";
+
+    // The titles matching the query, or null if the titles are not filtered
+    private List<String> matches;
+
+    // The prefix matches and the fuzzy matches shown after them, with the positions of their entries
+    private TitleMatches prefixMatches = TitleMatches.EMPTY;
+    private TitleMatches fuzzyMatches = TitleMatches.EMPTY;
+
+
+    /**
+     * Creates a view of the given titles that is not filtered yet.
+     *
+     * @param source The titles of the open file in file order.
+     */
+    public TitleSearchList(ObservableList<String> source) {
+        super(source);
+    }
+
+
+    /**
+     * Sets the query the titles are filtered by and updates the view.
+     *
+     * @param newQuery The text to search for, or an empty string to show all titles.
+     */
+    public void setQuery(String newQuery) {
+        query = newQuery == null ? "" : newQuery;
+        refresh();
+    }
+
+
+    /**
+     * Returns the query the titles are currently filtered by.
+     *
+     * @return The current query, empty if the titles are not filtered.
+     */
+    public String getQuery() {
+        return query;
+    }
+
+
+    /**
+     * Looks up the titles matching the current query and replaces the content of the view with them.
+     */
+    private void refresh() {
+        // The source is not modified while the change is delivered, so it doesn't need to be copied
+        List<? extends String> removed = matches != null ? matches : getSource();
+        String searchText = query.strip();
+        prefixMatches = searchText.isEmpty() ? TitleMatches.EMPTY : PasswordDatabase.findTitlesByPrefix(searchText);
+        fuzzyMatches = TitleMatches.EMPTY;
+        matches = searchText.isEmpty() ? null : prefixMatches;
+
+        generation++;
+        if (fuzzySearch != null) {
+            fuzzySearch.cancel(false);
+            fuzzySearch = null;
+        }
+
+        if (!removed.isEmpty() || size() > 0) {
+            fireChange(new ReplaceAllChange(this, removed));
+        }
+
+        if (matches != null) {
+            startFuzzySearch(searchText, matches);
+        }
+    }
+
+
+    /**
+     * Searches the titles and usernames for fuzzy matches in the background
+     * and appends those that don't start with the query to the prefix matches.
+     *
+     * @param searchText    The text to search for.
+     * @param prefixMatches The titles starting with the text, currently shown.
+     */
+    private void startFuzzySearch(String searchText, List<String> prefixMatches) {
+        int searchGeneration = generation;
+
+        fuzzySearch = fuzzySearcher.submit(() -> {
+            TitleMatches found = PasswordDatabase.searchEntries(searchText, MAX_FUZZY_MATCHES, false);
+            if (found.isEmpty()) {
+                return;
+            }
+
+            Platform.runLater(() -> {
+                // Drop the matches if the query or the entries changed meanwhile
+                if (searchGeneration != generation) {
+                    return;
+                }
+
+                fuzzyMatches = found;
+                matches = concat(prefixMatches, found);
+                beginChange();
+                nextAdd(prefixMatches.size(), matches.size());
+                endChange();
+            });
+        });
+    }
+
+
+    /**
+     * Returns a list of the prefix matches followed by the fuzzy matches.
+     * The prefix matches are not copied, since there can be as many of them as there are entries.
+     */
+    private static List<String> concat(List<String> prefixMatches, List<String> fuzzyMatches) {
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return index < prefixMatches.size()
+                        ? prefixMatches.get(index)
+                        : fuzzyMatches.get(index - prefixMatches.size());
+            }
+
+            @Override
+            public int size() {
+                return prefixMatches.size() + fuzzyMatches.size();
+            }
+        };
+    }
+
+
+    @Override
+    protected void sourceChanged(ListChangeListener.Change<? extends String> change) {
+        if (matches != null) {
+            // The title index is updated before the source, so look up the matches again
+            refresh();
+            return;
+        }
+
+        // Pass the changes of the source through, since the view shows the source as it is
+        beginChange();
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                int[] permutation = new int[change.getTo() - change.getFrom()];
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    permutation[i - change.getFrom()] = change.getPermutation(i);
+                }
+                nextPermutation(change.getFrom(), change.getTo(), permutation);
+            } else if (change.wasUpdated()) {
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    nextUpdate(i);
+                }
+            } else if (change.wasReplaced()) {
+                nextReplace(change.getFrom(), change.getTo(), change.getRemoved());
+            } else if (change.wasRemoved()) {
+                nextRemove(change.getFrom(), change.getRemoved());
+            } else if (change.wasAdded()) {
+                nextAdd(change.getFrom(), change.getTo());
+            }
+        }
+        endChange();
+    }
+
+
+    @Override
+    public int getSourceIndex(int index) {
+        if (matches == null) {
+            return index;
+        }
+        if (index < 0 || index >= matches.size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        int position = index < prefixMatches.size()
+                ? prefixMatches.getPosition(index)
+                : fuzzyMatches.getPosition(index - prefixMatches.size());
+
+        return isAtPosition(matches.get(index), position) ? position : -1;
+    }
+
+
+    @Override
+    public int getViewIndex(int index) {
+        if (matches == null) {
+            return index;
+        }
+
+        // Only called for single changes, so the positions are searched instead of indexed
+        for (int i = 0; i < matches.size(); i++) {
+            int position = i < prefixMatches.size()
+                    ? prefixMatches.getPosition(i)
+                    : fuzzyMatches.getPosition(i - prefixMatches.size());
+            if (position == index) {
+                return isAtPosition(matches.get(i), position) ? i : -1;
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Checks whether the source has the given title at the given position, which it doesn't if the change
+     * that put it there hasn't reached the source yet.
+     */
+    private boolean isAtPosition(String title, int position) {
+        return position >= 0 && position < getSource().size() && title.equals(getSource().get(position));
+    }
+
+
+    @Override
+    public String get(int index) {
+        return matches != null ? matches.get(index) : (String) getSource().get(index);
+    }
+
+
+    @Override
+    public int size() {
+        return matches != null ? matches.size() : getSource().size();
+    }
+
+
+    /**
+     * A change replacing the whole content of the view.
+     * The change builder of ObservableListBase copies the removed items, which would make every keystroke
+     * take time proportional to the number of entries. This change hands out the old list as it is.
+     */
+    private static class ReplaceAllChange extends ListChangeListener.Change<String> {
+
+        // The previous content of the view
+        private final List<String> removed;
+
+        // Whether next() has moved to the single change yet
+        private boolean started;
+
+
+        @SuppressWarnings("unchecked")
+        ReplaceAllChange(ObservableList<String> list, List<? extends String> removed) {
+            super(list);
+            this.removed = (List<String>) removed;
+        }
+
+
+        @Override
+        public boolean next() {
+            if (started) {
+                return false;
+            }
+            started = true;
+            return true;
+        }
+
+
+        @Override
+        public void reset() {
+            started = false;
+        }
+
+
+        @Override
+        public int getFrom() {
+            return 0;
+        }
+
+
+        @Override
+        public int getTo() {
+            return getList().size();
+        }
+
+
+        @Override
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+
+        @Override
+        protected int[] getPermutation() {
+            return new int[0];
+        }
+    }
+}
@@ -0,0 +1,10 @@
+module com.example.passwordmanager.ui {
+    requires com.example.passwordmanager;
+    requires javafx.controls;
+    requires javafx.fxml;
+    requires jdk.jfr;
+
+
+    opens com.example.passwordmanager.ui to javafx.fxml;
+    exports com.example.passwordmanager.ui;
+}